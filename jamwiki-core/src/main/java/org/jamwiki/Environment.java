@@ -28,6 +28,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.function.Function;
@@ -51,7 +53,14 @@ public final class Environment {
 	public static final String PROP_BASE_SEARCH_ENGINE = "search-engine";
 	public static final String PROP_BASE_WIKI_VERSION = "wiki-version";
 	public static final String PROP_DB_DRIVER = "driver";
+	public static final String PROP_DB_MIGRATION_BATCH_SIZE = "db-migration-batch-size";
+	public static final String PROP_DB_MIGRATION_FETCH_SIZE = "db-migration-fetch-size";
+	public static final String PROP_DB_MIGRATION_THREADS = "db-migration-threads";
 	public static final String PROP_DB_PASSWORD = "db-password";
+	public static final String PROP_DB_REPLICA_STICKY_SECONDS = "db-replica-sticky-seconds";
+	public static final String PROP_DB_REPLICA_URLS = "db-replica-urls";
+	public static final String PROP_DB_STATEMENT_REPEAT_THRESHOLD = "db-statement-repeat-threshold";
+	public static final String PROP_DB_STATEMENT_STATISTICS = "db-statement-statistics";
 	public static final String PROP_DB_TYPE = "database-type";
 	public static final String PROP_DB_URL = "url";
 	public static final String PROP_DB_USERNAME = "db-user";
@@ -99,6 +108,10 @@ public final class Environment {
 	public static final String PROP_PARSER_ALLOW_HTML = "allowHTML";
 	public static final String PROP_PARSER_ALLOW_JAVASCRIPT = "allow-javascript";
 	public static final String PROP_PARSER_ALLOW_TEMPLATES = "allow-templates";
+	/** Re-render expired parsed topic output in the background after a topic that it depends on changes. */
+	public static final String PROP_PARSER_CACHE_RERENDER = "parser-cache-rerender";
+	/** Cache the parsed output of topic views so that unchanged topics are not re-parsed on every request. */
+	public static final String PROP_PARSER_CACHE_TOPICS = "parser-cache-topics";
 	public static final String PROP_PARSER_CLASS = "parser";
 	public static final String PROP_PARSER_DISPLAY_INTERWIKI_LINKS_INLINE = "parser-interwiki-links-inline";
 	public static final String PROP_PARSER_DISPLAY_SPECIAL_PAGE_VIRTUAL_WIKI_LINKS = "display-special-virtual-wiki";
@@ -126,16 +139,23 @@ public final class Environment {
 	public static final String PROP_RECAPTCHA_PRIVATE_KEY = "recaptcha-private-key";
 	public static final String PROP_RECAPTCHA_PUBLIC_KEY = "recaptcha-public-key";
 	public static final String PROP_RECAPTCHA_REGISTER = "recaptcha-register";
+	public static final String PROP_RECENT_CHANGES_BUFFER_SIZE = "recent-changes-buffer-size";
 	public static final String PROP_RECENT_CHANGES_NUM = "recent-changes-days";
 	public static final String PROP_RSS_ALLOWED = "rss-allowed";
 	public static final String PROP_RSS_TITLE = "rss-title";
+	public static final String PROP_SEARCH_COMMIT_INTERVAL = "search-commit-interval";
+	public static final String PROP_SEARCH_MAX_STALENESS = "search-max-staleness";
 	public static final String PROP_SERVER_URL = "server-url";
 	public static final String PROP_SHARED_UPLOAD_VIRTUAL_WIKI = "shared-upload-virtual-wiki";
 	public static final String PROP_SITE_NAME = "site-name";
 	public static final String PROP_TOPIC_EDITOR = "default-editor";
+	public static final String PROP_TOPIC_METADATA_REBUILD_DELAY = "topic-metadata-rebuild-delay";
+	public static final String PROP_TOPIC_METADATA_REBUILD_THREADS = "topic-metadata-rebuild-threads";
+	public static final String PROP_TOPIC_NAME_DIRECTORY = "topic-name-directory";
 	public static final String PROP_TOPIC_SPAM_FILTER = "use-spam-filter";
 	public static final String PROP_TOPIC_USE_PREVIEW = "use-preview";
 	public static final String PROP_TOPIC_USE_SHOW_CHANGES = "use-show-changes";
+	public static final String PROP_TOPIC_VERSION_COMPRESSION = "topic-version-compression";
 	public static final String PROP_VIRTUAL_WIKI_DEFAULT = "virtual-wiki-default";
 	public static final String PROP_ROLE_ADMIN = "role-admin";
 	public static final String PROP_ROLE_ANONYMOUS = "role-anonymous";
@@ -162,6 +182,11 @@ public final class Environment {
 	private static Environment INSTANCE = null;
 	private Properties defaults = null;
 	private SortedProperties props = null;
+	/**
+	 * Immutable, pre-parsed copy of the current property values, replaced
+	 * whenever the properties are modified.
+	 */
+	private volatile Snapshot snapshot = null;
 
 	/**
 	 * The constructor loads property values from the property file.
@@ -249,6 +274,7 @@ public final class Environment {
         
         // optional properties without defaults
 		defaults.setProperty(PROP_BASE_META_DESCRIPTION, "");
+		defaults.setProperty(PROP_DB_REPLICA_URLS, "");
 		defaults.setProperty(PROP_EMAIL_SMTP_HOST,"");
 		defaults.setProperty(PROP_EMAIL_SMTP_USERNAME,"");
 		defaults.setProperty(PROP_EMAIL_SMTP_PASSWORD,"");
@@ -261,7 +287,13 @@ public final class Environment {
 		defaults.setProperty(PROP_BASE_INITIALIZED, BOOL_FALSE);
 		defaults.setProperty(PROP_BASE_LOGO_IMAGE, "logo.gif");
 		defaults.setProperty(PROP_BASE_SEARCH_ENGINE, SearchEngine.SEARCH_ENGINE_LUCENE);
-		defaults.setProperty(PROP_BASE_WIKI_VERSION, "2.0.0");
+		defaults.setProperty(PROP_BASE_WIKI_VERSION, "2.0.1");
+		defaults.setProperty(PROP_DB_MIGRATION_BATCH_SIZE, "1000");
+		defaults.setProperty(PROP_DB_MIGRATION_FETCH_SIZE, "1000");
+		defaults.setProperty(PROP_DB_MIGRATION_THREADS, "4");
+		defaults.setProperty(PROP_DB_REPLICA_STICKY_SECONDS, "10");
+		defaults.setProperty(PROP_DB_STATEMENT_REPEAT_THRESHOLD, "20");
+		defaults.setProperty(PROP_DB_STATEMENT_STATISTICS, BOOL_FALSE);
 		defaults.setProperty(PROP_DBCP_MAX_ACTIVE, "15");
 		defaults.setProperty(PROP_DBCP_MAX_IDLE, "15");
 		defaults.setProperty(PROP_DBCP_MAX_OPEN_PREPARED_STATEMENTS, "20");
@@ -298,6 +330,8 @@ public final class Environment {
 		defaults.setProperty(PROP_PARSER_ALLOW_HTML, BOOL_TRUE);
 		defaults.setProperty(PROP_PARSER_ALLOW_JAVASCRIPT, BOOL_FALSE);
 		defaults.setProperty(PROP_PARSER_ALLOW_TEMPLATES, BOOL_TRUE);
+		defaults.setProperty(PROP_PARSER_CACHE_RERENDER, BOOL_FALSE);
+		defaults.setProperty(PROP_PARSER_CACHE_TOPICS, BOOL_TRUE);
 		defaults.setProperty(PROP_PARSER_CLASS, "org.jamwiki.parser.jflex.JFlexParser");
 		defaults.setProperty(PROP_PARSER_DISPLAY_INTERWIKI_LINKS_INLINE, BOOL_FALSE);
 		defaults.setProperty(PROP_PARSER_DISPLAY_SPECIAL_PAGE_VIRTUAL_WIKI_LINKS, BOOL_TRUE);
@@ -321,15 +355,22 @@ public final class Environment {
 		defaults.setProperty(PROP_RECAPTCHA_PRIVATE_KEY, "");
 		defaults.setProperty(PROP_RECAPTCHA_PUBLIC_KEY, "");
 		defaults.setProperty(PROP_RECAPTCHA_REGISTER, "0");
+		defaults.setProperty(PROP_RECENT_CHANGES_BUFFER_SIZE, "0");
 		defaults.setProperty(PROP_RECENT_CHANGES_NUM, "100");
 		defaults.setProperty(PROP_RSS_ALLOWED, BOOL_TRUE);
 		defaults.setProperty(PROP_RSS_TITLE, "Wiki Recent Changes");
+		defaults.setProperty(PROP_SEARCH_COMMIT_INTERVAL, "5");
+		defaults.setProperty(PROP_SEARCH_MAX_STALENESS, "1000");
 		defaults.setProperty(PROP_SHARED_UPLOAD_VIRTUAL_WIKI, "");
 		defaults.setProperty(PROP_SITE_NAME, "JamWiki2");
 		defaults.setProperty(PROP_TOPIC_EDITOR, "toolbar");     // FIXME - hard coding
+		defaults.setProperty(PROP_TOPIC_METADATA_REBUILD_DELAY, "0");
+		defaults.setProperty(PROP_TOPIC_METADATA_REBUILD_THREADS, "2");
+		defaults.setProperty(PROP_TOPIC_NAME_DIRECTORY, BOOL_FALSE);
 		defaults.setProperty(PROP_TOPIC_SPAM_FILTER, BOOL_TRUE);
 		defaults.setProperty(PROP_TOPIC_USE_PREVIEW, BOOL_TRUE);
 		defaults.setProperty(PROP_TOPIC_USE_SHOW_CHANGES, BOOL_TRUE);
+		defaults.setProperty(PROP_TOPIC_VERSION_COMPRESSION, BOOL_FALSE);
 		defaults.setProperty(PROP_VIRTUAL_WIKI_DEFAULT, "en");
 		defaults.setProperty(PROP_ROLE_ADMIN, "ROLE_ADMIN");
 		defaults.setProperty(PROP_ROLE_ANONYMOUS, "ROLE_ANONYMOUS");
@@ -360,6 +401,28 @@ public final class Environment {
 		return INSTANCE.props;
 	}
 
+	/**
+	 * Return the current configuration snapshot, rebuilding it if any property
+	 * has been modified since it was created.  Property values are read on hot
+	 * paths such as parsing and topic lookups, so the common case is a single
+	 * volatile read with no locking or string parsing.  Properties may be
+	 * modified directly through the object returned by {@link #getInstance()},
+	 * so staleness is detected using the property modification count rather
+	 * than by hooking specific setters.  If two threads rebuild concurrently
+	 * the older snapshot may briefly be published, but its modification count
+	 * will not match and it will be rebuilt on the next lookup.
+	 */
+	private static Snapshot currentSnapshot() {
+		Properties props = getInstance();
+		long modificationCount = INSTANCE.props.getModificationCount();
+		Snapshot current = INSTANCE.snapshot;
+		if (current == null || current.modificationCount != modificationCount) {
+			current = new Snapshot(props, modificationCount);
+			INSTANCE.snapshot = current;
+		}
+		return current;
+	}
+
 	/**
 	 * Get the value of a boolean property.
 	 * Returns <code>true</code> if the property is equal, ignoring case,
@@ -370,7 +433,8 @@ public final class Environment {
 	 * @return The value of the property.
 	 */
 	public static boolean getBooleanValue(String name) {
-		return Boolean.valueOf(getValue(name));
+		Boolean value = currentSnapshot().booleanValues.get(name);
+		return (value != null && value);
 	}
 
 	/**
@@ -380,7 +444,8 @@ public final class Environment {
 	 * @return The value of the property.
 	 */
 	public static int getIntValue(String name) {
-		int value = NumberUtils.toInt(getValue(name), -1);
+		Integer cached = currentSnapshot().intValues.get(name);
+		int value = (cached == null) ? -1 : cached;
 		if (value == -1) {
 			log.warn("Invalid integer property " + name + " with value " + value);
 		}
@@ -395,7 +460,8 @@ public final class Environment {
 	 * @return The value of the property.
 	 */
 	public static long getLongValue(String name) {
-		long value = NumberUtils.toLong(getValue(name), -1);
+		Long cached = currentSnapshot().longValues.get(name);
+		long value = (cached == null) ? -1 : cached;
 		if (value == -1) {
 			log.warn("Invalid long property " + name + " with value " + value);
 		}
@@ -410,7 +476,7 @@ public final class Environment {
 	 * @return The value of the property.
 	 */
 	public static String getValue(String name) {
-		return getInstance().getProperty(name);
+		return currentSnapshot().values.get(name);
 	}
 
 	/**
@@ -674,4 +740,44 @@ public final class Environment {
 		}
 		getInstance().setProperty(name, value);
 	}
+
+	/**
+	 * Immutable copy of the property values at a point in time, with integer,
+	 * long and boolean values parsed once when the snapshot is created.
+	 */
+	private static final class Snapshot {
+
+		private final Map<String, Boolean> booleanValues;
+		private final Map<String, Integer> intValues;
+		private final Map<String, Long> longValues;
+		private final long modificationCount;
+		private final Map<String, String> values;
+
+		/**
+		 * Create a snapshot of the given properties.  The modification count
+		 * must be read before the property values so that a change made while
+		 * the snapshot is being created will cause it to be rebuilt.
+		 */
+		private Snapshot(Properties props, long modificationCount) {
+			this.modificationCount = modificationCount;
+			Map<String, String> values = new HashMap<String, String>();
+			Map<String, Boolean> booleanValues = new HashMap<String, Boolean>();
+			Map<String, Integer> intValues = new HashMap<String, Integer>();
+			Map<String, Long> longValues = new HashMap<String, Long>();
+			for (String name : props.stringPropertyNames()) {
+				String value = props.getProperty(name);
+				if (value == null) {
+					continue;
+				}
+				values.put(name, value);
+				booleanValues.put(name, Boolean.valueOf(value));
+				intValues.put(name, NumberUtils.toInt(value, -1));
+				longValues.put(name, NumberUtils.toLong(value, -1));
+			}
+			this.values = Collections.unmodifiableMap(values);
+			this.booleanValues = Collections.unmodifiableMap(booleanValues);
+			this.intValues = Collections.unmodifiableMap(intValues);
+			this.longValues = Collections.unmodifiableMap(longValues);
+		}
+	}
 }
@@ -18,12 +18,17 @@ package org.jamwiki;
 
 import java.io.IOException;
 import java.util.List;
+import org.jamwiki.model.SearchRebuildStatus;
 import org.jamwiki.model.SearchResultEntry;
+import org.jamwiki.model.SearchResultPage;
 import org.jamwiki.model.Topic;
+import org.jamwiki.utils.Pagination;
 
 /**
  * This interface provides all methods needed for interacting with a search
- * engine.
+ * engine.  Implementations may queue index updates and apply them
+ * asynchronously, in which case {@link #commit} can be used to force any
+ * queued updates to be applied.
  *
  * @see org.jamwiki.WikiBase#getSearchEngine
  */
@@ -42,7 +47,8 @@ public interface SearchEngine {
 	void addToIndex(Topic topic);
 
 	/**
-	 * Force a flush of any pending commits to the search index.
+	 * Force a flush of any pending commits to the search index, including any
+	 * queued updates that have not yet been applied.
 	 *
 	 * @param virtualWiki The virtual wiki for which pending updates are being
 	 *  committed.
@@ -69,6 +75,35 @@ public interface SearchEngine {
 	 */
 	List<SearchResultEntry> findResults(String virtualWiki, String text, List<Integer> namespaces);
 
+	/**
+	 * Find a single page of documents that contain a specific search term,
+	 * ordered by relevance.  Only the results on the requested page are loaded
+	 * and summarized, so this method should be preferred over
+	 * {@link #findResults(String, String, List)} when displaying results.
+	 *
+	 * @param virtualWiki The virtual wiki for the topic.
+	 * @param text The search term being searched for.
+	 * @param namespaces A list of all namespaces that should be searched when
+	 *  retrieving results.  If this list is <code>null</code> or empty then all
+	 *  namespaces will be searched.
+	 * @param pagination A Pagination object indicating which page of results
+	 *  should be returned.
+	 * @return A SearchResultPage object containing the SearchResultEntry
+	 *  objects for the requested page and the total number of documents
+	 *  that contain the search term.
+	 */
+	SearchResultPage findResults(String virtualWiki, String text, List<Integer> namespaces, Pagination pagination);
+
+	/**
+	 * Return the progress of the search index rebuild that is currently
+	 * running or that most recently completed.
+	 *
+	 * @return The status of the current or most recent search index rebuild,
+	 *  or <code>null</code> if no rebuild has been run since the search engine
+	 *  was started or if the search engine does not track rebuild progress.
+	 */
+	SearchRebuildStatus getRebuildStatus();
+
 	/**
 	 * Refresh the current search index by re-visiting all topic pages.
 	 *
@@ -19,12 +19,15 @@ package org.jamwiki;
 import org.jamwiki.db.AnsiDataHandler;
 import org.jamwiki.model.WikiGroup;
 import org.jamwiki.model.WikiUser;
+import org.jamwiki.parser.ParsedTopic;
+import org.jamwiki.parser.jflex.CompiledTemplate;
 import org.jamwiki.utils.WikiCache;
 import org.jamwiki.utils.WikiLogger;
 import org.jamwiki.utils.WikiUtil;
 
 import java.io.IOException;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * <code>WikiBase</code> is loaded as a singleton class and provides access
@@ -44,9 +47,21 @@ public final class WikiBase {
 	/** An instance of the current parser. */
 	private static JAMWikiParser parserInstance = null;
 
+	/**
+	 * Cache of pre-tokenized template bodies keyed by template topic ID.  Each
+	 * value records the topic version that it was compiled from.
+	 */
+	public static final WikiCache<Integer, CompiledTemplate> CACHE_COMPILED_TEMPLATES =
+            new WikiCache<>("org.jamwiki.WikiBase.CACHE_COMPILED_TEMPLATES");
 	/** Cache name for the cache of parsed topic content. */
 	public static final WikiCache<String, String> CACHE_PARSED_TOPIC_CONTENT = 
-            new WikiCache<>("org.jamwiki.WikiBase.CACHE_PARSED_TOPIC_CONTENT");
+            new WikiCache<>("org.jamwiki.WikiBase.CACHE_PARSED_TOPIC_CONTENT", true);
+	/**
+	 * Cache of fully parsed topic versions keyed by topic ID.  Each value maps
+	 * a parser variant key (locale, context, etc) to the parsed result.
+	 */
+	public static final WikiCache<Integer, Map<String, ParsedTopic>> CACHE_PARSED_TOPICS =
+            new WikiCache<>("org.jamwiki.WikiBase.CACHE_PARSED_TOPICS");
 	/** Default group for registered users. */
 	private static WikiGroup GROUP_REGISTERED_USER = null;
 	/** Data stored using an external database */
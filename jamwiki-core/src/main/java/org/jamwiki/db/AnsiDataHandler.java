@@ -20,6 +20,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.jamwiki.*;
 import org.jamwiki.model.*;
 import org.jamwiki.parser.LinkUtil;
+import org.jamwiki.parser.ParsedTopicInvalidator;
 import org.jamwiki.parser.ParserException;
 import org.jamwiki.parser.ParserOutput;
 import org.jamwiki.parser.ParserUtil;
@@ -32,6 +33,10 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Default handler for ANSI SQL compatible databases.
@@ -43,6 +48,14 @@ public class AnsiDataHandler {
 
     /** Any topic lookup that takes longer than the specified time (in ms) will trigger a log message. */
 	private static final int TIME_LIMIT_TOPIC_LOOKUP = 20;
+	/** Single background thread used to compress older topic versions after a topic is saved. */
+	private static final ExecutorService TOPIC_VERSION_COMPACTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "jamwiki-topic-version-compactor");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
 	private static final WikiCache<String, List<Interwiki>> CACHE_INTERWIKI_LIST = new WikiCache<>("org.jamwiki.db.AnsiDataHandler.CACHE_INTERWIKI_LIST");
 	private static final WikiCache<String, List<Namespace>> CACHE_NAMESPACE_LIST = new WikiCache<>("org.jamwiki.db.AnsiDataHandler.CACHE_NAMESPACE_LIST");
 	private static final WikiCache<String, List<RoleMap>> CACHE_ROLE_MAP_GROUP = new WikiCache<>("org.jamwiki.db.AnsiDataHandler.CACHE_ROLE_MAP_GROUP");
@@ -50,11 +63,11 @@ public class AnsiDataHandler {
 	 * Cache a topic name lookup to the actual topic name, useful for cases where
 	 * a topic name may vary by case.  This cache should not include deleted topics.
 	 */
-	private static final WikiCache<String, String> CACHE_TOPIC_NAMES_BY_NAME = new WikiCache<>("org.jamwiki.db.AnsiDataHandler.CACHE_TOPIC_NAMES_BY_NAME");
+	private static final WikiCache<String, String> CACHE_TOPIC_NAMES_BY_NAME = new WikiCache<>("org.jamwiki.db.AnsiDataHandler.CACHE_TOPIC_NAMES_BY_NAME", true);
 	/** Cache a topic object by its ID value.  This cache may include deleted topics. */
 	private static final WikiCache<Integer, Topic> CACHE_TOPICS_BY_ID = new WikiCache<>("org.jamwiki.db.AnsiDataHandler.CACHE_TOPICS_BY_ID");
 	/** Cache topic IDs by the topic name.  This cache may include deleted topics. */
-	private static final WikiCache<String, Integer> CACHE_TOPIC_IDS_BY_NAME = new WikiCache<>("org.jamwiki.db.AnsiDataHandler.CACHE_TOPIC_IDS_BY_NAME");
+	private static final WikiCache<String, Integer> CACHE_TOPIC_IDS_BY_NAME = new WikiCache<>("org.jamwiki.db.AnsiDataHandler.CACHE_TOPIC_IDS_BY_NAME", true);
 	private static final WikiCache<Integer, TopicVersion> CACHE_TOPIC_VERSIONS = new WikiCache<>("org.jamwiki.db.AnsiDataHandler.CACHE_TOPIC_VERSIONS");
 	private static final WikiCache<String, Map<Object, UserBlock>> CACHE_USER_BLOCKS_ACTIVE = new WikiCache<>("org.jamwiki.db.AnsiDataHandler.CACHE_USER_BLOCKS_ACTIVE");
 	private static final WikiCache<Integer, WikiUser> CACHE_USER_BY_USER_ID = new WikiCache<>("org.jamwiki.db.AnsiDataHandler.CACHE_USER_BY_USER_ID");
@@ -79,6 +92,10 @@ public class AnsiDataHandler {
 
 	protected final QueryHandler queryHandler;
 	protected AnsiDataValidator dataValidator = new AnsiDataValidator();
+	/** In-memory topic directories keyed by virtual wiki name, loaded on first use when the topic name directory is enabled. */
+	private final Map<String, TopicDirectory> topicDirectories = new ConcurrentHashMap<String, TopicDirectory>();
+	/** In-memory recent change buffers keyed by virtual wiki name, loaded on first use when the recent changes buffer is enabled. */
+	private final Map<String, RecentChangeBuffer> recentChangeBuffers = new ConcurrentHashMap<String, RecentChangeBuffer>();
 
 	/**
 	 *
@@ -130,7 +147,7 @@ public class AnsiDataHandler {
 	/**
 	 *
 	 */
-	private void addRecentChange(RecentChange change, Connection conn) {
+	private void addRecentChange(final RecentChange change, Connection conn) {
 		int virtualWikiId = this.lookupVirtualWikiId(change.getVirtualWiki());
 		this.dataValidator.validateRecentChange(change);
 		try {
@@ -138,6 +155,18 @@ public class AnsiDataHandler {
 		} catch (SQLException e) {
 			throw new DataAccessException(e);
 		}
+		if (Environment.getIntValue(Environment.PROP_RECENT_CHANGES_BUFFER_SIZE) > 0) {
+			DatabaseConnection.afterCommit(new Runnable() {
+				public void run() {
+					synchronized (recentChangeBuffers) {
+						RecentChangeBuffer recentChangeBuffer = recentChangeBuffers.get(change.getVirtualWiki());
+						if (recentChangeBuffer != null) {
+							recentChangeBuffer.addRecentChange(change);
+						}
+					}
+				}
+			});
+		}
 	}
 
 	/**
@@ -153,31 +182,6 @@ public class AnsiDataHandler {
 		}
 	}
 
-	/**
-	 *
-	 */
-	private void addTopicLinks(List<String> links, String virtualWiki, int topicId, Connection conn) throws DataAccessException {
-		// strip any links longer than 200 characters and any duplicates
-		Map<String, Topic> linksMap = new HashMap<String, Topic>();
-		for (String link : links) {
-			if (link.length() <= 200) {
-				Namespace namespace = LinkUtil.retrieveTopicNamespace(virtualWiki, link);
-				String pageName = LinkUtil.retrieveTopicPageName(namespace, virtualWiki, link);
-				// FIXE - link to records are always capitalized, which will cause problems for the
-				// rare case of two topics such as "eBay" and "EBay".
-				pageName = StringUtils.capitalize(pageName);
-				Topic topic = new Topic(virtualWiki, namespace, pageName);
-				linksMap.put(topic.getName(), topic);
-			}
-		}
-		List<Topic> topicLinks = new ArrayList<Topic>(linksMap.values());
-		try {
-			this.queryHandler().insertTopicLinks(topicLinks, topicId, conn);
-		} catch (SQLException e) {
-			throw new DataAccessException(e);
-		}
-	}
-
 	/**
 	 *
 	 */
@@ -194,6 +198,24 @@ public class AnsiDataHandler {
 		}
 	}
 
+	/**
+	 * Add the log item and recent change records (if any) for a new topic version.
+	 */
+	private void addTopicVersionChanges(Topic topic, TopicVersion topicVersion, Connection conn) {
+		String authorName = this.authorName(topicVersion.getAuthorId(), topicVersion.getAuthorDisplay());
+		LogItem logItem = LogItem.initLogItem(topic, topicVersion, authorName);
+		RecentChange change = null;
+		if (logItem != null) {
+			this.addLogItem(logItem, conn);
+			change = RecentChange.initRecentChange(logItem);
+		} else {
+			change = RecentChange.initRecentChange(topic, topicVersion, authorName);
+		}
+		if (topicVersion.isRecentChangeAllowed()) {
+			this.addRecentChange(change, conn);
+		}
+	}
+
 	/**
 	 *
 	 */
@@ -366,6 +388,8 @@ public class AnsiDataHandler {
 			WikiBase.CACHE_PARSED_TOPIC_CONTENT.removeFromCacheCaseInsensitive(key);
 			CACHE_TOPIC_NAMES_BY_NAME.removeFromCacheCaseInsensitive(key);
 			CACHE_TOPIC_IDS_BY_NAME.removeFromCacheCaseInsensitive(key);
+			WikiBase.CACHE_PARSED_TOPICS.removeFromCache(topic.getTopicId());
+			WikiBase.CACHE_COMPILED_TEMPLATES.removeFromCache(topic.getTopicId());
 			if (useAltKey && !key.equalsIgnoreCase(altKey)) {
 				// if the two keys differ only by case then the previous remove
 				// will have already removed the alt version, otherwise perform
@@ -387,6 +411,30 @@ public class AnsiDataHandler {
 			CACHE_TOPIC_IDS_BY_NAME.addToCache(altKey, topic.getTopicId());
 		}
 		CACHE_TOPICS_BY_ID.addToCache(topic.getTopicId(), new Topic(topic));
+		if (removeExisting) {
+			this.topicDirectoryRefresh(topic);
+			this.cacheTopicDependentsRefresh(topic);
+		}
+	}
+
+	/**
+	 * Expire the cached parsed output of all topics that link to or transclude
+	 * the specified topic, since their rendering may change when the topic is
+	 * added, modified or deleted.
+	 */
+	private void cacheTopicDependentsRefresh(Topic topic) {
+		if (!Environment.getBooleanValue(Environment.PROP_PARSER_CACHE_TOPICS)) {
+			return;
+		}
+		// link records are always capitalized
+		Topic linkTarget = new Topic(topic.getVirtualWiki(), topic.getNamespace(), StringUtils.capitalize(topic.getPageName()));
+		try {
+			int virtualWikiId = this.lookupVirtualWikiId(topic.getVirtualWiki());
+			ParsedTopicInvalidator.invalidateDependentTopics(this.queryHandler().lookupTopicLinkSources(virtualWikiId, linkTarget));
+		} catch (SQLException e) {
+			// the topic change has already been committed, so do not fail the write
+			logger.warn("Failure while expiring parsed topics that depend on " + topic.getName(), e);
+		}
 	}
 
 	/**
@@ -437,15 +485,52 @@ public class AnsiDataHandler {
 		CACHE_INTERWIKI_LIST.removeAllFromCache();
 	}
 
+	/**
+	 * Compress the stored content of a topic version that is no longer the
+	 * current version of its topic.  Compression runs in the background once
+	 * the current transaction commits so that it does not add to the time
+	 * required to save a topic.
+	 */
+	private void compactTopicVersion(final int topicVersionId) {
+		DatabaseConnection.afterCommit(new Runnable() {
+			public void run() {
+				TOPIC_VERSION_COMPACTOR.execute(new Runnable() {
+					public void run() {
+						Connection conn = null;
+						try {
+							conn = DatabaseConnection.getConnection();
+							queryHandler().compactTopicVersion(topicVersionId, conn);
+						} catch (SQLException e) {
+							logger.warn("Failure while compressing topic version " + topicVersionId, e);
+						} finally {
+							DatabaseConnection.closeConnection(conn);
+						}
+					}
+				});
+			}
+		});
+	}
+
 	/**
 	 *
 	 */
-	private void deleteRecentChanges(Topic topic, Connection conn) throws DataAccessException {
+	private void deleteRecentChanges(final Topic topic, Connection conn) throws DataAccessException {
 		try {
 			this.queryHandler().deleteRecentChanges(topic.getTopicId(), conn);
 		} catch (SQLException e) {
 			throw new DataAccessException(e);
 		}
+		final int topicId = topic.getTopicId();
+		DatabaseConnection.afterCommit(new Runnable() {
+			public void run() {
+				synchronized (recentChangeBuffers) {
+					RecentChangeBuffer recentChangeBuffer = recentChangeBuffers.get(topic.getVirtualWiki());
+					if (recentChangeBuffer != null) {
+						recentChangeBuffer.removeTopic(topicId);
+					}
+				}
+			}
+		});
 	}
 
 	/**
@@ -711,7 +796,10 @@ public class AnsiDataHandler {
 	 * @param virtualWiki The virtual wiki for which recent changes are being
 	 *  retrieved.
 	 * @param pagination A Pagination object indicating the total number of
-	 *  results and offset for the results to be retrieved.
+	 *  results and offset for the results to be retrieved.  If the pagination
+	 *  object was created from a cursor (see {@link Pagination#fromCursor})
+	 *  and results are sorted with the most recent changes first then results
+	 *  are retrieved by seeking past the cursor rather than by offset.
 	 * @param descending Set to <code>true</code> if the results should be
 	 *  sorted with the most recent changes first, <code>false</code> if the
 	 *  results should be sorted with the oldest changes first.
@@ -720,6 +808,13 @@ public class AnsiDataHandler {
 	 * @throws DataAccessException Thrown if any error occurs during method execution.
 	 */
 	public List<RecentChange> getRecentChanges(String virtualWiki, Pagination pagination, boolean descending) throws DataAccessException {
+		RecentChangeBuffer recentChangeBuffer = (descending) ? this.recentChangeBuffer(virtualWiki) : null;
+		if (recentChangeBuffer != null) {
+			List<RecentChange> recentChanges = recentChangeBuffer.getRecentChanges(pagination);
+			if (recentChanges != null) {
+				return recentChanges;
+			}
+		}
 		try {
 			return this.queryHandler().getRecentChanges(virtualWiki, pagination, descending);
 		} catch (SQLException e) {
@@ -849,7 +944,10 @@ public class AnsiDataHandler {
 	 * @param topic The topic whose history is being retrieved.  Note that revisions
 	 *  will be returned even if the topic is currently deleted.
 	 * @param pagination A Pagination object indicating the total number of
-	 *  results and offset for the results to be retrieved.
+	 *  results and offset for the results to be retrieved.  If the pagination
+	 *  object was created from a cursor (see {@link Pagination#fromCursor})
+	 *  and results are sorted with the most recent changes first then results
+	 *  are retrieved by seeking past the cursor rather than by offset.
 	 * @param descending Set to <code>true</code> if the results should be
 	 *  sorted with the most recent changes first, <code>false</code> if the
 	 *  results should be sorted with the oldest changes first.
@@ -933,7 +1031,10 @@ public class AnsiDataHandler {
 	 *  address (for anonymous users) or the user login corresponding to
 	 *  the user for whom contributions are being retrieved.
 	 * @param pagination A Pagination object indicating the total number of
-	 *  results and offset for the results to be retrieved.
+	 *  results and offset for the results to be retrieved.  If the pagination
+	 *  object was created from a cursor (see {@link Pagination#fromCursor})
+	 *  and results are sorted with the most recent changes first then results
+	 *  are retrieved by seeking past the cursor rather than by offset.
 	 * @param descending Set to <code>true</code> if the results should be
 	 *  sorted with the most recent changes first, <code>false</code> if the
 	 *  results should be sorted with the oldest changes first.
@@ -1015,12 +1116,43 @@ public class AnsiDataHandler {
 	public List<RecentChange> getWatchlist(String virtualWiki, int userId, Pagination pagination) throws DataAccessException {
 		int virtualWikiId = this.lookupVirtualWikiId(virtualWiki);
 		try {
+			RecentChangeBuffer recentChangeBuffer = this.recentChangeBuffer(virtualWiki);
+			if (recentChangeBuffer != null) {
+				Watchlist watchlist = this.getWatchlist(virtualWiki, userId);
+				List<RecentChange> recentChanges = recentChangeBuffer.getWatchlist(watchlist, pagination);
+				if (recentChanges == null && watchlist.getTopics().size() < recentChangeBuffer.capacity()) {
+					// read every watched topic once so that later requests can be served
+					// from the buffer.  if the limit is reached the result may be incomplete.
+					List<RecentChange> watchlistChanges = this.queryHandler().getWatchlist(virtualWikiId, userId, new Pagination(recentChangeBuffer.capacity(), 0));
+					if (watchlistChanges.size() < recentChangeBuffer.capacity()) {
+						recentChangeBuffer.addWatchlist(watchlist, watchlistChanges);
+						recentChanges = recentChangeBuffer.getWatchlist(watchlist, pagination);
+					}
+				}
+				if (recentChanges != null) {
+					return recentChanges;
+				}
+			}
 			return this.queryHandler().getWatchlist(virtualWikiId, userId, pagination);
 		} catch (SQLException e) {
 			throw new DataAccessException(e);
 		}
 	}
 
+	/**
+	 * Load the in-memory topic directory for every virtual wiki so that the
+	 * first topic lookups after startup do not have to wait while a directory
+	 * is read from the database.  This method does nothing if the topic name
+	 * directory is disabled.
+	 *
+	 * @throws DataAccessException Thrown if any error occurs during method execution.
+	 */
+	public void loadTopicDirectories() throws DataAccessException {
+		for (VirtualWiki virtualWiki : this.getVirtualWikiList()) {
+			this.topicDirectory(virtualWiki.getName());
+		}
+	}
+
 	/**
 	 * Retrieve a List of Category objects corresponding to all topics
 	 * that belong to the category, sorted by either the topic name, or
@@ -1175,6 +1307,26 @@ public class AnsiDataHandler {
 		return namespaces;
 	}
 
+	/**
+	 * Return the IDs of all topics in a virtual wiki that have a recent change
+	 * record dated on or after the specified time.  Note that recent change
+	 * records are periodically purged, so this method will not return topics
+	 * whose only changes are older than the recent changes retention period.
+	 *
+	 * @param virtualWiki The virtual wiki for the topics being retrieved.
+	 * @param changeDate The earliest change date for the changes being retrieved.
+	 * @return A list of topic IDs for all topics that have changed on or after
+	 *  the specified time, or an empty list if no topics have changed.
+	 * @throws DataAccessException Thrown if any error occurs during method execution.
+	 */
+	public List<Integer> lookupRecentChangeTopicIds(String virtualWiki, Timestamp changeDate) throws DataAccessException {
+		try {
+			return this.queryHandler().lookupRecentChangeTopicIds(this.lookupVirtualWikiId(virtualWiki), changeDate);
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+	}
+
 	/**
 	 * Retrieve a Topic object that matches the given virtual wiki and topic
 	 * name.  Note that when a shared image repository is in use this method
@@ -1253,6 +1405,14 @@ public class AnsiDataHandler {
 			}
 		}
 		Topic topic = null;
+		if (conn == null && !deleteOK && !checkSharedVirtualWiki) {
+			// the directory contains all non-deleted topics, so if no topic matches
+			// in a case-insensitive manner then there is no need to query
+			TopicDirectory topicDirectory = this.topicDirectory(virtualWiki);
+			if (topicDirectory != null && !topicDirectory.containsPageNameIgnoreCase(namespace, pageName)) {
+				return null;
+			}
+		}
 		try {
 			int virtualWikiId = this.lookupVirtualWikiId(virtualWiki);
 			topic = this.queryHandler().lookupTopic(virtualWikiId, namespace, pageName, conn);
@@ -1319,6 +1479,45 @@ public class AnsiDataHandler {
 		return result;
 	}
 
+	/**
+	 * Retrieve all non-deleted topics in a virtual wiki with topic IDs greater
+	 * than <code>startTopicId</code> and less than or equal to
+	 * <code>endTopicId</code>, ordered by topic ID.  This method is intended for
+	 * bulk operations that process every topic, so results are read directly
+	 * from the database and are not added to the topic cache.
+	 *
+	 * @param virtualWiki The virtual wiki for the topics being retrieved.
+	 * @param startTopicId The exclusive lower bound of the topic ID range.
+	 * @param endTopicId The inclusive upper bound of the topic ID range.
+	 * @return A list of all non-deleted topics in the ID range, or an empty
+	 *  list if no topics exist in the range.
+	 * @throws DataAccessException Thrown if any error occurs during method execution.
+	 */
+	public List<Topic> lookupTopicsByIdRange(String virtualWiki, int startTopicId, int endTopicId) throws DataAccessException {
+		try {
+			return this.queryHandler().lookupTopicsByIdRange(this.lookupVirtualWikiId(virtualWiki), startTopicId, endTopicId);
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+	}
+
+	/**
+	 * Return the largest topic ID, including deleted topics, for a virtual wiki.
+	 * Used with {@link #lookupTopicsByIdRange} to process all topics in batches.
+	 *
+	 * @param virtualWiki The virtual wiki for the topics being queried.
+	 * @return The largest topic ID for the virtual wiki, or zero if the virtual
+	 *  wiki has no topics.
+	 * @throws DataAccessException Thrown if any error occurs during method execution.
+	 */
+	public int lookupTopicMaxId(String virtualWiki) throws DataAccessException {
+		try {
+			return this.queryHandler().lookupTopicMaxId(this.lookupVirtualWikiId(virtualWiki));
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+	}
+
 	/**
 	 * Return a count of all topics, including redirects, comments pages and
 	 * templates, for the given virtual wiki.  Deleted topics are not included
@@ -1408,8 +1607,14 @@ public class AnsiDataHandler {
 			}
 		}
 		try {
-			int virtualWikiId = this.lookupVirtualWikiId(virtualWiki);
-			topicName = this.queryHandler().lookupTopicName(virtualWikiId, virtualWiki, namespace, pageName);
+			TopicDirectory topicDirectory = this.topicDirectory(virtualWiki);
+			if (topicDirectory != null) {
+				String directoryPageName = topicDirectory.lookupPageName(namespace, pageName);
+				topicName = (directoryPageName != null) ? Topic.buildTopicName(virtualWiki, namespace, directoryPageName) : null;
+			} else {
+				int virtualWikiId = this.lookupVirtualWikiId(virtualWiki);
+				topicName = this.queryHandler().lookupTopicName(virtualWikiId, virtualWiki, namespace, pageName);
+			}
 			if (topicName == null && checkSharedVirtualWiki) {
 				topicName = this.lookupTopicName(sharedVirtualWiki, namespace, pageName);
 			}
@@ -1426,6 +1631,93 @@ public class AnsiDataHandler {
 		return topicName;
 	}
 
+	/**
+	 * Given a list of topics, determine the name of the existing topic that
+	 * corresponds to each using a minimal number of database queries.  Results
+	 * are identical to calling {@link #lookupTopicName} for each topic, and are
+	 * cached in the same way so that later calls to lookupTopicName for any of
+	 * these topics do not require a database query.
+	 *
+	 * @param virtualWiki The virtual wiki for the topics being retrieved.
+	 * @param topics A list of Topic objects, each of which must have its
+	 *  namespace and page name initialized.
+	 * @return A mapping of the name of each topic in the list to the name of the
+	 *  corresponding existing topic, or <code>null</code> if no matching topic
+	 *  exists.
+	 * @throws DataAccessException Thrown if any error occurs during method execution.
+	 */
+	public Map<String, String> lookupTopicNames(String virtualWiki, List<Topic> topics) throws DataAccessException {
+		Map<String, String> results = new HashMap<String, String>();
+		if (StringUtils.isBlank(virtualWiki) || topics.isEmpty()) {
+			return results;
+		}
+		long start = System.currentTimeMillis();
+		List<Topic> uncachedTopics = new ArrayList<Topic>();
+		Set<String> pageNames = new HashSet<String>();
+		for (Topic topic : topics) {
+			if (StringUtils.isBlank(topic.getPageName()) || results.containsKey(topic.getName())) {
+				continue;
+			}
+			String key = this.cacheTopicKey(virtualWiki, topic.getNamespace(), topic.getPageName());
+			String topicName = CACHE_TOPIC_NAMES_BY_NAME.retrieveFromCache(key);
+			if (topicName != null || CACHE_TOPIC_NAMES_BY_NAME.isKeyInCache(key)) {
+				results.put(topic.getName(), topicName);
+			} else if (topic.getNamespace().getId().equals(Namespace.SPECIAL_ID) || this.useSharedVirtualWiki(virtualWiki, topic.getNamespace())) {
+				// special cases that are not handled by the batch query
+				results.put(topic.getName(), this.lookupTopicName(virtualWiki, topic.getNamespace(), topic.getPageName()));
+			} else {
+				uncachedTopics.add(topic);
+				pageNames.add(topic.getPageName().toLowerCase());
+			}
+		}
+		if (uncachedTopics.isEmpty()) {
+			return results;
+		}
+		TopicDirectory topicDirectory = this.topicDirectory(virtualWiki);
+		if (topicDirectory != null) {
+			for (Topic topic : uncachedTopics) {
+				String directoryPageName = topicDirectory.lookupPageName(topic.getNamespace(), topic.getPageName());
+				String topicName = (directoryPageName != null) ? Topic.buildTopicName(virtualWiki, topic.getNamespace(), directoryPageName) : null;
+				CACHE_TOPIC_NAMES_BY_NAME.addToCache(this.cacheTopicKey(virtualWiki, topic.getNamespace(), topic.getPageName()), topicName);
+				results.put(topic.getName(), topicName);
+			}
+			return results;
+		}
+		List<Topic> existingTopics = null;
+		try {
+			int virtualWikiId = this.lookupVirtualWikiId(virtualWiki);
+			existingTopics = this.queryHandler().lookupTopicsByPageName(virtualWikiId, virtualWiki, new ArrayList<String>(pageNames));
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+		// index the results by exact and lower-case page name to mirror the two
+		// queries performed by lookupTopicName
+		Map<String, String> exactMatches = new HashMap<String, String>();
+		Map<String, String> lowerCaseMatches = new HashMap<String, String>();
+		for (Topic existingTopic : existingTopics) {
+			String namespaceId = existingTopic.getNamespace().getId() + "/";
+			exactMatches.put(namespaceId + existingTopic.getPageName(), existingTopic.getName());
+			String lowerCaseKey = namespaceId + existingTopic.getPageName().toLowerCase();
+			if (!lowerCaseMatches.containsKey(lowerCaseKey)) {
+				lowerCaseMatches.put(lowerCaseKey, existingTopic.getName());
+			}
+		}
+		for (Topic topic : uncachedTopics) {
+			Namespace namespace = topic.getNamespace();
+			String pageName = topic.getPageName();
+			String topicName = exactMatches.get(namespace.getId() + "/" + pageName);
+			if (topicName == null && !namespace.isCaseSensitive() && !pageName.toLowerCase().equals(pageName)) {
+				topicName = lowerCaseMatches.get(namespace.getId() + "/" + pageName.toLowerCase());
+			}
+			CACHE_TOPIC_NAMES_BY_NAME.addToCache(this.cacheTopicKey(virtualWiki, namespace, pageName), topicName);
+			results.put(topic.getName(), topicName);
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Batch topic existence lookup for " + uncachedTopics.size() + " topics in " + ((System.currentTimeMillis() - start) / 1000.000) + " s.");
+		}
+		return results;
+	}
+
 	/**
 	 * Find the names for all topics that link to a specified topic.
 	 *
@@ -1492,6 +1784,32 @@ public class AnsiDataHandler {
 		return topicVersion;
 	}
 
+	/**
+	 * Open a forward-only cursor over the most recent versions of a topic,
+	 * sorted chronologically from oldest to newest.  Versions are read from the
+	 * database only as the cursor is advanced, so this method should be used
+	 * instead of retrieving each version individually when processing a topic
+	 * history that may be very large.
+	 *
+	 * @param topic The topic whose versions are being retrieved.
+	 * @param maxVersions The maximum number of versions to return.  If the
+	 *  topic has more versions then the oldest versions are excluded, and if
+	 *  this value is zero or less then the cursor is empty.
+	 * @return A cursor over the topic versions.  The cursor holds an open
+	 *  database connection and must be closed once it is no longer needed.
+	 * @throws DataAccessException Thrown if any error occurs during method execution.
+	 */
+	public TopicVersionCursor lookupTopicVersionCursor(Topic topic, int maxVersions) throws DataAccessException {
+		Connection conn = null;
+		try {
+			conn = DatabaseConnection.getReadConnection();
+			return this.queryHandler().lookupTopicVersionCursor(topic.getTopicId(), maxVersions, conn);
+		} catch (SQLException e) {
+			DatabaseConnection.closeConnection(conn);
+			throw new DataAccessException(e);
+		}
+	}
+
 	/**
 	 * Retrieve the next topic version ID chronologically for a given topic
 	 * version, or <code>null</code> if there is no next topic version ID.
@@ -1893,6 +2211,9 @@ public class AnsiDataHandler {
 			}
 			// 5. delete the topic version record from all tables
 			this.queryHandler().deleteTopicVersion(topicVersionId, topicVersion.getPreviousTopicVersionId(), conn);
+			// the purged version may have been a topic's current version or referenced by
+			// other changes, so reload the buffered changes rather than patching them
+			this.recentChangeBufferReset(topic.getVirtualWiki());
 			// 6. create a log record
 			LogItem logItem = LogItem.initLogItemPurge(topic, topicVersion, user, ipAddress);
 			this.addLogItem(logItem, conn);
@@ -1901,6 +2222,8 @@ public class AnsiDataHandler {
 			CACHE_TOPIC_VERSIONS.removeFromCache(topicVersionId);
 			CACHE_TOPIC_VERSIONS.removeFromCache(nextTopicVersionId);
 			CACHE_TOPICS_BY_ID.removeFromCache(topic.getTopicId());
+			WikiBase.CACHE_PARSED_TOPICS.removeFromCache(topic.getTopicId());
+			WikiBase.CACHE_COMPILED_TEMPLATES.removeFromCache(topic.getTopicId());
 		} catch (SQLException e) {
 			DatabaseConnection.rollbackOnException(status, e);
 			throw new DataAccessException(e);
@@ -1968,6 +2291,83 @@ public class AnsiDataHandler {
 		DatabaseConnection.commit(status);
 	}
 
+	/**
+	 * Return the in-memory recent change buffer for a virtual wiki, loading it
+	 * from the database if necessary, or <code>null</code> if the recent
+	 * changes buffer is disabled.
+	 */
+	private RecentChangeBuffer recentChangeBuffer(String virtualWiki) throws DataAccessException {
+		int capacity = Environment.getIntValue(Environment.PROP_RECENT_CHANGES_BUFFER_SIZE);
+		if (capacity <= 0) {
+			// buffers are not updated while disabled, so discard any that exist
+			if (!this.recentChangeBuffers.isEmpty()) {
+				this.recentChangeBufferReset(null);
+			}
+			return null;
+		}
+		RecentChangeBuffer recentChangeBuffer = this.recentChangeBuffers.get(virtualWiki);
+		if (recentChangeBuffer != null && recentChangeBuffer.capacity() == capacity) {
+			return recentChangeBuffer;
+		}
+		synchronized (this.recentChangeBuffers) {
+			recentChangeBuffer = this.recentChangeBuffers.get(virtualWiki);
+			if (recentChangeBuffer == null || recentChangeBuffer.capacity() != capacity) {
+				long start = System.currentTimeMillis();
+				try {
+					recentChangeBuffer = new RecentChangeBuffer(capacity, this.queryHandler().getRecentChanges(virtualWiki, new Pagination(capacity, 0), true));
+				} catch (SQLException e) {
+					throw new DataAccessException(e);
+				}
+				this.recentChangeBuffers.put(virtualWiki, recentChangeBuffer);
+				logger.info("Loaded recent change buffer for virtual wiki " + virtualWiki + " with " + recentChangeBuffer.size() + " changes in " + ((System.currentTimeMillis() - start) / 1000.000) + " s.");
+			}
+			return recentChangeBuffer;
+		}
+	}
+
+	/**
+	 * Once the current transaction commits, record a new topic version in the
+	 * recent change buffer (if it has been loaded) so that watchlists can be
+	 * served from memory.  The buffer is looked up after the commit since it
+	 * may be loaded while the transaction is running.
+	 */
+	private void recentChangeBufferAddTopicVersion(final Topic topic, TopicVersion topicVersion) {
+		if (Environment.getIntValue(Environment.PROP_RECENT_CHANGES_BUFFER_SIZE) <= 0) {
+			return;
+		}
+		final RecentChange change = RecentChange.initRecentChange(topic, topicVersion, this.authorName(topicVersion.getAuthorId(), topicVersion.getAuthorDisplay()));
+		final boolean deleted = (topic.getDeleteDate() != null);
+		DatabaseConnection.afterCommit(new Runnable() {
+			public void run() {
+				synchronized (recentChangeBuffers) {
+					RecentChangeBuffer recentChangeBuffer = recentChangeBuffers.get(change.getVirtualWiki());
+					if (recentChangeBuffer != null) {
+						recentChangeBuffer.addTopicVersion(change, deleted);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Once the current transaction commits, discard the recent change buffer for
+	 * a virtual wiki (or all virtual wikis if <code>virtualWiki</code> is
+	 * <code>null</code>) so that it is reloaded on next use.
+	 */
+	private void recentChangeBufferReset(final String virtualWiki) {
+		DatabaseConnection.afterCommit(new Runnable() {
+			public void run() {
+				synchronized (recentChangeBuffers) {
+					if (virtualWiki == null) {
+						recentChangeBuffers.clear();
+					} else {
+						recentChangeBuffers.remove(virtualWiki);
+					}
+				}
+			}
+		});
+	}
+
 	/**
 	 * Delete all existing recent changes and reload the recent changes based
 	 * on the most recent topic versions.
@@ -1981,6 +2381,7 @@ public class AnsiDataHandler {
 			status = DatabaseConnection.startTransaction();
 			Connection conn = DatabaseConnection.getConnection();
 			this.queryHandler().reloadRecentChanges(conn, limit);
+			this.recentChangeBufferReset(null);
 		} catch (SQLException e) {
 			DatabaseConnection.rollbackOnException(status, e);
 			throw new DataAccessException(e);
@@ -1988,6 +2389,22 @@ public class AnsiDataHandler {
 		DatabaseConnection.commit(status);
 	}
 
+	/**
+	 * Once the current transaction commits, queue a topic for search indexing.
+	 * The search engine re-reads queued topics from the database, so the topic
+	 * must not be queued while its changes are uncommitted, for example when
+	 * it is written as part of a topic move.  A copy of the topic is queued
+	 * since the caller may modify the topic before the transaction commits.
+	 */
+	private void searchIndexUpdate(Topic topic) {
+		final Topic indexTopic = new Topic(topic);
+		DatabaseConnection.afterCommit(new Runnable() {
+			public void run() {
+				WikiBase.getSearchEngine().updateInIndex(indexTopic);
+			}
+		});
+	}
+
 	/**
 	 * Perform any required setup steps for the DataHandler instance.
 	 *
@@ -2150,6 +2567,101 @@ public class AnsiDataHandler {
 		}
 	}
 
+	/**
+	 * Update the category records for a topic.  The existing records are
+	 * compared with the new categories so that only categories that have been
+	 * added, removed or given a new sort key are written.
+	 */
+	private void updateTopicCategories(Topic topic, Map<String, String> categories, boolean newTopic, Connection conn) {
+		List<Category> existing;
+		try {
+			existing = (newTopic) ? Collections.<Category>emptyList() : this.queryHandler().lookupTopicCategories(topic.getTopicId(), conn);
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+		if (categories.isEmpty()) {
+			if (!existing.isEmpty()) {
+				this.deleteTopicCategories(topic, conn);
+			}
+			return;
+		}
+		Map<String, String> added = new LinkedHashMap<String, String>(categories);
+		List<Category> removed = new ArrayList<Category>();
+		for (Category category : existing) {
+			// Oracle stores empty sort keys as null
+			if (categories.containsKey(category.getName()) && StringUtils.defaultString(categories.get(category.getName())).equals(StringUtils.defaultString(category.getSortKey()))) {
+				added.remove(category.getName());
+			} else {
+				removed.add(category);
+			}
+		}
+		if (!removed.isEmpty()) {
+			try {
+				this.queryHandler().deleteTopicCategories(removed, topic.getTopicId(), conn);
+			} catch (SQLException e) {
+				throw new DataAccessException(e);
+			}
+		}
+		if (!added.isEmpty()) {
+			List<Category> categoryList = new ArrayList<Category>();
+			for (Map.Entry<String, String> entry : added.entrySet()) {
+				Category category = new Category();
+				category.setName(entry.getKey());
+				category.setSortKey(entry.getValue());
+				category.setVirtualWiki(topic.getVirtualWiki());
+				category.setChildTopicName(topic.getName());
+				categoryList.add(category);
+			}
+			this.addCategories(categoryList, topic.getTopicId(), conn);
+		}
+	}
+
+	/**
+	 * Update the link records for a topic.  The existing records are compared
+	 * with the new links so that only links that have been added or removed
+	 * are written.
+	 */
+	private void updateTopicLinks(Topic topic, List<String> links, boolean newTopic, Connection conn) {
+		String virtualWiki = topic.getVirtualWiki();
+		// strip any links longer than 200 characters and any duplicates
+		Map<String, Topic> linksMap = new LinkedHashMap<String, Topic>();
+		for (String link : links) {
+			if (link.length() <= 200) {
+				Namespace namespace = LinkUtil.retrieveTopicNamespace(virtualWiki, link);
+				String pageName = LinkUtil.retrieveTopicPageName(namespace, virtualWiki, link);
+				// FIXE - link to records are always capitalized, which will cause problems for the
+				// rare case of two topics such as "eBay" and "EBay".
+				pageName = StringUtils.capitalize(pageName);
+				Topic linkTopic = new Topic(virtualWiki, namespace, pageName);
+				linksMap.put(linkTopic.getName(), linkTopic);
+			}
+		}
+		try {
+			List<Topic> existing = (newTopic) ? Collections.<Topic>emptyList() : this.queryHandler().lookupTopicLinkTargets(virtualWiki, topic.getTopicId(), conn);
+			if (linksMap.isEmpty()) {
+				if (!existing.isEmpty()) {
+					this.deleteTopicLinks(topic.getTopicId(), conn);
+				}
+				return;
+			}
+			// anything left in the map after removing existing links is a new link
+			List<Topic> removed = new ArrayList<Topic>();
+			for (Topic linkTopic : existing) {
+				if (linksMap.remove(linkTopic.getName()) == null) {
+					removed.add(linkTopic);
+				}
+			}
+			if (!removed.isEmpty()) {
+				this.queryHandler().deleteTopicLinks(removed, topic.getTopicId(), conn);
+			}
+			if (!linksMap.isEmpty()) {
+				this.queryHandler().insertTopicLinks(new ArrayList<Topic>(linksMap.values()), topic.getTopicId(), conn);
+			}
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+	}
+
 	/**
 	 *
 	 */
@@ -2232,6 +2744,60 @@ public class AnsiDataHandler {
 		}
 	}
 	
+	/**
+	 * Return the in-memory topic directory for a virtual wiki, loading it from
+	 * the database if necessary, or <code>null</code> if the topic name
+	 * directory is disabled.
+	 */
+	private TopicDirectory topicDirectory(String virtualWiki) throws DataAccessException {
+		if (!Environment.getBooleanValue(Environment.PROP_TOPIC_NAME_DIRECTORY)) {
+			// directories are not updated while disabled, so discard any that exist
+			if (!this.topicDirectories.isEmpty()) {
+				synchronized (this.topicDirectories) {
+					this.topicDirectories.clear();
+				}
+			}
+			return null;
+		}
+		TopicDirectory topicDirectory = this.topicDirectories.get(virtualWiki);
+		if (topicDirectory != null) {
+			return topicDirectory;
+		}
+		synchronized (this.topicDirectories) {
+			topicDirectory = this.topicDirectories.get(virtualWiki);
+			if (topicDirectory == null) {
+				long start = System.currentTimeMillis();
+				try {
+					topicDirectory = this.queryHandler().lookupTopicDirectory(this.lookupVirtualWikiId(virtualWiki));
+				} catch (SQLException e) {
+					throw new DataAccessException(e);
+				}
+				this.topicDirectories.put(virtualWiki, topicDirectory);
+				logger.info("Loaded topic directory for virtual wiki " + virtualWiki + " with " + topicDirectory.size() + " topics in " + ((System.currentTimeMillis() - start) / 1000.000) + " s.");
+			}
+			return topicDirectory;
+		}
+	}
+
+	/**
+	 * Update the in-memory topic directory, if it has been loaded, after a
+	 * topic has been added, modified or deleted.
+	 */
+	private void topicDirectoryRefresh(Topic topic) {
+		// synchronize to avoid missing an update while a directory is loading
+		synchronized (this.topicDirectories) {
+			TopicDirectory topicDirectory = this.topicDirectories.get(topic.getVirtualWiki());
+			if (topicDirectory == null) {
+				return;
+			}
+			if (topic.getDeleteDate() == null) {
+				topicDirectory.addTopic(topic.getNamespace().getId(), topic.getPageName(), topic.getTopicId());
+			} else {
+				topicDirectory.removeTopic(topic.getNamespace().getId(), topic.getPageName(), topic.getTopicId());
+			}
+		}
+	}
+
 	/**
 	 * Utility method to determine whether to check a shared virtual wiki when
 	 * performing a topic lookup.
@@ -2321,6 +2887,107 @@ public class AnsiDataHandler {
 		DatabaseConnection.commit(status);
 	}
 
+	/**
+	 * Add a batch of new topics and their complete version histories in a
+	 * single transaction.  This method exists for performance reasons when
+	 * importing large numbers of topics, and differs from {@link #writeTopic}
+	 * in that all topic versions for every topic in the batch are inserted using
+	 * a single JDBC batch, and category and link records are written only after
+	 * all topic and version records in the batch have been added.  Because the
+	 * batch is committed atomically, a topic is either imported completely or
+	 * not at all.
+	 *
+	 * @param topicVersions A map of new topics (topics without a topic ID) and,
+	 *  for each topic, all versions of the topic sorted chronologically from
+	 *  oldest to newest.  The last version in each list becomes the current
+	 *  version of the topic.  Topics are written in map iteration order.
+	 * @param parserOutputs A map of topics and the parser output of the
+	 *  current topic content, used to create category and link records.  Topics
+	 *  without an entry in the map are written without categories or links.
+	 * @throws DataAccessException Thrown if any error occurs during method execution.
+	 * @throws WikiException Thrown if the topic information is invalid.
+	 */
+	public void writeImportedTopics(Map<Topic, List<TopicVersion>> topicVersions, Map<Topic, ParserOutput> parserOutputs) {
+		long start = System.currentTimeMillis();
+		List<TopicVersion> batch = new ArrayList<TopicVersion>();
+		for (Map.Entry<Topic, List<TopicVersion>> entry : topicVersions.entrySet()) {
+			Topic topic = entry.getKey();
+			if (topic.getTopicId() > 0 || entry.getValue().isEmpty()) {
+				throw new IllegalArgumentException("Imported topics must be new topics with at least one version: " + topic.getName());
+			}
+			LinkUtil.validateTopicName(topic.getVirtualWiki(), topic.getName(), false);
+		}
+		TransactionStatus status = null;
+		try {
+			status = DatabaseConnection.startTransaction();
+			Connection conn = DatabaseConnection.getConnection();
+			for (Map.Entry<Topic, List<TopicVersion>> entry : topicVersions.entrySet()) {
+				Topic topic = entry.getKey();
+				this.addTopic(topic, conn);
+				for (TopicVersion topicVersion : entry.getValue()) {
+					topicVersion.setTopicId(topic.getTopicId());
+					topicVersion.initializeVersionParams(topic);
+					this.dataValidator.validateTopicVersion(topicVersion);
+				}
+				batch.addAll(entry.getValue());
+			}
+			this.queryHandler().insertTopicVersions(batch, conn);
+			// version IDs are not known until the versions have been added, so chain each
+			// version to its predecessor and point the topic at its newest version afterwards.
+			for (Map.Entry<Topic, List<TopicVersion>> entry : topicVersions.entrySet()) {
+				Topic topic = entry.getKey();
+				Integer previousTopicVersionId = null;
+				for (TopicVersion topicVersion : entry.getValue()) {
+					topicVersion.setPreviousTopicVersionId(previousTopicVersionId);
+					previousTopicVersionId = topicVersion.getTopicVersionId();
+				}
+				topic.setCurrentVersionId(previousTopicVersionId);
+				this.updateTopic(topic, conn);
+				for (TopicVersion topicVersion : entry.getValue()) {
+					if (topicVersion.isLoggable() || topicVersion.isRecentChangeAllowed()) {
+						this.addTopicVersionChanges(topic, topicVersion, conn);
+					}
+				}
+				this.recentChangeBufferAddTopicVersion(topic, entry.getValue().get(entry.getValue().size() - 1));
+			}
+			this.queryHandler().updateTopicVersionPreviousIds(batch, conn);
+			// category and link records are written last so that the topic and version
+			// inserts above are not interleaved with metadata inserts.
+			for (Map.Entry<Topic, ParserOutput> entry : parserOutputs.entrySet()) {
+				Topic topic = entry.getKey();
+				if (topic.getTopicId() <= 0 || topic.getDeleteDate() != null) {
+					continue;
+				}
+				this.updateTopicCategories(topic, entry.getValue().getCategories(), true, conn);
+				this.updateTopicLinks(topic, entry.getValue().getLinks(), true, conn);
+			}
+		} catch (DataAccessException e) {
+			DatabaseConnection.rollbackOnException(status, e);
+			throw e;
+		} catch (SQLException e) {
+			DatabaseConnection.rollbackOnException(status, e);
+			throw new DataAccessException(e);
+		} catch (WikiException e) {
+			DatabaseConnection.rollbackOnException(status, e);
+			throw e;
+		}
+		DatabaseConnection.commit(status);
+		// update the cache and search index AFTER the commit
+		boolean compression = Environment.getBooleanValue(Environment.PROP_TOPIC_VERSION_COMPRESSION);
+		for (Map.Entry<Topic, List<TopicVersion>> entry : topicVersions.entrySet()) {
+			Topic topic = entry.getKey();
+			this.cacheTopicRefresh(topic, true, null);
+			this.searchIndexUpdate(topic);
+			Integer previousTopicVersionId = entry.getValue().get(entry.getValue().size() - 1).getPreviousTopicVersionId();
+			if (previousTopicVersionId != null && compression) {
+				this.compactTopicVersion(previousTopicVersionId);
+			}
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Wrote " + topicVersions.size() + " imported topics with " + batch.size() + " versions in " + ((System.currentTimeMillis() - start) / 1000.000) + " s.");
+		}
+	}
+
 	/**
 	 * Add or update an Interwiki record.  This method will first delete any
 	 * existing method with the same prefix and then add the new record.
@@ -2525,7 +3192,9 @@ public class AnsiDataHandler {
 		try {
 			status = DatabaseConnection.startTransaction();
 			Connection conn = DatabaseConnection.getConnection();
-			if (topic.getTopicId() <= 0) {
+			// a new topic has no existing category or link records to compare against
+			boolean newTopic = (topic.getTopicId() <= 0);
+			if (newTopic) {
 				// create the initial topic record
 				addTopic(topic, conn);
 			} else if (topicVersion == null) {
@@ -2544,45 +3213,16 @@ public class AnsiDataHandler {
 				// update the topic AFTER creating the version so that the current_topic_version_id parameter is set properly
 				topic.setCurrentVersionId(topicVersion.getTopicVersionId());
 				this.updateTopic(topic, conn);
-				String authorName = this.authorName(topicVersion.getAuthorId(), topicVersion.getAuthorDisplay());
-				LogItem logItem = LogItem.initLogItem(topic, topicVersion, authorName);
-				RecentChange change = null;
-				if (logItem != null) {
-					this.addLogItem(logItem, conn);
-					change = RecentChange.initRecentChange(logItem);
-				} else {
-					change = RecentChange.initRecentChange(topic, topicVersion, authorName);
-				}
-				if (topicVersion.isRecentChangeAllowed()) {
-					this.addRecentChange(change, conn);
-				}
+				this.addTopicVersionChanges(topic, topicVersion, conn);
+				this.recentChangeBufferAddTopicVersion(topic, topicVersion);
 			}
 			if (categories != null) {
 				// add / remove categories associated with the topic
-				this.deleteTopicCategories(topic, conn);
-				if (topic.getDeleteDate() == null && !categories.isEmpty()) {
-					List<Category> categoryList = new ArrayList<Category>();
-					for (Map.Entry<String, String> entry : categories.entrySet()) {
-						Category category = new Category();
-						category.setName(entry.getKey());
-						category.setSortKey(entry.getValue());
-						category.setVirtualWiki(topic.getVirtualWiki());
-						category.setChildTopicName(topic.getName());
-						categoryList.add(category);
-					}
-					this.addCategories(categoryList, topic.getTopicId(), conn);
-				}
+				this.updateTopicCategories(topic, (topic.getDeleteDate() == null) ? categories : Collections.<String, String>emptyMap(), newTopic, conn);
 			}
 			if (links != null) {
 				// add / remove links associated with the topic
-				this.deleteTopicLinks(topic.getTopicId(), conn);
-				if (topic.getDeleteDate() == null && !links.isEmpty()) {
-					this.addTopicLinks(links, topic.getVirtualWiki(), topic.getTopicId(), conn);
-				}
-			}
-			if (topicVersion != null) {
-				// topic version is only null during changes that aren't user visible
-				WikiBase.getSearchEngine().updateInIndex(topic);
+				this.updateTopicLinks(topic, (topic.getDeleteDate() == null) ? links : Collections.<String>emptyList(), newTopic, conn);
 			}
 		} catch (DataAccessException e) {
 			DatabaseConnection.rollbackOnException(status, e);
@@ -2597,11 +3237,66 @@ public class AnsiDataHandler {
 		DatabaseConnection.commit(status);
 		// update the cache AFTER the commit
 		this.cacheTopicRefresh(topic, true, null);
+		if (topicVersion != null) {
+			// topic version is only null during changes that aren't user visible.  the
+			// search engine queues the update, so search indexing does not add to the
+			// time required to save the topic.
+			this.searchIndexUpdate(topic);
+			if (topicVersion.getPreviousTopicVersionId() != null && Environment.getBooleanValue(Environment.PROP_TOPIC_VERSION_COMPRESSION)) {
+				this.compactTopicVersion(topicVersion.getPreviousTopicVersionId());
+			}
+		}
 		if (logger.isDebugEnabled()) {
 			logger.debug("Wrote topic " + topic.getVirtualWiki() + ':' + topic.getName() + " with params [categories is null: " + (categories == null) + "] / [links is null: " + (links == null) + "] in " + ((System.currentTimeMillis() - start) / 1000.000) + " s.");
 		}
 	}
 
+	/**
+	 * Update the category and link records for a group of existing topics in a
+	 * single transaction.  This method is intended for bulk maintenance tasks
+	 * that regenerate topic metadata without changing topic content, so no
+	 * topic or version records are written.  Once the transaction commits the
+	 * topic caches are refreshed and each topic is queued for search indexing.
+	 *
+	 * @param parserOutputs A map of existing topics and the parser output of the
+	 *  current topic content.  Deleted topics have their category and link
+	 *  records removed.
+	 * @throws DataAccessException Thrown if any error occurs during method execution.
+	 */
+	public void writeTopicMetadata(Map<Topic, ParserOutput> parserOutputs) {
+		if (parserOutputs.isEmpty()) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		TransactionStatus status = null;
+		try {
+			status = DatabaseConnection.startTransaction();
+			Connection conn = DatabaseConnection.getConnection();
+			for (Map.Entry<Topic, ParserOutput> entry : parserOutputs.entrySet()) {
+				Topic topic = entry.getKey();
+				boolean deleted = (topic.getDeleteDate() != null);
+				this.updateTopicCategories(topic, (deleted) ? Collections.<String, String>emptyMap() : entry.getValue().getCategories(), false, conn);
+				this.updateTopicLinks(topic, (deleted) ? Collections.<String>emptyList() : entry.getValue().getLinks(), false, conn);
+			}
+		} catch (DataAccessException e) {
+			DatabaseConnection.rollbackOnException(status, e);
+			throw e;
+		} catch (SQLException e) {
+			DatabaseConnection.rollbackOnException(status, e);
+			throw new DataAccessException(e);
+		}
+		DatabaseConnection.commit(status);
+		// update the cache and search index AFTER the commit, as writeTopic does, so
+		// that cached topics and search results reflect the regenerated metadata
+		for (Topic topic : parserOutputs.keySet()) {
+			this.cacheTopicRefresh(topic, true, null);
+			this.searchIndexUpdate(topic);
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Wrote metadata for " + parserOutputs.size() + " topics in " + ((System.currentTimeMillis() - start) / 1000.000) + " s.");
+		}
+	}
+
 	/**
 	 * This method exists for performance reasons for scenarios such as topic
 	 * imports where many versions may be added without the need to update the
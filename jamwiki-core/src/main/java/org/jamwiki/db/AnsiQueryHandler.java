@@ -22,9 +22,11 @@ import org.jamwiki.model.*;
 import org.jamwiki.utils.Pagination;
 import org.jamwiki.utils.WikiLogger;
 
+import java.io.IOException;
 import java.sql.*;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 // import org.apache.commons.lang.ObjectUtils.Null;
 
@@ -37,6 +39,12 @@ public class AnsiQueryHandler implements QueryHandler {
 
 	private static final WikiLogger logger = WikiLogger.getLogger(AnsiQueryHandler.class.getName());
 	protected static final String SQL_PROPERTY_FILE_NAME = "sql/sql.ansi.properties";
+	/** Maximum number of values to use in a single SQL "in" clause. */
+	protected static final int MAX_IN_CLAUSE_VALUES = 250;
+	/** Number of IDs reserved in memory per query for databases that do not use native sequences. */
+	protected static final int ID_BLOCK_SIZE = 50;
+	/** Maximum number of deltas that will be followed when decoding topic version content. */
+	private static final int MAX_DELTA_DEPTH = 8;
 
 	protected static String STATEMENT_CONNECTION_VALIDATION_QUERY = null;
 	protected static String STATEMENT_CREATE_AUTHORITIES_TABLE = null;
@@ -90,10 +98,13 @@ public class AnsiQueryHandler implements QueryHandler {
 	protected static String STATEMENT_DELETE_RECENT_CHANGES_TOPIC = null;
 	protected static String STATEMENT_DELETE_RECENT_CHANGES_TOPIC_VERSION = null;
 	protected static String STATEMENT_DELETE_TOPIC_CATEGORIES = null;
+	protected static String STATEMENT_DELETE_TOPIC_CATEGORY = null;
+	protected static String STATEMENT_DELETE_TOPIC_LINK = null;
 	protected static String STATEMENT_DELETE_TOPIC_LINKS = null;
 	protected static String STATEMENT_DELETE_TOPIC_VERSION = null;
 	protected static String STATEMENT_DELETE_WATCHLIST_ENTRY = null;
 	protected static String STATEMENT_DELETE_USER_PREFERENCES = null;
+	protected static String STATEMENT_DISABLE_FOREIGN_KEY_CHECKS = null;
 	protected static String STATEMENT_DROP_AUTHORITIES_TABLE = null;
 	protected static String STATEMENT_DROP_CATEGORY_TABLE = null;
 	protected static String STATEMENT_DROP_CONFIGURATION_TABLE = null;
@@ -182,22 +193,39 @@ public class AnsiQueryHandler implements QueryHandler {
 	protected static String STATEMENT_SELECT_NAMESPACE_SEQUENCE = null;
 	protected static String STATEMENT_SELECT_NAMESPACES = null;
 	protected static String STATEMENT_SELECT_PW_RESET_CHALLENGE_DATA = null;
+	protected static String STATEMENT_SELECT_RECENT_CHANGE_TOPIC_IDS = null;
 	protected static String STATEMENT_SELECT_RECENT_CHANGES = null;
+	protected static String STATEMENT_SELECT_RECENT_CHANGES_KEYSET = null;
 	protected static String STATEMENT_SELECT_ROLES = null;
 	protected static String STATEMENT_SELECT_TOPIC_BY_ID = null;
+	protected static String STATEMENT_SELECT_TOPIC_BY_ID_RANGE = null;
 	protected static String STATEMENT_SELECT_TOPIC_BY_TYPE = null;
+	protected static String STATEMENT_SELECT_TOPIC_CATEGORIES = null;
 	protected static String STATEMENT_SELECT_TOPIC_COUNT = null;
 	protected static String STATEMENT_SELECT_TOPIC = null;
+	protected static String STATEMENT_SELECT_TOPIC_CURRENT_VERSION_ID = null;
+	protected static String STATEMENT_SELECT_TOPIC_DIRECTORY = null;
 	protected static String STATEMENT_SELECT_TOPIC_HISTORY = null;
+	protected static String STATEMENT_SELECT_TOPIC_HISTORY_KEYSET = null;
 	protected static String STATEMENT_SELECT_TOPIC_LINK_ORPHANS = null;
+	protected static String STATEMENT_SELECT_TOPIC_LINK_SOURCES = null;
+	protected static String STATEMENT_SELECT_TOPIC_LINK_TARGETS = null;
 	protected static String STATEMENT_SELECT_TOPIC_LINKS = null;
 	protected static String STATEMENT_SELECT_TOPIC_LOWER = null;
+	protected static String STATEMENT_SELECT_TOPIC_MAX_ID = null;
 	protected static String STATEMENT_SELECT_TOPIC_NAME = null;
 	protected static String STATEMENT_SELECT_TOPIC_NAME_LOWER = null;
 	protected static String STATEMENT_SELECT_TOPIC_NAMES = null;
+	protected static String STATEMENT_SELECT_TOPIC_NAMES_BY_PAGE_NAME = null;
 	protected static String STATEMENT_SELECT_TOPICS_ADMIN = null;
 	protected static String STATEMENT_SELECT_TOPIC_SEQUENCE = null;
 	protected static String STATEMENT_SELECT_TOPIC_VERSION = null;
+	protected static String STATEMENT_SELECT_TOPIC_VERSION_CONTENT = null;
+	protected static String STATEMENT_SELECT_TOPIC_VERSION_COUNT = null;
+	protected static String STATEMENT_SELECT_TOPIC_VERSION_EXPORT = null;
+	protected static String STATEMENT_SELECT_TOPIC_VERSION_EXPORT_KEYSET = null;
+	protected static String STATEMENT_SELECT_TOPIC_VERSION_EXPORT_START = null;
+	protected static String STATEMENT_SELECT_TOPIC_VERSION_IDS = null;
 	protected static String STATEMENT_SELECT_TOPIC_VERSION_NEXT_ID = null;
 	protected static String STATEMENT_SELECT_TOPIC_VERSION_SEQUENCE = null;
 	protected static String STATEMENT_SELECT_USER_BLOCKS = null;
@@ -214,7 +242,9 @@ public class AnsiQueryHandler implements QueryHandler {
 	protected static String STATEMENT_SELECT_WIKI_FILE_VERSIONS = null;
 	protected static String STATEMENT_SELECT_WIKI_USER = null;
 	protected static String STATEMENT_SELECT_WIKI_USER_CHANGES_ANONYMOUS = null;
+	protected static String STATEMENT_SELECT_WIKI_USER_CHANGES_ANONYMOUS_KEYSET = null;
 	protected static String STATEMENT_SELECT_WIKI_USER_CHANGES_LOGIN = null;
+	protected static String STATEMENT_SELECT_WIKI_USER_CHANGES_LOGIN_KEYSET = null;
 	protected static String STATEMENT_SELECT_WIKI_USER_COUNT = null;
 	protected static String STATEMENT_SELECT_WIKI_USER_DETAILS_PASSWORD = null;
 	protected static String STATEMENT_SELECT_WIKI_USER_LOGIN = null;
@@ -230,6 +260,7 @@ public class AnsiQueryHandler implements QueryHandler {
 	protected static String STATEMENT_UPDATE_TOPIC = null;
 	protected static String STATEMENT_UPDATE_TOPIC_NAMESPACE = null;
 	protected static String STATEMENT_UPDATE_TOPIC_VERSION = null;
+	protected static String STATEMENT_UPDATE_TOPIC_VERSION_CONTENT = null;
 	protected static String STATEMENT_UPDATE_TOPIC_VERSION_PREVIOUS_VERSION_ID = null;
 	protected static String STATEMENT_UPDATE_USER = null;
 	protected static String STATEMENT_UPDATE_USER_BLOCK = null;
@@ -246,7 +277,19 @@ public class AnsiQueryHandler implements QueryHandler {
 	protected static String STATEMENT_SELECT_FILE_VERSION_DATA = null;
 	protected static String STATEMENT_CREATE_SEQUENCES = null;
 	protected static String STATEMENT_DROP_SEQUENCES = null;
+	protected static String STATEMENT_ENABLE_FOREIGN_KEY_CHECKS = null;
+	/** Parsed formats for statements that require parameter substitution, keyed by statement. */
+	private static final Map<String, MessageFormat> STATEMENT_FORMATS = new ConcurrentHashMap<String, MessageFormat>();
 	private Properties props = null;
+	private IdAllocator groupMemberIdAllocator = null;
+	private IdAllocator topicIdAllocator = null;
+	private IdAllocator topicVersionIdAllocator = null;
+	private IdAllocator userBlockIdAllocator = null;
+	private IdAllocator virtualWikiIdAllocator = null;
+	private IdAllocator wikiFileIdAllocator = null;
+	private IdAllocator wikiFileVersionIdAllocator = null;
+	private IdAllocator wikiGroupIdAllocator = null;
+	private IdAllocator wikiUserIdAllocator = null;
 
 	/**
 	 *
@@ -278,6 +321,93 @@ public class AnsiQueryHandler implements QueryHandler {
 		return false;
 	}
 
+	/**
+	 *
+	 */
+	public boolean compactTopicVersion(int topicVersionId, Connection conn) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		int topicId;
+		int previousTopicVersionId;
+		String stored;
+		try {
+			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_VERSION_CONTENT);
+			stmt.setInt(1, topicVersionId);
+			rs = stmt.executeQuery();
+			if (!rs.next()) {
+				return false;
+			}
+			topicId = rs.getInt("topic_id");
+			previousTopicVersionId = rs.getInt("previous_topic_version_id");
+			stored = rs.getString("version_content");
+		} finally {
+			// close only the statement and result set - leave the connection open for further use
+			DatabaseConnection.closeConnection(null, stmt, rs);
+		}
+		if (StringUtils.isEmpty(stored) || TopicVersionCodec.isEncoded(stored) || topicVersionId == this.lookupTopicCurrentVersionId(topicId, conn)) {
+			return false;
+		}
+		// versions are stored as deltas against the most recent snapshot, so use
+		// the previous version if it is a snapshot, or else the snapshot that the
+		// previous version is based on.
+		int baseId = -1;
+		String base = null;
+		if (previousTopicVersionId > 0) {
+			String previous = this.lookupTopicVersionContent(previousTopicVersionId, conn);
+			if (TopicVersionCodec.isSnapshot(previous)) {
+				baseId = previousTopicVersionId;
+				base = this.decodeVersionContent(previous, conn);
+			} else if (TopicVersionCodec.isDelta(previous)) {
+				baseId = TopicVersionCodec.deltaBaseId(previous);
+				String snapshot = this.lookupTopicVersionContent(baseId, conn);
+				base = (TopicVersionCodec.isSnapshot(snapshot)) ? this.decodeVersionContent(snapshot, conn) : null;
+			}
+		}
+		String encoded = this.encodeVersionContent(stored, baseId, base);
+		if (encoded.length() >= stored.length()) {
+			return false;
+		}
+		this.updateTopicVersionContent(topicVersionId, encoded, conn);
+		return true;
+	}
+
+	/**
+	 *
+	 */
+	public int compactTopicVersions(int topicId, Connection conn) throws SQLException {
+		int currentVersionId = this.lookupTopicCurrentVersionId(topicId, conn);
+		int count = 0;
+		int baseId = -1;
+		String base = null;
+		for (int topicVersionId : this.lookupTopicVersionIds(topicId, conn)) {
+			if (topicVersionId == currentVersionId) {
+				continue;
+			}
+			// only the content of a single version is held in memory at a time, in
+			// addition to the content of the most recent snapshot.
+			String stored = this.lookupTopicVersionContent(topicVersionId, conn);
+			if (TopicVersionCodec.isSnapshot(stored)) {
+				baseId = topicVersionId;
+				base = this.decodeVersionContent(stored, conn);
+				continue;
+			}
+			if (StringUtils.isEmpty(stored) || TopicVersionCodec.isEncoded(stored)) {
+				continue;
+			}
+			String encoded = this.encodeVersionContent(stored, baseId, base);
+			if (encoded.length() >= stored.length()) {
+				continue;
+			}
+			this.updateTopicVersionContent(topicVersionId, encoded, conn);
+			count++;
+			if (TopicVersionCodec.isSnapshot(encoded)) {
+				baseId = topicVersionId;
+				base = stored;
+			}
+		}
+		return count;
+	}
+
 	/**
 	 *
 	 */
@@ -331,6 +461,57 @@ public class AnsiQueryHandler implements QueryHandler {
 		if (!StringUtils.isBlank(STATEMENT_CREATE_SEQUENCES)) {
 			DatabaseConnection.executeUpdate(STATEMENT_CREATE_SEQUENCES, conn);
 		}
+		this.resetIdAllocators();
+	}
+
+	/**
+	 * Create the allocator used to generate primary key values for a table.
+	 * Native sequences are used if the database supports them; otherwise
+	 * blocks of IDs are reserved in memory, unless the database may also
+	 * generate IDs for the table itself.
+	 *
+	 * @param sql The query used to retrieve either the next sequence value or
+	 *  the current maximum ID.
+	 * @param field The name of the field returned by the query.
+	 * @return The allocator for the table.
+	 */
+	protected IdAllocator createIdAllocator(String sql, String field) {
+		int blockSize = (this.autoIncrementPrimaryKeys()) ? 0 : ID_BLOCK_SIZE;
+		return new IdAllocator(sql, field, this.nativeSequences(), blockSize);
+	}
+
+	/**
+	 * Convert stored topic version content into the content of the version,
+	 * retrieving the base content if the content is stored as a delta.
+	 */
+	String decodeVersionContent(String stored, Connection conn) throws SQLException {
+		return this.decodeVersionContent(stored, conn, 0);
+	}
+
+	/**
+	 *
+	 */
+	private String decodeVersionContent(String stored, Connection conn, int depth) throws SQLException {
+		if (!TopicVersionCodec.isEncoded(stored)) {
+			return stored;
+		}
+		try {
+			if (!TopicVersionCodec.isDelta(stored)) {
+				return TopicVersionCodec.decode(stored);
+			}
+			// deltas are always created against a snapshot, so a long chain indicates corrupt data
+			if (depth >= MAX_DELTA_DEPTH) {
+				throw new SQLException("Topic version delta chain exceeds " + MAX_DELTA_DEPTH + " versions");
+			}
+			int baseId = TopicVersionCodec.deltaBaseId(stored);
+			String base = this.lookupTopicVersionContent(baseId, conn);
+			if (base == null) {
+				throw new SQLException("Base topic version " + baseId + " for topic version delta does not exist");
+			}
+			return TopicVersionCodec.applyDelta(stored, this.decodeVersionContent(base, conn, depth + 1));
+		} catch (IOException e) {
+			throw new SQLException("Failure while decoding stored topic version content", e);
+		}
 	}
 
 	/**
@@ -415,6 +596,24 @@ public class AnsiQueryHandler implements QueryHandler {
 		}
 	}
 
+	/**
+	 *
+	 */
+	public void deleteTopicCategories(List<Category> categoryList, int childTopicId, Connection conn) throws SQLException {
+		PreparedStatement stmt = null;
+		try {
+			stmt = conn.prepareStatement(STATEMENT_DELETE_TOPIC_CATEGORY);
+			for (Category category : categoryList) {
+				stmt.setInt(1, childTopicId);
+				stmt.setString(2, category.getName());
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		} finally {
+			DatabaseConnection.closeStatement(stmt);
+		}
+	}
+
 	/**
 	 *
 	 */
@@ -429,10 +628,33 @@ public class AnsiQueryHandler implements QueryHandler {
 		}
 	}
 
+	/**
+	 *
+	 */
+	public void deleteTopicLinks(List<Topic> topicLinks, int topicId, Connection conn) throws SQLException {
+		PreparedStatement stmt = null;
+		try {
+			stmt = conn.prepareStatement(STATEMENT_DELETE_TOPIC_LINK);
+			for (Topic topicLink : topicLinks) {
+				stmt.setInt(1, topicId);
+				stmt.setInt(2, topicLink.getNamespace().getId());
+				stmt.setString(3, topicLink.getPageName());
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		} finally {
+			DatabaseConnection.closeStatement(stmt);
+		}
+	}
+
 	/**
 	 *
 	 */
 	public void deleteTopicVersion(int topicVersionId, Integer previousTopicVersionId, Connection conn) throws SQLException {
+		// deltas cannot be decoded without their base, so expand any that use this version
+		if (TopicVersionCodec.isSnapshot(this.lookupTopicVersionContent(topicVersionId, conn))) {
+			this.rebaseTopicVersionDeltas(this.lookupTopicVersion(topicVersionId, conn).getTopicId(), topicVersionId, conn);
+		}
 		PreparedStatement stmt = null;
 		try {
 			// delete references to the topic version from the log table
@@ -503,6 +725,17 @@ public class AnsiQueryHandler implements QueryHandler {
 		}
 	}
 
+	/**
+	 *
+	 */
+	public boolean disableForeignKeyChecks(Connection conn) throws SQLException {
+		if (StringUtils.isBlank(STATEMENT_DISABLE_FOREIGN_KEY_CHECKS)) {
+			return false;
+		}
+		DatabaseConnection.executeUpdate(STATEMENT_DISABLE_FOREIGN_KEY_CHECKS, conn);
+		return true;
+	}
+
 	/**
 	 *
 	 */
@@ -511,6 +744,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		// catch errors that might result from a partial failure during install.  also
 		// note that the coding style violation here is intentional since it makes the
 		// actual work of the method more obvious.
+		this.resetIdAllocators();
 		if (!StringUtils.isBlank(STATEMENT_DROP_SEQUENCES)) {
 			DatabaseConnection.executeUpdateNoException(STATEMENT_DROP_SEQUENCES, conn);
 		}
@@ -540,6 +774,29 @@ public class AnsiQueryHandler implements QueryHandler {
 		DatabaseConnection.executeUpdateNoException(STATEMENT_DROP_VIRTUAL_WIKI_TABLE, conn);
 	}
 
+	/**
+	 * Compress topic version content, either as a delta against the base
+	 * content or as a snapshot.  A new snapshot is started once the content has
+	 * changed enough from the base that a delta no longer saves much space.
+	 */
+	private String encodeVersionContent(String content, int baseId, String base) {
+		String snapshot = TopicVersionCodec.encodeSnapshot(content);
+		if (base == null) {
+			return snapshot;
+		}
+		String delta = TopicVersionCodec.encodeDelta(content, baseId, base);
+		return (delta.length() <= snapshot.length() / 2) ? delta : snapshot;
+	}
+
+	/**
+	 *
+	 */
+	public void enableForeignKeyChecks(Connection conn) throws SQLException {
+		if (!StringUtils.isBlank(STATEMENT_ENABLE_FOREIGN_KEY_CHECKS)) {
+			DatabaseConnection.executeUpdate(STATEMENT_ENABLE_FOREIGN_KEY_CHECKS, conn);
+		}
+	}
+
 	/**
 	 * This method should be called only during upgrades and provides the capability
 	 * to execute a SQL query from a QueryHandler-specific property file.
@@ -621,9 +878,17 @@ public class AnsiQueryHandler implements QueryHandler {
 			return sql;
 		}
 		try {
-			// replace all single quotes with '' since otherwise MessageFormat
-			// will treat the content is a quoted string
-			return MessageFormat.format(sql.replaceAll("'", "''"), params);
+			MessageFormat format = STATEMENT_FORMATS.get(sql);
+			if (format == null) {
+				// replace all single quotes with '' since otherwise MessageFormat
+				// will treat the content is a quoted string
+				format = new MessageFormat(sql.replace("'", "''"));
+				STATEMENT_FORMATS.put(sql, format);
+			}
+			// MessageFormat is not thread-safe, so format using a copy of the cached pattern
+			String result = ((MessageFormat)format.clone()).format(params);
+			StatementMonitor.registerFormattedStatement(sql, result);
+			return result;
 		} catch (IllegalArgumentException e) {
 			String msg = "Unable to format " + sql + " with values: ";
 			for (int i = 0; i < params.length; i++) {
@@ -642,7 +907,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = conn.prepareStatement(STATEMENT_SELECT_WIKI_FILE_VERSIONS);
 			// FIXME - sort order ignored
 			stmt.setInt(1, wikiFile.getFileId());
@@ -665,7 +930,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.getCategoriesStatement(conn, virtualWikiId, virtualWikiName, pagination);
 			rs = stmt.executeQuery();
 			List<Category> results = new ArrayList<Category>();
@@ -704,7 +969,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		ResultSet rs = null;
 		List<LogItem> logItems = new ArrayList<LogItem>();
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.getLogItemsStatement(conn, virtualWikiId, virtualWikiName, logType, pagination, descending);
 			// FIXME - sort order ignored
 			rs = stmt.executeQuery();
@@ -743,8 +1008,12 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
-			stmt = this.getRecentChangesStatement(conn, virtualWiki, pagination, descending);
+			conn = DatabaseConnection.getReadConnection();
+			if (this.useKeysetPagination(pagination, descending)) {
+				stmt = this.getRecentChangesKeysetStatement(conn, virtualWiki, pagination);
+			} else {
+				stmt = this.getRecentChangesStatement(conn, virtualWiki, pagination, descending);
+			}
 			// FIXME - sort order ignored
 			rs = stmt.executeQuery();
 			List<RecentChange> recentChanges = new ArrayList<RecentChange>();
@@ -757,6 +1026,21 @@ public class AnsiQueryHandler implements QueryHandler {
 		}
 	}
 
+	/**
+	 *
+	 */
+	protected PreparedStatement getRecentChangesKeysetStatement(Connection conn, String virtualWiki, Pagination pagination) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(STATEMENT_SELECT_RECENT_CHANGES_KEYSET);
+		stmt.setString(1, virtualWiki);
+		stmt.setTimestamp(2, pagination.getSeekDate());
+		stmt.setTimestamp(3, pagination.getSeekDate());
+		stmt.setInt(4, pagination.getSeekId());
+		stmt.setInt(5, pagination.getSeekId());
+		stmt.setInt(6, pagination.getSeekType());
+		stmt.setInt(7, pagination.getNumResults());
+		return stmt;
+	}
+
 	/**
 	 *
 	 */
@@ -1012,8 +1296,12 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
-			stmt = getTopicHistoryStatement(conn, topicId, pagination, descending, selectDeleted);
+			conn = DatabaseConnection.getReadConnection();
+			if (this.useKeysetPagination(pagination, descending)) {
+				stmt = this.getTopicHistoryKeysetStatement(conn, topicId, pagination, selectDeleted);
+			} else {
+				stmt = this.getTopicHistoryStatement(conn, topicId, pagination, descending, selectDeleted);
+			}
 			// FIXME - sort order ignored
 			rs = stmt.executeQuery();
 			List<RecentChange> recentChanges = new ArrayList<RecentChange>();
@@ -1026,6 +1314,25 @@ public class AnsiQueryHandler implements QueryHandler {
 		}
 	}
 
+	/**
+	 *
+	 */
+	protected PreparedStatement getTopicHistoryKeysetStatement(Connection conn, int topicId, Pagination pagination, boolean selectDeleted) throws SQLException {
+		// the SQL contains the syntax "is {0} null", which needs to be formatted as a message.
+		Object[] params = {""};
+		if (selectDeleted) {
+			params[0] = "not";
+		}
+		String sql = this.formatStatement(STATEMENT_SELECT_TOPIC_HISTORY_KEYSET, params);
+		PreparedStatement stmt = conn.prepareStatement(sql);
+		stmt.setInt(1, topicId);
+		stmt.setTimestamp(2, pagination.getSeekDate());
+		stmt.setTimestamp(3, pagination.getSeekDate());
+		stmt.setInt(4, pagination.getSeekId());
+		stmt.setInt(5, pagination.getNumResults());
+		return stmt;
+	}
+
 	/**
 	 *
 	 */
@@ -1051,7 +1358,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.getTopicsAdminStatement(conn, virtualWikiId, pagination);
 			rs = stmt.executeQuery();
 			List<String> results = new ArrayList<String>();
@@ -1110,8 +1417,12 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
-			stmt = this.getUserContributionsByLoginStatement(conn, virtualWiki, login, pagination, descending);
+			conn = DatabaseConnection.getReadConnection();
+			if (this.useKeysetPagination(pagination, descending)) {
+				stmt = this.getUserContributionsByLoginKeysetStatement(conn, virtualWiki, login, pagination);
+			} else {
+				stmt = this.getUserContributionsByLoginStatement(conn, virtualWiki, login, pagination, descending);
+			}
 			// FIXME - sort order ignored
 			rs = stmt.executeQuery();
 			List<RecentChange> recentChanges = new ArrayList<RecentChange>();
@@ -1124,6 +1435,20 @@ public class AnsiQueryHandler implements QueryHandler {
 		}
 	}
 
+	/**
+	 *
+	 */
+	protected PreparedStatement getUserContributionsByLoginKeysetStatement(Connection conn, String virtualWiki, String login, Pagination pagination) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(STATEMENT_SELECT_WIKI_USER_CHANGES_LOGIN_KEYSET);
+		stmt.setString(1, virtualWiki);
+		stmt.setString(2, login);
+		stmt.setTimestamp(3, pagination.getSeekDate());
+		stmt.setTimestamp(4, pagination.getSeekDate());
+		stmt.setInt(5, pagination.getSeekId());
+		stmt.setInt(6, pagination.getNumResults());
+		return stmt;
+	}
+
 	/**
 	 *
 	 */
@@ -1144,8 +1469,12 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
-			stmt = this.getUserContributionsByUserDisplayStatement(conn, virtualWiki, userDisplay, pagination, descending);
+			conn = DatabaseConnection.getReadConnection();
+			if (this.useKeysetPagination(pagination, descending)) {
+				stmt = this.getUserContributionsByUserDisplayKeysetStatement(conn, virtualWiki, userDisplay, pagination);
+			} else {
+				stmt = this.getUserContributionsByUserDisplayStatement(conn, virtualWiki, userDisplay, pagination, descending);
+			}
 			// FIXME - sort order ignored
 			rs = stmt.executeQuery();
 			List<RecentChange> recentChanges = new ArrayList<RecentChange>();
@@ -1158,6 +1487,20 @@ public class AnsiQueryHandler implements QueryHandler {
 		}
 	}
 
+	/**
+	 *
+	 */
+	protected PreparedStatement getUserContributionsByUserDisplayKeysetStatement(Connection conn, String virtualWiki, String userDisplay, Pagination pagination) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(STATEMENT_SELECT_WIKI_USER_CHANGES_ANONYMOUS_KEYSET);
+		stmt.setString(1, virtualWiki);
+		stmt.setString(2, userDisplay);
+		stmt.setTimestamp(3, pagination.getSeekDate());
+		stmt.setTimestamp(4, pagination.getSeekDate());
+		stmt.setInt(5, pagination.getSeekId());
+		stmt.setInt(6, pagination.getNumResults());
+		return stmt;
+	}
+
 	/**
 	 *
 	 */
@@ -1227,7 +1570,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.getWatchlistStatement(conn, virtualWikiId, userId, pagination);
 			rs = stmt.executeQuery();
 			List<RecentChange> recentChanges = new ArrayList<RecentChange>();
@@ -1257,6 +1600,7 @@ public class AnsiQueryHandler implements QueryHandler {
 	 */
 	protected void init(Properties properties) {
 		this.props = properties;
+		StatementMonitor.registerStatements(properties);
 		STATEMENT_CONNECTION_VALIDATION_QUERY    = props.getProperty("STATEMENT_CONNECTION_VALIDATION_QUERY");
 		STATEMENT_CREATE_CONFIGURATION_TABLE     = props.getProperty("STATEMENT_CREATE_CONFIGURATION_TABLE");
 		STATEMENT_CREATE_GROUP_TABLE             = props.getProperty("STATEMENT_CREATE_GROUP_TABLE");
@@ -1309,10 +1653,13 @@ public class AnsiQueryHandler implements QueryHandler {
 		STATEMENT_DELETE_RECENT_CHANGES_TOPIC    = props.getProperty("STATEMENT_DELETE_RECENT_CHANGES_TOPIC");
 		STATEMENT_DELETE_RECENT_CHANGES_TOPIC_VERSION = props.getProperty("STATEMENT_DELETE_RECENT_CHANGES_TOPIC_VERSION");
 		STATEMENT_DELETE_TOPIC_CATEGORIES        = props.getProperty("STATEMENT_DELETE_TOPIC_CATEGORIES");
+		STATEMENT_DELETE_TOPIC_CATEGORY          = props.getProperty("STATEMENT_DELETE_TOPIC_CATEGORY");
+		STATEMENT_DELETE_TOPIC_LINK              = props.getProperty("STATEMENT_DELETE_TOPIC_LINK");
 		STATEMENT_DELETE_TOPIC_LINKS             = props.getProperty("STATEMENT_DELETE_TOPIC_LINKS");
 		STATEMENT_DELETE_TOPIC_VERSION           = props.getProperty("STATEMENT_DELETE_TOPIC_VERSION");
 		STATEMENT_DELETE_WATCHLIST_ENTRY         = props.getProperty("STATEMENT_DELETE_WATCHLIST_ENTRY");
 		STATEMENT_DELETE_USER_PREFERENCES        = props.getProperty("STATEMENT_DELETE_USER_PREFERENCES");
+		STATEMENT_DISABLE_FOREIGN_KEY_CHECKS     = props.getProperty("STATEMENT_DISABLE_FOREIGN_KEY_CHECKS");
 		STATEMENT_DROP_AUTHORITIES_TABLE         = props.getProperty("STATEMENT_DROP_AUTHORITIES_TABLE");
 		STATEMENT_DROP_CATEGORY_TABLE            = props.getProperty("STATEMENT_DROP_CATEGORY_TABLE");
 		STATEMENT_DROP_CONFIGURATION_TABLE       = props.getProperty("STATEMENT_DROP_CONFIGURATION_TABLE");
@@ -1401,22 +1748,39 @@ public class AnsiQueryHandler implements QueryHandler {
 		STATEMENT_SELECT_NAMESPACE_SEQUENCE      = props.getProperty("STATEMENT_SELECT_NAMESPACE_SEQUENCE");
 		STATEMENT_SELECT_NAMESPACES              = props.getProperty("STATEMENT_SELECT_NAMESPACES");
 		STATEMENT_SELECT_PW_RESET_CHALLENGE_DATA = props.getProperty("STATEMENT_SELECT_PW_RESET_CHALLENGE_DATA");
+		STATEMENT_SELECT_RECENT_CHANGE_TOPIC_IDS = props.getProperty("STATEMENT_SELECT_RECENT_CHANGE_TOPIC_IDS");
 		STATEMENT_SELECT_RECENT_CHANGES          = props.getProperty("STATEMENT_SELECT_RECENT_CHANGES");
+		STATEMENT_SELECT_RECENT_CHANGES_KEYSET   = props.getProperty("STATEMENT_SELECT_RECENT_CHANGES_KEYSET");
 		STATEMENT_SELECT_ROLES                   = props.getProperty("STATEMENT_SELECT_ROLES");
 		STATEMENT_SELECT_TOPIC_BY_ID             = props.getProperty("STATEMENT_SELECT_TOPIC_BY_ID");
+		STATEMENT_SELECT_TOPIC_BY_ID_RANGE       = props.getProperty("STATEMENT_SELECT_TOPIC_BY_ID_RANGE");
 		STATEMENT_SELECT_TOPIC_BY_TYPE           = props.getProperty("STATEMENT_SELECT_TOPIC_BY_TYPE");
+		STATEMENT_SELECT_TOPIC_CATEGORIES        = props.getProperty("STATEMENT_SELECT_TOPIC_CATEGORIES");
 		STATEMENT_SELECT_TOPIC_COUNT             = props.getProperty("STATEMENT_SELECT_TOPIC_COUNT");
 		STATEMENT_SELECT_TOPIC                   = props.getProperty("STATEMENT_SELECT_TOPIC");
+		STATEMENT_SELECT_TOPIC_CURRENT_VERSION_ID = props.getProperty("STATEMENT_SELECT_TOPIC_CURRENT_VERSION_ID");
+		STATEMENT_SELECT_TOPIC_DIRECTORY         = props.getProperty("STATEMENT_SELECT_TOPIC_DIRECTORY");
 		STATEMENT_SELECT_TOPIC_HISTORY           = props.getProperty("STATEMENT_SELECT_TOPIC_HISTORY");
+		STATEMENT_SELECT_TOPIC_HISTORY_KEYSET    = props.getProperty("STATEMENT_SELECT_TOPIC_HISTORY_KEYSET");
 		STATEMENT_SELECT_TOPIC_LINK_ORPHANS      = props.getProperty("STATEMENT_SELECT_TOPIC_LINK_ORPHANS");
+		STATEMENT_SELECT_TOPIC_LINK_SOURCES      = props.getProperty("STATEMENT_SELECT_TOPIC_LINK_SOURCES");
+		STATEMENT_SELECT_TOPIC_LINK_TARGETS      = props.getProperty("STATEMENT_SELECT_TOPIC_LINK_TARGETS");
 		STATEMENT_SELECT_TOPIC_LINKS             = props.getProperty("STATEMENT_SELECT_TOPIC_LINKS");
 		STATEMENT_SELECT_TOPIC_LOWER             = props.getProperty("STATEMENT_SELECT_TOPIC_LOWER");
+		STATEMENT_SELECT_TOPIC_MAX_ID            = props.getProperty("STATEMENT_SELECT_TOPIC_MAX_ID");
 		STATEMENT_SELECT_TOPIC_NAME              = props.getProperty("STATEMENT_SELECT_TOPIC_NAME");
 		STATEMENT_SELECT_TOPIC_NAME_LOWER        = props.getProperty("STATEMENT_SELECT_TOPIC_NAME_LOWER");
 		STATEMENT_SELECT_TOPIC_NAMES             = props.getProperty("STATEMENT_SELECT_TOPIC_NAMES");
+		STATEMENT_SELECT_TOPIC_NAMES_BY_PAGE_NAME = props.getProperty("STATEMENT_SELECT_TOPIC_NAMES_BY_PAGE_NAME");
 		STATEMENT_SELECT_TOPICS_ADMIN            = props.getProperty("STATEMENT_SELECT_TOPICS_ADMIN");
 		STATEMENT_SELECT_TOPIC_SEQUENCE          = props.getProperty("STATEMENT_SELECT_TOPIC_SEQUENCE");
 		STATEMENT_SELECT_TOPIC_VERSION           = props.getProperty("STATEMENT_SELECT_TOPIC_VERSION");
+		STATEMENT_SELECT_TOPIC_VERSION_CONTENT   = props.getProperty("STATEMENT_SELECT_TOPIC_VERSION_CONTENT");
+		STATEMENT_SELECT_TOPIC_VERSION_COUNT     = props.getProperty("STATEMENT_SELECT_TOPIC_VERSION_COUNT");
+		STATEMENT_SELECT_TOPIC_VERSION_EXPORT    = props.getProperty("STATEMENT_SELECT_TOPIC_VERSION_EXPORT");
+		STATEMENT_SELECT_TOPIC_VERSION_EXPORT_KEYSET = props.getProperty("STATEMENT_SELECT_TOPIC_VERSION_EXPORT_KEYSET");
+		STATEMENT_SELECT_TOPIC_VERSION_EXPORT_START = props.getProperty("STATEMENT_SELECT_TOPIC_VERSION_EXPORT_START");
+		STATEMENT_SELECT_TOPIC_VERSION_IDS       = props.getProperty("STATEMENT_SELECT_TOPIC_VERSION_IDS");
 		STATEMENT_SELECT_TOPIC_VERSION_NEXT_ID   = props.getProperty("STATEMENT_SELECT_TOPIC_VERSION_NEXT_ID");
 		STATEMENT_SELECT_TOPIC_VERSION_SEQUENCE  = props.getProperty("STATEMENT_SELECT_TOPIC_VERSION_SEQUENCE");
 		STATEMENT_SELECT_USER_BLOCKS             = props.getProperty("STATEMENT_SELECT_USER_BLOCKS");
@@ -1433,7 +1797,9 @@ public class AnsiQueryHandler implements QueryHandler {
 		STATEMENT_SELECT_WIKI_FILE_VERSIONS      = props.getProperty("STATEMENT_SELECT_WIKI_FILE_VERSIONS");
 		STATEMENT_SELECT_WIKI_USER               = props.getProperty("STATEMENT_SELECT_WIKI_USER");
 		STATEMENT_SELECT_WIKI_USER_CHANGES_ANONYMOUS = props.getProperty("STATEMENT_SELECT_WIKI_USER_CHANGES_ANONYMOUS");
+		STATEMENT_SELECT_WIKI_USER_CHANGES_ANONYMOUS_KEYSET = props.getProperty("STATEMENT_SELECT_WIKI_USER_CHANGES_ANONYMOUS_KEYSET");
 		STATEMENT_SELECT_WIKI_USER_CHANGES_LOGIN = props.getProperty("STATEMENT_SELECT_WIKI_USER_CHANGES_LOGIN");
+		STATEMENT_SELECT_WIKI_USER_CHANGES_LOGIN_KEYSET = props.getProperty("STATEMENT_SELECT_WIKI_USER_CHANGES_LOGIN_KEYSET");
 		STATEMENT_SELECT_WIKI_USER_COUNT         = props.getProperty("STATEMENT_SELECT_WIKI_USER_COUNT");
 		STATEMENT_SELECT_WIKI_USER_DETAILS_PASSWORD = props.getProperty("STATEMENT_SELECT_WIKI_USER_DETAILS_PASSWORD");
 		STATEMENT_SELECT_WIKI_USER_LOGIN         = props.getProperty("STATEMENT_SELECT_WIKI_USER_LOGIN");
@@ -1449,6 +1815,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		STATEMENT_UPDATE_ROLE                    = props.getProperty("STATEMENT_UPDATE_ROLE");
 		STATEMENT_UPDATE_TOPIC                   = props.getProperty("STATEMENT_UPDATE_TOPIC");
 		STATEMENT_UPDATE_TOPIC_VERSION           = props.getProperty("STATEMENT_UPDATE_TOPIC_VERSION");
+		STATEMENT_UPDATE_TOPIC_VERSION_CONTENT   = props.getProperty("STATEMENT_UPDATE_TOPIC_VERSION_CONTENT");
 		STATEMENT_UPDATE_TOPIC_VERSION_PREVIOUS_VERSION_ID = props.getProperty("STATEMENT_UPDATE_TOPIC_VERSION_PREVIOUS_VERSION_ID");
 		STATEMENT_UPDATE_USER                    = props.getProperty("STATEMENT_UPDATE_USER");
 		STATEMENT_UPDATE_USER_BLOCK              = props.getProperty("STATEMENT_UPDATE_USER_BLOCK");
@@ -1465,6 +1832,16 @@ public class AnsiQueryHandler implements QueryHandler {
 		STATEMENT_SELECT_FILE_VERSION_DATA       = props.getProperty("STATEMENT_SELECT_FILE_VERSION_DATA");
 		STATEMENT_CREATE_SEQUENCES               = props.getProperty("STATEMENT_CREATE_SEQUENCES");
 		STATEMENT_DROP_SEQUENCES                 = props.getProperty("STATEMENT_DROP_SEQUENCES");
+		STATEMENT_ENABLE_FOREIGN_KEY_CHECKS      = props.getProperty("STATEMENT_ENABLE_FOREIGN_KEY_CHECKS");
+		this.groupMemberIdAllocator = this.createIdAllocator(STATEMENT_SELECT_GROUP_MEMBERS_SEQUENCE, "id");
+		this.topicIdAllocator = this.createIdAllocator(STATEMENT_SELECT_TOPIC_SEQUENCE, "topic_id");
+		this.topicVersionIdAllocator = this.createIdAllocator(STATEMENT_SELECT_TOPIC_VERSION_SEQUENCE, "topic_version_id");
+		this.userBlockIdAllocator = this.createIdAllocator(STATEMENT_SELECT_USER_BLOCK_SEQUENCE, "user_block_id");
+		this.virtualWikiIdAllocator = this.createIdAllocator(STATEMENT_SELECT_VIRTUAL_WIKI_SEQUENCE, "virtual_wiki_id");
+		this.wikiFileIdAllocator = this.createIdAllocator(STATEMENT_SELECT_WIKI_FILE_SEQUENCE, "file_id");
+		this.wikiFileVersionIdAllocator = this.createIdAllocator(STATEMENT_SELECT_WIKI_FILE_VERSION_SEQUENCE, "file_version_id");
+		this.wikiGroupIdAllocator = this.createIdAllocator(STATEMENT_SELECT_GROUP_SEQUENCE, "group_id");
+		this.wikiUserIdAllocator = this.createIdAllocator(STATEMENT_SELECT_WIKI_USER_SEQUENCE, "wiki_user_id");
 	}
 
 	/**
@@ -1562,15 +1939,17 @@ public class AnsiQueryHandler implements QueryHandler {
 	 * Initialize the topic record.
 	 *
 	 * @param rs The result set being used to initialize the record.
+	 * @param conn The connection used to retrieve the base content if the
+	 *  topic content is stored as a delta.
 	 */
-	private Topic initTopic(ResultSet rs) throws SQLException {
+	private Topic initTopic(ResultSet rs, Connection conn) throws SQLException {
 		Topic topic = new Topic(rs.getString("virtual_wiki_name"), Namespace.namespace(rs.getInt("namespace_id")), rs.getString("page_name"));
 		topic.setAdminOnly(rs.getInt("topic_admin_only") != 0);
 		int currentVersionId = rs.getInt("current_version_id");
 		if (currentVersionId > 0) {
 			topic.setCurrentVersionId(currentVersionId);
 		}
-		topic.setTopicContent(rs.getString("version_content"));
+		topic.setTopicContent(this.decodeVersionContent(rs.getString("version_content"), conn));
 		// FIXME - Oracle cannot store an empty string - it converts them
 		// to null - so add a hack to work around the problem.
 		if (topic.getTopicContent() == null) {
@@ -1589,7 +1968,7 @@ public class AnsiQueryHandler implements QueryHandler {
 			// this is an inefficient way to get the last result, but due to the fact that
 			// the result set may be forward only it's the safest.
 			if (rs.next()) {
-				topic = this.initTopic(rs);
+				topic = this.initTopic(rs, conn);
 			}
 		}
 		return topic;
@@ -1598,12 +1977,20 @@ public class AnsiQueryHandler implements QueryHandler {
 	/**
 	 *
 	 */
-	private TopicVersion initTopicVersion(ResultSet rs) throws SQLException {
+	private TopicVersion initTopicVersion(ResultSet rs, Connection conn) throws SQLException {
+		return this.initTopicVersion(rs, this.decodeVersionContent(rs.getString("version_content"), conn));
+	}
+
+	/**
+	 * Initialize a topic version from a result set row, using content that
+	 * has already been decoded.
+	 */
+	TopicVersion initTopicVersion(ResultSet rs, String versionContent) throws SQLException {
 		TopicVersion topicVersion = new TopicVersion();
 		topicVersion.setTopicVersionId(rs.getInt("topic_version_id"));
 		topicVersion.setTopicId(rs.getInt("topic_id"));
 		topicVersion.setEditComment(rs.getString("edit_comment"));
-		topicVersion.setVersionContent(rs.getString("version_content"));
+		topicVersion.setVersionContent(versionContent);
 		// FIXME - Oracle cannot store an empty string - it converts them
 		// to null - so add a hack to work around the problem.
 		if (topicVersion.getVersionContent() == null) {
@@ -1983,19 +2370,16 @@ public class AnsiQueryHandler implements QueryHandler {
 			} else {
 				stmt = conn.prepareStatement(STATEMENT_INSERT_TOPIC_VERSION_AUTO_INCREMENT, Statement.RETURN_GENERATED_KEYS);
 			}
-			int topicVersionId = -1;
+			int[] topicVersionIds = null;
 			if (!this.autoIncrementPrimaryKeys() || useBatch) {
-				// manually retrieve next topic version id when using batch
+				// manually retrieve topic version ids when using batch
 				// mode or when the database doesn't support generated keys.
-				topicVersionId = this.nextTopicVersionId(conn);
+				topicVersionIds = this.topicVersionIdAllocator.nextIds(topicVersions.size(), conn);
 			}
+			int i = 0;
 			for (TopicVersion topicVersion : topicVersions) {
-				if (!this.autoIncrementPrimaryKeys() || useBatch) {
-					// FIXME - if two threads update the database simultaneously then
-					// it is possible that this code could set the topic version ID
-					// to a value that is different from what the database ends up
-					// using.
-					topicVersion.setTopicVersionId(topicVersionId++);
+				if (topicVersionIds != null) {
+					topicVersion.setTopicVersionId(topicVersionIds[i++]);
 				}
 				this.prepareTopicVersionStatement(topicVersion, stmt);
 				if (useBatch) {
@@ -2350,7 +2734,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = conn.prepareStatement(STATEMENT_SELECT_CATEGORY_TOPICS);
 			// category name must be lowercase since search is case-insensitive
 			categoryName = categoryName.toLowerCase();
@@ -2465,6 +2849,29 @@ public class AnsiQueryHandler implements QueryHandler {
 		return new ArrayList<Namespace>(namespaces.values());
 	}
 
+	/**
+	 *
+	 */
+	public List<Integer> lookupRecentChangeTopicIds(int virtualWikiId, Timestamp changeDate) throws SQLException {
+		Connection conn = null;
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			conn = DatabaseConnection.getConnection();
+			stmt = conn.prepareStatement(STATEMENT_SELECT_RECENT_CHANGE_TOPIC_IDS);
+			stmt.setInt(1, virtualWikiId);
+			stmt.setTimestamp(2, changeDate);
+			rs = stmt.executeQuery();
+			List<Integer> results = new ArrayList<Integer>();
+			while (rs.next()) {
+				results.add(rs.getInt("topic_id"));
+			}
+			return results;
+		} finally {
+			DatabaseConnection.closeConnection(conn, stmt, rs);
+		}
+	}
+
 	/**
 	 *
 	 */
@@ -2487,14 +2894,14 @@ public class AnsiQueryHandler implements QueryHandler {
 			stmt1.setInt(2, virtualWikiId);
 			stmt1.setInt(3, namespace.getId());
 			rs = stmt1.executeQuery();
-			topic = (rs.next() ? this.initTopic(rs) : null);
+			topic = (rs.next() ? this.initTopic(rs, conn) : null);
 			if (topic == null && !namespace.isCaseSensitive() && !pageName.toLowerCase().equals(pageName)) {
 				stmt2 = conn.prepareStatement(STATEMENT_SELECT_TOPIC_LOWER);
 				stmt2.setString(1, pageName.toLowerCase());
 				stmt2.setInt(2, virtualWikiId);
 				stmt2.setInt(3, namespace.getId());
 				rs = stmt2.executeQuery();
-				topic = (rs.next() ? this.initTopic(rs) : null);
+				topic = (rs.next() ? this.initTopic(rs, conn) : null);
 			}
 			return topic;
 		} finally {
@@ -2522,7 +2929,7 @@ public class AnsiQueryHandler implements QueryHandler {
 			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_BY_ID);
 			stmt.setInt(1, topicId);
 			rs = stmt.executeQuery();
-			return (rs.next()) ? this.initTopic(rs) : null;
+			return (rs.next()) ? this.initTopic(rs, conn) : null;
 		} finally {
 			if (closeConnection) {
 				DatabaseConnection.closeConnection(conn, stmt, rs);
@@ -2541,7 +2948,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.lookupTopicByTypeStatement(conn, virtualWikiId, topicType1, topicType2, namespaceStart, namespaceEnd, pagination);
 			rs = stmt.executeQuery();
 			Map<Integer, String> results = new LinkedHashMap<Integer, String>();
@@ -2572,12 +2979,79 @@ public class AnsiQueryHandler implements QueryHandler {
 	/**
 	 *
 	 */
-	public int lookupTopicCount(int virtualWikiId, int namespaceStart, int namespaceEnd) throws SQLException {
+	public List<Category> lookupTopicCategories(int topicId, Connection conn) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_CATEGORIES);
+			stmt.setInt(1, topicId);
+			rs = stmt.executeQuery();
+			List<Category> results = new ArrayList<Category>();
+			while (rs.next()) {
+				Category category = new Category();
+				category.setName(rs.getString("category_name"));
+				category.setSortKey(rs.getString("sort_key"));
+				results.add(category);
+			}
+			return results;
+		} finally {
+			// close only the statement and result set - leave the connection open for further use
+			DatabaseConnection.closeConnection(null, stmt, rs);
+		}
+	}
+
+	/**
+	 *
+	 */
+	private int lookupTopicCurrentVersionId(int topicId, Connection conn) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_CURRENT_VERSION_ID);
+			stmt.setInt(1, topicId);
+			rs = stmt.executeQuery();
+			return (rs.next()) ? rs.getInt("current_version_id") : -1;
+		} finally {
+			// close only the statement and result set - leave the connection open for further use
+			DatabaseConnection.closeConnection(null, stmt, rs);
+		}
+	}
+
+	/**
+	 *
+	 */
+	public TopicDirectory lookupTopicDirectory(int virtualWikiId) throws SQLException {
 		Connection conn = null;
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
 			conn = DatabaseConnection.getConnection();
+			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_DIRECTORY);
+			stmt.setInt(1, virtualWikiId);
+			rs = stmt.executeQuery();
+			List<Integer> namespaceIds = new ArrayList<Integer>();
+			List<String> pageNames = new ArrayList<String>();
+			List<Integer> topicIds = new ArrayList<Integer>();
+			while (rs.next()) {
+				namespaceIds.add(rs.getInt("namespace_id"));
+				pageNames.add(rs.getString("page_name"));
+				topicIds.add(rs.getInt("topic_id"));
+			}
+			return new TopicDirectory(namespaceIds, pageNames, topicIds);
+		} finally {
+			DatabaseConnection.closeConnection(conn, stmt, rs);
+		}
+	}
+
+	/**
+	 *
+	 */
+	public int lookupTopicCount(int virtualWikiId, int namespaceStart, int namespaceEnd) throws SQLException {
+		Connection conn = null;
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			conn = DatabaseConnection.getReadConnection();
 			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_COUNT);
 			stmt.setInt(1, virtualWikiId);
 			stmt.setInt(2, namespaceStart);
@@ -2634,7 +3108,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_LINKS);
 			stmt.setInt(1, virtualWikiId);
 			stmt.setInt(2, topic.getNamespace().getId());
@@ -2663,7 +3137,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_LINK_ORPHANS);
 			stmt.setInt(1, virtualWikiId);
 			stmt.setInt(2, namespaceId);
@@ -2679,6 +3153,53 @@ public class AnsiQueryHandler implements QueryHandler {
 		}
 	}
 
+	/**
+	 *
+	 */
+	public List<Integer> lookupTopicLinkSources(int virtualWikiId, Topic topic) throws SQLException {
+		Connection conn = null;
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			conn = DatabaseConnection.getConnection();
+			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_LINK_SOURCES);
+			stmt.setInt(1, virtualWikiId);
+			stmt.setInt(2, topic.getNamespace().getId());
+			stmt.setString(3, topic.getPageName());
+			stmt.setInt(4, virtualWikiId);
+			stmt.setString(5, topic.getName());
+			rs = stmt.executeQuery();
+			List<Integer> results = new ArrayList<Integer>();
+			while (rs.next()) {
+				results.add(rs.getInt("topic_id"));
+			}
+			return results;
+		} finally {
+			DatabaseConnection.closeConnection(conn, stmt, rs);
+		}
+	}
+
+	/**
+	 *
+	 */
+	public List<Topic> lookupTopicLinkTargets(String virtualWiki, int topicId, Connection conn) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_LINK_TARGETS);
+			stmt.setInt(1, topicId);
+			rs = stmt.executeQuery();
+			List<Topic> results = new ArrayList<Topic>();
+			while (rs.next()) {
+				results.add(new Topic(virtualWiki, Namespace.namespace(rs.getInt("link_topic_namespace_id")), rs.getString("link_topic_page_name")));
+			}
+			return results;
+		} finally {
+			// close only the statement and result set - leave the connection open for further use
+			DatabaseConnection.closeConnection(null, stmt, rs);
+		}
+	}
+
 	/**
 	 *
 	 */
@@ -2702,6 +3223,88 @@ public class AnsiQueryHandler implements QueryHandler {
 		}
 	}
 
+	/**
+	 *
+	 */
+	public List<Topic> lookupTopicsByIdRange(int virtualWikiId, int startTopicId, int endTopicId) throws SQLException {
+		Connection conn = null;
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			conn = DatabaseConnection.getConnection();
+			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_BY_ID_RANGE);
+			stmt.setInt(1, virtualWikiId);
+			stmt.setInt(2, startTopicId);
+			stmt.setInt(3, endTopicId);
+			rs = stmt.executeQuery();
+			List<Topic> results = new ArrayList<Topic>();
+			while (rs.next()) {
+				results.add(this.initTopic(rs, conn));
+			}
+			return results;
+		} finally {
+			DatabaseConnection.closeConnection(conn, stmt, rs);
+		}
+	}
+
+	/**
+	 *
+	 */
+	public int lookupTopicMaxId(int virtualWikiId) throws SQLException {
+		Connection conn = null;
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			conn = DatabaseConnection.getConnection();
+			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_MAX_ID);
+			stmt.setInt(1, virtualWikiId);
+			rs = stmt.executeQuery();
+			// max() returns null for a virtual wiki with no topics, which getInt() returns as zero
+			return (rs.next()) ? rs.getInt("topic_id") : 0;
+		} finally {
+			DatabaseConnection.closeConnection(conn, stmt, rs);
+		}
+	}
+
+	/**
+	 *
+	 */
+	public List<Topic> lookupTopicsByPageName(int virtualWikiId, String virtualWikiName, List<String> pageNames) throws SQLException {
+		List<Topic> results = new ArrayList<Topic>();
+		if (pageNames.isEmpty()) {
+			return results;
+		}
+		Connection conn = null;
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			conn = DatabaseConnection.getConnection();
+			// limit the size of the "in" clause since some databases restrict the number
+			// of values that can be used
+			for (int start = 0; start < pageNames.size(); start += MAX_IN_CLAUSE_VALUES) {
+				List<String> batch = pageNames.subList(start, Math.min(start + MAX_IN_CLAUSE_VALUES, pageNames.size()));
+				String sql = this.formatStatement(STATEMENT_SELECT_TOPIC_NAMES_BY_PAGE_NAME, new Object[] {StringUtils.repeat("?", ", ", batch.size())});
+				stmt = conn.prepareStatement(sql);
+				int index = 1;
+				stmt.setInt(index++, virtualWikiId);
+				for (String pageName : batch) {
+					stmt.setString(index++, pageName.toLowerCase());
+				}
+				rs = stmt.executeQuery();
+				while (rs.next()) {
+					results.add(new Topic(virtualWikiName, Namespace.namespace(rs.getInt("namespace_id")), rs.getString("page_name")));
+				}
+				DatabaseConnection.closeResultSet(rs);
+				DatabaseConnection.closeStatement(stmt);
+				stmt = null;
+				rs = null;
+			}
+			return results;
+		} finally {
+			DatabaseConnection.closeConnection(conn, stmt, rs);
+		}
+	}
+
 	/**
 	 *
 	 */
@@ -2726,7 +3329,124 @@ public class AnsiQueryHandler implements QueryHandler {
 			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_VERSION);
 			stmt.setInt(1, topicVersionId);
 			rs = stmt.executeQuery();
-			return (rs.next()) ? this.initTopicVersion(rs) : null;
+			return (rs.next()) ? this.initTopicVersion(rs, conn) : null;
+		} finally {
+			// close only the statement and result set - leave the connection open for further use
+			DatabaseConnection.closeConnection(null, stmt, rs);
+		}
+	}
+
+	/**
+	 * Return the stored form of the topic version content, which may be
+	 * compressed, or <code>null</code> if the topic version does not exist.
+	 */
+	String lookupTopicVersionContent(int topicVersionId, Connection conn) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_VERSION_CONTENT);
+			stmt.setInt(1, topicVersionId);
+			rs = stmt.executeQuery();
+			if (!rs.next()) {
+				return null;
+			}
+			// Oracle converts empty strings to null
+			String stored = rs.getString("version_content");
+			return (stored == null) ? "" : stored;
+		} finally {
+			// close only the statement and result set - leave the connection open for further use
+			DatabaseConnection.closeConnection(null, stmt, rs);
+		}
+	}
+
+	/**
+	 *
+	 */
+	public int lookupTopicVersionCount(int topicId, Connection conn) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_VERSION_COUNT);
+			stmt.setInt(1, topicId);
+			rs = stmt.executeQuery();
+			return (rs.next()) ? rs.getInt("version_count") : 0;
+		} finally {
+			// close only the statement and result set - leave the connection open for further use
+			DatabaseConnection.closeConnection(null, stmt, rs);
+		}
+	}
+
+	/**
+	 *
+	 */
+	public TopicVersionCursor lookupTopicVersionCursor(int topicId, int maxVersions, Connection conn) throws SQLException {
+		if (maxVersions <= 0) {
+			// no versions can be returned, so do not query the database
+			return new TopicVersionCursor(this, conn, null, null);
+		}
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			// find the oldest version to export before opening the cursor so that
+			// older versions are never read from the database.
+			int skip = 0;
+			Timestamp seekDate = null;
+			int seekId = 0;
+			if (this.supportsKeysetPagination()) {
+				stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_VERSION_EXPORT_START);
+				stmt.setInt(1, topicId);
+				stmt.setInt(2, maxVersions - 1);
+				rs = stmt.executeQuery();
+				if (rs.next()) {
+					seekDate = rs.getTimestamp("edit_date");
+					seekId = rs.getInt("topic_version_id");
+				}
+				DatabaseConnection.closeConnection(null, stmt, rs);
+			} else {
+				skip = this.lookupTopicVersionCount(topicId, conn) - maxVersions;
+			}
+			// some drivers (such as PostgreSQL) only fetch rows incrementally when
+			// auto-commit is disabled; the cursor restores it when closed.
+			conn.setAutoCommit(false);
+			if (seekDate != null) {
+				stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_VERSION_EXPORT_KEYSET, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				stmt.setFetchSize(TopicVersionCursor.FETCH_SIZE);
+				stmt.setInt(1, topicId);
+				stmt.setTimestamp(2, seekDate);
+				stmt.setTimestamp(3, seekDate);
+				stmt.setInt(4, seekId);
+			} else {
+				stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_VERSION_EXPORT, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				stmt.setFetchSize(TopicVersionCursor.FETCH_SIZE);
+				stmt.setInt(1, topicId);
+			}
+			rs = stmt.executeQuery();
+			// databases without keyset support read and discard the oldest versions
+			for (int i = 0; i < skip && rs.next(); i++) {
+				// nothing to do
+			}
+			return new TopicVersionCursor(this, conn, stmt, rs);
+		} catch (SQLException e) {
+			DatabaseConnection.closeConnection(null, stmt, rs);
+			throw e;
+		}
+	}
+
+	/**
+	 *
+	 */
+	private List<Integer> lookupTopicVersionIds(int topicId, Connection conn) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = conn.prepareStatement(STATEMENT_SELECT_TOPIC_VERSION_IDS);
+			stmt.setInt(1, topicId);
+			rs = stmt.executeQuery();
+			List<Integer> results = new ArrayList<Integer>();
+			while (rs.next()) {
+				results.add(rs.getInt("topic_version_id"));
+			}
+			return results;
 		} finally {
 			// close only the statement and result set - leave the connection open for further use
 			DatabaseConnection.closeConnection(null, stmt, rs);
@@ -2802,7 +3522,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = conn.prepareStatement(STATEMENT_SELECT_WIKI_FILE_COUNT);
 			stmt.setInt(1, virtualWikiId);
 			rs = stmt.executeQuery();
@@ -2999,7 +3719,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = conn.prepareStatement(STATEMENT_SELECT_WIKI_USER_COUNT);
 			rs = stmt.executeQuery();
 			return (rs.next()) ? rs.getInt("user_count") : 0;
@@ -3034,7 +3754,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.lookupWikiUsersStatement(conn, pagination);
 			rs = stmt.executeQuery();
 			List<String> results = new ArrayList<String>();
@@ -3066,9 +3786,7 @@ public class AnsiQueryHandler implements QueryHandler {
 	 * @throws SQLException Thrown if any error occurs during method execution.
 	 */
 	private int nextGroupMemberId(Connection conn) throws SQLException {
-		int nextId = DatabaseConnection.executeSequenceQuery(STATEMENT_SELECT_GROUP_MEMBERS_SEQUENCE, "id", conn);
-		// note - this returns the last id in the system, so add one
-		return nextId + 1;
+		return this.groupMemberIdAllocator.nextId(conn);
 	}
 
 	/**
@@ -3080,9 +3798,7 @@ public class AnsiQueryHandler implements QueryHandler {
 	 * @throws SQLException Thrown if any error occurs during method execution.
 	 */
 	private int nextTopicId(Connection conn) throws SQLException {
-		int nextId = DatabaseConnection.executeSequenceQuery(STATEMENT_SELECT_TOPIC_SEQUENCE, "topic_id", conn);
-		// note - this returns the last id in the system, so add one
-		return nextId + 1;
+		return this.topicIdAllocator.nextId(conn);
 	}
 
 	/**
@@ -3094,9 +3810,7 @@ public class AnsiQueryHandler implements QueryHandler {
 	 * @throws SQLException Thrown if any error occurs during method execution.
 	 */
 	public int nextTopicVersionId(Connection conn) throws SQLException {
-		int nextId = DatabaseConnection.executeSequenceQuery(STATEMENT_SELECT_TOPIC_VERSION_SEQUENCE, "topic_version_id", conn);
-		// note - this returns the last id in the system, so add one
-		return nextId + 1;
+		return this.topicVersionIdAllocator.nextId(conn);
 	}
 
 	/**
@@ -3108,9 +3822,7 @@ public class AnsiQueryHandler implements QueryHandler {
 	 * @throws SQLException Thrown if any error occurs during method execution.
 	 */
 	private int nextUserBlockId(Connection conn) throws SQLException {
-		int nextId = DatabaseConnection.executeSequenceQuery(STATEMENT_SELECT_USER_BLOCK_SEQUENCE, "user_block_id", conn);
-		// note - this returns the last id in the system, so add one
-		return nextId + 1;
+		return this.userBlockIdAllocator.nextId(conn);
 	}
 
 	/**
@@ -3122,9 +3834,7 @@ public class AnsiQueryHandler implements QueryHandler {
 	 * @throws SQLException Thrown if any error occurs during method execution.
 	 */
 	private int nextVirtualWikiId(Connection conn) throws SQLException {
-		int nextId = DatabaseConnection.executeSequenceQuery(STATEMENT_SELECT_VIRTUAL_WIKI_SEQUENCE, "virtual_wiki_id", conn);
-		// note - this returns the last id in the system, so add one
-		return nextId + 1;
+		return this.virtualWikiIdAllocator.nextId(conn);
 	}
 
 	/**
@@ -3136,9 +3846,7 @@ public class AnsiQueryHandler implements QueryHandler {
 	 * @throws SQLException Thrown if any error occurs during method execution.
 	 */
 	private int nextWikiFileId(Connection conn) throws SQLException {
-		int nextId = DatabaseConnection.executeSequenceQuery(STATEMENT_SELECT_WIKI_FILE_SEQUENCE, "file_id", conn);
-		// note - this returns the last id in the system, so add one
-		return nextId + 1;
+		return this.wikiFileIdAllocator.nextId(conn);
 	}
 
 	/**
@@ -3152,9 +3860,7 @@ public class AnsiQueryHandler implements QueryHandler {
 	 * @throws SQLException Thrown if any error occurs during method execution.
 	 */
 	private int nextWikiFileVersionId(Connection conn) throws SQLException {
-		int nextId = DatabaseConnection.executeSequenceQuery(STATEMENT_SELECT_WIKI_FILE_VERSION_SEQUENCE, "file_version_id", conn);
-		// note - this returns the last id in the system, so add one
-		return nextId + 1;
+		return this.wikiFileVersionIdAllocator.nextId(conn);
 	}
 
 	/**
@@ -3166,9 +3872,7 @@ public class AnsiQueryHandler implements QueryHandler {
 	 * @throws SQLException Thrown if any error occurs during method execution.
 	 */
 	private int nextWikiGroupId(Connection conn) throws SQLException {
-		int nextId = DatabaseConnection.executeSequenceQuery(STATEMENT_SELECT_GROUP_SEQUENCE, "group_id", conn);
-		// note - this returns the last id in the system, so add one
-		return nextId + 1;
+		return this.wikiGroupIdAllocator.nextId(conn);
 	}
 
 	/**
@@ -3180,9 +3884,18 @@ public class AnsiQueryHandler implements QueryHandler {
 	 * @throws SQLException Thrown if any error occurs during method execution.
 	 */
 	private int nextWikiUserId(Connection conn) throws SQLException {
-		int nextId = DatabaseConnection.executeSequenceQuery(STATEMENT_SELECT_WIKI_USER_SEQUENCE, "wiki_user_id", conn);
-		// note - this returns the last id in the system, so add one
-		return nextId + 1;
+		return this.wikiUserIdAllocator.nextId(conn);
+	}
+
+	/**
+	 * Indicate whether the queries used to retrieve primary key values return
+	 * the next value of a native database sequence rather than the largest ID
+	 * currently in use.
+	 *
+	 * @return <code>true</code> if the sequence queries use native sequences.
+	 */
+	protected boolean nativeSequences() {
+		return false;
 	}
 
 	/**
@@ -3342,7 +4055,7 @@ public class AnsiQueryHandler implements QueryHandler {
 		}
 		stmt.setInt(index++, topicVersion.getTopicId());
 		stmt.setString(index++, topicVersion.getEditComment());
-		stmt.setString(index++, topicVersion.getVersionContent());
+		stmt.setString(index++, TopicVersionCodec.encodePlain(topicVersion.getVersionContent()));
 		if (topicVersion.getAuthorId() == null) {
 			stmt.setNull(index++, Types.INTEGER);
 		} else {
@@ -3360,6 +4073,19 @@ public class AnsiQueryHandler implements QueryHandler {
 		stmt.setString(index++, topicVersion.getVersionParamString());
 	}
 
+	/**
+	 * Store any deltas created against the specified base version as
+	 * snapshots so that the base version can be changed or removed.
+	 */
+	private void rebaseTopicVersionDeltas(int topicId, int baseId, Connection conn) throws SQLException {
+		for (int topicVersionId : this.lookupTopicVersionIds(topicId, conn)) {
+			String stored = this.lookupTopicVersionContent(topicVersionId, conn);
+			if (TopicVersionCodec.isDelta(stored) && TopicVersionCodec.deltaBaseId(stored) == baseId) {
+				this.updateTopicVersionContent(topicVersionId, TopicVersionCodec.encodeSnapshot(this.decodeVersionContent(stored, conn)), conn);
+			}
+		}
+	}
+
 	/**
 	 *
 	 */
@@ -3376,6 +4102,42 @@ public class AnsiQueryHandler implements QueryHandler {
 		}
 	}
 
+	/**
+	 * Discard all IDs reserved by the ID allocators.
+	 */
+	private void resetIdAllocators() {
+		this.groupMemberIdAllocator.reset();
+		this.topicIdAllocator.reset();
+		this.topicVersionIdAllocator.reset();
+		this.userBlockIdAllocator.reset();
+		this.virtualWikiIdAllocator.reset();
+		this.wikiFileIdAllocator.reset();
+		this.wikiFileVersionIdAllocator.reset();
+		this.wikiGroupIdAllocator.reset();
+		this.wikiUserIdAllocator.reset();
+	}
+
+	/**
+	 * Indicate whether the database supports the keyset statements used to
+	 * seek directly to a page of topic history, recent changes or user
+	 * contributions.  Databases that use custom pagination syntax return
+	 * <code>false</code>, in which case the offset of a keyset pagination
+	 * object is used instead.
+	 *
+	 * @return <code>true</code> if keyset statements can be executed.
+	 */
+	protected boolean supportsKeysetPagination() {
+		return true;
+	}
+
+	/**
+	 * Keyset statements only support newest-first ordering, so ascending
+	 * requests continue to use offset pagination.
+	 */
+	private boolean useKeysetPagination(Pagination pagination, boolean descending) {
+		return (descending && pagination.isKeyset() && this.supportsKeysetPagination());
+	}
+
 	/**
 	 *
 	 */
@@ -3484,6 +4246,47 @@ public class AnsiQueryHandler implements QueryHandler {
 		}
 	}
 	
+	/**
+	 *
+	 */
+	public boolean updateSequences(Connection conn) throws SQLException {
+		if (!this.nativeSequences()) {
+			return false;
+		}
+		String[][] keys = {
+			{"jam_group", "group_id"},
+			{"jam_group_members", "id"},
+			{"jam_topic", "topic_id"},
+			{"jam_topic_version", "topic_version_id"},
+			{"jam_user_block", "user_block_id"},
+			{"jam_virtual_wiki", "virtual_wiki_id"},
+			{"jam_file", "file_id"},
+			{"jam_file_version", "file_version_id"},
+			{"jam_wiki_user", "wiki_user_id"}
+		};
+		for (String[] key : keys) {
+			Object[] params = {key[0], key[1]};
+			int maxId = DatabaseConnection.executeSequenceQuery(this.formatStatement(this.props.getProperty("UPGRADE_201_SELECT_MAX_ID"), params), "max_id", conn);
+			params = new Object[] {this.sequenceName(key[0], key[1]), Integer.toString(maxId + 1)};
+			DatabaseConnection.executeUpdate(this.formatStatement(this.props.getProperty("UPGRADE_201_RESTART_SEQUENCE"), params), conn);
+		}
+		this.resetIdAllocators();
+		return true;
+	}
+
+	/**
+	 * Return the name of the native sequence used to allocate primary keys
+	 * for a table.  This method is only used for databases that allocate IDs
+	 * from native sequences.
+	 *
+	 * @param table The name of the table.
+	 * @param column The name of the primary key column.
+	 * @return The name of the sequence used to allocate IDs for the table.
+	 */
+	protected String sequenceName(String table, String column) {
+		return table + "_seq";
+	}
+
 	/**
 	 *
 	 */
@@ -3537,12 +4340,22 @@ public class AnsiQueryHandler implements QueryHandler {
 	 *
 	 */
 	public void updateTopicVersion(TopicVersion topicVersion, Connection conn) throws SQLException {
+		// keep compressed content as-is unless the content itself has changed
+		String versionContent = TopicVersionCodec.encodePlain(topicVersion.getVersionContent());
+		String stored = this.lookupTopicVersionContent(topicVersion.getTopicVersionId(), conn);
+		if (TopicVersionCodec.isEncoded(stored)) {
+			if (topicVersion.getVersionContent().equals(this.decodeVersionContent(stored, conn))) {
+				versionContent = stored;
+			} else if (TopicVersionCodec.isSnapshot(stored)) {
+				this.rebaseTopicVersionDeltas(topicVersion.getTopicId(), topicVersion.getTopicVersionId(), conn);
+			}
+		}
 		PreparedStatement stmt = null;
 		try {
 			stmt = conn.prepareStatement(STATEMENT_UPDATE_TOPIC_VERSION);
 			stmt.setInt(1, topicVersion.getTopicId());
 			stmt.setString(2, topicVersion.getEditComment());
-			stmt.setString(3, topicVersion.getVersionContent());
+			stmt.setString(3, versionContent);
 			if (topicVersion.getAuthorId() == null) {
 				stmt.setNull(4, Types.INTEGER);
 			} else {
@@ -3565,6 +4378,45 @@ public class AnsiQueryHandler implements QueryHandler {
 		}
 	}
 
+	/**
+	 *
+	 */
+	private void updateTopicVersionContent(int topicVersionId, String stored, Connection conn) throws SQLException {
+		PreparedStatement stmt = null;
+		try {
+			stmt = conn.prepareStatement(STATEMENT_UPDATE_TOPIC_VERSION_CONTENT);
+			stmt.setString(1, stored);
+			stmt.setInt(2, topicVersionId);
+			stmt.executeUpdate();
+		} finally {
+			DatabaseConnection.closeStatement(stmt);
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void updateTopicVersionPreviousIds(List<TopicVersion> topicVersions, Connection conn) throws SQLException {
+		PreparedStatement stmt = null;
+		try {
+			stmt = conn.prepareStatement(STATEMENT_UPDATE_TOPIC_VERSION_PREVIOUS_VERSION_ID);
+			boolean hasBatchData = false;
+			for (TopicVersion topicVersion : topicVersions) {
+				if (topicVersion.getPreviousTopicVersionId() != null) {
+					stmt.setInt(1, topicVersion.getPreviousTopicVersionId());
+					stmt.setInt(2, topicVersion.getTopicVersionId());
+					stmt.addBatch();
+					hasBatchData = true;
+				}
+			}
+			if (hasBatchData) {
+				stmt.executeBatch();
+			}
+		} finally {
+			DatabaseConnection.closeStatement(stmt);
+		}
+	}
+
 	/**
 	 *
 	 */
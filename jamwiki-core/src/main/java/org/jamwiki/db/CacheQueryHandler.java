@@ -74,7 +74,7 @@ public class CacheQueryHandler extends AnsiQueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.getCategoriesStatement(conn, virtualWikiId, virtualWikiName, pagination);
 			rs = stmt.executeQuery();
 			List<Category> results = new ArrayList<Category>();
@@ -113,7 +113,7 @@ public class CacheQueryHandler extends AnsiQueryHandler {
 		ResultSet rs = null;
 		List<LogItem> logItems = new ArrayList<LogItem>();
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.getLogItemsStatement(conn, virtualWikiId, virtualWikiName, logType, pagination, descending);
 			// FIXME - sort order ignored
 			rs = stmt.executeQuery();
@@ -152,7 +152,7 @@ public class CacheQueryHandler extends AnsiQueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.getRecentChangesStatement(conn, virtualWiki, pagination, descending);
 			// FIXME - sort order ignored
 			rs = stmt.executeQuery();
@@ -185,7 +185,7 @@ public class CacheQueryHandler extends AnsiQueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = getTopicHistoryStatement(conn, topicId, pagination, descending, selectDeleted);
 			// FIXME - sort order ignored
 			rs = stmt.executeQuery();
@@ -224,7 +224,7 @@ public class CacheQueryHandler extends AnsiQueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.getTopicsAdminStatement(conn, virtualWikiId, pagination);
 			rs = stmt.executeQuery();
 			List<String> results = new ArrayList<String>();
@@ -256,7 +256,7 @@ public class CacheQueryHandler extends AnsiQueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.getUserContributionsByLoginStatement(conn, virtualWiki, login, pagination, descending);
 			// FIXME - sort order ignored
 			rs = stmt.executeQuery();
@@ -290,7 +290,7 @@ public class CacheQueryHandler extends AnsiQueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.getUserContributionsByUserDisplayStatement(conn, virtualWiki, userDisplay, pagination, descending);
 			// FIXME - sort order ignored
 			rs = stmt.executeQuery();
@@ -347,7 +347,7 @@ public class CacheQueryHandler extends AnsiQueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.getWatchlistStatement(conn, virtualWikiId, userId, pagination);
 			rs = stmt.executeQuery();
 			List<RecentChange> recentChanges = new ArrayList<RecentChange>();
@@ -380,7 +380,7 @@ public class CacheQueryHandler extends AnsiQueryHandler {
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 		try {
-			conn = DatabaseConnection.getConnection();
+			conn = DatabaseConnection.getReadConnection();
 			stmt = this.lookupTopicByTypeStatement(conn, virtualWikiId, topicType1, topicType2, namespaceStart, namespaceEnd, pagination);
 			rs = stmt.executeQuery();
 			Map<Integer, String> results = new LinkedHashMap<Integer, String>();
@@ -422,8 +422,9 @@ public class CacheQueryHandler extends AnsiQueryHandler {
 			stmt.setInt(index++, topicVersion.getTopicId());
 			stmt.setString(index++, topicVersion.getEditComment());
 			//pass the content into a stream to be passed to Caché
-			sr = new StringReader(topicVersion.getVersionContent());
-			stmt.setCharacterStream(index++, sr, topicVersion.getVersionContent().length());
+			String versionContent = TopicVersionCodec.encodePlain(topicVersion.getVersionContent());
+			sr = new StringReader(versionContent);
+			stmt.setCharacterStream(index++, sr, versionContent.length());
 			if (topicVersion.getAuthorId() == null) {
 				stmt.setNull(index++, Types.INTEGER);
 			} else {
@@ -445,4 +446,11 @@ public class CacheQueryHandler extends AnsiQueryHandler {
 			}
 		}
 	}
+
+	/**
+	 * Caché uses custom pagination syntax, so keyset pagination falls back to offsets.
+	 */
+	protected boolean supportsKeysetPagination() {
+		return false;
+	}
 }
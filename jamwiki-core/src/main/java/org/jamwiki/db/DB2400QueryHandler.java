@@ -211,4 +211,11 @@ public class DB2400QueryHandler extends AnsiQueryHandler {
 			DatabaseConnection.closeStatement(stmt);
 		}
 	}
+
+	/**
+	 * DB2/400 uses custom pagination syntax, so keyset pagination falls back to offsets.
+	 */
+	protected boolean supportsKeysetPagination() {
+		return false;
+	}
 }
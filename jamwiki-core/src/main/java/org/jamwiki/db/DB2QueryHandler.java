@@ -172,4 +172,11 @@ public class DB2QueryHandler extends AnsiQueryHandler {
 		stmt.setInt(2, pagination.getEnd());
 		return stmt;
 	}
+
+	/**
+	 * DB2 uses custom pagination syntax, so keyset pagination falls back to offsets.
+	 */
+	protected boolean supportsKeysetPagination() {
+		return false;
+	}
 }
@@ -0,0 +1,96 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks usage of a single database connection pool.  Counters are updated
+ * as connections are retrieved and may be read from any thread.
+ */
+public class DataSourceStatistics {
+
+	/** Number of connections successfully retrieved from the pool. */
+	private final AtomicLong connections = new AtomicLong();
+	/** Number of failed attempts to retrieve a connection from the pool. */
+	private final AtomicLong failures = new AtomicLong();
+	/** Display name of the pool. */
+	private final String name;
+	/** Total time spent waiting for connections from the pool. */
+	private final AtomicLong waitNanos = new AtomicLong();
+
+	/**
+	 *
+	 */
+	public DataSourceStatistics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Return the average time, in milliseconds, spent waiting for a
+	 * connection from the pool.
+	 */
+	public double getAverageWaitMillis() {
+		long connections = this.connections.get();
+		return (connections == 0) ? 0 : (this.waitNanos.get() / 1000000.0) / connections;
+	}
+
+	/**
+	 *
+	 */
+	public long getConnections() {
+		return this.connections.get();
+	}
+
+	/**
+	 *
+	 */
+	public long getFailures() {
+		return this.failures.get();
+	}
+
+	/**
+	 *
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Record that a connection was retrieved from the pool.
+	 *
+	 * @param waitNanos The time spent waiting for the connection.
+	 */
+	public void recordConnection(long waitNanos) {
+		this.connections.incrementAndGet();
+		this.waitNanos.addAndGet(waitNanos);
+	}
+
+	/**
+	 * Record a failed attempt to retrieve a connection from the pool.
+	 */
+	public void recordFailure() {
+		this.failures.incrementAndGet();
+	}
+
+	/**
+	 *
+	 */
+	public String toString() {
+		return this.name + ": connections=" + this.getConnections() + ", failures=" + this.getFailures() + ", average wait=" + this.getAverageWaitMillis() + " ms";
+	}
+}
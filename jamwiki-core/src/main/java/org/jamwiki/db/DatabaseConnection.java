@@ -21,6 +21,9 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
@@ -39,6 +42,8 @@ import org.springframework.transaction.TransactionException;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.TransactionSystemException;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * This class provides methods for retrieving database connections, executing queries,
@@ -47,8 +52,11 @@ import org.springframework.transaction.support.DefaultTransactionDefinition;
 public class DatabaseConnection {
 
 	private static final WikiLogger logger = WikiLogger.getLogger(DatabaseConnection.class.getName());
-	private static DataSource dataSource = null;
-	private static DataSourceTransactionManager transactionManager = null;
+	private static volatile DataSource dataSource = null;
+	private static volatile ReadReplicaRouter replicaRouter = null;
+	/** Identifies the user on whose behalf the current thread reads and writes, used for read replica routing. */
+	private static final ThreadLocal<String> routingKey = new ThreadLocal<String>();
+	private static volatile DataSourceTransactionManager transactionManager = null;
 
 	/**
 	 * This class has only static methods and is never instantiated.
@@ -56,6 +64,26 @@ public class DatabaseConnection {
 	private DatabaseConnection() {
 	}
 
+	/**
+	 * Run a task once the current transaction has committed, or immediately if
+	 * no transaction is active.  The task is not run if the transaction is
+	 * rolled back.  This is used to keep in-memory data consistent with the
+	 * database without exposing uncommitted changes.
+	 *
+	 * @param task The task to run after the commit.
+	 */
+	protected static void afterCommit(final Runnable task) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			task.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			public void afterCommit() {
+				task.run();
+			}
+		});
+	}
+
 	/**
 	 * Utility method for closing a database connection, a statement and a result set.
 	 * This method must ALWAYS be called for any connection retrieved by the
@@ -100,7 +128,7 @@ public class DatabaseConnection {
 		if (conn == null) {
 			return;
 		}
-		DataSourceUtils.releaseConnection(conn, dataSource);
+		DataSourceUtils.releaseConnection(StatementMonitor.unwrap(conn), dataSource);
 	}
 
 	/**
@@ -124,8 +152,13 @@ public class DatabaseConnection {
 			logger.error("Unable to close connection pool", e);
 			throw e;
 		}
+		if (replicaRouter != null) {
+			logger.info("Read replica statistics: " + replicaRouter.getStatistics() + ", sticky reads=" + replicaRouter.getStickyReads());
+			replicaRouter.close();
+		}
 		// clear references to prevent them being reused (& allow garbage collection)
 		dataSource = null;
+		replicaRouter = null;
 		transactionManager = null;
 	}
 
@@ -220,9 +253,64 @@ public class DatabaseConnection {
 	protected static Connection getConnection() throws SQLException {
 		if (dataSource == null) {
 			// DataSource has not yet been created, obtain it now
-			configDataSource();
+			initializeDataSource();
+		}
+		return StatementMonitor.wrap(DataSourceUtils.getConnection(dataSource));
+	}
+
+	/**
+	 * Return a connection for a read that does not need to see uncommitted
+	 * changes.  If read replicas are configured and no transaction is active
+	 * then the connection may come from a replica, otherwise this method is
+	 * equivalent to {@link #getConnection}.  The connection must be closed
+	 * using one of the <code>closeConnection</code> methods.
+	 */
+	protected static Connection getReadConnection() throws SQLException {
+		if (dataSource == null) {
+			// DataSource has not yet been created, obtain it now
+			initializeDataSource();
+		}
+		ReadReplicaRouter router = replicaRouter;
+		if (router == null || TransactionSynchronizationManager.isActualTransactionActive()) {
+			return StatementMonitor.wrap(DataSourceUtils.getConnection(dataSource));
+		}
+		Connection conn = router.getReadConnection(routingKey.get());
+		if (conn != null) {
+			return StatementMonitor.wrap(conn);
+		}
+		long start = System.nanoTime();
+		conn = DataSourceUtils.getConnection(dataSource);
+		router.recordPrimaryRead(System.nanoTime() - start);
+		return StatementMonitor.wrap(conn);
+	}
+
+	/**
+	 * Return connection statistics for the primary database and each read
+	 * replica, or an empty list if no read replicas are configured.
+	 */
+	public static List<DataSourceStatistics> getReplicaStatistics() {
+		ReadReplicaRouter router = replicaRouter;
+		return (router == null) ? Collections.<DataSourceStatistics>emptyList() : router.getStatistics();
+	}
+
+	/**
+	 * Set the key that identifies the user on whose behalf the current thread
+	 * is reading and writing, typically the address of the user making a
+	 * request.  After a thread commits a write, reads made with the same key
+	 * use the primary database rather than a read replica for the number of
+	 * seconds specified by {@link Environment#PROP_DB_REPLICA_STICKY_SECONDS}
+	 * so that users always see their own changes.  Reads made without a key
+	 * always use the primary database.
+	 *
+	 * @param key The routing key for the current thread, or <code>null</code>
+	 *  to clear the key.
+	 */
+	public static void setRoutingKey(String key) {
+		if (key == null) {
+			routingKey.remove();
+		} else {
+			routingKey.set(key);
 		}
-		return DataSourceUtils.getConnection(dataSource);
 	}
 
 	/**
@@ -255,8 +343,61 @@ public class DatabaseConnection {
 				throw new SQLException("Unable to configure JNDI data source with URL " + url + ": " + e.toString());
 			}
 		}
-		dataSource = new LazyConnectionDataSourceProxy(targetDataSource);
+		dataSource = new LazyConnectionDataSourceProxy(StatementMonitor.monitorDataSource(targetDataSource));
 		transactionManager = new DataSourceTransactionManager(targetDataSource);
+		replicaRouter = configReplicaRouter();
+	}
+
+	/**
+	 * Configure read replicas from the comma-separated list of JDBC URLs or
+	 * JNDI names in the Environment.  Replicas use the same driver and
+	 * credentials as the primary database.  A replica that cannot be
+	 * configured is logged and skipped.
+	 *
+	 * @return A router for the configured replicas, or <code>null</code> if no
+	 *  replicas are configured.
+	 */
+	private static ReadReplicaRouter configReplicaRouter() {
+		String[] urls = StringUtils.split(Environment.getValue(Environment.PROP_DB_REPLICA_URLS), ',');
+		if (urls == null || urls.length == 0) {
+			return null;
+		}
+		List<DataSource> replicas = new ArrayList<DataSource>();
+		List<String> names = new ArrayList<String>();
+		for (String url : urls) {
+			url = url.trim();
+			if (url.length() == 0) {
+				continue;
+			}
+			try {
+				if (url.startsWith("jdbc:")) {
+					replicas.add(new LocalDataSource(url, true));
+				} else {
+					Context ctx = new InitialContext();
+					replicas.add((DataSource)ctx.lookup(url));
+				}
+				names.add(url);
+			} catch (SQLException | ClassNotFoundException | NamingException e) {
+				logger.error("Failure while configuring read replica with URL: " + url, e);
+			}
+		}
+		if (replicas.isEmpty()) {
+			return null;
+		}
+		logger.info("Configured " + replicas.size() + " read replica(s)");
+		return new ReadReplicaRouter(replicas, names, Environment.getIntValue(Environment.PROP_DB_REPLICA_STICKY_SECONDS));
+	}
+
+	/**
+	 * Create the DataSource and TransactionManager if they do not already exist.
+	 * Several threads may request a connection before the pool has been created,
+	 * so the check is repeated once the lock is held to avoid one thread closing
+	 * the pool that another thread has just created.
+	 */
+	private synchronized static void initializeDataSource() throws SQLException {
+		if (dataSource == null || transactionManager == null) {
+			configDataSource();
+		}
 	}
 
 	/**
@@ -344,7 +485,7 @@ public class DatabaseConnection {
 	 */
 	protected static TransactionStatus startTransaction(TransactionDefinition definition) throws SQLException {
 		if (transactionManager == null || dataSource == null) {
-			configDataSource(); // this will create both the DataSource and a TransactionManager
+			initializeDataSource(); // this will create both the DataSource and a TransactionManager
 		}
 		return transactionManager.getTransaction(definition);
 	}
@@ -389,5 +530,9 @@ public class DatabaseConnection {
 			return;
 		}
 		transactionManager.commit(status);
+		ReadReplicaRouter router = replicaRouter;
+		if (router != null) {
+			router.recordWrite(routingKey.get());
+		}
 	}
 }
\ No newline at end of file
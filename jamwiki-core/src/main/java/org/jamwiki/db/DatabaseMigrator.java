@@ -0,0 +1,346 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jamwiki.Environment;
+import org.jamwiki.utils.WikiLogger;
+
+/**
+ * Copy the contents of all JAMWiki tables from the current database into a
+ * new database whose tables have already been created.  Each table is read
+ * with a single forward-only query and written using batches of prepared
+ * inserts.  Tables are copied in stages that respect foreign key
+ * dependencies, and the tables within a stage are copied in parallel.
+ */
+public class DatabaseMigrator {
+
+	private static final WikiLogger logger = WikiLogger.getLogger(DatabaseMigrator.class.getName());
+	// tables grouped into stages.  every table referenced by a foreign key is
+	// copied in an earlier stage than the tables that reference it, so the
+	// tables within a stage can be copied at the same time.  elements are table
+	// name and, for tables that reference themselves (such as jam_namespace
+	// referencing main_namespace_id), the column used to order rows so that
+	// referenced rows are copied first.
+	private static final String[][][] TABLE_STAGES = {
+		{
+			{"jam_virtual_wiki", "virtual_wiki_id"},
+			{"jam_users", null},
+			{"jam_namespace", "namespace_id"},
+			{"jam_group", "group_id"},
+			{"jam_role", null},
+			{"jam_interwiki", null},
+			{"jam_configuration", null},
+			{"jam_user_preferences_defaults", null}
+		},
+		{
+			{"jam_wiki_user", "wiki_user_id"},
+			{"jam_namespace_translation", "namespace_id"},
+			{"jam_topic", "topic_id"},
+			{"jam_authorities", null},
+			{"jam_group_authorities", null},
+			{"jam_group_members", "id"}
+		},
+		{
+			{"jam_topic_version", "topic_version_id"},
+			{"jam_file", "file_id"},
+			{"jam_category", null},
+			{"jam_topic_links", null},
+			{"jam_user_block", "user_block_id"},
+			{"jam_watchlist", null},
+			{"jam_user_preferences", null}
+		},
+		{
+			{"jam_file_version", "file_version_id"},
+			{"jam_recent_change", null},
+			{"jam_log", null}
+		},
+		{
+			{"jam_file_data", "file_version_id"}
+		}
+	};
+	private static final ThreadFactory MIGRATION_THREAD_FACTORY = new ThreadFactory() {
+		private final AtomicInteger threadCount = new AtomicInteger();
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "jamwiki-db-migration-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	private final int batchSize;
+	private final String driver;
+	private final int fetchSize;
+	/** Flag indicating whether foreign key checks are disabled in the new database. */
+	private boolean foreignKeyChecksDisabled = false;
+	private final QueryHandler newQueryHandler;
+	private final String password;
+	private final AtomicLong rowsCopied = new AtomicLong();
+	private final int threads;
+	private final String url;
+	private final String userName;
+
+	/**
+	 * Create a migrator for the new database identified by the given connection
+	 * parameters.  Fetch and batch sizes and the number of tables copied in
+	 * parallel are read from the wiki configuration.
+	 */
+	public DatabaseMigrator(QueryHandler newQueryHandler, String driver, String url, String userName, String password) {
+		this.newQueryHandler = newQueryHandler;
+		this.driver = driver;
+		this.url = url;
+		this.userName = userName;
+		this.password = password;
+		this.batchSize = Math.max(1, Environment.getIntValue(Environment.PROP_DB_MIGRATION_BATCH_SIZE));
+		this.fetchSize = Math.max(1, Environment.getIntValue(Environment.PROP_DB_MIGRATION_FETCH_SIZE));
+		this.threads = Math.max(1, Environment.getIntValue(Environment.PROP_DB_MIGRATION_THREADS));
+	}
+
+	/**
+	 * Return the total number of rows copied so far.
+	 */
+	public long getRowsCopied() {
+		return this.rowsCopied.get();
+	}
+
+	/**
+	 * Copy all tables from the current database into the new database.
+	 *
+	 * @param conn A connection to the new database.  This connection is used
+	 *  to disable and re-enable foreign key checks and to set each topic's
+	 *  current version, while tables are copied using separate connections.
+	 * @throws SQLException Thrown if any error occurs while copying data.
+	 */
+	public void migrate(Connection conn) throws SQLException {
+		long start = System.currentTimeMillis();
+		try {
+			this.foreignKeyChecksDisabled = this.newQueryHandler.disableForeignKeyChecks(conn);
+		} catch (SQLException e) {
+			// some databases require additional privileges, in which case rows are
+			// simply copied in dependency order with checks enabled.
+			logger.info("Foreign key checks could not be disabled for the new database, tables will be copied with checks enabled: " + e.getMessage());
+		}
+		ExecutorService workers = Executors.newFixedThreadPool(this.threads, MIGRATION_THREAD_FACTORY);
+		try {
+			for (String[][] stage : TABLE_STAGES) {
+				this.copyStage(stage, workers);
+			}
+			if (!this.foreignKeyChecksDisabled) {
+				// jam_topic.current_version_id references jam_topic_version, which is
+				// copied after jam_topic, so the column is only set once versions exist.
+				this.updateTopicCurrentVersions(conn);
+			}
+		} finally {
+			workers.shutdownNow();
+			if (this.foreignKeyChecksDisabled) {
+				this.newQueryHandler.enableForeignKeyChecks(conn);
+			}
+		}
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		logger.info("Migrated " + this.rowsCopied.get() + " rows in " + (elapsed / 1000.000) + " s. (" + (this.rowsCopied.get() * 1000L / elapsed) + " rows per second)");
+	}
+
+	/**
+	 * Copy all tables in a stage in parallel and wait for every copy to complete.
+	 */
+	private void copyStage(String[][] stage, ExecutorService workers) throws SQLException {
+		List<Future<Long>> copies = new ArrayList<Future<Long>>();
+		for (final String[] tableInfo : stage) {
+			copies.add(workers.submit(new Callable<Long>() {
+				public Long call() throws SQLException {
+					return copyTable(tableInfo[0], tableInfo[1]);
+				}
+			}));
+		}
+		try {
+			for (Future<Long> copy : copies) {
+				copy.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Database migration interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException)e.getCause();
+			}
+			throw new SQLException("Failure while migrating database", e.getCause());
+		} finally {
+			for (Future<Long> copy : copies) {
+				copy.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Copy a single table from the current database to the new database.
+	 *
+	 * @return The number of rows copied.
+	 */
+	private long copyTable(String tableName, String orderColumn) throws SQLException {
+		long start = System.currentTimeMillis();
+		Connection from = null;
+		Statement select = null;
+		ResultSet rs = null;
+		Connection to = null;
+		PreparedStatement insert = null;
+		long rows = 0;
+		try {
+			from = DatabaseConnection.getConnection();
+			// some drivers (such as PostgreSQL) only honor the fetch size when auto-commit is off
+			from.setAutoCommit(false);
+			to = DatabaseConnection.getTestConnection(this.driver, this.url, this.userName, this.password);
+			to.setAutoCommit(false);
+			if (this.foreignKeyChecksDisabled) {
+				// some databases disable checks per connection rather than per database
+				this.newQueryHandler.disableForeignKeyChecks(to);
+			}
+			select = from.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			select.setFetchSize(this.fetchSize);
+			String sql = "SELECT * FROM " + tableName + ((orderColumn != null) ? " ORDER BY " + orderColumn : "");
+			logger.info(sql);
+			rs = select.executeQuery(sql);
+			ResultSetMetaData md = rs.getMetaData();
+			int columnCount = md.getColumnCount();
+			int[] columnTypes = new int[columnCount + 1];
+			// column whose value is left null until all rows have been copied
+			int deferredColumn = 0;
+			StringBuilder columns = new StringBuilder();
+			StringBuilder values = new StringBuilder();
+			for (int k = 1; k <= columnCount; k++) {
+				if (k > 1) {
+					columns.append(',');
+					values.append(',');
+				}
+				columnTypes[k] = md.getColumnType(k);
+				String columnName = md.getColumnLabel(k);
+				if (!this.foreignKeyChecksDisabled && "jam_topic".equals(tableName) && "current_version_id".equalsIgnoreCase(columnName)) {
+					deferredColumn = k;
+				}
+				// special handling for Sybase ASA, which requires the "login" column name to be quoted
+				if (this.newQueryHandler instanceof SybaseASAQueryHandler && "login".equalsIgnoreCase(columnName)) {
+					columnName = "\"" + columnName + "\"";
+				}
+				columns.append(columnName);
+				values.append('?');
+			}
+			insert = to.prepareStatement("INSERT INTO " + tableName + " (" + columns + ") VALUES (" + values + ")");
+			while (rs.next()) {
+				for (int k = 1; k <= columnCount; k++) {
+					Object value = rs.getObject(k);
+					if (value == null || k == deferredColumn) {
+						insert.setNull(k, columnTypes[k]);
+					} else {
+						insert.setObject(k, value);
+					}
+				}
+				insert.addBatch();
+				rows++;
+				if (rows % this.batchSize == 0) {
+					insert.executeBatch();
+					to.commit();
+					this.rowsCopied.addAndGet(this.batchSize);
+				}
+			}
+			if (rows % this.batchSize != 0) {
+				// some drivers (such as HSQL) fail when an empty batch is executed
+				insert.executeBatch();
+				to.commit();
+				this.rowsCopied.addAndGet(rows % this.batchSize);
+			}
+		} finally {
+			DatabaseConnection.closeStatement(insert);
+			if (to != null) {
+				try {
+					to.close();
+				} catch (SQLException e) {}
+			}
+			if (from != null) {
+				try {
+					// the connection is returned to the pool, so restore its default state
+					from.commit();
+					from.setAutoCommit(true);
+				} catch (SQLException e) {}
+			}
+			DatabaseConnection.closeConnection(from, select, rs);
+		}
+		if (logger.isInfoEnabled()) {
+			long elapsed = Math.max(1, System.currentTimeMillis() - start);
+			logger.info("Copied " + rows + " rows from " + tableName + " in " + (elapsed / 1000.000) + " s. (" + (rows * 1000L / elapsed) + " rows per second)");
+		}
+		return rows;
+	}
+
+	/**
+	 * Set jam_topic.current_version_id in the new database, using batches of
+	 * updates.
+	 */
+	private void updateTopicCurrentVersions(Connection conn) throws SQLException {
+		Connection from = null;
+		Statement select = null;
+		ResultSet rs = null;
+		PreparedStatement update = null;
+		boolean autoCommit = conn.getAutoCommit();
+		try {
+			from = DatabaseConnection.getConnection();
+			from.setAutoCommit(false);
+			select = from.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			select.setFetchSize(this.fetchSize);
+			rs = select.executeQuery("SELECT topic_id, current_version_id FROM jam_topic WHERE current_version_id IS NOT NULL");
+			conn.setAutoCommit(false);
+			update = conn.prepareStatement("UPDATE jam_topic SET current_version_id = ? WHERE topic_id = ?");
+			int count = 0;
+			while (rs.next()) {
+				update.setInt(1, rs.getInt("current_version_id"));
+				update.setInt(2, rs.getInt("topic_id"));
+				update.addBatch();
+				if (++count % this.batchSize == 0) {
+					update.executeBatch();
+					conn.commit();
+				}
+			}
+			if (count % this.batchSize != 0) {
+				update.executeBatch();
+				conn.commit();
+			}
+		} finally {
+			DatabaseConnection.closeStatement(update);
+			conn.setAutoCommit(autoCommit);
+			if (from != null) {
+				try {
+					from.commit();
+					from.setAutoCommit(true);
+				} catch (SQLException e) {}
+			}
+			DatabaseConnection.closeConnection(from, select, rs);
+		}
+	}
+}
@@ -105,4 +105,31 @@ public class DatabaseUpgrades {
 		}
 		DatabaseConnection.commit(status);
 	}
+
+	/**
+	 * Perform the required database upgrade steps when upgrading from versions
+	 * older than JAMWiki 2.0.1.
+	 */
+	public static void upgrade201(List<WikiMessage> messages) throws WikiException {
+		TransactionStatus status = null;
+		try {
+			status = DatabaseConnection.startTransaction(getTransactionDefinition());
+			Connection conn = DatabaseConnection.getConnection();
+			// IDs are now allocated directly from native sequences, but older
+			// versions added one to the sequence value (Oracle) or bypassed the
+			// sequence entirely (Postgres), so sequences may lag behind their tables.
+			if (WikiBase.getDataHandler().queryHandler().updateSequences(conn)) {
+				messages.add(new WikiMessage("upgrade.message.db.sequences.updated"));
+			}
+		} catch (DataAccessException e) {
+			DatabaseConnection.rollbackOnException(status, e);
+			logger.error("Database failure during upgrade", e);
+			throw new WikiException(new WikiMessage("upgrade.error.fatal", e.getMessage()));
+		} catch (SQLException e) {
+			DatabaseConnection.rollbackOnException(status, e);
+			logger.error("Database failure during upgrade", e);
+			throw new WikiException(new WikiMessage("upgrade.error.fatal", e.getMessage()));
+		}
+		DatabaseConnection.commit(status);
+	}
 }
@@ -0,0 +1,133 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Allocates primary key values for a single table.  Allocators work in one of
+ * two modes depending on the query used to retrieve ID values:
+ *
+ * <ul>
+ * <li>If the query returns the next value of a native database sequence then
+ * every ID is retrieved from the sequence.</li>
+ * <li>If the query returns the largest ID currently in use (generally a
+ * "select max(id) from table" query) then a block of IDs above that value is
+ * reserved in memory and IDs are issued from the block without further
+ * database queries.  When the block is exhausted the query is run again and
+ * the next block starts above the larger of the new maximum and the last ID
+ * issued, so rows added by other means are skipped at the next block
+ * boundary.  A block size of zero disables reservation and re-runs the query
+ * for every allocation, which is required for tables whose IDs may also be
+ * generated by the database.</li>
+ * </ul>
+ *
+ * Like the JAMWiki caches, reserved blocks assume that a single application
+ * instance writes to the database.  IDs that are allocated but not used, for
+ * example due to a transaction rollback, are not re-issued.
+ */
+public class IdAllocator {
+
+	/** Number of IDs to reserve per block, or zero if IDs should not be reserved. */
+	private final int blockSize;
+	/** The name of the field returned by the sequence query. */
+	private final String field;
+	/** <code>true</code> if the sequence query returns the next value of a native sequence. */
+	private final boolean nativeSequence;
+	/** Query used to retrieve either the next sequence value or the current maximum ID. */
+	private final String sql;
+	/** The last ID in the current reserved block. */
+	private int blockEnd = 0;
+	/** The next ID to issue from the current reserved block, or zero if no block is reserved. */
+	private int nextId = 0;
+
+	/**
+	 * Create an allocator.
+	 *
+	 * @param sql The query used to retrieve either the next sequence value or
+	 *  the current maximum ID.
+	 * @param field The name of the field returned by the query.
+	 * @param nativeSequence <code>true</code> if the query returns the next
+	 *  value of a native database sequence, <code>false</code> if it returns
+	 *  the current maximum ID.
+	 * @param blockSize The number of IDs to reserve in memory per query when
+	 *  the query returns the current maximum ID.
+	 */
+	public IdAllocator(String sql, String field, boolean nativeSequence, int blockSize) {
+		this.sql = sql;
+		this.field = field;
+		this.nativeSequence = nativeSequence;
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Return the next available ID.
+	 *
+	 * @param conn A database connection to use when a database query is
+	 *  required to allocate the ID.
+	 * @return The next available ID.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	public int nextId(Connection conn) throws SQLException {
+		return this.nextIds(1, conn)[0];
+	}
+
+	/**
+	 * Return multiple available IDs, for use when inserting several records
+	 * in a single batch.  IDs allocated from a native sequence may not be
+	 * consecutive.
+	 *
+	 * @param count The number of IDs to allocate.
+	 * @param conn A database connection to use when a database query is
+	 *  required to allocate the IDs.
+	 * @return An array containing the allocated IDs.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	public synchronized int[] nextIds(int count, Connection conn) throws SQLException {
+		int[] ids = new int[count];
+		if (this.nativeSequence) {
+			for (int i = 0; i < count; i++) {
+				ids[i] = DatabaseConnection.executeSequenceQuery(this.sql, this.field, conn);
+			}
+			return ids;
+		}
+		if (this.nextId == 0 || this.nextId + count - 1 > this.blockEnd) {
+			// note - the query returns the last id in the system, so add one
+			int maxId = DatabaseConnection.executeSequenceQuery(this.sql, this.field, conn);
+			this.nextId = Math.max(this.nextId, maxId + 1);
+			this.blockEnd = this.nextId + Math.max(this.blockSize, count) - 1;
+		}
+		for (int i = 0; i < count; i++) {
+			ids[i] = this.nextId++;
+		}
+		if (this.blockSize == 0) {
+			this.reset();
+		}
+		return ids;
+	}
+
+	/**
+	 * Discard any reserved IDs so that the next allocation queries the
+	 * database.  This method should be called if the underlying table is
+	 * re-created.
+	 */
+	public synchronized void reset() {
+		this.nextId = 0;
+		this.blockEnd = 0;
+	}
+}
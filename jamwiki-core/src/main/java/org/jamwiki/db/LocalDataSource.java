@@ -38,14 +38,27 @@ public class LocalDataSource extends BasicDataSource {
 	 * Constructs a new WikiDataSource
 	 */
 	public LocalDataSource() throws SQLException, ClassNotFoundException {
+		this(Environment.getValue(Environment.PROP_DB_URL), false);
+	}
+
+	/**
+	 * Constructs a new WikiDataSource for the specified JDBC URL.  All other
+	 * settings, including the database user and password, are read from the
+	 * Environment.
+	 *
+	 * @param url The JDBC URL of the database.
+	 * @param readOnly Set to <code>true</code> if connections from this data
+	 *  source are only used for reads, such as for a read replica.
+	 */
+	public LocalDataSource(String url, boolean readOnly) throws SQLException, ClassNotFoundException {
 		super();
 		if (!StringUtils.isBlank(Environment.getValue(Environment.PROP_DB_DRIVER))) {
 			ResourceUtil.forName(Environment.getValue(Environment.PROP_DB_DRIVER));
 		}
-		setUrl(Environment.getValue(Environment.PROP_DB_URL));
+		setUrl(url);
 		setUsername(Environment.getValue(Environment.PROP_DB_USERNAME));
 		setPassword(Encryption.getEncryptedProperty(Environment.PROP_DB_PASSWORD, null));
-		setDefaultReadOnly(false);
+		setDefaultReadOnly(readOnly);
 		// AutoCommit should NOT be set to true 
 		// set pool properties
 		setMaxActive(Environment.getIntValue(Environment.PROP_DBCP_MAX_ACTIVE));
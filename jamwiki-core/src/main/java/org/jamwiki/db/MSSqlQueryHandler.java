@@ -38,4 +38,11 @@ public class MSSqlQueryHandler extends AnsiQueryHandler {
 		Properties props = Environment.loadProperties(SQL_PROPERTY_FILE_NAME, defaults);
 		super.init(props);
 	}
+
+	/**
+	 * SQL Server uses custom pagination syntax, so keyset pagination falls back to offsets.
+	 */
+	protected boolean supportsKeysetPagination() {
+		return false;
+	}
 }
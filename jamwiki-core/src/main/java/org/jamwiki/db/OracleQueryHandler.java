@@ -190,6 +190,21 @@ public class OracleQueryHandler extends AnsiQueryHandler {
 		return stmt;
 	}
 
+	/**
+	 * Oracle sequence queries retrieve values from the sequences created by
+	 * STATEMENT_CREATE_SEQUENCES.
+	 */
+	protected boolean nativeSequences() {
+		return true;
+	}
+
+	/**
+	 * Oracle uses custom pagination syntax, so keyset pagination falls back to offsets.
+	 */
+	protected boolean supportsKeysetPagination() {
+		return false;
+	}
+
 	/**
 	 * Override the parent method - Oracle treats empty strings and null the
 	 * same, so this method converts empty strings to " " as a workaround.
@@ -45,4 +45,21 @@ public class PostgresQueryHandler extends AnsiQueryHandler {
 	public boolean autoIncrementPrimaryKeys() {
 		return true;
 	}
+
+	/**
+	 * Postgres sequence queries retrieve values from the sequences created for
+	 * SERIAL primary keys so that manually assigned IDs never collide with
+	 * generated IDs.
+	 */
+	protected boolean nativeSequences() {
+		return true;
+	}
+
+	/**
+	 * Postgres names the sequence created for a SERIAL column after the table
+	 * and column.
+	 */
+	protected String sequenceName(String table, String column) {
+		return table + "_" + column + "_seq";
+	}
 }
\ No newline at end of file
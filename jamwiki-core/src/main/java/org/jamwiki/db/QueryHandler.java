@@ -18,6 +18,7 @@ package org.jamwiki.db;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.Map;
 import org.jamwiki.model.Category;
@@ -93,6 +94,33 @@ public interface QueryHandler {
 	 */
 	boolean autoIncrementPrimaryKeys();
 
+	/**
+	 * Compress the stored content of a topic version, either as a delta
+	 * against an earlier snapshot of the topic or as a snapshot.  The current
+	 * version of a topic is never compressed, and versions that have already
+	 * been compressed are left unchanged.
+	 *
+	 * @param topicVersionId The ID of the topic version to compress.
+	 * @param conn A database connection to use when connecting to the database
+	 *  from this method.
+	 * @return <code>true</code> if the topic version content was compressed.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	boolean compactTopicVersion(int topicVersionId, Connection conn) throws SQLException;
+
+	/**
+	 * Compress the stored content of all versions of a topic other than the
+	 * current version.  Versions that have already been compressed are left
+	 * unchanged.
+	 *
+	 * @param topicId The ID of the topic whose versions are being compressed.
+	 * @param conn A database connection to use when connecting to the database
+	 *  from this method.
+	 * @return The number of topic versions that were compressed.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	int compactTopicVersions(int topicId, Connection conn) throws SQLException;
+
 	/**
 	 * Returns the simplest possible query that can be used to validate
 	 * whether or not a database connection is valid.  Note that the query
@@ -157,6 +185,19 @@ public interface QueryHandler {
 	 */
 	void deleteTopicCategories(int topicId, Connection conn) throws SQLException;
 
+	/**
+	 * Delete specific category records associated with a topic.
+	 *
+	 * @param categoryList A list of category records to delete.  Only the
+	 *  category name is used.
+	 * @param topicId The topic for which category association records are being
+	 *  deleted.
+	 * @param conn A database connection to use when connecting to the database
+	 *  from this method.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	void deleteTopicCategories(List<Category> categoryList, int topicId, Connection conn) throws SQLException;
+
 	/**
 	 * Delete all topic links associated with a topic.
 	 *
@@ -168,11 +209,26 @@ public interface QueryHandler {
 	 */
 	void deleteTopicLinks(int topicId, Connection conn) throws SQLException;
 
+	/**
+	 * Delete specific topic link records associated with a topic.
+	 *
+	 * @param topicLinks A list of topic link records to delete.  These are passed
+	 *  in the form of Topic objects, which need to be populated only with
+	 *  namespace and page name.
+	 * @param topicId The topic for which link association records are being
+	 *  deleted.
+	 * @param conn A database connection to use when connecting to the database
+	 *  from this method.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	void deleteTopicLinks(List<Topic> topicLinks, int topicId, Connection conn) throws SQLException;
+
 	/**
 	 * Delete a topic version record.  This method will fail if there is a
 	 * topic with the version as its current version ID, or if there is
 	 * a topic version with the version as its previous topic version, but
-	 * should update references in all other tables.
+	 * should update references in all other tables.  Any topic versions
+	 * stored as deltas against the deleted version are stored as snapshots.
 	 *
 	 * @param topicVersionId The version record that is being deleted.
 	 * @param previousTopicVersionId If this record was referenced as a
@@ -218,6 +274,21 @@ public interface QueryHandler {
 	 */
 	void deleteWatchlistEntry(int virtualWikiId, String topicName, int userId, Connection conn) throws SQLException;
 
+	/**
+	 * Disable foreign key constraint checks for a connection, if the database
+	 * supports doing so.  This method is used when copying data into a new
+	 * database so that rows can be written without first writing the rows
+	 * that they reference.  On some databases the setting applies to the
+	 * entire database rather than to a single connection, so checks must be
+	 * re-enabled using {@link #enableForeignKeyChecks} once the copy completes.
+	 *
+	 * @param conn The database connection for which checks should be disabled.
+	 * @return <code>true</code> if foreign key checks were disabled, or
+	 *  <code>false</code> if the database does not support disabling them.
+	 * @throws SQLException Thrown if any error occurs during execution.
+	 */
+	boolean disableForeignKeyChecks(Connection conn) throws SQLException;
+
 	/**
 	 * Drop all JAMWiki database objects.  This method drops tables, indexes, and
 	 * any database objects, as well as all data in those objects.  Note that if
@@ -229,6 +300,16 @@ public interface QueryHandler {
 	 */
 	void dropTables(Connection conn);
 
+	/**
+	 * Re-enable foreign key constraint checks that were disabled using
+	 * {@link #disableForeignKeyChecks}.  This method does nothing if the
+	 * database does not support disabling foreign key checks.
+	 *
+	 * @param conn The database connection for which checks should be enabled.
+	 * @throws SQLException Thrown if any error occurs during execution.
+	 */
+	void enableForeignKeyChecks(Connection conn) throws SQLException;
+
 	/**
 	 * This method should be called only during upgrades and provides the capability
 	 * to execute a SQL query from a QueryHandler-specific property file.
@@ -316,7 +397,9 @@ public interface QueryHandler {
 	 * @param virtualWiki The name of the virtual wiki for which results are being
 	 *  retrieved.
 	 * @param pagination A Pagination object that specifies the number of results
-	 *  and starting result offset for the result set to be retrieved.
+	 *  and starting result offset for the result set to be retrieved.  Keyset
+	 *  pagination objects seek past the last result of the previous page when
+	 *  results are sorted newest to oldest.
 	 * @param descending If <code>true</code> then results are sorted newest to
 	 *  oldest.
 	 * @return A list of recent change results for the virtual wiki and pagination,
@@ -408,7 +491,9 @@ public interface QueryHandler {
 	 * @param topicId The id of the topic for which recent changes are being
 	 *  retrieved.
 	 * @param pagination A Pagination object that specifies the number of results
-	 *  and starting result offset for the result set to be retrieved.
+	 *  and starting result offset for the result set to be retrieved.  Keyset
+	 *  pagination objects seek past the last result of the previous page when
+	 *  results are sorted newest to oldest.
 	 * @param descending If <code>true</code> then results are sorted newest to
 	 *  oldest.
 	 * @param selectDeleted Set to <code>true</code> if revisions for deleted
@@ -453,7 +538,9 @@ public interface QueryHandler {
 	 *  are being retrieved.
 	 * @param login The login of the user for whom changes are being retrieved.
 	 * @param pagination A Pagination object that specifies the number of results
-	 *  and starting result offset for the result set to be retrieved.
+	 *  and starting result offset for the result set to be retrieved.  Keyset
+	 *  pagination objects seek past the last result of the previous page when
+	 *  results are sorted newest to oldest.
 	 * @param descending If <code>true</code> then results are sorted newest to
 	 *  oldest.
 	 * @return A list of recent changes corresponding to the user's contributions,
@@ -472,7 +559,9 @@ public interface QueryHandler {
 	 * @param userDisplay The display name of the user, typically the IP address,
 	 *  for whom changes are being retrieved.
 	 * @param pagination A Pagination object that specifies the number of results
-	 *  and starting result offset for the result set to be retrieved.
+	 *  and starting result offset for the result set to be retrieved.  Keyset
+	 *  pagination objects seek past the last result of the previous page when
+	 *  results are sorted newest to oldest.
 	 * @param descending If <code>true</code> then results are sorted newest to
 	 *  oldest.
 	 * @return A list of recent changes corresponding to the user's contributions,
@@ -808,6 +897,20 @@ public interface QueryHandler {
 	 */
 	List<Namespace> lookupNamespaces(Connection conn) throws SQLException;
 
+	/**
+	 * Retrieve the IDs of all topics with a recent change record dated on or
+	 * after a given time.
+	 *
+	 * @param virtualWikiId The virtual wiki id for the topics being queried.
+	 * @param changeDate The earliest change date for recent change records
+	 *  being queried.
+	 * @return A list of IDs for all topics that have changed on or after the
+	 *  specified time.  If no results are found then an empty list is
+	 *  returned.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	List<Integer> lookupRecentChangeTopicIds(int virtualWikiId, Timestamp changeDate) throws SQLException;
+
 	/**
 	 * Retrieve a topic that matches a given name and virtual wiki.
 	 *
@@ -862,6 +965,18 @@ public interface QueryHandler {
 	 */
 	Map<Integer, String> lookupTopicByType(int virtualWikiId, TopicType topicType1, TopicType topicType2, int namespaceStart, int namespaceEnd, Pagination pagination) throws SQLException;
 
+	/**
+	 * Retrieve the category records currently associated with a topic.
+	 *
+	 * @param topicId The ID of the topic whose categories are being retrieved.
+	 * @param conn A database connection to use when connecting to the database
+	 *  from this method.
+	 * @return A list of Category objects populated with the category name and
+	 *  sort key.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	List<Category> lookupTopicCategories(int topicId, Connection conn) throws SQLException;
+
 	/**
 	 * Return a count of all topics, including redirects, comments pages and templates,
 	 * currently available on the Wiki.  This method excludes deleted topics.
@@ -922,6 +1037,91 @@ public interface QueryHandler {
 	 */
 	List<String> lookupTopicLinkOrphans(int virtualWikiId, int namespaceId) throws SQLException;
 
+	/**
+	 * Find the IDs for all topics that link to or transclude a specified topic,
+	 * either directly or through a redirect to the topic.  Because templates are
+	 * recorded as links this method returns all topics whose parsed output may
+	 * change when the specified topic is added, modified or deleted.
+	 *
+	 * @param virtualWikiId The virtual wiki id for the topic being queried.
+	 * @param topic The topic that is the target of all link topics being returned
+	 *  by this method.
+	 * @return A list of topic IDs for all topics that link to the specified
+	 *  topic.  If no results are found then an empty list is returned.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	List<Integer> lookupTopicLinkSources(int virtualWikiId, Topic topic) throws SQLException;
+
+	/**
+	 * Retrieve the link records currently stored for a topic, ie the topics
+	 * that the topic links to.
+	 *
+	 * @param virtualWiki The virtual wiki name for the topic.
+	 * @param topicId The ID of the topic whose links are being retrieved.
+	 * @param conn A database connection to use when connecting to the database
+	 *  from this method.
+	 * @return A list of Topic objects populated only with the namespace and page
+	 *  name of each link target.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	List<Topic> lookupTopicLinkTargets(String virtualWiki, int topicId, Connection conn) throws SQLException;
+
+	/**
+	 * Retrieve all non-deleted topics whose page names match any of a list of
+	 * page names, ignoring case.  This method allows the existence of many topics
+	 * to be determined without a separate query for each topic.
+	 *
+	 * @param virtualWikiId The virtual wiki id for the topics being retrieved.
+	 * @param virtualWikiName The name of the virtual wiki for the topics being
+	 *  retrieved.
+	 * @param pageNames The topic page names (topic names without the namespace)
+	 *  being queried.
+	 * @return A list of Topic objects, with only the virtual wiki, namespace and
+	 *  page name initialized, for all topics that have a page name matching any of
+	 *  the given page names in a case-insensitive manner.  Callers are responsible
+	 *  for filtering the results by namespace and case.  If no results are found
+	 *  then an empty list is returned.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	List<Topic> lookupTopicsByPageName(int virtualWikiId, String virtualWikiName, List<String> pageNames) throws SQLException;
+
+	/**
+	 * Retrieve all non-deleted topics in a virtual wiki with topic IDs in a given
+	 * range, ordered by topic ID.  Reading topics in ID ranges allows all topics
+	 * to be processed in batches without holding a result set open.
+	 *
+	 * @param virtualWikiId The virtual wiki id for the topics being retrieved.
+	 * @param startTopicId All topics returned will have topic IDs greater than
+	 *  this value.
+	 * @param endTopicId All topics returned will have topic IDs less than or
+	 *  equal to this value.
+	 * @return A list of Topic objects, including current topic content, for all
+	 *  non-deleted topics in the ID range.  If no results are found then an
+	 *  empty list is returned.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	List<Topic> lookupTopicsByIdRange(int virtualWikiId, int startTopicId, int endTopicId) throws SQLException;
+
+	/**
+	 * Retrieve the largest topic ID, including deleted topics, for a virtual wiki.
+	 *
+	 * @param virtualWikiId The virtual wiki id for the topics being queried.
+	 * @return The largest topic ID for the virtual wiki, or zero if the virtual
+	 *  wiki has no topics.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	int lookupTopicMaxId(int virtualWikiId) throws SQLException;
+
+	/**
+	 * Build an in-memory directory of all non-deleted topics for a virtual wiki.
+	 *
+	 * @param virtualWikiId The virtual wiki id for the topics being retrieved.
+	 * @return A TopicDirectory containing all non-deleted topics for the virtual
+	 *  wiki.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	TopicDirectory lookupTopicDirectory(int virtualWikiId) throws SQLException;
+
 	/**
 	 * Retrieve a result set containing a specific topic version.
 	 *
@@ -931,6 +1131,35 @@ public interface QueryHandler {
 	 */
 	TopicVersion lookupTopicVersion(int topicVersionId) throws SQLException;
 
+	/**
+	 * Retrieve the number of versions of a topic.
+	 *
+	 * @param topicId The ID of the topic.
+	 * @param conn A database connection to use when connecting to the database
+	 *  from this method.
+	 * @return The number of versions of the topic.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	int lookupTopicVersionCount(int topicId, Connection conn) throws SQLException;
+
+	/**
+	 * Open a forward-only cursor over the most recent versions of a topic,
+	 * sorted chronologically from oldest to newest.  Each version is read from
+	 * the database only when the cursor is advanced.
+	 *
+	 * @param topicId The ID of the topic.
+	 * @param maxVersions The maximum number of versions to return.  If the
+	 *  topic has more versions then the oldest versions are excluded, and if
+	 *  this value is zero or less then the cursor is empty.
+	 * @param conn A database connection to use when connecting to the database
+	 *  from this method.  The connection is used exclusively by the cursor and
+	 *  is closed when the cursor is closed.
+	 * @return A cursor over the versions of the topic.  The cursor must be
+	 *  closed once it is no longer needed.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	TopicVersionCursor lookupTopicVersionCursor(int topicId, int maxVersions, Connection conn) throws SQLException;
+
 	/**
 	 * Retrieve the next topic version ID chronologically for a given topic
 	 * version, or <code>null</code> if there is no next topic version ID.
@@ -1168,6 +1397,19 @@ public interface QueryHandler {
 	 */
 	void updateRole(Role role, Connection conn) throws SQLException;
 
+	/**
+	 * Move each native database sequence used to allocate primary keys past
+	 * the largest ID currently in use by its table.  This method is a no-op for
+	 * databases that do not allocate IDs from native sequences.
+	 *
+	 * @param conn A database connection to use when connecting to the database
+	 *  from this method.
+	 * @return <code>true</code> if sequences were updated, <code>false</code>
+	 *  if the database does not use native sequences.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	boolean updateSequences(Connection conn) throws SQLException;
+
 	/**
 	 * Update a topic record in the database.
 	 *
@@ -1200,6 +1442,19 @@ public interface QueryHandler {
 	 */
 	public void updateTopicVersion(TopicVersion topicVersion, Connection conn) throws SQLException;
 
+	/**
+	 * Update the previous topic version ID of topic version records in the
+	 * database.  This method is used when importing, when topic versions are
+	 * added in batches before their ordering has been established.
+	 *
+	 * @param topicVersions A list of TopicVersion records.  Records that do
+	 *  not have a previous topic version ID are ignored.
+	 * @param conn A database connection to use when connecting to the database
+	 *  from this method.
+	 * @throws SQLException Thrown if any error occurs during method execution.
+	 */
+	public void updateTopicVersionPreviousIds(List<TopicVersion> topicVersions, Connection conn) throws SQLException;
+
 	/**
 	 * Update user authentication credentials.
 	 *
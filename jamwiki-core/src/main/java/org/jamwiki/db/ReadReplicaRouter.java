@@ -0,0 +1,201 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.jamwiki.utils.WikiLogger;
+
+/**
+ * Routes non-transactional reads to a pool of read-only replica data sources.
+ * Replicas are used in round-robin order, and a replica that cannot provide a
+ * connection is skipped.  If no replica is available the caller must use the
+ * primary data source.
+ * <p>
+ * Replicas may lag behind the primary database, so to ensure that users see
+ * their own changes, reads made on behalf of a routing key (typically the
+ * address of the user making a request) are sent to the primary for a
+ * configurable number of seconds after that key last committed a write.
+ * Reads without a routing key are always sent to the primary.
+ */
+public class ReadReplicaRouter {
+
+	private static final WikiLogger logger = WikiLogger.getLogger(ReadReplicaRouter.class.getName());
+	/** Once this many write times are tracked, expired entries are purged on the next write. */
+	private static final int MAX_TRACKED_WRITES = 10000;
+
+	/** Time of the last write for each routing key. */
+	private final Map<String, Long> lastWrites = new ConcurrentHashMap<String, Long>();
+	/** Index of the replica that will be tried first for the next read. */
+	private final AtomicInteger nextReplica = new AtomicInteger();
+	/** Statistics for reads that were routed to the primary. */
+	private final DataSourceStatistics primaryStatistics = new DataSourceStatistics("primary");
+	private final List<DataSource> replicas;
+	private final List<DataSourceStatistics> replicaStatistics;
+	/** Number of reads sent to the primary because the routing key recently wrote. */
+	private final AtomicLong stickyReads = new AtomicLong();
+	/** Length of time after a write that reads for the same key use the primary. */
+	private final long stickyMillis;
+
+	/**
+	 * Create a router.
+	 *
+	 * @param replicas The replica data sources.
+	 * @param names Display names for each replica, used when reporting
+	 *  statistics.
+	 * @param stickySeconds The number of seconds after a write during which
+	 *  reads for the same routing key are sent to the primary.
+	 */
+	public ReadReplicaRouter(List<DataSource> replicas, List<String> names, int stickySeconds) {
+		this.replicas = new ArrayList<DataSource>(replicas);
+		this.replicaStatistics = new ArrayList<DataSourceStatistics>();
+		for (String name : names) {
+			this.replicaStatistics.add(new DataSourceStatistics(name));
+		}
+		this.stickyMillis = stickySeconds * 1000L;
+	}
+
+	/**
+	 * Close any replica connection pools created by JAMWiki.  Container data
+	 * sources obtained via JNDI are not closed.
+	 */
+	public void close() {
+		for (DataSource replica : this.replicas) {
+			if (replica instanceof BasicDataSource) {
+				try {
+					((BasicDataSource)replica).close();
+				} catch (SQLException e) {
+					logger.warn("Unable to close replica connection pool", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Retrieve a connection from a replica for a read made on behalf of the
+	 * specified routing key.
+	 *
+	 * @param key The routing key, or <code>null</code> if the read is not being
+	 *  made on behalf of a specific user.
+	 * @return A replica connection, or <code>null</code> if the read must use
+	 *  the primary, either because the key recently wrote or because no
+	 *  replica could provide a connection.
+	 */
+	public Connection getReadConnection(String key) {
+		if (key == null) {
+			return null;
+		}
+		if (this.isSticky(key)) {
+			this.stickyReads.incrementAndGet();
+			return null;
+		}
+		int start = this.nextReplica.getAndIncrement();
+		for (int i = 0; i < this.replicas.size(); i++) {
+			int index = Math.abs((start + i) % this.replicas.size());
+			DataSourceStatistics statistics = this.replicaStatistics.get(index);
+			long begin = System.nanoTime();
+			try {
+				Connection conn = this.replicas.get(index).getConnection();
+				statistics.recordConnection(System.nanoTime() - begin);
+				return conn;
+			} catch (SQLException e) {
+				statistics.recordFailure();
+				logger.warn("Unable to retrieve a connection from replica " + statistics.getName(), e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Return statistics for the primary followed by statistics for each
+	 * replica.  Primary statistics include only reads that were eligible for
+	 * a replica but were routed to the primary.
+	 */
+	public List<DataSourceStatistics> getStatistics() {
+		List<DataSourceStatistics> statistics = new ArrayList<DataSourceStatistics>();
+		statistics.add(this.primaryStatistics);
+		statistics.addAll(this.replicaStatistics);
+		return Collections.unmodifiableList(statistics);
+	}
+
+	/**
+	 * Return the number of reads that were sent to the primary because the
+	 * routing key had recently written.
+	 */
+	public long getStickyReads() {
+		return this.stickyReads.get();
+	}
+
+	/**
+	 * Determine whether reads for the routing key must use the primary
+	 * because the key recently wrote.
+	 */
+	private boolean isSticky(String key) {
+		Long lastWrite = this.lastWrites.get(key);
+		if (lastWrite == null) {
+			return false;
+		}
+		if (System.currentTimeMillis() - lastWrite < this.stickyMillis) {
+			return true;
+		}
+		this.lastWrites.remove(key, lastWrite);
+		return false;
+	}
+
+	/**
+	 * Record that a read which was eligible for a replica was made using a
+	 * connection from the primary.
+	 *
+	 * @param waitNanos The time spent waiting for the primary connection.
+	 */
+	public void recordPrimaryRead(long waitNanos) {
+		this.primaryStatistics.recordConnection(waitNanos);
+	}
+
+	/**
+	 * Record that the routing key committed a write, so that its reads will
+	 * use the primary until replicas have had time to catch up.
+	 *
+	 * @param key The routing key, or <code>null</code> if the write was not
+	 *  made on behalf of a specific user.
+	 */
+	public void recordWrite(String key) {
+		if (key == null || this.stickyMillis <= 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (this.lastWrites.size() >= MAX_TRACKED_WRITES) {
+			Iterator<Long> iterator = this.lastWrites.values().iterator();
+			while (iterator.hasNext()) {
+				if (now - iterator.next() >= this.stickyMillis) {
+					iterator.remove();
+				}
+			}
+		}
+		this.lastWrites.put(key, now);
+	}
+}
@@ -0,0 +1,366 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jamwiki.model.RecentChange;
+import org.jamwiki.model.TopicVersion;
+import org.jamwiki.model.Watchlist;
+import org.jamwiki.utils.Pagination;
+
+/**
+ * In-memory buffer of the most recent changes for a single virtual wiki.  The
+ * buffer always holds the newest entries from the jam_recent_change table in
+ * the same order as the database (newest change date first, then highest
+ * topic version ID first, then highest log type first), so any page of results that falls within the
+ * buffer can be returned without a query.  Requests that extend past the
+ * oldest buffered change return <code>null</code> and should be read from
+ * the database.
+ *
+ * The buffer also tracks the current version of each recently edited topic so
+ * that watchlists, which show the current version of each watched topic, can
+ * be filtered in memory.  Topics that have not been edited since the buffer was
+ * created are added when a watchlist containing them is read from the
+ * database, along with the names of watched topics that have no watchlist
+ * entry, so that each watchlist only needs to be read from the database once.
+ */
+public class RecentChangeBuffer {
+
+	/** Sort newest changes first, matching the database sort order. */
+	private static final Comparator<RecentChange> NEWEST_FIRST = new Comparator<RecentChange>() {
+		public int compare(RecentChange change1, RecentChange change2) {
+			return RecentChangeBuffer.compare(change2.getChangeDate(), RecentChangeBuffer.versionId(change2), RecentChangeBuffer.logType(change2), change1.getChangeDate(), RecentChangeBuffer.versionId(change1), RecentChangeBuffer.logType(change1));
+		}
+	};
+
+	/** Ring of changes, where <code>changes[newest]</code> is the newest change. */
+	private final RecentChange[] changes;
+	/** Flag indicating that the buffer holds every recent change for the virtual wiki. */
+	private boolean complete;
+	private int newest = 0;
+	private int size = 0;
+	/** Current version of recently edited topics, keyed by topic ID, with the most recently edited topic last. */
+	private final LinkedHashMap<Integer, TopicVersionEntry> topicVersions = new LinkedHashMap<Integer, TopicVersionEntry>();
+	/** Names of watched topics that had no watchlist entry when last read from the database, with the most recently read last. */
+	private final LinkedHashMap<String, Boolean> unlistedTopics = new LinkedHashMap<String, Boolean>();
+
+	/**
+	 * Create a buffer and fill it with the newest recent changes.
+	 *
+	 * @param capacity The maximum number of changes, and of topics, to hold.
+	 * @param initialChanges The newest recent changes for the virtual wiki as
+	 *  retrieved from the database, newest first.  If fewer than
+	 *  <code>capacity</code> changes are provided then the buffer is assumed
+	 *  to hold every recent change.
+	 */
+	public RecentChangeBuffer(int capacity, List<RecentChange> initialChanges) {
+		this.changes = new RecentChange[Math.max(1, capacity)];
+		this.complete = (initialChanges.size() < this.changes.length);
+		for (int i = Math.min(initialChanges.size(), this.changes.length) - 1; i >= 0; i--) {
+			this.addRecentChange(initialChanges.get(i));
+		}
+	}
+
+	/**
+	 * Add a committed recent change to the buffer.  If the buffer is full then
+	 * the oldest change is discarded.
+	 */
+	public synchronized void addRecentChange(RecentChange change) {
+		int position = 0;
+		for (; position < this.size; position++) {
+			RecentChange existing = this.get(position);
+			int comparison = NEWEST_FIRST.compare(change, existing);
+			if (comparison == 0 && RecentChangeBuffer.isSameChange(change, existing)) {
+				// the buffer was loaded after this change was committed
+				return;
+			}
+			if (comparison < 0) {
+				break;
+			}
+		}
+		if (position == this.changes.length) {
+			// older than every change in a full buffer
+			this.complete = false;
+			return;
+		}
+		if (this.size == this.changes.length) {
+			// discard the oldest change
+			this.size--;
+			this.complete = false;
+		}
+		// shift older changes down by one to make room
+		this.newest = (this.newest + 1) % this.changes.length;
+		this.size++;
+		for (int i = 0; i < position; i++) {
+			this.set(i, this.get(i + 1));
+		}
+		this.set(position, change);
+	}
+
+	/**
+	 * Record that a new version of a topic has been committed.
+	 *
+	 * @param change A recent change created from the topic and its new version.
+	 * @param deleted Set to <code>true</code> if the topic is deleted.
+	 */
+	public synchronized void addTopicVersion(RecentChange change, boolean deleted) {
+		// remove and re-add so that the topic becomes the most recently edited
+		this.topicVersions.remove(change.getTopicId());
+		this.topicVersions.put(change.getTopicId(), new TopicVersionEntry(change, deleted));
+		this.unlistedTopics.remove(change.getTopicName());
+		RecentChangeBuffer.trim(this.topicVersions, this.changes.length);
+	}
+
+	/**
+	 * Record the watchlist entries for a watchlist as read from the database,
+	 * so that later requests for the watchlist can be served from the buffer
+	 * even if some of its topics have not been edited recently.  Topics whose
+	 * current version is already in the buffer are left unchanged, since the
+	 * buffered version may be newer than the version that was read.
+	 *
+	 * @param watchlist The watchlist that was read from the database.
+	 * @param watchlistChanges All watchlist entries for the watchlist, as
+	 *  returned by the database.
+	 */
+	public synchronized void addWatchlist(Watchlist watchlist, List<RecentChange> watchlistChanges) {
+		Set<String> trackedTopics = new HashSet<String>();
+		for (TopicVersionEntry entry : this.topicVersions.values()) {
+			trackedTopics.add(entry.change.getTopicName());
+		}
+		for (RecentChange change : watchlistChanges) {
+			if (!this.topicVersions.containsKey(change.getTopicId())) {
+				boolean deleted = (change.getEditType() != null && change.getEditType() == TopicVersion.EDIT_DELETE);
+				this.topicVersions.put(change.getTopicId(), new TopicVersionEntry(change, deleted));
+			}
+			trackedTopics.add(change.getTopicName());
+		}
+		for (String topicName : watchlist.getTopics()) {
+			if (!trackedTopics.contains(topicName)) {
+				this.unlistedTopics.remove(topicName);
+				this.unlistedTopics.put(topicName, Boolean.TRUE);
+			}
+		}
+		RecentChangeBuffer.trim(this.topicVersions, this.changes.length);
+		RecentChangeBuffer.trim(this.unlistedTopics, this.changes.length);
+	}
+
+	/**
+	 * Return the maximum number of changes that the buffer can hold.
+	 */
+	public int capacity() {
+		return this.changes.length;
+	}
+
+	/**
+	 * Return a page of recent changes, newest first, or <code>null</code> if
+	 * the page extends past the oldest change in the buffer.
+	 *
+	 * @param pagination The offset or cursor and number of results to return.
+	 */
+	public synchronized List<RecentChange> getRecentChanges(Pagination pagination) {
+		int start = pagination.getOffset();
+		if (pagination.isKeyset()) {
+			for (start = 0; start < this.size; start++) {
+				RecentChange change = this.get(start);
+				if (RecentChangeBuffer.compare(change.getChangeDate(), RecentChangeBuffer.versionId(change), RecentChangeBuffer.logType(change), pagination.getSeekDate(), pagination.getSeekId(), pagination.getSeekType()) < 0) {
+					break;
+				}
+			}
+		}
+		int end = start + pagination.getNumResults();
+		if (end > this.size && !this.complete) {
+			return null;
+		}
+		List<RecentChange> results = new ArrayList<RecentChange>();
+		for (int i = start; i < Math.min(end, this.size); i++) {
+			results.add(this.get(i));
+		}
+		return results;
+	}
+
+	/**
+	 * Return a page of the current versions of the topics in a watchlist, newest
+	 * first, or <code>null</code> if the page may include watched topics whose
+	 * current version is not in the buffer.
+	 *
+	 * @param watchlist The watchlist whose topics are being retrieved.
+	 * @param pagination The offset and number of results to return.
+	 */
+	public List<RecentChange> getWatchlist(Watchlist watchlist, Pagination pagination) {
+		if (watchlist.getTopics().isEmpty()) {
+			return new ArrayList<RecentChange>();
+		}
+		List<RecentChange> matches = new ArrayList<RecentChange>();
+		// watched topics whose current version is known
+		Set<String> trackedTopics = new HashSet<String>();
+		synchronized (this) {
+			for (String topicName : watchlist.getTopics()) {
+				if (this.unlistedTopics.containsKey(topicName)) {
+					trackedTopics.add(topicName);
+				}
+			}
+			for (TopicVersionEntry entry : this.topicVersions.values()) {
+				if (!watchlist.containsTopic(entry.change.getTopicName())) {
+					continue;
+				}
+				trackedTopics.add(entry.change.getTopicName());
+				// match the database query, which only returns changes by registered
+				// users and omits deleted topics unless the deletion is the current version.
+				if (entry.change.getAuthorId() == null) {
+					continue;
+				}
+				if (entry.deleted && (entry.change.getEditType() == null || entry.change.getEditType() != TopicVersion.EDIT_DELETE)) {
+					continue;
+				}
+				matches.add(entry.change);
+			}
+		}
+		if (matches.size() < pagination.getOffset() + pagination.getNumResults() && trackedTopics.size() < watchlist.getTopics().size()) {
+			// watched topics that are not in the buffer may belong on this page
+			return null;
+		}
+		Collections.sort(matches, NEWEST_FIRST);
+		return Pagination.retrievePaginatedSubset(pagination, matches);
+	}
+
+	/**
+	 * Remove buffered changes for a topic following deletion of the topic's
+	 * recent change records.  As in the database, changes that record the
+	 * deletion of the topic are kept.
+	 */
+	public synchronized void removeTopic(int topicId) {
+		int count = 0;
+		for (int i = 0; i < this.size; i++) {
+			RecentChange change = this.get(i);
+			if (change.getTopicId() == null || change.getTopicId() != topicId || (change.getEditType() != null && change.getEditType() == TopicVersion.EDIT_DELETE)) {
+				this.set(count++, change);
+			}
+		}
+		for (int i = count; i < this.size; i++) {
+			this.set(i, null);
+		}
+		this.size = count;
+	}
+
+	/**
+	 * Return the number of changes in the buffer.
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * Compare two (change date, topic version ID, log type) keys, returning a
+	 * negative value if the first key sorts before the second in ascending order.
+	 */
+	private static int compare(Timestamp changeDate1, int versionId1, int logType1, Timestamp changeDate2, int versionId2, int logType2) {
+		long time1 = (changeDate1 == null) ? 0 : changeDate1.getTime();
+		long time2 = (changeDate2 == null) ? 0 : changeDate2.getTime();
+		if (time1 != time2) {
+			return (time1 < time2) ? -1 : 1;
+		}
+		if (versionId1 != versionId2) {
+			return (versionId1 < versionId2) ? -1 : 1;
+		}
+		return (logType1 < logType2) ? -1 : ((logType1 == logType2) ? 0 : 1);
+	}
+
+	/**
+	 * Return the change at the given position, where zero is the newest change.
+	 */
+	private RecentChange get(int position) {
+		return this.changes[(this.newest - position + this.changes.length) % this.changes.length];
+	}
+
+	/**
+	 * Determine whether two changes with the same date, topic version ID and log
+	 * type are the same record.
+	 */
+	private static boolean isSameChange(RecentChange change1, RecentChange change2) {
+		return (RecentChangeBuffer.equals(change1.getLogType(), change2.getLogType())
+				&& RecentChangeBuffer.equals(change1.getTopicName(), change2.getTopicName())
+				&& RecentChangeBuffer.equals(change1.getAuthorName(), change2.getAuthorName()));
+	}
+
+	/**
+	 *
+	 */
+	private static boolean equals(Object value1, Object value2) {
+		return (value1 == null) ? (value2 == null) : value1.equals(value2);
+	}
+
+	/**
+	 * Discard the oldest entries of a map ordered oldest first until it holds at
+	 * most the given number of entries.
+	 */
+	private static void trim(LinkedHashMap<?, ?> map, int capacity) {
+		Iterator<?> iterator = map.keySet().iterator();
+		for (int i = map.size(); i > capacity; i--) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Set the change at the given position, where zero is the newest change.
+	 */
+	private void set(int position, RecentChange change) {
+		this.changes[(this.newest - position + this.changes.length) % this.changes.length] = change;
+	}
+
+	/**
+	 * Return the log type used when sorting, with topic versions that are not
+	 * log entries sorting as zero.
+	 */
+	private static int logType(RecentChange change) {
+		return (change.getLogType() == null) ? 0 : change.getLogType();
+	}
+
+	/**
+	 * Return the topic version ID used when sorting, with log entries that have
+	 * no topic version sorting as zero.
+	 */
+	private static int versionId(RecentChange change) {
+		return (change.getTopicVersionId() == null) ? 0 : change.getTopicVersionId();
+	}
+
+	/**
+	 *
+	 */
+	private static class TopicVersionEntry {
+
+		private final RecentChange change;
+		private final boolean deleted;
+
+		/**
+		 *
+		 */
+		TopicVersionEntry(RecentChange change, boolean deleted) {
+			this.change = change;
+			this.deleted = deleted;
+		}
+	}
+}
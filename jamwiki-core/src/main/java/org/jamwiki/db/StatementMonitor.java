@@ -0,0 +1,463 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import javax.sql.DataSource;
+import org.apache.commons.lang3.StringUtils;
+import org.jamwiki.Environment;
+import org.jamwiki.utils.WikiLogger;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Collects per-statement execution statistics when
+ * {@link Environment#PROP_DB_STATEMENT_STATISTICS} is enabled.  Connections
+ * returned by {@link DatabaseConnection} are wrapped so that each statement
+ * execution is timed and the rows read from its results are counted, and
+ * statistics are kept for each statement key from the SQL properties file of
+ * the query handler.  Statements that do not come from the properties file
+ * are grouped by the start of their SQL text.
+ * <p>
+ * Statement executions may also be tracked per request using
+ * {@link #beginRequest} and {@link #endRequest}; a statement that is executed
+ * more than {@link Environment#PROP_DB_STATEMENT_REPEAT_THRESHOLD} times
+ * while processing a single request is logged, since this usually indicates
+ * a query that is run once per item in a loop (an "N+1" query pattern).
+ * <p>
+ * Statistics are available from the admin maintenance page and through JMX
+ * using the object name {@link #MBEAN_NAME}.
+ */
+public class StatementMonitor {
+
+	private static final WikiLogger logger = WikiLogger.getLogger(StatementMonitor.class.getName());
+	/** Object name used when registering statistics with the platform MBean server. */
+	public static final String MBEAN_NAME = "org.jamwiki:type=StatementMonitor";
+	/** Name used when reporting connection wait times for the primary database. */
+	private static final String PRIMARY_POOL_NAME = "primary connection pool";
+	/** Number of characters of SQL text used to identify statements without a key. */
+	private static final int UNKNOWN_STATEMENT_KEY_LENGTH = 60;
+
+	/** Connection wait times for the primary database connection pool. */
+	private static volatile DataSourceStatistics connectionStatistics = new DataSourceStatistics(PRIMARY_POOL_NAME);
+	/** The most recent statement formatted by the query handler on each thread and its key. */
+	private static final ThreadLocal<String[]> formattedStatement = new ThreadLocal<String[]>();
+	/** Number of executions of each statement key during the current request. */
+	private static final ThreadLocal<Map<String, Integer>> requestExecutions = new ThreadLocal<Map<String, Integer>>();
+	/** Statement keys from the query handler properties file, keyed by SQL text. */
+	private static final Map<String, String> statementKeys = new ConcurrentHashMap<String, String>();
+	private static final ConcurrentHashMap<String, StatementStatistics> statistics = new ConcurrentHashMap<String, StatementStatistics>();
+
+	/**
+	 * This class has only static methods and is never instantiated.
+	 */
+	private StatementMonitor() {
+	}
+
+	/**
+	 * Start tracking the statements executed by the current thread while it
+	 * processes a request.  This method does nothing if statement statistics
+	 * are disabled.
+	 */
+	public static void beginRequest() {
+		if (isEnabled()) {
+			requestExecutions.set(new HashMap<String, Integer>());
+		}
+	}
+
+	/**
+	 * Stop tracking the statements executed by the current thread and log any
+	 * statement that was executed more often than the configured threshold.
+	 *
+	 * @param description A description of the request, such as its URI, to
+	 *  include in log messages.
+	 */
+	public static void endRequest(String description) {
+		Map<String, Integer> executions = requestExecutions.get();
+		if (executions == null) {
+			return;
+		}
+		requestExecutions.remove();
+		int threshold = Environment.getIntValue(Environment.PROP_DB_STATEMENT_REPEAT_THRESHOLD);
+		if (threshold <= 0) {
+			return;
+		}
+		for (Map.Entry<String, Integer> entry : executions.entrySet()) {
+			if (entry.getValue() > threshold) {
+				statementStatistics(entry.getKey()).recordRepeatedRequest();
+				logger.warn("Statement " + entry.getKey() + " was executed " + entry.getValue() + " times while processing " + description + "; consider retrieving the data with a single query");
+			}
+		}
+	}
+
+	/**
+	 * Return connection wait statistics for the primary database connection
+	 * pool.
+	 */
+	public static DataSourceStatistics getConnectionStatistics() {
+		return connectionStatistics;
+	}
+
+	/**
+	 * Return statistics for every statement executed since statistics were
+	 * last reset, ordered by total execution time with the most expensive
+	 * statement first.
+	 */
+	public static List<StatementStatistics> getStatistics() {
+		List<StatementStatistics> result = new ArrayList<StatementStatistics>(statistics.values());
+		Collections.sort(result, new Comparator<StatementStatistics>() {
+			public int compare(StatementStatistics first, StatementStatistics second) {
+				int result = Double.compare(second.getTotalMillis(), first.getTotalMillis());
+				return (result != 0) ? result : first.getKey().compareTo(second.getKey());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	public static boolean isEnabled() {
+		return Environment.getBooleanValue(Environment.PROP_DB_STATEMENT_STATISTICS);
+	}
+
+	/**
+	 * Wrap a data source so that the time spent waiting for connections is
+	 * recorded while statement statistics are enabled.
+	 */
+	protected static DataSource monitorDataSource(DataSource targetDataSource) {
+		return new DelegatingDataSource(targetDataSource) {
+			public Connection getConnection() throws SQLException {
+				long start = System.nanoTime();
+				try {
+					Connection conn = super.getConnection();
+					recordConnection(System.nanoTime() - start);
+					return conn;
+				} catch (SQLException e) {
+					recordConnectionFailure();
+					throw e;
+				}
+			}
+			public Connection getConnection(String username, String password) throws SQLException {
+				long start = System.nanoTime();
+				try {
+					Connection conn = super.getConnection(username, password);
+					recordConnection(System.nanoTime() - start);
+					return conn;
+				} catch (SQLException e) {
+					recordConnectionFailure();
+					throw e;
+				}
+			}
+		};
+	}
+
+	/**
+	 *
+	 */
+	private static void recordConnection(long waitNanos) {
+		if (isEnabled()) {
+			connectionStatistics.recordConnection(waitNanos);
+		}
+	}
+
+	/**
+	 *
+	 */
+	private static void recordConnectionFailure() {
+		if (isEnabled()) {
+			connectionStatistics.recordFailure();
+		}
+	}
+
+	/**
+	 *
+	 */
+	private static void recordExecution(String key, long nanos, boolean failed) {
+		statementStatistics(key).recordExecution(nanos, failed);
+		Map<String, Integer> executions = requestExecutions.get();
+		if (executions != null) {
+			Integer count = executions.get(key);
+			executions.put(key, (count == null) ? 1 : count + 1);
+		}
+	}
+
+	/**
+	 * Record the SQL text produced by the query handler from a statement in
+	 * its properties file, allowing statistics for the formatted statement to
+	 * be recorded under the original statement key.
+	 *
+	 * @param sql The statement from the properties file.
+	 * @param formattedSql The statement after parameter values were added.
+	 */
+	protected static void registerFormattedStatement(String sql, String formattedSql) {
+		if (formattedSql == null || !isEnabled()) {
+			return;
+		}
+		String key = statementKeys.get(sql.trim());
+		if (key != null) {
+			formattedStatement.set(new String[] {formattedSql.trim(), key});
+		}
+	}
+
+	/**
+	 * Register this class with the platform MBean server.  This method does
+	 * nothing if it has already been registered.
+	 */
+	public static void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if (server.isRegistered(name)) {
+				return;
+			}
+			StatementMonitorMXBean mbean = new StatementMonitorMXBean() {
+				public DataSourceStatistics getConnectionStatistics() {
+					return StatementMonitor.getConnectionStatistics();
+				}
+				public List<StatementStatistics> getStatementStatistics() {
+					return StatementMonitor.getStatistics();
+				}
+				public boolean isEnabled() {
+					return StatementMonitor.isEnabled();
+				}
+				public void reset() {
+					StatementMonitor.reset();
+				}
+			};
+			server.registerMBean(new StandardMBean(mbean, StatementMonitorMXBean.class, true), name);
+		} catch (JMException e) {
+			logger.warn("Unable to register statement statistics with the MBean server", e);
+		}
+	}
+
+	/**
+	 * Register the statement keys from a query handler properties file.  Any
+	 * property whose name starts with "STATEMENT_" is treated as a statement.
+	 */
+	protected static void registerStatements(Properties properties) {
+		for (String key : properties.stringPropertyNames()) {
+			String sql = properties.getProperty(key);
+			if (key.startsWith("STATEMENT_") && !StringUtils.isBlank(sql)) {
+				statementKeys.put(sql.trim(), key);
+			}
+		}
+	}
+
+	/**
+	 * Discard all statistics collected so far.
+	 */
+	public static void reset() {
+		statistics.clear();
+		connectionStatistics = new DataSourceStatistics(PRIMARY_POOL_NAME);
+	}
+
+	/**
+	 * Return the key used to record statistics for the given SQL text.
+	 */
+	private static String statementKey(String sql) {
+		if (sql == null) {
+			return "(batch)";
+		}
+		sql = sql.trim();
+		String key = statementKeys.get(sql);
+		if (key != null) {
+			return key;
+		}
+		String[] formatted = formattedStatement.get();
+		if (formatted != null && formatted[0].equals(sql)) {
+			return formatted[1];
+		}
+		return StringUtils.abbreviate(StringUtils.normalizeSpace(sql), UNKNOWN_STATEMENT_KEY_LENGTH);
+	}
+
+	/**
+	 *
+	 */
+	private static StatementStatistics statementStatistics(String key) {
+		StatementStatistics result = statistics.get(key);
+		if (result == null) {
+			result = new StatementStatistics(key);
+			StatementStatistics existing = statistics.putIfAbsent(key, result);
+			if (existing != null) {
+				result = existing;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return the connection wrapped by {@link #wrap}, or the connection itself
+	 * if it was not wrapped.
+	 */
+	protected static Connection unwrap(Connection conn) {
+		if (conn != null && Proxy.isProxyClass(conn.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(conn);
+			if (handler instanceof MonitoredConnection) {
+				return ((MonitoredConnection)handler).target;
+			}
+		}
+		return conn;
+	}
+
+	/**
+	 * Unregister this class from the platform MBean server.
+	 */
+	public static void unregisterMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			logger.warn("Unable to unregister statement statistics from the MBean server", e);
+		}
+	}
+
+	/**
+	 * Wrap a connection so that statements executed with it are timed.  If
+	 * statement statistics are disabled the connection is returned unchanged.
+	 */
+	protected static Connection wrap(Connection conn) {
+		if (conn == null || !isEnabled()) {
+			return conn;
+		}
+		return (Connection)Proxy.newProxyInstance(StatementMonitor.class.getClassLoader(), new Class<?>[] {Connection.class}, new MonitoredConnection(conn));
+	}
+
+	/**
+	 * Invoke a method on the wrapped object, re-throwing the original exception
+	 * if the method fails.
+	 */
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Wraps a connection so that statements it creates are monitored.
+	 */
+	private static class MonitoredConnection implements InvocationHandler {
+
+		private final Connection target;
+
+		MonitoredConnection(Connection target) {
+			this.target = target;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Object result = StatementMonitor.invoke(this.target, method, args);
+			if (!(result instanceof Statement)) {
+				return result;
+			}
+			String name = method.getName();
+			String key = (name.equals("prepareStatement") || name.equals("prepareCall")) ? statementKey((String)args[0]) : null;
+			return Proxy.newProxyInstance(StatementMonitor.class.getClassLoader(), new Class<?>[] {method.getReturnType()}, new MonitoredStatement((Statement)result, key));
+		}
+	}
+
+	/**
+	 * Counts the rows read from a result set.
+	 */
+	private static class MonitoredResultSet implements InvocationHandler {
+
+		private final StatementStatistics statistics;
+		private final ResultSet target;
+
+		MonitoredResultSet(ResultSet target, StatementStatistics statistics) {
+			this.target = target;
+			this.statistics = statistics;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Object result = StatementMonitor.invoke(this.target, method, args);
+			if (Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+				this.statistics.recordRow();
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Times the execution of a statement.  Prepared statements are identified
+	 * by the key of the SQL used to create them, while plain statements are
+	 * identified by the SQL passed to each execute method.
+	 */
+	private static class MonitoredStatement implements InvocationHandler {
+
+		private final String key;
+		private String lastKey;
+		private final Statement target;
+
+		MonitoredStatement(Statement target, String key) {
+			this.target = target;
+			this.key = key;
+			this.lastKey = key;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (!name.startsWith("execute")) {
+				Object result = StatementMonitor.invoke(this.target, method, args);
+				return (name.equals("getResultSet")) ? this.wrapResultSet(result) : result;
+			}
+			if (this.key == null) {
+				this.lastKey = statementKey((args != null && args.length > 0 && args[0] instanceof String) ? (String)args[0] : null);
+			}
+			long start = System.nanoTime();
+			boolean failed = true;
+			try {
+				Object result = StatementMonitor.invoke(this.target, method, args);
+				failed = false;
+				return this.wrapResultSet(result);
+			} finally {
+				recordExecution(this.lastKey, System.nanoTime() - start, failed);
+			}
+		}
+
+		private Object wrapResultSet(Object result) {
+			if (!(result instanceof ResultSet)) {
+				return result;
+			}
+			MonitoredResultSet handler = new MonitoredResultSet((ResultSet)result, statementStatistics(this.lastKey));
+			return Proxy.newProxyInstance(StatementMonitor.class.getClassLoader(), new Class<?>[] {ResultSet.class}, handler);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.util.List;
+
+/**
+ * Management interface used to expose {@link StatementMonitor} statistics
+ * through JMX.
+ */
+public interface StatementMonitorMXBean {
+
+	/**
+	 * Return connection wait statistics for the primary database connection
+	 * pool.
+	 */
+	DataSourceStatistics getConnectionStatistics();
+
+	/**
+	 * Return statistics for each statement, ordered by total execution time
+	 * with the most expensive statement first.
+	 */
+	List<StatementStatistics> getStatementStatistics();
+
+	/**
+	 * Return <code>true</code> if statement statistics are currently being
+	 * collected.
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Discard all statistics collected so far.
+	 */
+	void reset();
+}
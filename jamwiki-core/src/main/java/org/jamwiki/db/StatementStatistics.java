@@ -0,0 +1,182 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Execution statistics for a single SQL statement, identified by the key of
+ * the statement in the SQL properties file for the configured query handler.
+ * Counters are updated as statements are executed and may be read from any
+ * thread.
+ */
+public class StatementStatistics {
+
+	/** Upper bound, in milliseconds, of each latency histogram bucket except the last. */
+	private static final long[] BUCKET_MILLIS = {1, 5, 25, 100, 500, 2500};
+
+	/** Number of times the statement was executed. */
+	private final AtomicLong executions = new AtomicLong();
+	/** Number of executions that threw an exception. */
+	private final AtomicLong failures = new AtomicLong();
+	/** Number of executions falling in each latency bucket. */
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_MILLIS.length + 1);
+	private final String key;
+	/** Longest single execution. */
+	private final AtomicLong maxNanos = new AtomicLong();
+	/** Number of requests during which the statement was executed repeatedly. */
+	private final AtomicLong repeatedRequests = new AtomicLong();
+	/** Number of rows read from result sets returned by the statement. */
+	private final AtomicLong rows = new AtomicLong();
+	/** Total time spent executing the statement. */
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	/**
+	 *
+	 */
+	public StatementStatistics(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * Return the average execution time, in milliseconds.
+	 */
+	public double getAverageMillis() {
+		long executions = this.executions.get();
+		return (executions == 0) ? 0 : (this.totalNanos.get() / 1000000.0) / executions;
+	}
+
+	/**
+	 *
+	 */
+	public long getExecutions() {
+		return this.executions.get();
+	}
+
+	/**
+	 *
+	 */
+	public long getFailures() {
+		return this.failures.get();
+	}
+
+	/**
+	 * Return the number of executions falling in each latency bucket.  The
+	 * buckets are bounded by the values returned from
+	 * {@link #getHistogramBucketMillis}, with a final bucket for executions
+	 * slower than the largest bound.
+	 */
+	public long[] getHistogram() {
+		long[] result = new long[this.histogram.length()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = this.histogram.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Return the upper bound, in milliseconds, of each latency histogram
+	 * bucket except the last.
+	 */
+	public static long[] getHistogramBucketMillis() {
+		return BUCKET_MILLIS.clone();
+	}
+
+	/**
+	 *
+	 */
+	public String getKey() {
+		return this.key;
+	}
+
+	/**
+	 * Return the longest single execution time, in milliseconds.
+	 */
+	public double getMaxMillis() {
+		return this.maxNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * Return the number of requests during which this statement was executed
+	 * more often than the configured threshold, usually a sign that a query is
+	 * being run once per item in a loop rather than once for all items.
+	 */
+	public long getRepeatedRequests() {
+		return this.repeatedRequests.get();
+	}
+
+	/**
+	 *
+	 */
+	public long getRows() {
+		return this.rows.get();
+	}
+
+	/**
+	 * Return the total time, in milliseconds, spent executing this statement.
+	 */
+	public double getTotalMillis() {
+		return this.totalNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * Record a single execution of the statement.
+	 *
+	 * @param nanos The time spent executing the statement.
+	 * @param failed <code>true</code> if the execution threw an exception.
+	 */
+	public void recordExecution(long nanos, boolean failed) {
+		this.executions.incrementAndGet();
+		if (failed) {
+			this.failures.incrementAndGet();
+		}
+		this.totalNanos.addAndGet(nanos);
+		long max = this.maxNanos.get();
+		while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+			max = this.maxNanos.get();
+		}
+		long millis = nanos / 1000000;
+		int bucket = 0;
+		while (bucket < BUCKET_MILLIS.length && millis >= BUCKET_MILLIS[bucket]) {
+			bucket++;
+		}
+		this.histogram.incrementAndGet(bucket);
+	}
+
+	/**
+	 * Record that the statement was executed repeatedly while processing a
+	 * single request.
+	 */
+	public void recordRepeatedRequest() {
+		this.repeatedRequests.incrementAndGet();
+	}
+
+	/**
+	 * Record that a row was read from a result set returned by the statement.
+	 */
+	public void recordRow() {
+		this.rows.incrementAndGet();
+	}
+
+	/**
+	 *
+	 */
+	public String toString() {
+		return this.key + ": executions=" + this.getExecutions() + ", failures=" + this.getFailures() + ", average=" + this.getAverageMillis() + " ms, max=" + this.getMaxMillis() + " ms, rows=" + this.getRows() + ", repeated requests=" + this.getRepeatedRequests();
+	}
+}
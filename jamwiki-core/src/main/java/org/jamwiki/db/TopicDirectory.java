@@ -0,0 +1,224 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.jamwiki.model.Namespace;
+
+/**
+ * In-memory directory of the page names of all non-deleted topics in a single
+ * virtual wiki.  Unlike the topic name caches the directory is always complete,
+ * so a lookup that does not find a topic can be trusted without querying the
+ * database.
+ *
+ * Page names are stored per namespace in a sorted map ordered
+ * case-insensitively, and lookups search the map without allocating a
+ * lower-case copy of the page name.  A second map records the namespace and
+ * page name of each topic ID so that a topic that is renamed or moved to
+ * another namespace can be found by ID.  Lookups do not lock; updates are
+ * synchronized and take logarithmic time in the number of topics.
+ */
+public class TopicDirectory {
+
+	/** Sort order for page names: case-insensitive, then exact. */
+	private static final Comparator<String> PAGE_NAME_ORDER = new Comparator<String>() {
+		public int compare(String pageName1, String pageName2) {
+			int result = pageName1.compareToIgnoreCase(pageName2);
+			return (result != 0) ? result : pageName1.compareTo(pageName2);
+		}
+	};
+	private final Map<Integer, ConcurrentNavigableMap<String, Integer>> pageNames = new ConcurrentHashMap<Integer, ConcurrentNavigableMap<String, Integer>>();
+	private final Map<Integer, TopicEntry> topicIds = new ConcurrentHashMap<Integer, TopicEntry>();
+
+	/**
+	 * Create an empty topic directory.
+	 */
+	public TopicDirectory() {
+	}
+
+	/**
+	 * Create a topic directory containing the given topics.  The three lists
+	 * must be the same size, and no two topics may share a topic ID or a
+	 * namespace and exact page name.
+	 *
+	 * @param namespaceIds The namespace ID for each topic.
+	 * @param pageNames The page name (topic name without the namespace) for
+	 *  each topic.
+	 * @param topicIds The topic ID for each topic.
+	 */
+	public TopicDirectory(List<Integer> namespaceIds, List<String> pageNames, List<Integer> topicIds) {
+		for (int i = 0; i < topicIds.size(); i++) {
+			this.namespacePageNames(namespaceIds.get(i)).put(pageNames.get(i), topicIds.get(i));
+			this.topicIds.put(topicIds.get(i), new TopicEntry(namespaceIds.get(i), pageNames.get(i)));
+		}
+	}
+
+	/**
+	 * Add a topic to the directory, replacing any existing entry for the same
+	 * topic ID or the same namespace and exact page name.
+	 *
+	 * @param namespaceId The namespace ID for the topic.
+	 * @param pageName The topic page name (topic name without the namespace).
+	 * @param topicId The topic ID.
+	 */
+	public synchronized void addTopic(int namespaceId, String pageName, int topicId) {
+		this.removeTopic(namespaceId, pageName, topicId);
+		this.namespacePageNames(namespaceId).put(pageName, topicId);
+		this.topicIds.put(topicId, new TopicEntry(namespaceId, pageName));
+	}
+
+	/**
+	 * Return the number of topics in the directory.
+	 */
+	public int size() {
+		return this.topicIds.size();
+	}
+
+	/**
+	 * Determine whether any topic exists whose page name matches the given page
+	 * name, ignoring case.
+	 *
+	 * @param namespace The namespace for the topic.
+	 * @param pageName The topic page name (topic name without the namespace).
+	 * @return <code>true</code> if a topic matching the page name in a
+	 *  case-insensitive manner exists.
+	 */
+	public boolean containsPageNameIgnoreCase(Namespace namespace, String pageName) {
+		ConcurrentNavigableMap<String, Integer> names = this.pageNames.get(namespace.getId());
+		return (names != null && TopicDirectory.firstPageNameIgnoreCase(names, pageName) != null);
+	}
+
+	/**
+	 * Return the first page name in sort order matching the given page name
+	 * ignoring case, or <code>null</code> if there is no such page name.
+	 */
+	private static String firstPageNameIgnoreCase(ConcurrentNavigableMap<String, Integer> names, String pageName) {
+		String first = names.ceilingKey(pageName);
+		if (first != null && !first.equalsIgnoreCase(pageName)) {
+			first = null;
+		}
+		// page names that differ only by case and sort before the given page name
+		for (String lower = names.lowerKey(pageName); lower != null && lower.equalsIgnoreCase(pageName); lower = names.lowerKey(lower)) {
+			first = lower;
+		}
+		return first;
+	}
+
+	/**
+	 * Find the page name of the topic matching the given page name.  This
+	 * method returns the same result as the database lookup performed by
+	 * {@link QueryHandler#lookupTopicName}: an exact match if one exists, or
+	 * for namespaces that are not case sensitive and page names that are not
+	 * entirely lower-case, any topic whose page name matches ignoring case.
+	 *
+	 * @param namespace The namespace for the topic.
+	 * @param pageName The topic page name (topic name without the namespace).
+	 * @return The page name of the matching topic, or <code>null</code> if no
+	 *  matching topic exists.
+	 */
+	public String lookupPageName(Namespace namespace, String pageName) {
+		ConcurrentNavigableMap<String, Integer> names = this.pageNames.get(namespace.getId());
+		if (names == null) {
+			return null;
+		}
+		if (names.containsKey(pageName)) {
+			return pageName;
+		}
+		if (!namespace.isCaseSensitive() && !TopicDirectory.isLowerCase(pageName)) {
+			return TopicDirectory.firstPageNameIgnoreCase(names, pageName);
+		}
+		return null;
+	}
+
+	/**
+	 * Return the page names for a namespace, creating an empty map if the
+	 * namespace does not yet have any page names.
+	 */
+	private ConcurrentNavigableMap<String, Integer> namespacePageNames(int namespaceId) {
+		ConcurrentNavigableMap<String, Integer> names = this.pageNames.get(namespaceId);
+		if (names == null) {
+			names = new ConcurrentSkipListMap<String, Integer>(PAGE_NAME_ORDER);
+			this.pageNames.put(namespaceId, names);
+		}
+		return names;
+	}
+
+	/**
+	 * Remove a topic from the directory, along with any other topic with the
+	 * same namespace and exact page name.
+	 *
+	 * @param namespaceId The namespace ID for the topic.
+	 * @param pageName The topic page name (topic name without the namespace).
+	 * @param topicId The topic ID.
+	 */
+	public synchronized void removeTopic(int namespaceId, String pageName, int topicId) {
+		this.removeTopicId(topicId);
+		ConcurrentNavigableMap<String, Integer> names = this.pageNames.get(namespaceId);
+		if (names != null) {
+			Integer existingTopicId = names.get(pageName);
+			if (existingTopicId != null) {
+				this.removeTopicId(existingTopicId);
+			}
+		}
+	}
+
+	/**
+	 * Remove the topic with the given topic ID, if any, from the directory.
+	 */
+	private void removeTopicId(int topicId) {
+		TopicEntry entry = this.topicIds.remove(topicId);
+		if (entry != null) {
+			this.pageNames.get(entry.namespaceId).remove(entry.pageName);
+		}
+	}
+
+	/**
+	 * Determine whether a page name is unchanged by lower-case conversion,
+	 * without creating a lower-case copy of it.
+	 */
+	private static boolean isLowerCase(String pageName) {
+		for (int i = 0; i < pageName.length(); i++) {
+			char c = pageName.charAt(i);
+			if (Character.toLowerCase(c) != c) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Immutable namespace and page name of a single topic.
+	 */
+	private static final class TopicEntry {
+
+		private final int namespaceId;
+		private final String pageName;
+
+		/**
+		 *
+		 */
+		TopicEntry(int namespaceId, String pageName) {
+			this.namespaceId = namespaceId;
+			this.pageName = pageName;
+		}
+	}
+}
@@ -0,0 +1,317 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Encodes and decodes the stored form of topic version content.  Content is
+ * stored in one of three forms:
+ *
+ * <ul>
+ * <li>Plain text, exactly as entered.  New versions are always stored as
+ * plain text so that the current version of a topic can be read directly by
+ * queries that join to the topic version table.</li>
+ * <li>A snapshot, which is the full content compressed with deflate.</li>
+ * <li>A delta, which is a compressed list of instructions for rebuilding the
+ * content from the content of a base version of the same topic.  The base
+ * version ID is stored with the delta.</li>
+ * </ul>
+ *
+ * Encoded content begins with a control character that does not appear in
+ * wiki text; plain text that happens to begin with that character is always
+ * stored as a snapshot so that the stored form is never ambiguous.  Encoded
+ * content is Base64 encoded so that it can be stored in the existing text
+ * column.
+ */
+public class TopicVersionCodec {
+
+	/** Character that marks the start of encoded content. */
+	private static final char MARKER = '\u0001';
+	/** Type character for a compressed snapshot. */
+	private static final char TYPE_SNAPSHOT = 'S';
+	/** Type character for a compressed delta. */
+	private static final char TYPE_DELTA = 'D';
+	/** Delta instruction to copy a range of the base content. */
+	private static final byte OP_COPY = 1;
+	/** Delta instruction to insert new text. */
+	private static final byte OP_INSERT = 2;
+	/** Delta instruction marking the end of the instruction list. */
+	private static final byte OP_END = 0;
+	/** Minimum number of characters of matching lines required to start a new copy instruction. */
+	private static final int MIN_COPY_LENGTH = 24;
+	/** Maximum number of base positions remembered for a repeated line. */
+	private static final int MAX_LINE_CANDIDATES = 16;
+
+	/**
+	 *
+	 */
+	private TopicVersionCodec() {
+	}
+
+	/**
+	 * Apply a delta to the base content.
+	 *
+	 * @param stored The stored delta, as returned by {@link #encodeDelta}.
+	 * @param base The decoded content of the base version.
+	 * @return The decoded content.
+	 * @throws IOException Thrown if the delta is corrupt or does not match the
+	 *  base content.
+	 */
+	public static String applyDelta(String stored, String base) throws IOException {
+		if (!TopicVersionCodec.isDelta(stored)) {
+			throw new IOException("Stored topic version content is not a delta");
+		}
+		DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(Base64.decodeBase64(stored.substring(stored.indexOf(':') + 1)))));
+		if (in.readInt() != base.length()) {
+			throw new IOException("Topic version delta does not match its base content");
+		}
+		StringBuilder result = new StringBuilder(in.readInt());
+		byte op;
+		while ((op = in.readByte()) != OP_END) {
+			if (op == OP_COPY) {
+				int start = in.readInt();
+				int length = in.readInt();
+				result.append(base, start, start + length);
+			} else if (op == OP_INSERT) {
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				result.append(new String(bytes, StandardCharsets.UTF_8));
+			} else {
+				throw new IOException("Invalid topic version delta instruction " + op);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Decode a snapshot or plain text.  Deltas cannot be decoded by this method
+	 * since they require the base content; use {@link #applyDelta} instead.
+	 *
+	 * @param stored The stored content.
+	 * @return The decoded content.
+	 * @throws IOException Thrown if the stored content is corrupt or is a delta.
+	 */
+	public static String decode(String stored) throws IOException {
+		if (!TopicVersionCodec.isEncoded(stored)) {
+			return stored;
+		}
+		if (stored.charAt(1) != TYPE_SNAPSHOT) {
+			throw new IOException("Stored topic version content is not a snapshot");
+		}
+		InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(Base64.decodeBase64(stored.substring(2))));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Return the ID of the base version for a stored delta.
+	 *
+	 * @param stored The stored delta.
+	 * @return The topic version ID of the base version.
+	 */
+	public static int deltaBaseId(String stored) {
+		return Integer.parseInt(stored.substring(2, stored.indexOf(':')));
+	}
+
+	/**
+	 * Encode content as a delta against the content of a base version.
+	 *
+	 * @param content The content to encode.
+	 * @param baseId The topic version ID of the base version.
+	 * @param base The decoded content of the base version.
+	 * @return The encoded delta.
+	 */
+	public static String encodeDelta(String content, int baseId, String base) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+			out.writeInt(base.length());
+			out.writeInt(content.length());
+			List<Integer> baseStarts = TopicVersionCodec.lineStarts(base);
+			List<Integer> contentStarts = TopicVersionCodec.lineStarts(content);
+			Map<String, List<Integer>> baseLines = new HashMap<String, List<Integer>>();
+			for (int i = 0; i < baseStarts.size() - 1; i++) {
+				String line = base.substring(baseStarts.get(i), baseStarts.get(i + 1));
+				List<Integer> candidates = baseLines.get(line);
+				if (candidates == null) {
+					candidates = new ArrayList<Integer>();
+					baseLines.put(line, candidates);
+				}
+				if (candidates.size() < MAX_LINE_CANDIDATES) {
+					candidates.add(i);
+				}
+			}
+			int insertStart = 0;
+			int i = 0;
+			while (i < contentStarts.size() - 1) {
+				// find the base position with the longest run of lines matching the content
+				// starting at the current line.
+				List<Integer> candidates = baseLines.get(content.substring(contentStarts.get(i), contentStarts.get(i + 1)));
+				int bestBaseLine = -1;
+				int bestLines = 0;
+				if (candidates != null) {
+					for (int candidate : candidates) {
+						int lines = TopicVersionCodec.matchingLines(content, contentStarts, i, base, baseStarts, candidate);
+						if (lines > bestLines) {
+							bestLines = lines;
+							bestBaseLine = candidate;
+						}
+					}
+				}
+				int copyLength = (bestBaseLine == -1) ? 0 : baseStarts.get(bestBaseLine + bestLines) - baseStarts.get(bestBaseLine);
+				if (copyLength < MIN_COPY_LENGTH) {
+					// not worth a copy instruction, include the line with the inserted text
+					i++;
+					continue;
+				}
+				TopicVersionCodec.writeInsert(out, content, insertStart, contentStarts.get(i));
+				out.writeByte(OP_COPY);
+				out.writeInt(baseStarts.get(bestBaseLine));
+				out.writeInt(copyLength);
+				i += bestLines;
+				insertStart = contentStarts.get(i);
+			}
+			TopicVersionCodec.writeInsert(out, content, insertStart, content.length());
+			out.writeByte(OP_END);
+			out.close();
+		} catch (IOException e) {
+			// this should never happen when writing to a byte array
+			throw new IllegalStateException("Failure while encoding topic version delta", e);
+		}
+		return new StringBuilder().append(MARKER).append(TYPE_DELTA).append(baseId).append(':').append(Base64.encodeBase64String(bytes.toByteArray())).toString();
+	}
+
+	/**
+	 * Encode content for storage when it is not being compressed.  Content is
+	 * returned unchanged unless it could be mistaken for encoded content.
+	 *
+	 * @param content The content to encode.
+	 * @return The content to store.
+	 */
+	public static String encodePlain(String content) {
+		return (TopicVersionCodec.isEncoded(content)) ? TopicVersionCodec.encodeSnapshot(content) : content;
+	}
+
+	/**
+	 * Encode content as a compressed snapshot.
+	 *
+	 * @param content The content to encode.
+	 * @return The encoded snapshot.
+	 */
+	public static String encodeSnapshot(String content) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			DeflaterOutputStream out = new DeflaterOutputStream(bytes);
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+			out.close();
+		} catch (IOException e) {
+			// this should never happen when writing to a byte array
+			throw new IllegalStateException("Failure while encoding topic version snapshot", e);
+		}
+		return new StringBuilder().append(MARKER).append(TYPE_SNAPSHOT).append(Base64.encodeBase64String(bytes.toByteArray())).toString();
+	}
+
+	/**
+	 * Determine whether stored content is a delta.
+	 */
+	public static boolean isDelta(String stored) {
+		return (TopicVersionCodec.isEncoded(stored) && stored.charAt(1) == TYPE_DELTA);
+	}
+
+	/**
+	 * Determine whether stored content is encoded, or is plain text.
+	 */
+	public static boolean isEncoded(String stored) {
+		return (stored != null && stored.length() > 1 && stored.charAt(0) == MARKER);
+	}
+
+	/**
+	 * Determine whether stored content is a snapshot.
+	 */
+	public static boolean isSnapshot(String stored) {
+		return (TopicVersionCodec.isEncoded(stored) && stored.charAt(1) == TYPE_SNAPSHOT);
+	}
+
+	/**
+	 * Return the start offsets of each line in the text, including a final
+	 * entry for the end of the text.  Line terminators belong to the line
+	 * that they terminate.
+	 */
+	private static List<Integer> lineStarts(String text) {
+		List<Integer> starts = new ArrayList<Integer>();
+		starts.add(0);
+		int pos = 0;
+		while ((pos = text.indexOf('\n', pos)) != -1) {
+			pos++;
+			starts.add(pos);
+		}
+		if (starts.get(starts.size() - 1) != text.length()) {
+			starts.add(text.length());
+		}
+		return starts;
+	}
+
+	/**
+	 * Count the number of consecutive lines that match between the content
+	 * and base starting at the given lines.
+	 */
+	private static int matchingLines(String content, List<Integer> contentStarts, int contentLine, String base, List<Integer> baseStarts, int baseLine) {
+		int lines = 0;
+		while (contentLine + lines < contentStarts.size() - 1 && baseLine + lines < baseStarts.size() - 1) {
+			int contentStart = contentStarts.get(contentLine + lines);
+			int length = contentStarts.get(contentLine + lines + 1) - contentStart;
+			int baseStart = baseStarts.get(baseLine + lines);
+			if (length != baseStarts.get(baseLine + lines + 1) - baseStart || !content.regionMatches(contentStart, base, baseStart, length)) {
+				break;
+			}
+			lines++;
+		}
+		return lines;
+	}
+
+	/**
+	 * Write an insert instruction for a range of the content, if the range is
+	 * not empty.
+	 */
+	private static void writeInsert(DataOutputStream out, String content, int start, int end) throws IOException {
+		if (start >= end) {
+			return;
+		}
+		byte[] bytes = content.substring(start, end).getBytes(StandardCharsets.UTF_8);
+		out.writeByte(OP_INSERT);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.jamwiki.DataAccessException;
+import org.jamwiki.model.TopicVersion;
+import org.jamwiki.utils.WikiLogger;
+
+/**
+ * A forward-only cursor over the versions of a topic, sorted chronologically
+ * from oldest to newest.  The cursor holds an open connection and result set,
+ * and only the current version is held in memory, so topics with very large
+ * histories can be processed without loading the full history.  Cursors must
+ * be closed once they are no longer needed.
+ *
+ * Note that some JDBC drivers read the entire result set into memory unless
+ * configured otherwise; for example, MySQL requires the
+ * <code>useCursorFetch=true</code> connection property.
+ */
+public class TopicVersionCursor implements Closeable {
+
+	private static final WikiLogger logger = WikiLogger.getLogger(TopicVersionCursor.class.getName());
+	/** Number of rows that the JDBC driver is asked to fetch at a time. */
+	static final int FETCH_SIZE = 50;
+
+	private String authorLogin;
+	/** Decoded content of the most recent delta base.  Deltas are created against a snapshot, so consecutive deltas usually share a base. */
+	private String baseContent;
+	/** Separate connection used to retrieve delta base content, since some drivers do not allow other queries on a connection while a result set is being streamed. */
+	private Connection baseConn;
+	private int baseId = -1;
+	private final Connection conn;
+	private final AnsiQueryHandler queryHandler;
+	private final ResultSet rs;
+	private final PreparedStatement stmt;
+
+	/**
+	 * Create a cursor over an open result set.  If the statement and result set
+	 * are <code>null</code> then the cursor is empty.
+	 */
+	TopicVersionCursor(AnsiQueryHandler queryHandler, Connection conn, PreparedStatement stmt, ResultSet rs) {
+		this.queryHandler = queryHandler;
+		this.conn = conn;
+		this.stmt = stmt;
+		this.rs = rs;
+	}
+
+	/**
+	 * Return the login of the registered user who authored the current
+	 * version, or <code>null</code> if the version was authored anonymously.
+	 */
+	public String getAuthorLogin() {
+		return this.authorLogin;
+	}
+
+	/**
+	 * Advance the cursor and return the next topic version.
+	 *
+	 * @return The next topic version, or <code>null</code> if there are no
+	 *  more versions.
+	 * @throws DataAccessException Thrown if any error occurs while reading
+	 *  from the database.
+	 */
+	public TopicVersion next() throws DataAccessException {
+		try {
+			if (this.rs == null || !this.rs.next()) {
+				this.authorLogin = null;
+				return null;
+			}
+			this.authorLogin = this.rs.getString("login");
+			TopicVersion topicVersion = this.queryHandler.initTopicVersion(this.rs, this.decodeVersionContent(this.rs.getString("version_content")));
+			// FIXME - Oracle cannot store an empty string - it converts them
+			// to null - so add a hack to work around the problem.
+			if (topicVersion.getVersionContent() == null) {
+				topicVersion.setVersionContent("");
+			}
+			return topicVersion;
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+	}
+
+	/**
+	 * Close the cursor and release its database connections.
+	 */
+	public void close() {
+		if (this.rs != null) {
+			try {
+				// the cursor only reads, so end the transaction started when the cursor was opened
+				this.conn.commit();
+				this.conn.setAutoCommit(true);
+			} catch (SQLException e) {
+				logger.warn("Failure while closing topic version cursor", e);
+			}
+		}
+		DatabaseConnection.closeConnection(this.conn, this.stmt, this.rs);
+		DatabaseConnection.closeConnection(this.baseConn);
+	}
+
+	/**
+	 *
+	 */
+	private String decodeVersionContent(String stored) throws SQLException {
+		if (!TopicVersionCodec.isDelta(stored)) {
+			try {
+				return TopicVersionCodec.decode(stored);
+			} catch (IOException e) {
+				throw new SQLException("Failure while decoding stored topic version content", e);
+			}
+		}
+		int deltaBaseId = TopicVersionCodec.deltaBaseId(stored);
+		if (deltaBaseId != this.baseId) {
+			if (this.baseConn == null) {
+				this.baseConn = DatabaseConnection.getReadConnection();
+			}
+			String base = this.queryHandler.lookupTopicVersionContent(deltaBaseId, this.baseConn);
+			if (base == null) {
+				throw new SQLException("Base topic version " + deltaBaseId + " for topic version delta does not exist");
+			}
+			this.baseContent = this.queryHandler.decodeVersionContent(base, this.baseConn);
+			this.baseId = deltaBaseId;
+		}
+		try {
+			return TopicVersionCodec.applyDelta(stored, this.baseContent);
+		} catch (IOException e) {
+			throw new SQLException("Failure while decoding stored topic version content", e);
+		}
+	}
+}
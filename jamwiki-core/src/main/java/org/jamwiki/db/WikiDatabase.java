@@ -17,21 +17,31 @@
 package org.jamwiki.db;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.jamwiki.DataAccessException;
 import org.jamwiki.Environment;
 import org.jamwiki.WikiBase;
@@ -42,6 +52,7 @@ import org.jamwiki.model.Interwiki;
 import org.jamwiki.model.Namespace;
 import org.jamwiki.model.Role;
 import org.jamwiki.model.Topic;
+import org.jamwiki.model.TopicMetadataRebuildStatus;
 import org.jamwiki.model.TopicVersion;
 import org.jamwiki.model.VirtualWiki;
 import org.jamwiki.model.WikiGroup;
@@ -64,36 +75,23 @@ public class WikiDatabase {
 
 	private static String CONNECTION_VALIDATION_QUERY = null;
 	private static final WikiLogger logger = WikiLogger.getLogger(WikiDatabase.class.getName());
+	/** Number of topic IDs read and written together during a topic metadata rebuild. */
+	private static final int TOPIC_METADATA_BATCH_SIZE = 100;
+	/** Name of the file, relative to the wiki home directory, containing the topic metadata rebuild checkpoint. */
+	private static final String TOPIC_METADATA_CHECKPOINT_FILE = "topic-metadata-rebuild.properties";
+	private static final Object TOPIC_METADATA_REBUILD_LOCK = new Object();
+	private static final ThreadFactory TOPIC_METADATA_THREAD_FACTORY = new ThreadFactory() {
+		private final AtomicInteger threadCount = new AtomicInteger();
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "jamwiki-topic-metadata-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+	/** Status of the most recent topic metadata rebuild, or <code>null</code> if no rebuild has been run. */
+	private static volatile TopicMetadataRebuildStatus topicMetadataRebuildStatus = null;
 	/** Root directory within the WAR distribution that contains the default topic pages. */
 	public static final String SPECIAL_PAGE_DIR = "pages";
-	// array used in database migration - elements are table name and, if elements within the
-	// table have dependencies (such as jam_namespace dependending on main_namespace_id), the
-	// column to sort results in order to avoid foreign key constrain violations
-	private static final String[][] JAMWIKI_DB_TABLE_INFO = {
-		{"jam_virtual_wiki", "virtual_wiki_id"},
-		{"jam_users", null},
-		{"jam_wiki_user", "wiki_user_id"},
-		{"jam_namespace", "namespace_id"},
-		{"jam_namespace_translation", "namespace_id"},
-		{"jam_topic", "topic_id"},
-		{"jam_topic_version", "topic_version_id"},
-		{"jam_file", "file_id"},
-		{"jam_file_version", "file_version_id"},
-		{"jam_category", null},
-		{"jam_group", "group_id"},
-		{"jam_group_members", "id"},
-		{"jam_role", null},
-		{"jam_authorities", null},
-		{"jam_group_authorities", null},
-		{"jam_recent_change", null},
-		{"jam_log", null},
-		{"jam_watchlist", null},
-		{"jam_topic_links", null},
-		{"jam_interwiki", null},
-		{"jam_configuration", null},
-		{"jam_user_block", "user_block_id"},
-		{"jam_file_data", "file_version_id"}
-	};
 
 	/**
 	 *
@@ -101,6 +99,45 @@ public class WikiDatabase {
 	private WikiDatabase() {
 	}
 
+	/**
+	 * Utility method for compressing the stored content of all existing topic
+	 * versions other than the current version of each topic.  Each topic is
+	 * processed separately so that only the versions of a single topic need to
+	 * be examined at one time.
+	 *
+	 * @return An array of two numerical values, the first one is the number of
+	 *  topic versions compressed, the second is the number of topics that failed.
+	 */
+	public synchronized static int[] compactTopicVersions() throws DataAccessException {
+		int numErrors = 0;
+		int numUpdated = 0;
+		Map<Integer, String> topicNames;
+		List<VirtualWiki> virtualWikis = WikiBase.getDataHandler().getVirtualWikiList();
+		Connection conn = null;
+		try {
+			conn = DatabaseConnection.getConnection();
+			for (VirtualWiki virtualWiki : virtualWikis) {
+				topicNames = WikiBase.getDataHandler().queryHandler().lookupTopicNames(virtualWiki.getVirtualWikiId(), true, conn);
+				for (Map.Entry<Integer, String> entry : topicNames.entrySet()) {
+					try {
+						numUpdated += WikiBase.getDataHandler().queryHandler().compactTopicVersions(entry.getKey(), conn);
+					} catch (SQLException e) {
+						logger.error("Failure while compressing topic versions for " + virtualWiki.getName() + " / " + entry.getValue() + ": " + e.getMessage());
+						numErrors++;
+					}
+				}
+			}
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		} finally {
+			DatabaseConnection.closeConnection(conn);
+		}
+		int[] resultArray = new int[2];
+		resultArray[0] = numUpdated;
+		resultArray[1] = numErrors;
+		return resultArray;
+	}
+
 	/**
 	 *
 	 */
@@ -148,6 +185,29 @@ public class WikiDatabase {
 		return count;
 	}
 
+	/**
+	 * Load the checkpoint of a previous topic metadata rebuild.  The checkpoint
+	 * maps each virtual wiki name to the topic ID below which all topics have
+	 * been processed.
+	 */
+	private static Properties loadTopicMetadataCheckpoint(File checkpointFile) {
+		Properties checkpoint = new Properties();
+		if (!checkpointFile.exists()) {
+			return checkpoint;
+		}
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(checkpointFile);
+			checkpoint.load(in);
+		} catch (IOException e) {
+			logger.warn("Failure while reading topic metadata rebuild checkpoint " + checkpointFile.getAbsolutePath() + ", all topics will be processed", e);
+			checkpoint.clear();
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		return checkpoint;
+	}
+
 	/**
 	 * Migrate from the current database to a new database.
 	 * Tables are created in the new database, and then the contents
@@ -155,138 +215,33 @@ public class WikiDatabase {
 	 *
 	 * @param props Properties object containing the new database properties
 	 * @param errors List to add error messages to
+	 * @return An array of two numerical values, the first of which is the
+	 *  number of rows copied to the new database and the second of which is
+	 *  the number of milliseconds spent copying them.
 	 */
-	public static void migrateDatabase(Properties props, List<WikiMessage> errors) throws DataAccessException {
+	public static int[] migrateDatabase(Properties props, List<WikiMessage> errors) throws DataAccessException {
+		int[] results = new int[2];
 		// verify that new database is different from the old database
 		if (StringUtils.equalsIgnoreCase(Environment.getValue(Environment.PROP_DB_URL), props.getProperty(Environment.PROP_DB_URL))) {
 			errors.add(new WikiMessage("error.databaseconnection", "Cannot migrate to the same database"));
-			return;
+			return results;
 		}
 		// find the QueryHandler appropriate to the NEW database
 		QueryHandler newQueryHandler = WikiDatabase.findNewQueryHandler(props);
 		logger.debug("Using NEW query handler: " + newQueryHandler.getClass().getName());
 		Connection conn = null;
-		Connection from = null;
-		Statement stmt = null;
-		ResultSet rs = null;
 		try {
 			// create the tables in the NEW database
 			conn = WikiDatabase.initializeNewDatabase(props, errors, newQueryHandler);
 			if (conn == null) {
-				return;
+				return results;
 			}
-			// since this is a new database setting autocommit to true is ok.  in addition,
-			// since a potentially huge amount of data might be getting committed it prevents
-			// locking issues when loading the database.
-			conn.setAutoCommit(true);
 			// copy the existing table content from the CURRENT database across to the NEW database
-			from = DatabaseConnection.getConnection();
-			from.setReadOnly(true);
-			from.setAutoCommit(true);
-			// used to track current_version_id for each jam_topic row inserted
-			Map<Integer, Integer> topicVersions = new HashMap<Integer, Integer>();
-			for (int i = 0; i < JAMWIKI_DB_TABLE_INFO.length; i++) {
-				// these 3 variables are for special handling of the jam_topic.current_version_id field
-				// which cannot be loaded on initial insert due to the jam_f_topic_topicv constraint
-				boolean isTopicTable = "jam_topic".equals(JAMWIKI_DB_TABLE_INFO[i][0]);
-				int topicIdColumn = 0;
-				int currentVersionColumn = 0;
-				int maxIndex = WikiDatabase.retrieveMaximumTableId(JAMWIKI_DB_TABLE_INFO[i][0], JAMWIKI_DB_TABLE_INFO[i][1]);
-				StringBuilder insert;
-				ResultSetMetaData md;
-				StringBuilder values;
-				StringBuilder select;
-				String columnName;
-				Integer topicId;
-				Integer currentVersionId;
-				Object o;
-				// cycle through at most RECORDS_PER_CYCLE records at a time to avoid blowing up the system
-				int RECORDS_PER_CYCLE = 25;
-				for (int j = 0; j <= maxIndex; j += RECORDS_PER_CYCLE) {
-					select = new StringBuilder("SELECT * FROM ").append(JAMWIKI_DB_TABLE_INFO[i][0]);
-					if (!StringUtils.isBlank(JAMWIKI_DB_TABLE_INFO[i][1])) {
-						if (j == 0) {
-							// for the first record do not set a lower limit in case there is an ID less
-							// than zero
-							select.append(" WHERE ");
-						} else {
-							select.append(" WHERE ").append(JAMWIKI_DB_TABLE_INFO[i][1]).append(" > ").append(j);
-							select.append(" AND ");
-						}
-						select.append(JAMWIKI_DB_TABLE_INFO[i][1]).append(" <= ").append(j + RECORDS_PER_CYCLE);
-						select.append(" ORDER BY ").append(JAMWIKI_DB_TABLE_INFO[i][1]);
-					}
-					insert = new StringBuilder();
-					stmt = from.createStatement();
-					logger.info(select.toString());
-					rs = stmt.executeQuery(select.toString());
-					md = rs.getMetaData();
-					insert.append("INSERT INTO ").append(JAMWIKI_DB_TABLE_INFO[i][0]).append('(');
-					values = new StringBuilder();
-					for (int k = 1; k <= md.getColumnCount(); k++) {
-						if (k > 1) {
-							insert.append(',');
-							values.append(',');
-						}
-						columnName = md.getColumnLabel(k);
-						if (isTopicTable) {
-							if ("topic_id".equalsIgnoreCase(columnName)) {
-								topicIdColumn = k;
-							} else if ("current_version_id".equalsIgnoreCase(columnName)) {
-								currentVersionColumn = k;
-							}
-						}
-						// special handling for Sybase ASA, which requires the "login" column name to be quoted
-						if (newQueryHandler instanceof org.jamwiki.db.SybaseASAQueryHandler && "login".equalsIgnoreCase(columnName)) {
-							columnName = "\"" + columnName + "\"";
-						}
-						insert.append(columnName);
-						values.append('?');
-					}
-					insert.append(") VALUES (").append(values).append(')');
-					logger.info(insert.toString());
-					PreparedStatement insertStmt = conn.prepareStatement(insert.toString());
-					while (rs.next()) {
-						topicId = null;
-						currentVersionId = null;
-						for (int k = 1; k <= md.getColumnCount(); k++) {
-							o = rs.getObject(k);
-							if (isTopicTable) {
-								if (k == topicIdColumn) {
-									topicId = (Integer)o;
-								} else if (k == currentVersionColumn) {
-									currentVersionId = (Integer)o;
-								}
-							}
-							if (rs.wasNull() || (isTopicTable && k == currentVersionColumn)) {
-								insertStmt.setNull(k, md.getColumnType(k));
-							} else {
-								insertStmt.setObject(k, rs.getObject(k));
-							}
-						}
-						insertStmt.executeUpdate();
-						if (topicId != null && currentVersionId != null) {
-							// store current topic version for later update.  since topic id is the
-							// map key, any older (obsolete) topic version IDs will be overwritten
-							// as later records are processed.
-							topicVersions.put(topicId, currentVersionId);
-						}
-					}
-					rs.close();
-					DatabaseConnection.closeStatement(stmt);
-					DatabaseConnection.closeStatement(insertStmt);
-				}
-			}
-			// update the jam_topic.current_version_id field that we had to leave blank on initial insert
-			String updateSql = "UPDATE jam_topic SET current_version_id = ? WHERE topic_id = ?";
-			logger.info(updateSql);
-			PreparedStatement update = conn.prepareStatement(updateSql);
-			for (Integer topicId : topicVersions.keySet()) {
-				Integer topicVersionId = topicVersions.get(topicId);
-				update.setObject(1, topicVersionId);
-				update.setObject(2, topicId);
-				update.executeUpdate();
-			}
+			long start = System.currentTimeMillis();
+			DatabaseMigrator migrator = new DatabaseMigrator(newQueryHandler, props.getProperty(Environment.PROP_DB_DRIVER), props.getProperty(Environment.PROP_DB_URL), props.getProperty(Environment.PROP_DB_USERNAME), Encryption.getEncryptedProperty(Environment.PROP_DB_PASSWORD, props));
+			migrator.migrate(conn);
+			results[0] = (int)migrator.getRowsCopied();
+			results[1] = (int)(System.currentTimeMillis() - start);
 		} catch (Exception e) {
 			logger.error("Error attempting to migrate the database", e);
 			errors.add(new WikiMessage("error.unknown", e.getMessage()));
@@ -301,10 +256,8 @@ public class WikiDatabase {
 					conn.close();
 				} catch (SQLException e) {}
 			}
-			if (from != null) {
-				DatabaseConnection.closeConnection(from, stmt, rs);
-			}
 		}
+		return results;
 	}
 
 	/**
@@ -327,6 +280,15 @@ public class WikiDatabase {
 		} catch (Exception e) {
 			logger.error("Unable to initialize database", e);
 		}
+		StatementMonitor.registerMBean();
+	}
+
+	/**
+	 * Return the status of the most recent topic metadata rebuild, or
+	 * <code>null</code> if no rebuild has been run since the wiki was started.
+	 */
+	public static TopicMetadataRebuildStatus getTopicMetadataRebuildStatus() {
+		return topicMetadataRebuildStatus;
 	}
 
 	/**
@@ -394,6 +356,25 @@ public class WikiDatabase {
 		} catch (Exception e) {
 			logger.error("Unable to close the connection pool on shutdown", e);
 		}
+		StatementMonitor.unregisterMBean();
+	}
+
+	/**
+	 * Parse a batch of topics and return the parser output for each topic that
+	 * could be parsed.  Topics that cannot be parsed are logged and counted as
+	 * errors.
+	 */
+	private static Map<Topic, ParserOutput> parseTopicMetadata(String virtualWiki, List<Topic> topics, TopicMetadataRebuildStatus status) {
+		Map<Topic, ParserOutput> parserOutputs = new LinkedHashMap<Topic, ParserOutput>();
+		for (Topic topic : topics) {
+			try {
+				parserOutputs.put(topic, ParserUtil.parserOutput(topic.getTopicContent(), virtualWiki, topic.getName()));
+			} catch (ParserException e) {
+				logger.error("Failure while regenerating topic metadata for " + virtualWiki + " / " + topic.getName() + ": " + e.getMessage());
+				status.addError();
+			}
+		}
+		return parserOutputs;
 	}
 
 	/**
@@ -469,44 +450,109 @@ public class WikiDatabase {
 	 *  updated successfully, the second is the number of records that failed.
 	 */
 	public static int[] rebuildTopicMetadata() throws DataAccessException {
-		int numErrors = 0;
-		int numUpdated = 0;
-		List<String> topicNames;
-		Topic topic;
-		ParserOutput parserOutput;
-		List<VirtualWiki> virtualWikis = WikiBase.getDataHandler().getVirtualWikiList();
-		for (VirtualWiki virtualWiki : virtualWikis) {
-			topicNames = WikiBase.getDataHandler().getAllTopicNames(virtualWiki.getName(), false);
-			if (topicNames.isEmpty()) {
-				continue;
+		return rebuildTopicMetadata(false);
+	}
+
+	/**
+	 * Utility method for regenerating categories, "link to" records and other metadata
+	 * for all wiki topics.  Topics are read in batches of topic IDs and parsed by a
+	 * pool of worker threads, and the metadata for each batch is written in a
+	 * single transaction.  Progress is checkpointed by topic ID after every batch
+	 * so that an interrupted or stopped rebuild can be resumed.  The number of
+	 * worker threads and an optional delay between batches can be configured to
+	 * limit the load that the rebuild places on the database.
+	 *
+	 * @param resume Set to <code>true</code> to continue from the checkpoint of a
+	 *  previous rebuild that did not complete, or <code>false</code> to process
+	 *  all topics.
+	 * @return An array of two numerical values, the first one is the number of records
+	 *  updated successfully, the second is the number of records that failed.
+	 */
+	public static int[] rebuildTopicMetadata(boolean resume) throws DataAccessException {
+		synchronized (TOPIC_METADATA_REBUILD_LOCK) {
+			File checkpointFile = new File(Environment.getValue(Environment.PROP_BASE_FILE_DIR), TOPIC_METADATA_CHECKPOINT_FILE);
+			Properties checkpoint = (resume) ? loadTopicMetadataCheckpoint(checkpointFile) : new Properties();
+			List<VirtualWiki> virtualWikis = WikiBase.getDataHandler().getVirtualWikiList();
+			int topicCount = 0;
+			for (VirtualWiki virtualWiki : virtualWikis) {
+				topicCount += WikiBase.getDataHandler().lookupTopicCount(virtualWiki.getName(), null);
 			}
-			for (String topicName : topicNames) {
-				try {
-					topic = WikiBase.getDataHandler().lookupTopic(virtualWiki.getName(), topicName, false);
-					if (topic == null) {
-						logger.warn("Invalid topic record found, possible database integrity issue: " + virtualWiki.getName() + " / " + topicName);
-						numErrors++;
-						continue;
+			TopicMetadataRebuildStatus status = new TopicMetadataRebuildStatus(topicCount, !checkpoint.isEmpty());
+			topicMetadataRebuildStatus = status;
+			int threads = Math.max(1, Environment.getIntValue(Environment.PROP_TOPIC_METADATA_REBUILD_THREADS));
+			ExecutorService workers = Executors.newFixedThreadPool(threads, TOPIC_METADATA_THREAD_FACTORY);
+			boolean failed = true;
+			try {
+				for (VirtualWiki virtualWiki : virtualWikis) {
+					if (status.isStopRequested()) {
+						break;
 					}
-					parserOutput = ParserUtil.parserOutput(topic.getTopicContent(), virtualWiki.getName(), topicName);
-					WikiBase.getDataHandler().writeTopic(topic, null, parserOutput.getCategories(), parserOutput.getLinks());
-					numUpdated++;
-				} catch (ParserException e) {
-					logger.error("Failure while regenerating topic metadata for " + virtualWiki.getName() + " / " + topicName + ": " + e.getMessage());
-					numErrors++;
-				} catch (DataAccessException e) {
-					logger.error("Failure while regenerating topic metadata for " + virtualWiki.getName() + " / " + topicName + ": " + e.getMessage());
-					numErrors++;
-				} catch (WikiException e) {
-					logger.error("Failure while regenerating topic metadata for " + virtualWiki.getName() + " / " + topicName + ": " + e.getMessage());
-					numErrors++;
+					status.setVirtualWiki(virtualWiki.getName());
+					int startTopicId = NumberUtils.toInt(checkpoint.getProperty(virtualWiki.getName()), 0);
+					rebuildTopicMetadata(virtualWiki.getName(), startTopicId, workers, threads, status, checkpoint, checkpointFile);
 				}
+				failed = false;
+			} finally {
+				workers.shutdownNow();
+				status.finish(failed);
+			}
+			if (!status.isStopRequested()) {
+				// the rebuild is complete, so the next rebuild starts from the beginning
+				checkpointFile.delete();
 			}
+			if (logger.isInfoEnabled()) {
+				logger.info("Rebuilt metadata for " + status.getTopicsProcessed() + " topics in " + status.getElapsedSeconds() + " seconds, " + status.getTopicsPerSecond() + " topics per second, " + status.getErrors() + " errors");
+			}
+			int[] resultArray = new int[2];
+			resultArray[0] = status.getTopicsProcessed();
+			resultArray[1] = status.getErrors();
+			return resultArray;
+		}
+	}
+
+	/**
+	 * Regenerate the metadata for all topics in a virtual wiki with a topic ID
+	 * greater than the start topic ID.  Parsed batches are written in the order
+	 * in which they were read, so the checkpoint always records a topic ID below
+	 * which every topic has been processed.
+	 */
+	private static void rebuildTopicMetadata(final String virtualWiki, int startTopicId, ExecutorService workers, int threads, final TopicMetadataRebuildStatus status, Properties checkpoint, File checkpointFile) throws DataAccessException {
+		int maxTopicId = WikiBase.getDataHandler().lookupTopicMaxId(virtualWiki);
+		int delay = Environment.getIntValue(Environment.PROP_TOPIC_METADATA_REBUILD_DELAY);
+		LinkedList<Future<Map<Topic, ParserOutput>>> pending = new LinkedList<Future<Map<Topic, ParserOutput>>>();
+		int checkpointTopicId = startTopicId;
+		for (int batchStartTopicId = startTopicId; batchStartTopicId < maxTopicId; batchStartTopicId += TOPIC_METADATA_BATCH_SIZE) {
+			if (status.isStopRequested()) {
+				break;
+			}
+			final List<Topic> topics = WikiBase.getDataHandler().lookupTopicsByIdRange(virtualWiki, batchStartTopicId, batchStartTopicId + TOPIC_METADATA_BATCH_SIZE);
+			pending.add(workers.submit(new Callable<Map<Topic, ParserOutput>>() {
+				public Map<Topic, ParserOutput> call() {
+					return parseTopicMetadata(virtualWiki, topics, status);
+				}
+			}));
+			// keep enough batches queued to occupy every worker while the
+			// oldest batch is written
+			if (pending.size() > threads) {
+				writeTopicMetadata(pending.removeFirst(), status);
+				checkpointTopicId += TOPIC_METADATA_BATCH_SIZE;
+				saveTopicMetadataCheckpoint(checkpoint, checkpointFile, virtualWiki, checkpointTopicId);
+				if (delay > 0) {
+					try {
+						Thread.sleep(delay);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new DataAccessException("Topic metadata rebuild interrupted", e);
+					}
+				}
+			}
+		}
+		// batches that have already been read are written even if a stop was requested
+		while (!pending.isEmpty()) {
+			writeTopicMetadata(pending.removeFirst(), status);
+			checkpointTopicId += TOPIC_METADATA_BATCH_SIZE;
+			saveTopicMetadataCheckpoint(checkpoint, checkpointFile, virtualWiki, checkpointTopicId);
 		}
-		int[] resultArray = new int[2];
-		resultArray[0] = numUpdated;
-		resultArray[1] = numErrors;
-		return resultArray;
 	}
 
 	/**
@@ -535,24 +581,20 @@ public class WikiDatabase {
 	}
 
 	/**
-	 * Return the largest primary key ID for the specified table, or 1 if the table does
-	 * not have a numeric primary key value.
+	 * Record that all topics in a virtual wiki with a topic ID less than or
+	 * equal to the given topic ID have been processed.
 	 */
-	private static int retrieveMaximumTableId(String tableName, String primaryIdColumnName) throws SQLException {
-		if (StringUtils.isBlank(tableName) || StringUtils.isBlank(primaryIdColumnName)) {
-			return 1;
-		}
-		String sql = "select max(" + primaryIdColumnName + ") as max_table_id from " + tableName;
-		Connection conn = null;
-		Statement stmt = null;
-		ResultSet rs = null;
+	private static void saveTopicMetadataCheckpoint(Properties checkpoint, File checkpointFile, String virtualWiki, int topicId) {
+		checkpoint.setProperty(virtualWiki, Integer.toString(topicId));
+		FileOutputStream out = null;
 		try {
-			conn = DatabaseConnection.getConnection();
-			stmt = conn.createStatement();
-			rs = stmt.executeQuery(sql);
-			return (rs.next()) ? rs.getInt("max_table_id") : 0;
+			out = new FileOutputStream(checkpointFile);
+			checkpoint.store(out, "Topic metadata rebuild checkpoint");
+		} catch (IOException e) {
+			// the rebuild can continue, but will not be able to resume from this point
+			logger.warn("Failure while writing topic metadata rebuild checkpoint " + checkpointFile.getAbsolutePath(), e);
 		} finally {
-			DatabaseConnection.closeConnection(conn, stmt, rs);
+			IOUtils.closeQuietly(out);
 		}
 	}
 
@@ -827,4 +869,39 @@ public class WikiDatabase {
 		WikiBase.getDataHandler().writeUserPreferenceDefault(WikiUser.USER_PREFERENCE_PREFERRED_EDITOR, "toolbar", WikiUser.USER_PREFERENCES_GROUP_EDITING, 1);
 		WikiBase.getDataHandler().writeUserPreferenceDefault(WikiUser.USER_PREFERENCE_SIGNATURE, null, WikiUser.USER_PREFERENCES_GROUP_EDITING, 2);
 	}
+
+	/**
+	 * Wait for a batch of topics to be parsed and write its metadata.  If the
+	 * batch cannot be written in a single transaction then each topic is
+	 * written separately so that one invalid record does not prevent the rest
+	 * of the batch from being updated.
+	 */
+	private static void writeTopicMetadata(Future<Map<Topic, ParserOutput>> batch, TopicMetadataRebuildStatus status) throws DataAccessException {
+		Map<Topic, ParserOutput> parserOutputs;
+		try {
+			parserOutputs = batch.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DataAccessException("Topic metadata rebuild interrupted", e);
+		} catch (ExecutionException e) {
+			throw new DataAccessException("Failure while parsing topics", e.getCause());
+		}
+		try {
+			WikiBase.getDataHandler().writeTopicMetadata(parserOutputs);
+			status.addTopicsProcessed(parserOutputs.size());
+			return;
+		} catch (DataAccessException e) {
+			logger.warn("Failure while writing topic metadata batch, retrying topics individually: " + e.getMessage());
+		}
+		for (Map.Entry<Topic, ParserOutput> entry : parserOutputs.entrySet()) {
+			Topic topic = entry.getKey();
+			try {
+				WikiBase.getDataHandler().writeTopicMetadata(Collections.singletonMap(topic, entry.getValue()));
+				status.addTopicsProcessed(1);
+			} catch (DataAccessException e) {
+				logger.error("Failure while regenerating topic metadata for " + topic.getVirtualWiki() + " / " + topic.getName() + ": " + e.getMessage());
+				status.addError();
+			}
+		}
+	}
 }
@@ -0,0 +1,143 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.migrate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides an object that tracks the progress of a topic import.  The importer
+ * updates the object while the import runs, and it may be read from other
+ * threads at any time.
+ */
+public class ImportStatus {
+
+	/** Time that the import completed, or zero if the import is running. */
+	private volatile long endTime = 0;
+	/** Flag indicating that the import completed with an error. */
+	private volatile boolean failed = false;
+	/** Number of pages read from the import file so far. */
+	private final AtomicInteger pagesRead = new AtomicInteger();
+	/** Time that the import started. */
+	private final long startTime = System.currentTimeMillis();
+	/** Number of topics written to the database so far. */
+	private final AtomicInteger topicsImported = new AtomicInteger();
+	/** Number of topics that were skipped because they already exist. */
+	private final AtomicInteger topicsSkipped = new AtomicInteger();
+	/** Number of topic versions written to the database so far. */
+	private final AtomicLong topicVersionsImported = new AtomicLong();
+
+	/**
+	 * Record that a page has been read from the import file.
+	 */
+	public void addPageRead() {
+		this.pagesRead.incrementAndGet();
+	}
+
+	/**
+	 * Record that a batch of topics has been written to the database.
+	 */
+	public void addTopicsImported(int topicCount, int topicVersionCount) {
+		this.topicsImported.addAndGet(topicCount);
+		this.topicVersionsImported.addAndGet(topicVersionCount);
+	}
+
+	/**
+	 * Record that a topic has been skipped because it already exists.
+	 */
+	public void addTopicSkipped() {
+		this.topicsSkipped.incrementAndGet();
+	}
+
+	/**
+	 * Return the number of seconds that the import has been running, or the
+	 * total duration if the import has completed.
+	 */
+	public long getElapsedSeconds() {
+		long endTime = (this.endTime == 0) ? System.currentTimeMillis() : this.endTime;
+		return (endTime - this.startTime) / 1000;
+	}
+
+	/**
+	 *
+	 */
+	public int getPagesRead() {
+		return this.pagesRead.get();
+	}
+
+	/**
+	 *
+	 */
+	public int getTopicsImported() {
+		return this.topicsImported.get();
+	}
+
+	/**
+	 * Return the average number of topics imported per second.
+	 */
+	public int getTopicsPerSecond() {
+		long endTime = (this.endTime == 0) ? System.currentTimeMillis() : this.endTime;
+		long elapsed = Math.max(1, endTime - this.startTime);
+		return (int)(this.topicsImported.get() * 1000L / elapsed);
+	}
+
+	/**
+	 *
+	 */
+	public int getTopicsSkipped() {
+		return this.topicsSkipped.get();
+	}
+
+	/**
+	 *
+	 */
+	public long getTopicVersionsImported() {
+		return this.topicVersionsImported.get();
+	}
+
+	/**
+	 *
+	 */
+	public boolean isFailed() {
+		return this.failed;
+	}
+
+	/**
+	 *
+	 */
+	public boolean isRunning() {
+		return (this.endTime == 0);
+	}
+
+	/**
+	 * Mark the import as complete.
+	 *
+	 * @param failed Set to <code>true</code> if the import did not complete
+	 *  successfully.
+	 */
+	public void finish(boolean failed) {
+		this.failed = failed;
+		this.endTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Return a description of the import progress suitable for logging.
+	 */
+	public String toString() {
+		return this.topicsImported.get() + " topics (" + this.topicVersionsImported.get() + " versions) imported and " + this.topicsSkipped.get() + " skipped in " + this.getElapsedSeconds() + " seconds, " + this.getTopicsPerSecond() + " topics per second";
+	}
+}
@@ -16,66 +16,74 @@
  */
 package org.jamwiki.migrate;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.jamwiki.DataAccessException;
 import org.jamwiki.Environment;
 import org.jamwiki.WikiBase;
 import org.jamwiki.WikiVersion;
+import org.jamwiki.db.TopicVersionCursor;
 import org.jamwiki.model.Namespace;
-import org.jamwiki.model.RecentChange;
 import org.jamwiki.model.Topic;
 import org.jamwiki.model.TopicVersion;
 import org.jamwiki.model.VirtualWiki;
 import org.jamwiki.model.WikiUser;
 import org.jamwiki.parser.WikiLink;
-import org.jamwiki.utils.Pagination;
 import org.jamwiki.utils.Utilities;
 import org.jamwiki.utils.WikiLogger;
 import org.jamwiki.utils.WikiUtil;
-import org.jamwiki.utils.XMLUtil;
 
 /**
  * Provide functionality for exporting a JAMWiki topic to Mediawiki XML format.
+ * Output is written using a streaming XML writer and topic histories are read
+ * using a database cursor, so memory use does not depend on the size of the
+ * export.
  */
 public class MediaWikiXmlExporter implements TopicExporter {
 
 	private static final WikiLogger logger = WikiLogger.getLogger(MediaWikiXmlExporter.class.getName());
-	private static final SimpleDateFormat MEDIAWIKI_DATE_FORMATTER = new SimpleDateFormat(MediaWikiConstants.ISO_8601_DATE_FORMAT);
+	/** File name suffix indicating that an export file should be compressed using gzip. */
+	public static final String GZIP_SUFFIX = ".gz";
+	private static final String MEDIAWIKI_XML_NAMESPACE = "http://www.mediawiki.org/xml/export-0.7/";
+	private static final String MEDIAWIKI_XML_SCHEMA_LOCATION = "http://www.mediawiki.org/xml/export-0.7/ http://www.mediawiki.org/xml/export-0.7.xsd";
+	private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	/** Date formats are not thread-safe, so each exporter uses its own instance. */
+	private final SimpleDateFormat mediawikiDateFormatter = new SimpleDateFormat(MediaWikiConstants.ISO_8601_DATE_FORMAT);
 
 	/**
 	 *
 	 */
 	public void exportToFile(File file, String virtualWiki, List<String> topicNames, boolean excludeHistory) throws MigrationException {
-		OutputStreamWriter fileWriter = null;
-		BufferedWriter bufferedWriter = null;
+		OutputStream out = null;
 		boolean success = false;
 		try {
-			fileWriter = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
-			bufferedWriter = new BufferedWriter(fileWriter);
-			bufferedWriter.append("<mediawiki xmlns=\"http://www.mediawiki.org/xml/export-0.7/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://www.mediawiki.org/xml/export-0.7/ http://www.mediawiki.org/xml/export-0.7.xsd\" version=\"0.7\" xml:lang=\"en\">");
-			this.writeSiteInfo(bufferedWriter, virtualWiki);
-			this.writePages(bufferedWriter, virtualWiki, topicNames, excludeHistory);
-			bufferedWriter.append("\n</mediawiki>");
+			out = new FileOutputStream(file);
+			if (file.getName().endsWith(GZIP_SUFFIX)) {
+				out = new GZIPOutputStream(out);
+			}
+			out = new BufferedOutputStream(out);
+			this.exportToStream(out, virtualWiki, topicNames, excludeHistory);
+			out.close();
 			success = true;
-		} catch (DataAccessException e) {
-			throw new MigrationException(e);
 		} catch (IOException e) {
 			throw new MigrationException(e);
 		} finally {
-			IOUtils.closeQuietly(bufferedWriter);
-			IOUtils.closeQuietly(fileWriter);
+			IOUtils.closeQuietly(out);
 			if (!success) {
 				// make sure partial files are deleted
 				file.delete();
@@ -83,6 +91,41 @@ public class MediaWikiXmlExporter implements TopicExporter {
 		}
 	}
 
+	/**
+	 *
+	 */
+	public void exportToStream(OutputStream out, String virtualWiki, List<String> topicNames, boolean excludeHistory) throws MigrationException {
+		XMLStreamWriter writer = null;
+		try {
+			writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement("mediawiki");
+			writer.writeDefaultNamespace(MEDIAWIKI_XML_NAMESPACE);
+			writer.writeNamespace("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
+			writer.writeAttribute("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "schemaLocation", MEDIAWIKI_XML_SCHEMA_LOCATION);
+			writer.writeAttribute("version", "0.7");
+			writer.writeAttribute(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI, "lang", "en");
+			this.writeSiteInfo(writer, virtualWiki);
+			this.writePages(writer, virtualWiki, topicNames, excludeHistory);
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.flush();
+		} catch (DataAccessException e) {
+			throw new MigrationException(e);
+		} catch (XMLStreamException e) {
+			throw new MigrationException(e);
+		} finally {
+			if (writer != null) {
+				// closing the XML writer does not close the underlying stream
+				try {
+					writer.close();
+				} catch (XMLStreamException e) {}
+			}
+		}
+	}
+
 	/**
 	 * Return the URL of the index page for the wiki.
 	 *
@@ -96,21 +139,26 @@ public class MediaWikiXmlExporter implements TopicExporter {
 		return url;
 	}
 
+	/**
+	 * Write an element with a text value, preceded by a line break.
+	 */
+	private void writeElement(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+		writer.writeCharacters("\n");
+		writer.writeStartElement(name);
+		writer.writeCharacters(StringUtils.defaultString(value));
+		writer.writeEndElement();
+	}
+
 	/**
 	 *
 	 */
-	private void writeSiteInfo(Writer writer, String virtualWikiName) throws DataAccessException, IOException {
+	private void writeSiteInfo(XMLStreamWriter writer, String virtualWikiName) throws DataAccessException, XMLStreamException {
 		VirtualWiki virtualWiki = WikiBase.getDataHandler().lookupVirtualWiki(virtualWikiName);
-		writer.append("\n<siteinfo>");
-		String sitename = virtualWiki.getSiteName();
-		writer.append('\n');
-		XMLUtil.buildTag(writer, "sitename", sitename, true);
-		String base = this.retrieveBaseUrl();
-		writer.append('\n');
-		XMLUtil.buildTag(writer, "base", base, true);
-		String generator = "JAMWiki " + WikiVersion.CURRENT_WIKI_VERSION;
-		writer.append('\n');
-		XMLUtil.buildTag(writer, "generator", generator, true);
+		writer.writeCharacters("\n");
+		writer.writeStartElement("siteinfo");
+		this.writeElement(writer, "sitename", virtualWiki.getSiteName());
+		this.writeElement(writer, "base", this.retrieveBaseUrl());
+		this.writeElement(writer, "generator", "JAMWiki " + WikiVersion.CURRENT_WIKI_VERSION);
 		/*
 		Cannot have two titles differing only by case of first letter.  Default behavior through 1.5, $wgCapitalLinks = true
 			<enumeration value="first-letter" />
@@ -119,106 +167,109 @@ public class MediaWikiXmlExporter implements TopicExporter {
 		Cannot have two titles differing only by case. Not yet implemented as of MediaWiki 1.5
 			<enumeration value="case-insensitive" />
 		*/
-		writer.append('\n');
-		XMLUtil.buildTag(writer, "case", "case-sensitive", true);
-		writer.append("\n<namespaces>");
-		Map<String, String> attributes = new LinkedHashMap<String, String>();
+		this.writeElement(writer, "case", "case-sensitive");
+		writer.writeCharacters("\n");
+		writer.writeStartElement("namespaces");
 		List<Namespace> namespaces = WikiBase.getDataHandler().lookupNamespaces();
 		for (Namespace namespace : namespaces) {
-			attributes.put("key", Integer.toString(namespace.getId()));
-			writer.append('\n');
-			XMLUtil.buildTag(writer, "namespace", namespace.getLabel(virtualWikiName), attributes, true);
+			writer.writeCharacters("\n");
+			writer.writeStartElement("namespace");
+			writer.writeAttribute("key", Integer.toString(namespace.getId()));
+			writer.writeCharacters(StringUtils.defaultString(namespace.getLabel(virtualWikiName)));
+			writer.writeEndElement();
 		}
-		writer.append("\n</namespaces>");
-		writer.append("\n</siteinfo>");
+		writer.writeCharacters("\n");
+		writer.writeEndElement();
+		writer.writeCharacters("\n");
+		writer.writeEndElement();
 	}
 
 	/**
 	 *
 	 */
-	private void writePages(Writer writer, String virtualWiki, List<String> topicNames, boolean excludeHistory) throws DataAccessException, IOException, MigrationException {
-		// note that effort is being made to re-use temporary objects as this
-		// code can generate an OOM "GC overhead limit exceeded" with HUGE (500MB) topics
-		// since the garbage collector ends up being invoked excessively.
-		TopicVersion topicVersion;
-		Topic topic;
-		WikiUser user;
+	private void writePages(XMLStreamWriter writer, String virtualWiki, List<String> topicNames, boolean excludeHistory) throws DataAccessException, MigrationException, XMLStreamException {
 		// choose 100,000 as an arbitrary default
 		int maxRevisions = (Environment.getIntValue(Environment.PROP_MAX_TOPIC_VERSION_EXPORT) > 0) ? Environment.getIntValue(Environment.PROP_MAX_TOPIC_VERSION_EXPORT) : 100000;
 		int revisionsRetrieved = 0;
-		List<Integer> topicVersionIds;
-		Map<String, String> textAttributes = new LinkedHashMap<String, String>();
-		textAttributes.put("xml:space", "preserve");
 		for (String topicName : topicNames) {
-			topicVersionIds = new ArrayList<Integer>();
-			topic = WikiBase.getDataHandler().lookupTopic(virtualWiki, topicName, false);
+			Topic topic = WikiBase.getDataHandler().lookupTopic(virtualWiki, topicName, false);
 			if (topic == null) {
 				throw new MigrationException("Failure while exporting: topic " + virtualWiki + ':' + topicName + " does not exist");
 			}
-			writer.append("\n<page>");
-			writer.append('\n');
-			XMLUtil.buildTag(writer, "title", topic.getName(), true);
-			writer.append('\n');
-			XMLUtil.buildTag(writer, "ns", topic.getNamespace().getId());
-			writer.append('\n');
-			XMLUtil.buildTag(writer, "id", topic.getTopicId());
+			writer.writeCharacters("\n");
+			writer.writeStartElement("page");
+			this.writeElement(writer, "title", topic.getName());
+			this.writeElement(writer, "ns", Integer.toString(topic.getNamespace().getId()));
+			this.writeElement(writer, "id", Integer.toString(topic.getTopicId()));
 			if (excludeHistory || (maxRevisions - revisionsRetrieved) <= 1) {
 				// only include the most recent version
-				topicVersionIds.add(topic.getCurrentVersionId());
+				TopicVersion topicVersion = WikiBase.getDataHandler().lookupTopicVersion(topic.getCurrentVersionId());
+				WikiUser user = (topicVersion.getAuthorId() != null) ? WikiBase.getDataHandler().lookupWikiUser(topicVersion.getAuthorId()) : null;
+				this.writeRevision(writer, topicVersion, (user != null) ? user.getUsername() : null);
+				revisionsRetrieved++;
 			} else {
-				// FIXME - changes sorted newest-to-oldest, should be reverse
-				Pagination pagination = new Pagination(maxRevisions - revisionsRetrieved, 0);
-				List<RecentChange> changes = WikiBase.getDataHandler().getTopicHistory(topic, pagination, true);
-				revisionsRetrieved += changes.size();
-				for (int i = (changes.size() - 1); i >= 0; i--) {
-					topicVersionIds.add(changes.get(i).getTopicVersionId());
-				}
-			}
-			for (int topicVersionId : topicVersionIds) {
-				topicVersion = WikiBase.getDataHandler().lookupTopicVersion(topicVersionId);
-				writer.append("\n<revision>");
-				writer.append('\n');
-				XMLUtil.buildTag(writer, "id", topicVersion.getTopicVersionId());
-				writer.append('\n');
-				XMLUtil.buildTag(writer, "timestamp", this.parseJAMWikiTimestamp(topicVersion.getEditDate()), true);
-				writer.append("\n<contributor>");
-				user = (topicVersion.getAuthorId() != null) ? WikiBase.getDataHandler().lookupWikiUser(topicVersion.getAuthorId()) : null;
-				if (user != null) {
-					writer.append('\n');
-					XMLUtil.buildTag(writer, "username", user.getUsername(), true);
-					writer.append('\n');
-					XMLUtil.buildTag(writer, "id", user.getUserId());
-				} else if (Utilities.isIpAddress(topicVersion.getAuthorDisplay())) {
-					writer.append('\n');
-					XMLUtil.buildTag(writer, "ip", topicVersion.getAuthorDisplay(), true);
-				} else {
-					writer.append('\n');
-					XMLUtil.buildTag(writer, "username", topicVersion.getAuthorDisplay(), true);
-				}
-				writer.append("\n</contributor>");
-				writer.append('\n');
-				if (topicVersion.getEditType() == TopicVersion.EDIT_MINOR) {
-					XMLUtil.buildTag(writer, "minor", "", true);
-					writer.append('\n');
+				// read the history with a single cursor so that only one version at a
+				// time is held in memory, regardless of the size of the history.
+				TopicVersionCursor cursor = WikiBase.getDataHandler().lookupTopicVersionCursor(topic, maxRevisions - revisionsRetrieved);
+				try {
+					TopicVersion topicVersion;
+					while ((topicVersion = cursor.next()) != null) {
+						this.writeRevision(writer, topicVersion, cursor.getAuthorLogin());
+						revisionsRetrieved++;
+					}
+				} finally {
+					cursor.close();
 				}
-				XMLUtil.buildTag(writer, "comment", topicVersion.getEditComment(), true);
-				writer.append('\n');
-				textAttributes.put("bytes", Long.toString(topicVersion.getVersionContent().getBytes().length));
-				XMLUtil.buildTag(writer, "text", topicVersion.getVersionContent(), textAttributes, true);
-				writer.append("\n</revision>");
-				// explicitly null out temp variables to improve garbage collection and
-				// avoid OOM "GC overhead limit exceeded" errors on HUGE (500MB) topics
-				topicVersion = null;
-				user = null;
 			}
-			writer.append("\n</page>");
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			// pass each completed page on to the output stream
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Write a revision element.
+	 *
+	 * @param authorLogin The login of the registered user who authored the
+	 *  version, or <code>null</code> if the version was authored anonymously.
+	 */
+	private void writeRevision(XMLStreamWriter writer, TopicVersion topicVersion, String authorLogin) throws XMLStreamException {
+		writer.writeCharacters("\n");
+		writer.writeStartElement("revision");
+		this.writeElement(writer, "id", Integer.toString(topicVersion.getTopicVersionId()));
+		this.writeElement(writer, "timestamp", this.parseJAMWikiTimestamp(topicVersion.getEditDate()));
+		writer.writeCharacters("\n");
+		writer.writeStartElement("contributor");
+		if (authorLogin != null) {
+			this.writeElement(writer, "username", authorLogin);
+			this.writeElement(writer, "id", Integer.toString(topicVersion.getAuthorId()));
+		} else if (Utilities.isIpAddress(topicVersion.getAuthorDisplay())) {
+			this.writeElement(writer, "ip", topicVersion.getAuthorDisplay());
+		} else {
+			this.writeElement(writer, "username", topicVersion.getAuthorDisplay());
+		}
+		writer.writeCharacters("\n");
+		writer.writeEndElement();
+		if (topicVersion.getEditType() == TopicVersion.EDIT_MINOR) {
+			writer.writeCharacters("\n");
+			writer.writeEmptyElement("minor");
 		}
+		this.writeElement(writer, "comment", topicVersion.getEditComment());
+		writer.writeCharacters("\n");
+		writer.writeStartElement("text");
+		writer.writeAttribute(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI, "space", "preserve");
+		writer.writeAttribute("bytes", Integer.toString(topicVersion.getVersionContent().getBytes(StandardCharsets.UTF_8).length));
+		writer.writeCharacters(topicVersion.getVersionContent());
+		writer.writeEndElement();
+		writer.writeCharacters("\n");
+		writer.writeEndElement();
 	}
 
 	/**
 	 *
 	 */
 	private String parseJAMWikiTimestamp(Timestamp timestamp) {
-		return MEDIAWIKI_DATE_FORMATTER.format(timestamp);
+		return this.mediawikiDateFormatter.format(timestamp);
 	}
 }
@@ -22,11 +22,23 @@ import java.io.IOException;
 import java.sql.Timestamp;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
@@ -42,7 +54,12 @@ import org.jamwiki.WikiException;
 import org.jamwiki.WikiMessage;
 import org.jamwiki.model.Namespace;
 import org.jamwiki.model.Topic;
+import org.jamwiki.model.TopicType;
 import org.jamwiki.model.TopicVersion;
+import org.jamwiki.model.WikiUser;
+import org.jamwiki.parser.ParserException;
+import org.jamwiki.parser.ParserOutput;
+import org.jamwiki.parser.ParserUtil;
 import org.jamwiki.parser.WikiLink;
 import org.jamwiki.utils.WikiLogger;
 import org.jamwiki.utils.WikiUtil;
@@ -52,29 +69,63 @@ import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * Provide functionality for importing a Mediawiki XML file into JAMWiki.
+ *
+ * The import runs as a pipeline of three stages connected by bounded queues so
+ * that large files can be imported without reading the entire file into
+ * memory.  The SAX parser reads one complete page (a topic and all of its
+ * versions) at a time and hands it to a pool of worker threads, which convert
+ * MediaWiki namespaces, verify that the topic does not already exist and parse
+ * the current topic content for category, link and redirect information.  A
+ * single writer thread then adds the processed topics to the database in
+ * batches, with each batch written in one transaction.
  */
 public class MediaWikiXmlImporter extends DefaultHandler implements TopicImporter {
 
 	private static final WikiLogger logger = WikiLogger.getLogger(MediaWikiXmlImporter.class.getName());
-	/** Maximum number of topic versions that can be stored before being flushed to the database. */
-	private static final int MAX_TOPIC_VERSION_BUFFER = 50;
+	/** Maximum number of topics written to the database in a single transaction. */
+	private static final int IMPORT_BATCH_TOPICS = 100;
+	/** Number of topic versions after which a batch is written even if it contains fewer than the maximum number of topics. */
+	private static final int IMPORT_BATCH_TOPIC_VERSIONS = 1000;
+	/** Number of imported topics between progress messages. */
+	private static final int PROGRESS_INTERVAL = 1000;
+	/** Number of milliseconds to wait when adding to a full queue before checking whether the import has failed. */
+	private static final long QUEUE_TIMEOUT = 1000;
 	private static final SAXParserFactory SAX_PARSER_FACTORY;
+	/** Creates daemon threads for the import worker and writer threads. */
+	private static final ThreadFactory IMPORT_THREAD_FACTORY = new ThreadFactory() {
+		private final AtomicInteger threadCount = new AtomicInteger();
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "jamwiki-import-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+	/** Marker added to the write queue once all pages have been processed. */
+	private static final ImportedPage END_OF_IMPORT = new ImportedPage(null);
 
 	/** This map holds the current tag's attribute names and values.  It is cleared after an end-element is called and thus fails for nested elements. */
 	private Map<String, String> currentAttributeMap = new HashMap<String, String>();
 	/** Map used when converting namespaces.  Created for performance reasons to avoid recompiling patterns. */
-	private Map<String, Pattern> convertNamespaceMap = new HashMap<String, Pattern>();
+	private final Map<String, Pattern> convertNamespaceMap = new HashMap<String, Pattern>();
 	/** This buffer holds the content of the current element during parsing.  It will be flushed after an end-element tag is reached. */
 	private StringBuilder currentElementBuffer = new StringBuilder();
-	private Topic currentTopic = null;
+	private ImportedPage currentPage = null;
 	private TopicVersion currentTopicVersion = new TopicVersion();
-	private Map<Date, Integer> currentTopicVersions = new TreeMap<Date, Integer>();
+	private String authorDisplay;
+	private String editComment;
+	/** The first error thrown by any stage of the import.  Once set all stages stop. */
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	/** Names of topics written during this import by the writer thread. */
+	private final List<String> importedTopicNames = new ArrayList<String>();
 	private final Map<String, String> mediawikiNamespaceMap = new HashMap<String, String>();
-	private Map<Topic, List<Integer>> parsedTopics = new HashMap<Topic, List<Integer>>();
-	private int previousTopicContentLength = 0;
-	/** For performance reasons add topic versions to the dabase in batches. */
-	private List<TopicVersion> topicVersionBuffer = new ArrayList<TopicVersion>();
+	/** Keys for topics that have been accepted by a worker but not yet committed, used to detect duplicate pages. */
+	private final Set<String> pendingTopicKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private boolean resume;
+	private ImportStatus status;
+	private WikiUser user;
 	private String virtualWiki;
+	private ExecutorService workers;
+	private BlockingQueue<ImportedPage> writeQueue;
 
 	static {
 		// For big file parsing
@@ -85,10 +136,57 @@ public class MediaWikiXmlImporter extends DefaultHandler implements TopicImporte
 	/**
 	 *
 	 */
-	public Map<Topic, List<Integer>> importFromFile(File file, String virtualWiki) throws MigrationException {
+	public List<String> importFromFile(File file, String virtualWiki, WikiUser user, String authorDisplay, String editComment, boolean resume, ImportStatus status) throws MigrationException {
 		this.virtualWiki = virtualWiki;
-		this.importWikiXml(file);
-		return this.parsedTopics;
+		this.user = user;
+		this.authorDisplay = authorDisplay;
+		this.editComment = editComment;
+		this.resume = resume;
+		this.status = status;
+		// a bounded work queue that runs overflow tasks on the SAX thread stops pages
+		// from being read faster than the workers can process them.
+		int threads = Runtime.getRuntime().availableProcessors();
+		this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(threads * 2), IMPORT_THREAD_FACTORY, new ThreadPoolExecutor.CallerRunsPolicy());
+		this.writeQueue = new ArrayBlockingQueue<ImportedPage>(IMPORT_BATCH_TOPICS * 2);
+		Thread writer = IMPORT_THREAD_FACTORY.newThread(new Runnable() {
+			public void run() {
+				try {
+					writeTopics();
+				} catch (Throwable t) {
+					fail(t);
+				}
+			}
+		});
+		writer.start();
+		try {
+			this.importWikiXml(file);
+		} catch (MigrationException e) {
+			this.fail(e);
+		} finally {
+			this.workers.shutdown();
+			try {
+				this.workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				this.enqueue(END_OF_IMPORT);
+				writer.join();
+			} catch (InterruptedException e) {
+				this.fail(e);
+				this.workers.shutdownNow();
+				writer.interrupt();
+				Thread.currentThread().interrupt();
+			}
+		}
+		Throwable t = this.failure.get();
+		status.finish(t != null);
+		if (logger.isInfoEnabled()) {
+			logger.info("Import of " + file.getAbsolutePath() + ((t != null) ? " failed" : " complete") + ": " + status);
+		}
+		if (t instanceof MigrationException) {
+			throw (MigrationException)t;
+		}
+		if (t != null) {
+			throw new MigrationException(t);
+		}
+		return this.importedTopicNames;
 	}
 
 	/**
@@ -108,6 +206,10 @@ public class MediaWikiXmlImporter extends DefaultHandler implements TopicImporte
 		} catch (IOException e) {
 			throw new MigrationException(e);
 		} catch (SAXException e) {
+			if (this.failure.get() != null) {
+				// parsing was stopped because another stage of the import failed
+				return;
+			}
 			if (e.getCause() instanceof DataAccessException || e.getCause() instanceof WikiException) {
 				throw new MigrationException(e.getCause());
 			} else {
@@ -140,100 +242,213 @@ public class MediaWikiXmlImporter extends DefaultHandler implements TopicImporte
 
 	/**
 	 * Convert all namespaces names from MediaWiki to JAMWiki local representation.
+	 * This method is called from worker threads, so the namespace maps must not
+	 * be modified once pages are being processed.
 	 */
 	private String convertToJAMWikiNamespaces(String topicContent) {
-		// convert all namespaces names from MediaWiki to JAMWiki local representation
-		Pattern pattern;
-		for (Map.Entry<String, String> entry : mediawikiNamespaceMap.entrySet()) {
-			if (entry.getValue() == null || StringUtils.equalsIgnoreCase(entry.getValue(), entry.getKey())) {
-				continue;
-			}
-			pattern = this.convertNamespaceMap.get(entry.getKey());
-			if (pattern == null) {
-				// convert from Mediawiki to JAMWiki namespaces.  handle "[[", "[[:", "{{", "{{:".
-				// note that "?:" is a regex non-capturing group.
-				String patternString = "((?:(?:\\[\\[)|(?:\\{\\{))[ ]*(?::)?)" + entry.getKey() + Namespace.SEPARATOR;
-				Pattern mediawikiPattern = Pattern.compile(patternString, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-				pattern = mediawikiPattern;
-				this.convertNamespaceMap.put(entry.getKey(), mediawikiPattern);
-			}
-			topicContent = pattern.matcher(topicContent).replaceAll("$1" + entry.getValue() + Namespace.SEPARATOR);
+		for (Map.Entry<String, Pattern> entry : this.convertNamespaceMap.entrySet()) {
+			topicContent = entry.getValue().matcher(topicContent).replaceAll("$1" + this.mediawikiNamespaceMap.get(entry.getKey()) + Namespace.SEPARATOR);
 		}
 		return topicContent;
 	}
 
 	/**
-	 *
+	 * Add a MediaWiki namespace and its JAMWiki equivalent to the namespace maps.
 	 */
-	private Timestamp parseMediaWikiTimestamp(String timestamp) {
-		try {
-			Date date = DateUtils.parseDate(timestamp, new String[]{MediaWikiConstants.ISO_8601_DATE_FORMAT});
-			return new Timestamp(date.getTime());
-		} catch (ParseException e) {
-			// FIXME - this should be handled somehow
-			return new Timestamp(System.currentTimeMillis());
+	private void addNamespace(String mediawikiNamespace, String jamwikiNamespace) {
+		this.mediawikiNamespaceMap.put(mediawikiNamespace, jamwikiNamespace);
+		if (jamwikiNamespace == null || StringUtils.equalsIgnoreCase(jamwikiNamespace, mediawikiNamespace)) {
+			this.convertNamespaceMap.remove(mediawikiNamespace);
+			return;
 		}
+		// convert from Mediawiki to JAMWiki namespaces.  handle "[[", "[[:", "{{", "{{:".
+		// note that "?:" is a regex non-capturing group.
+		String patternString = "((?:(?:\\[\\[)|(?:\\{\\{))[ ]*(?::)?)" + mediawikiNamespace + Namespace.SEPARATOR;
+		this.convertNamespaceMap.put(mediawikiNamespace, Pattern.compile(patternString, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+	}
+
+	/**
+	 * Hand a page that has been completely read to the worker threads.
+	 */
+	private void submitPage(final ImportedPage page) throws SAXException {
+		if (this.failure.get() != null) {
+			throw new SAXException("Import stopped after failure");
+		}
+		if (page.getTopicVersions().isEmpty()) {
+			throw new SAXException("No topic versions found for " + page.getTitle());
+		}
+		this.status.addPageRead();
+		this.workers.execute(new Runnable() {
+			public void run() {
+				if (failure.get() != null) {
+					return;
+				}
+				try {
+					processPage(page);
+				} catch (Throwable t) {
+					fail(t);
+				}
+			}
+		});
 	}
 
 	/**
-	 * Initialize the current topic, validating that it does not yet exist.
+	 * Convert, validate and parse a page, then pass it to the writer thread.
+	 * This method is called from worker threads.
 	 */
-	private void initCurrentTopic(String topicName) throws SAXException {
-		topicName = convertArticleNameFromWikipediaToJAMWiki(topicName);
+	private void processPage(ImportedPage page) throws DataAccessException, InterruptedException, MigrationException, WikiException {
+		String topicName = this.convertArticleNameFromWikipediaToJAMWiki(page.getTitle());
 		WikiLink wikiLink = new WikiLink(null, this.virtualWiki, topicName);
-		Topic existingTopic = null;
+		String importTopicName = (Environment.getBooleanValue(Environment.PROP_PARSER_ALLOW_CAPITALIZATION)) ? StringUtils.capitalize(wikiLink.getArticle()) : wikiLink.getArticle();
+		// the key is reserved BEFORE checking the database so that a duplicate page is
+		// detected either by the key check or, if the first page has already been
+		// committed and its key released, by the database check.
+		String key = wikiLink.getNamespace().getId() + ":" + importTopicName;
+		boolean duplicate = !this.pendingTopicKeys.add(key);
+		if (!duplicate && this.topicExists(topicName, importTopicName)) {
+			this.pendingTopicKeys.remove(key);
+			duplicate = true;
+		}
+		if (duplicate) {
+			if (this.resume) {
+				this.status.addTopicSkipped();
+				return;
+			}
+			// FIXME - update so that this merges any new versions instead of throwing an error
+			throw new WikiException(new WikiMessage("import.error.topicexists", topicName));
+		}
+		Topic topic = new Topic(this.virtualWiki, wikiLink.getNamespace(), wikiLink.getArticle());
+		topic.setTopicType(WikiUtil.findTopicTypeForNamespace(wikiLink.getNamespace()));
+		// the XML file may not contain version records sorted chronologically from oldest
+		// to newest, so sort them before calculating the size of each change.
+		List<TopicVersion> topicVersions = page.getTopicVersions();
+		Collections.sort(topicVersions, new Comparator<TopicVersion>() {
+			public int compare(TopicVersion version1, TopicVersion version2) {
+				return version1.getEditDate().compareTo(version2.getEditDate());
+			}
+		});
+		int previousTopicContentLength = 0;
+		for (TopicVersion topicVersion : topicVersions) {
+			String topicContent = this.convertToJAMWikiNamespaces(topicVersion.getVersionContent());
+			topicVersion.setVersionContent(topicContent);
+			topicVersion.setCharactersChanged(topicContent.length() - previousTopicContentLength);
+			previousTopicContentLength = topicContent.length();
+		}
+		topic.setTopicContent(topicVersions.get(topicVersions.size() - 1).getVersionContent());
+		// create a dummy version to indicate that the topic was imported
+		TopicVersion importVersion = new TopicVersion(this.user, this.authorDisplay, this.editComment, topic.getTopicContent(), 0);
+		importVersion.setEditType(TopicVersion.EDIT_IMPORT);
+		topicVersions.add(importVersion);
+		ParserOutput parserOutput = null;
 		try {
-			existingTopic = WikiBase.getDataHandler().lookupTopic(this.virtualWiki, topicName, false);
-		} catch (DataAccessException e) {
-			throw new SAXException("Failure while validating topic name: " + this.virtualWiki + ':' + topicName, e);
+			parserOutput = ParserUtil.parserOutput(topic.getTopicContent(), this.virtualWiki, topic.getName());
+		} catch (ParserException e) {
+			throw new MigrationException("Failure while parsing topic version of topic: " + topic.getName(), e);
+		}
+		if (!StringUtils.isBlank(parserOutput.getRedirect())) {
+			// set up a redirect
+			topic.setRedirectTo(parserOutput.getRedirect());
+			topic.setTopicType(TopicType.REDIRECT);
+		}
+		page.setTopic(topic, key, parserOutput);
+		this.enqueue(page);
+	}
+
+	/**
+	 * Determine whether a topic with the given name already exists.
+	 */
+	private boolean topicExists(String topicName, String importTopicName) throws DataAccessException {
+		Topic existingTopic = WikiBase.getDataHandler().lookupTopic(this.virtualWiki, topicName, false);
+		if (existingTopic == null || !existingTopic.getVirtualWiki().equals(this.virtualWiki)) {
+			return false;
 		}
-		if (existingTopic != null && existingTopic.getVirtualWiki().equals(this.virtualWiki)) {
-			// do a second comparison of capitalized topic names in a case-sensitive way
-			// since the initial topic lookup will return a case-insensitive match for some
-			// namespaces.
-			String existingTopicName = (Environment.getBooleanValue(Environment.PROP_PARSER_ALLOW_CAPITALIZATION)) ? StringUtils.capitalize(existingTopic.getPageName()) : existingTopic.getPageName();
-			String importTopicName = (Environment.getBooleanValue(Environment.PROP_PARSER_ALLOW_CAPITALIZATION)) ? StringUtils.capitalize(wikiLink.getArticle()) : wikiLink.getArticle();
-			if (StringUtils.equals(existingTopicName, importTopicName)) {
-				// FIXME - update so that this merges any new versions instead of throwing an error
-				WikiException e = new WikiException(new WikiMessage("import.error.topicexists", topicName));
-				throw new SAXException("Topic " + this.virtualWiki + ':' + topicName + " already exists and cannot be imported", e);
+		// do a second comparison of capitalized topic names in a case-sensitive way
+		// since the initial topic lookup will return a case-insensitive match for some
+		// namespaces.
+		String existingTopicName = (Environment.getBooleanValue(Environment.PROP_PARSER_ALLOW_CAPITALIZATION)) ? StringUtils.capitalize(existingTopic.getPageName()) : existingTopic.getPageName();
+		return StringUtils.equals(existingTopicName, importTopicName);
+	}
+
+	/**
+	 * Add a page to the write queue, waiting for space if the queue is full.
+	 * Gives up without adding the page if the import fails while waiting.
+	 */
+	private void enqueue(ImportedPage page) throws InterruptedException {
+		while (!this.writeQueue.offer(page, QUEUE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+			if (this.failure.get() != null) {
+				return;
 			}
 		}
-		this.currentTopic = new Topic(this.virtualWiki, wikiLink.getNamespace(), wikiLink.getArticle());
-		this.currentTopic.setTopicType(WikiUtil.findTopicTypeForNamespace(wikiLink.getNamespace()));
 	}
 
 	/**
-	 * Write a topic version record to the database.
+	 * Write processed pages to the database in batches until the end of the
+	 * import is reached.  This method runs on the writer thread.
 	 */
-	private void commitTopicVersion() throws SAXException {
-		// FIXME - support rollback
-		this.currentTopic.setTopicContent(currentTopicVersion.getVersionContent());
-		// only the final import version is logged
-		this.currentTopicVersion.setLoggable(false);
-		// no recent change record needed - can be added by reloading all recent changes if desired
-		this.currentTopicVersion.setRecentChangeAllowed(false);
-		this.topicVersionBuffer.add(this.currentTopicVersion);
-		this.writeTopicVersion(false);
+	private void writeTopics() throws InterruptedException {
+		Map<Topic, List<TopicVersion>> topicVersions = new LinkedHashMap<Topic, List<TopicVersion>>();
+		Map<Topic, ParserOutput> parserOutputs = new HashMap<Topic, ParserOutput>();
+		List<String> topicKeys = new ArrayList<String>();
+		int topicVersionCount = 0;
+		while (true) {
+			ImportedPage page = this.writeQueue.poll(QUEUE_TIMEOUT, TimeUnit.MILLISECONDS);
+			if (this.failure.get() != null) {
+				return;
+			}
+			if (page == null) {
+				continue;
+			}
+			if (page != END_OF_IMPORT) {
+				topicVersions.put(page.getTopic(), page.getTopicVersions());
+				parserOutputs.put(page.getTopic(), page.getParserOutput());
+				topicKeys.add(page.getTopicKey());
+				topicVersionCount += page.getTopicVersions().size();
+			}
+			if (!topicVersions.isEmpty() && (page == END_OF_IMPORT || topicVersions.size() >= IMPORT_BATCH_TOPICS || topicVersionCount >= IMPORT_BATCH_TOPIC_VERSIONS)) {
+				WikiBase.getDataHandler().writeImportedTopics(topicVersions, parserOutputs);
+				// the topics are now visible in the database, so the pending keys are no
+				// longer needed to detect duplicates.
+				this.pendingTopicKeys.removeAll(topicKeys);
+				for (Topic topic : topicVersions.keySet()) {
+					this.importedTopicNames.add(topic.getName());
+				}
+				int previousCount = this.status.getTopicsImported();
+				this.status.addTopicsImported(topicVersions.size(), topicVersionCount);
+				if (logger.isInfoEnabled() && (previousCount / PROGRESS_INTERVAL) != (this.status.getTopicsImported() / PROGRESS_INTERVAL)) {
+					logger.info("Import progress: " + this.status);
+				}
+				topicVersions = new LinkedHashMap<Topic, List<TopicVersion>>();
+				parserOutputs = new HashMap<Topic, ParserOutput>();
+				topicKeys = new ArrayList<String>();
+				topicVersionCount = 0;
+			}
+			if (page == END_OF_IMPORT) {
+				return;
+			}
+		}
 	}
 
 	/**
-	 * After all topic versions have been created for a topic, go back and set the previous topic version
-	 * ID values for each version.  This must be done after parsing since the XML file may not contain
-	 * version records sorted chronologically from oldest to newest.
+	 * Record an error thrown by any stage of the import.  Only the first error is
+	 * kept, and all stages stop once an error has been recorded.
 	 */
-	private void orderTopicVersions() throws SAXException {
-		if (this.currentTopicVersions.isEmpty()) {
-			throw new SAXException("No topic versions found for " + this.currentTopic.getName());
+	private void fail(Throwable t) {
+		if (this.failure.compareAndSet(null, t)) {
+			logger.error("Failure during import", t);
 		}
-		// topic versions are stored in a tree map to allow sorting... convert to a list
-		List<Integer> currentTopicVersionIdList = new ArrayList<Integer>(this.currentTopicVersions.values());
+	}
+
+	/**
+	 *
+	 */
+	private Timestamp parseMediaWikiTimestamp(String timestamp) {
 		try {
-			WikiBase.getDataHandler().orderTopicVersions(this.currentTopic, currentTopicVersionIdList);
-		} catch (DataAccessException e) {
-			throw new SAXException("Failure while ordering topic versions for topic: " + this.currentTopic.getName(), e);
+			Date date = DateUtils.parseDate(timestamp, new String[]{MediaWikiConstants.ISO_8601_DATE_FORMAT});
+			return new Timestamp(date.getTime());
+		} catch (ParseException e) {
+			// FIXME - this should be handled somehow
+			return new Timestamp(System.currentTimeMillis());
 		}
-		this.parsedTopics.put(this.currentTopic, currentTopicVersionIdList);
 	}
 
 	//===========================================================
@@ -267,8 +482,12 @@ public class MediaWikiXmlImporter extends DefaultHandler implements TopicImporte
 		if (MediaWikiConstants.MEDIAWIKI_ELEMENT_TOPIC_VERSION.equals(qName)) {
 			this.currentTopicVersion = new TopicVersion();
 			this.currentTopicVersion.setEditType(TopicVersion.EDIT_IMPORT);
+			// only the final import version is logged
+			this.currentTopicVersion.setLoggable(false);
+			// no recent change record needed - can be added by reloading all recent changes if desired
+			this.currentTopicVersion.setRecentChangeAllowed(false);
 		} else if (MediaWikiConstants.MEDIAWIKI_ELEMENT_TOPIC.equals(qName)) {
-			this.currentTopicVersions = new TreeMap<Date, Integer>();
+			this.currentPage = new ImportedPage(null);
 		}
 	}
 
@@ -288,19 +507,16 @@ public class MediaWikiXmlImporter extends DefaultHandler implements TopicImporte
 				Namespace jamwikiNamespace = WikiBase.getDataHandler().lookupNamespaceById(key);
 				if (jamwikiNamespace != null) {
 					String mediawikiNamespace = currentElementBuffer.toString().trim();
-					mediawikiNamespaceMap.put(mediawikiNamespace, jamwikiNamespace.getLabel(this.virtualWiki));
+					this.addNamespace(mediawikiNamespace, jamwikiNamespace.getLabel(this.virtualWiki));
 				}
 			} catch (DataAccessException e) {
 				throw new SAXException("Failure while processing namespace with ID: " + key, e);
 			}
 		} else if (MediaWikiConstants.MEDIAWIKI_ELEMENT_TOPIC_NAME.equals(qName)) {
-			String topicName = currentElementBuffer.toString().trim();
-			this.initCurrentTopic(topicName);
+			this.currentPage = new ImportedPage(currentElementBuffer.toString().trim());
 		} else if (MediaWikiConstants.MEDIAWIKI_ELEMENT_TOPIC_CONTENT.equals(qName)) {
-			String topicContent = this.convertToJAMWikiNamespaces(currentElementBuffer.toString().trim());
-			currentTopicVersion.setVersionContent(topicContent);
-			currentTopicVersion.setCharactersChanged(StringUtils.length(topicContent) - previousTopicContentLength);
-			previousTopicContentLength = StringUtils.length(topicContent);
+			// namespaces are converted by the worker threads
+			currentTopicVersion.setVersionContent(currentElementBuffer.toString().trim());
 		} else if (MediaWikiConstants.MEDIAWIKI_ELEMENT_TOPIC_VERSION_COMMENT.equals(qName)) {
 			this.currentTopicVersion.setEditComment(currentElementBuffer.toString().trim());
 		} else if (MediaWikiConstants.MEDIAWIKI_ELEMENT_TOPIC_VERSION_MINOR_EDIT.equals(qName)) {
@@ -317,11 +533,13 @@ public class MediaWikiXmlImporter extends DefaultHandler implements TopicImporte
 			}
 			this.currentTopicVersion.setAuthorDisplay(authorDisplay);
 		} else if (MediaWikiConstants.MEDIAWIKI_ELEMENT_TOPIC_VERSION.equals(qName)) {
-			this.commitTopicVersion();
+			if (this.currentTopicVersion.getVersionContent() == null) {
+				this.currentTopicVersion.setVersionContent("");
+			}
+			this.currentPage.getTopicVersions().add(this.currentTopicVersion);
 		} else if (MediaWikiConstants.MEDIAWIKI_ELEMENT_TOPIC.equals(qName)) {
-			// flush any pending topic version data
-			this.writeTopicVersion(true);
-			this.orderTopicVersions();
+			this.submitPage(this.currentPage);
+			this.currentPage = null;
 		}
 	}
 
@@ -334,27 +552,66 @@ public class MediaWikiXmlImporter extends DefaultHandler implements TopicImporte
 	}
 
 	/**
-	 *
+	 * A page read from the import file, holding the topic and all of its versions
+	 * as the page passes through the stages of the import.
 	 */
-	private void writeTopicVersion(boolean forceWrite) throws SAXException {
-		try {
-			// for performance reasons write the topic once to create an initial record, then write
-			// only the version record.
-			if (this.currentTopic.getTopicId() <= 0) {
-				// metadata is needed only for the final import version, so for performance reasons
-				// do not include category or link data for older versions
-				WikiBase.getDataHandler().writeTopic(this.currentTopic, null, null, null);
-			} else if (forceWrite || this.topicVersionBuffer.size() >= MAX_TOPIC_VERSION_BUFFER) {
-				WikiBase.getDataHandler().writeTopicVersions(this.currentTopic, this.topicVersionBuffer);
-				for (TopicVersion topicVersion : this.topicVersionBuffer) {
-					this.currentTopicVersions.put(topicVersion.getEditDate(), topicVersion.getTopicVersionId());
-				}
-				this.topicVersionBuffer = new ArrayList<TopicVersion>();
-			}
-		} catch (DataAccessException e) {
-			throw new SAXException("Failure while writing topic: " + this.currentTopic.getName(), e);
-		} catch (WikiException e) {
-			throw new SAXException("Failure while writing topic: " + this.currentTopic.getName(), e);
+	private static class ImportedPage {
+
+		private ParserOutput parserOutput;
+		private final String title;
+		private Topic topic;
+		private String topicKey;
+		private final List<TopicVersion> topicVersions = new ArrayList<TopicVersion>();
+
+		/**
+		 *
+		 */
+		ImportedPage(String title) {
+			this.title = title;
+		}
+
+		/**
+		 *
+		 */
+		ParserOutput getParserOutput() {
+			return this.parserOutput;
+		}
+
+		/**
+		 *
+		 */
+		String getTitle() {
+			return this.title;
+		}
+
+		/**
+		 *
+		 */
+		Topic getTopic() {
+			return this.topic;
+		}
+
+		/**
+		 *
+		 */
+		String getTopicKey() {
+			return this.topicKey;
+		}
+
+		/**
+		 *
+		 */
+		List<TopicVersion> getTopicVersions() {
+			return this.topicVersions;
+		}
+
+		/**
+		 * Set the converted topic and its metadata once the page has been processed.
+		 */
+		void setTopic(Topic topic, String topicKey, ParserOutput parserOutput) {
+			this.topic = topic;
+			this.topicKey = topicKey;
+			this.parserOutput = parserOutput;
 		}
 	}
 }
@@ -17,22 +17,13 @@
 package org.jamwiki.migrate;
 
 import java.io.File;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import org.apache.commons.lang3.StringUtils;
-import org.jamwiki.DataAccessException;
-import org.jamwiki.WikiBase;
 import org.jamwiki.WikiException;
 import org.jamwiki.WikiMessage;
-import org.jamwiki.model.Topic;
-import org.jamwiki.model.TopicType;
-import org.jamwiki.model.TopicVersion;
 import org.jamwiki.model.WikiUser;
-import org.jamwiki.parser.ParserException;
-import org.jamwiki.parser.ParserOutput;
-import org.jamwiki.parser.ParserUtil;
 import org.jamwiki.utils.Utilities;
 import org.jamwiki.utils.WikiLogger;
 
@@ -61,6 +52,69 @@ public class MigrationUtil {
 		exporter.exportToFile(file, virtualWiki, topicNames, excludeHistory);
 	}
 
+	/**
+	 * Given a file and a list of topic names, export the topics to one or more
+	 * files, each containing no more than the specified number of topics.  If
+	 * the topic list must be split the files are named by appending a counter
+	 * to the base file name, so "export.xml.gz" becomes "export-1.xml.gz",
+	 * "export-2.xml.gz", etc.
+	 *
+	 * @param file The file that determines the location and base name of the
+	 *  exported files.
+	 * @param virtualWiki The virtual wiki to which the topic name list belongs.
+	 * @param topicNames A list of topic names to be exported.
+	 * @param excludeHistory Set to <code>true</code> if only the most recent topic
+	 *  version, not the full topic history, should be exported.
+	 * @param maxTopicsPerFile The maximum number of topics to write to a single
+	 *  file, or zero to write all topics to a single file.
+	 * @return A list of the files that were written.
+	 * @throws MigrationException Thrown if a parsing error or data update error is
+	 *  thrown while trying to parse and commit topic data.
+	 * @throws WikiException Thrown if there is no topic data available.
+	 */
+	public static List<File> exportToFiles(File file, String virtualWiki, List<String> topicNames, boolean excludeHistory, int maxTopicsPerFile) throws MigrationException, WikiException {
+		List<File> files = new ArrayList<File>();
+		if (maxTopicsPerFile <= 0 || topicNames.size() <= maxTopicsPerFile) {
+			exportToFile(file, virtualWiki, topicNames, excludeHistory);
+			files.add(file);
+			return files;
+		}
+		String name = file.getName();
+		String suffix = "";
+		for (String extension : new String[] {".xml.gz", ".xml", ".gz"}) {
+			if (name.endsWith(extension)) {
+				suffix = extension;
+				name = name.substring(0, name.length() - extension.length());
+				break;
+			}
+		}
+		TopicExporter exporter = new MediaWikiXmlExporter();
+		for (int i = 0; i < topicNames.size(); i += maxTopicsPerFile) {
+			File chunk = new File(file.getParentFile(), name + "-" + (files.size() + 1) + suffix);
+			List<String> chunkTopicNames = topicNames.subList(i, Math.min(i + maxTopicsPerFile, topicNames.size()));
+			exporter.exportToFile(chunk, virtualWiki, chunkTopicNames, excludeHistory);
+			files.add(chunk);
+		}
+		return files;
+	}
+
+	/**
+	 * Given an output stream and a list of topic names, export the topics to the
+	 * stream.  The stream is not closed by this method.
+	 *
+	 * @param out The stream to which topic data is written.
+	 * @param virtualWiki The virtual wiki to which the topic name list belongs.
+	 * @param topicNames A list of topic names to be exported.
+	 * @param excludeHistory Set to <code>true</code> if only the most recent topic
+	 *  version, not the full topic history, should be exported.
+	 * @throws MigrationException Thrown if a parsing error or data update error is
+	 *  thrown while trying to parse and commit topic data.
+	 */
+	public static void exportToStream(OutputStream out, String virtualWiki, List<String> topicNames, boolean excludeHistory) throws MigrationException {
+		TopicExporter exporter = new MediaWikiXmlExporter();
+		exporter.exportToStream(out, virtualWiki, topicNames, excludeHistory);
+	}
+
 	/**
 	 * Given a file containing import information, parse the file and commit all
 	 * topic information within it.
@@ -78,55 +132,48 @@ public class MigrationUtil {
 	 * @throws WikiException Thrown if there is no topic data available.
 	 */
 	public static List<String> importFromFile(File file, String virtualWiki, WikiUser user, String authorDisplay, Locale locale) throws MigrationException, WikiException {
+		return MigrationUtil.importFromFile(file, virtualWiki, user, authorDisplay, locale, false, new ImportStatus());
+	}
+
+	/**
+	 * Given a file containing import information, parse the file and commit all
+	 * topic information within it.  Topics are committed in batches as the file
+	 * is read, so if the import fails then topics from earlier batches remain in
+	 * the database, and the import can be restarted by calling this method with
+	 * the same file and <code>resume</code> set to <code>true</code>.
+	 *
+	 * @param file The file that contains topic data to be parsed.
+	 * @param virtualWiki The virtual wiki to write the topic data to.
+	 * @param user The user (if any) that is performing the import.
+	 * @param authorDisplay The display value for the user that is performing the
+	 *  import.  This value is typically the user's IP address.
+	 * @param locale The locale for the user that is performing the import.
+	 * @param resume Set to <code>true</code> if topics that already exist should be
+	 *  skipped rather than causing the import to fail.
+	 * @param status An object that is updated with the progress of the import and
+	 *  that may be read from other threads while the import runs.
+	 * @return A list of topic names that are successfully parsed and committed to
+	 *  the database.
+	 * @throws MigrationException Thrown if a parsing error or data update error is
+	 *  thrown while trying to parse and commit topic data.
+	 * @throws WikiException Thrown if there is no topic data available.
+	 */
+	public static List<String> importFromFile(File file, String virtualWiki, WikiUser user, String authorDisplay, Locale locale, boolean resume, ImportStatus status) throws MigrationException, WikiException {
 		TopicImporter importer = new MediaWikiXmlImporter();
-		long start = System.currentTimeMillis();
-		Map<Topic, List<Integer>> parsedTopics = null;
-		// for performance reasons disable writes to the search engine during
-		// import since the search engine will be updated with the same topic
-		// information again during the creation of the topic import record.
-		WikiBase.getSearchEngine().setDisabled(true);
+		String importedBy = (user != null && user.getUserId() > 0) ? user.getUsername() : authorDisplay;
+		String editComment = Utilities.formatMessage("import.message.importedby", locale, new Object[]{importedBy});
+		List<String> successfulImports = null;
 		try {
-			parsedTopics = importer.importFromFile(file, virtualWiki);
+			successfulImports = importer.importFromFile(file, virtualWiki, user, authorDisplay, editComment, resume, status);
 		} catch (MigrationException e) {
 			if (e.getCause() instanceof WikiException) {
 				throw (WikiException)(e.getCause());
 			}
 			throw e;
-		} finally {
-			// re-enable the write updates to the search engine
-			WikiBase.getSearchEngine().setDisabled(false);
-		}
-		if (logger.isDebugEnabled()) {
-			logger.debug("Parsed XML " + file.getAbsolutePath() + " in " + ((System.currentTimeMillis() - start) / 1000.000) + " s.");
 		}
-		if (parsedTopics.isEmpty()) {
+		if (successfulImports.isEmpty() && status.getTopicsSkipped() == 0) {
 			throw new WikiException(new WikiMessage("import.error.notopic"));
 		}
-		List<String> successfulImports = new ArrayList<String>();
-		for (Topic topic : parsedTopics.keySet()) {
-			// create a dummy version to indicate that the topic was imported
-			String importedBy = (user != null && user.getUserId() > 0) ? user.getUsername() : authorDisplay;
-			String editComment = Utilities.formatMessage("import.message.importedby", locale, new Object[]{importedBy});
-			TopicVersion topicVersion = new TopicVersion(user, authorDisplay, editComment, topic.getTopicContent(), 0);
-			topicVersion.setEditType(TopicVersion.EDIT_IMPORT);
-			ParserOutput parserOutput = null;
-			try {
-				parserOutput = ParserUtil.parserOutput(topicVersion.getVersionContent(), virtualWiki, topic.getName());
-			} catch (ParserException e) {
-				throw new MigrationException("Failure while parsing topic version of topic: " + topic.getName(), e);
-			}
-			if (!StringUtils.isBlank(parserOutput.getRedirect())) {
-				// set up a redirect
-				topic.setRedirectTo(parserOutput.getRedirect());
-				topic.setTopicType(TopicType.REDIRECT);
-			}
-			try {
-				WikiBase.getDataHandler().writeTopic(topic, topicVersion, parserOutput.getCategories(), parserOutput.getLinks());
-			} catch (DataAccessException e) {
-				throw new MigrationException("Data access exception while processing topic " + virtualWiki + ':' + topic.getName(), e);
-			}
-			successfulImports.add(topic.getName());
-		}
 		return successfulImports;
 	}
 }
@@ -17,6 +17,7 @@
 package org.jamwiki.migrate;
 
 import java.io.File;
+import java.io.OutputStream;
 import java.util.List;
 
 /**
@@ -25,8 +26,8 @@ import java.util.List;
 public interface TopicExporter {
 
 	/**
-	 * Given a map of topics and the associated topic versions, generate a file suitable for
-	 * importing into another wiki.
+	 * Given a list of topic names, generate a file suitable for importing into
+	 * another wiki.  If the file name ends with ".gz" the file is compressed.
 	 *
 	 * @param file The file containing all exported topic data.
 	 * @param virtualWiki The virtual wiki for which topics will be exported.
@@ -36,4 +37,19 @@ public interface TopicExporter {
 	 * @throws MigrationException Thrown if any error occurs during export.
 	 */
 	public void exportToFile(File file, String virtualWiki, List<String> topicNames, boolean excludeHistory) throws MigrationException;
+
+	/**
+	 * Given a list of topic names, write data suitable for importing into another
+	 * wiki to an output stream.  Topic data is written as it is read, so memory use
+	 * does not depend on the size of the export.
+	 *
+	 * @param out The stream to which exported topic data is written.  The stream is
+	 *  not closed by this method.
+	 * @param virtualWiki The virtual wiki for which topics will be exported.
+	 * @param topicNames A list of topic names to export.
+	 * @param excludeHistory Set to <code>true</code> if only the most recent topic
+	 *  version, not the full topic history, should be exported.
+	 * @throws MigrationException Thrown if any error occurs during export.
+	 */
+	public void exportToStream(OutputStream out, String virtualWiki, List<String> topicNames, boolean excludeHistory) throws MigrationException;
 }
@@ -18,8 +18,7 @@ package org.jamwiki.migrate;
 
 import java.io.File;
 import java.util.List;
-import java.util.Map;
-import org.jamwiki.model.Topic;
+import org.jamwiki.model.WikiUser;
 
 /**
  * Interface that controls how topics are imported.
@@ -27,13 +26,23 @@ import org.jamwiki.model.Topic;
 public interface TopicImporter {
 
 	/**
-	 * Parse the contents of the file, returning a map of topics and the associated topic
-	 * versions for all data contained in the file.
+	 * Parse the contents of the file and write all topic data contained in the
+	 * file to the database.  Each imported topic receives an additional version
+	 * recording the import as its current version.
 	 *
 	 * @param file The file containing all topic data to be imported.
 	 * @param virtualWiki The virtual wiki into which the topic data will be imported.
-	 * @return A map of imported topics and a list of topic version IDs imported for each topic.
+	 * @param user The user (if any) that is performing the import.
+	 * @param authorDisplay The display value for the user that is performing the
+	 *  import.  This value is typically the user's IP address.
+	 * @param editComment The edit comment for the version that records the import.
+	 * @param resume Set to <code>true</code> if topics that already exist should be
+	 *  skipped, allowing an import that did not complete to be restarted using the
+	 *  same file.  If <code>false</code> then an existing topic causes the import
+	 *  to fail.
+	 * @param status An object that is updated with the progress of the import.
+	 * @return A list of the names of all topics that were imported.
 	 * @throws MigrationException Thrown if any error occurs during import.
 	 */
-	public Map<Topic, List<Integer>> importFromFile(File file, String virtualWiki) throws MigrationException;
+	public List<String> importFromFile(File file, String virtualWiki, WikiUser user, String authorDisplay, String editComment, boolean resume, ImportStatus status) throws MigrationException;
 }
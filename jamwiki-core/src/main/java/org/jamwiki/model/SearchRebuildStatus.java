@@ -0,0 +1,125 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides an object that tracks the progress of a search index rebuild.  The
+ * search engine updates the object while the rebuild runs, and it may be read
+ * from other threads at any time.
+ */
+public class SearchRebuildStatus {
+
+	/** Time that the rebuild completed, or zero if the rebuild is running. */
+	private volatile long endTime = 0;
+	/** Flag indicating that the rebuild completed with an error. */
+	private volatile boolean failed = false;
+	/** Time that the rebuild started. */
+	private final long startTime = System.currentTimeMillis();
+	/** Total number of topics to process. */
+	private final int topicCount;
+	/** Number of topics processed so far. */
+	private final AtomicInteger topicsProcessed = new AtomicInteger();
+	/** The virtual wiki currently being rebuilt. */
+	private volatile String virtualWiki;
+
+	/**
+	 *
+	 */
+	public SearchRebuildStatus(int topicCount) {
+		this.topicCount = topicCount;
+	}
+
+	/**
+	 * Record that additional topics have been processed.
+	 */
+	public void addTopicsProcessed(int count) {
+		this.topicsProcessed.addAndGet(count);
+	}
+
+	/**
+	 * Return the number of seconds that the rebuild has been running, or the
+	 * total duration if the rebuild has completed.
+	 */
+	public long getElapsedSeconds() {
+		long endTime = (this.endTime == 0) ? System.currentTimeMillis() : this.endTime;
+		return (endTime - this.startTime) / 1000;
+	}
+
+	/**
+	 *
+	 */
+	public int getTopicCount() {
+		return this.topicCount;
+	}
+
+	/**
+	 *
+	 */
+	public int getTopicsProcessed() {
+		return this.topicsProcessed.get();
+	}
+
+	/**
+	 * Return the average number of topics processed per second.
+	 */
+	public int getTopicsPerSecond() {
+		long endTime = (this.endTime == 0) ? System.currentTimeMillis() : this.endTime;
+		long elapsed = Math.max(1, endTime - this.startTime);
+		return (int)(this.topicsProcessed.get() * 1000L / elapsed);
+	}
+
+	/**
+	 *
+	 */
+	public String getVirtualWiki() {
+		return this.virtualWiki;
+	}
+
+	/**
+	 *
+	 */
+	public void setVirtualWiki(String virtualWiki) {
+		this.virtualWiki = virtualWiki;
+	}
+
+	/**
+	 *
+	 */
+	public boolean isFailed() {
+		return this.failed;
+	}
+
+	/**
+	 *
+	 */
+	public boolean isRunning() {
+		return (this.endTime == 0);
+	}
+
+	/**
+	 * Mark the rebuild as complete.
+	 *
+	 * @param failed Set to <code>true</code> if the rebuild did not complete
+	 *  successfully.
+	 */
+	public void finish(boolean failed) {
+		this.failed = failed;
+		this.endTime = System.currentTimeMillis();
+	}
+}
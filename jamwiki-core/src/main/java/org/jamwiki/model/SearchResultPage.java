@@ -0,0 +1,53 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.model;
+
+import java.util.List;
+
+/**
+ * Provides an object that stores a single page of search results along with
+ * the total number of topics that matched the search.
+ */
+public class SearchResultPage {
+
+	/** The search results for the requested page. */
+	private final List<SearchResultEntry> results;
+	/** The total number of topics matching the search, including those not on this page. */
+	private final int totalHits;
+
+	/**
+	 *
+	 */
+	public SearchResultPage(List<SearchResultEntry> results, int totalHits) {
+		this.results = results;
+		this.totalHits = totalHits;
+	}
+
+	/**
+	 *
+	 */
+	public List<SearchResultEntry> getResults() {
+		return this.results;
+	}
+
+	/**
+	 *
+	 */
+	public int getTotalHits() {
+		return this.totalHits;
+	}
+}
@@ -27,6 +27,9 @@ import org.jamwiki.utils.WikiLogger;
 import org.jamwiki.utils.WikiUtil;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -401,6 +404,42 @@ public abstract class LinkUtil {
 		}
 	}
 
+	/**
+	 * Determine whether a group of topics exist using a single batched lookup
+	 * rather than one lookup per topic.  The results are cached, so calling
+	 * this method with all link targets for a page prior to generating link
+	 * HTML allows subsequent calls to {@link #isExistingArticle} for those
+	 * topics to be resolved without a database query.
+	 *
+	 * @param virtualWiki The virtual wiki for the topics being checked.
+	 * @param articleNames A collection of topic names, possibly including
+	 *  namespaces, that are to be checked.
+	 * @throws DataAccessException Thrown if any error occurs during lookup.
+	 */
+	public static void loadExistingArticles(String virtualWiki, Collection<String> articleNames) throws DataAccessException {
+		if (StringUtils.isBlank(virtualWiki) || articleNames.isEmpty() || !Environment.isInitialized()) {
+			return;
+		}
+		boolean allowCapitalization = Environment.getBooleanValue(Environment.PROP_PARSER_ALLOW_CAPITALIZATION);
+		List<Topic> topics = new ArrayList<Topic>();
+		for (String articleName : articleNames) {
+			if (StringUtils.isBlank(articleName)) {
+				continue;
+			}
+			WikiLink wikiLink = new WikiLink(null, virtualWiki, articleName);
+			if (PseudoTopicHandler.isPseudoTopic(wikiLink.getDestination()) || wikiLink.getInterwiki() != null || StringUtils.isBlank(wikiLink.getArticle())) {
+				continue;
+			}
+			topics.add(new Topic(virtualWiki, wikiLink.getNamespace(), wikiLink.getArticle()));
+			if (allowCapitalization) {
+				// also load the alternative name that isExistingArticle may check
+				String alternativeArticleName = (StringUtils.equals(wikiLink.getArticle(), StringUtils.capitalize(wikiLink.getArticle()))) ? StringUtils.lowerCase(wikiLink.getArticle()) : StringUtils.capitalize(wikiLink.getArticle());
+				topics.add(new Topic(virtualWiki, wikiLink.getNamespace(), alternativeArticleName));
+			}
+		}
+		WikiBase.getDataHandler().lookupTopicNames(virtualWiki, topics);
+	}
+
 	/**
 	 * Utility method for determining if an article name corresponds to a valid
 	 * wiki link.  In this case an "article name" could be an existing topic, a
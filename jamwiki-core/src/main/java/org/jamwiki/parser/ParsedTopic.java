@@ -0,0 +1,100 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.parser;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+/**
+ * Immutable holder for the result of parsing a specific topic version,
+ * consisting of the parsed HTML and the metadata generated while parsing.
+ * Instances of this class are stored in the parsed topic cache.
+ */
+public class ParsedTopic implements Serializable {
+
+	private final boolean allowSectionEdit;
+	private final boolean allowTableOfContents;
+	private final String content;
+	private final String context;
+	private final Locale locale;
+	private final ParserOutput parserOutput;
+	private final int topicVersionId;
+
+	/**
+	 *
+	 */
+	public ParsedTopic(int topicVersionId, ParserInput parserInput, String content, ParserOutput parserOutput) {
+		this.topicVersionId = topicVersionId;
+		this.allowSectionEdit = parserInput.getAllowSectionEdit();
+		this.allowTableOfContents = parserInput.getAllowTableOfContents();
+		this.context = parserInput.getContext();
+		this.locale = parserInput.getLocale();
+		this.content = content;
+		this.parserOutput = parserOutput;
+	}
+
+	/**
+	 * Return the section edit setting used when parsing the topic version.
+	 */
+	public boolean getAllowSectionEdit() {
+		return this.allowSectionEdit;
+	}
+
+	/**
+	 * Return the table of contents setting used when parsing the topic version.
+	 */
+	public boolean getAllowTableOfContents() {
+		return this.allowTableOfContents;
+	}
+
+	/**
+	 * Return the parsed HTML content for the topic version.
+	 */
+	public String getContent() {
+		return this.content;
+	}
+
+	/**
+	 * Return the servlet context used when parsing the topic version.
+	 */
+	public String getContext() {
+		return this.context;
+	}
+
+	/**
+	 * Return the locale used when parsing the topic version.
+	 */
+	public Locale getLocale() {
+		return this.locale;
+	}
+
+	/**
+	 * Return the parser metadata generated while parsing the topic version.
+	 * This object is shared by all users of the cache entry and must not be
+	 * modified.
+	 */
+	public ParserOutput getParserOutput() {
+		return this.parserOutput;
+	}
+
+	/**
+	 * Return the ID of the topic version that was parsed.
+	 */
+	public int getTopicVersionId() {
+		return this.topicVersionId;
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.parser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.jamwiki.Environment;
+import org.jamwiki.WikiBase;
+import org.jamwiki.model.Topic;
+import org.jamwiki.utils.WikiLogger;
+
+/**
+ * Expire the cached parsed output of topics whose rendering depends on a topic
+ * that has changed.  A topic depends on every topic that it links to or
+ * transcludes as a template, since changes to those topics can change template
+ * output or the display of red links.  Dependencies are read from the topic
+ * links records that are written each time a topic is saved.
+ */
+public class ParsedTopicInvalidator {
+
+	private static final WikiLogger logger = WikiLogger.getLogger(ParsedTopicInvalidator.class.getName());
+	/** Number of invalidation generation counters; topic IDs are spread across the counters. */
+	private static final int GENERATION_STRIPES = 1024;
+	/** Invalidation generation counters, incremented each time a topic sharing the counter is invalidated. */
+	private static final AtomicLongArray GENERATIONS = new AtomicLongArray(GENERATION_STRIPES);
+	/** Single daemon thread used to re-render expired topics when background re-rendering is enabled. */
+	private static final ExecutorService RERENDER_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "jamwiki-parsed-topic-rerender");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 *
+	 */
+	private ParsedTopicInvalidator() {
+	}
+
+	/**
+	 * Return the invalidation generation for a topic.  A render that starts
+	 * before an invalidation of its topic may have read the old version of a
+	 * dependency, so callers record the generation before parsing and must not
+	 * cache their output if the generation has changed since then.  Topics
+	 * share generation counters, so an unrelated invalidation may occasionally
+	 * prevent caching, but an invalidation is never missed.
+	 *
+	 * @param topicId The ID of the topic being rendered.
+	 * @return The current invalidation generation for the topic.
+	 */
+	protected static long generation(int topicId) {
+		return GENERATIONS.get(ParsedTopicInvalidator.generationStripe(topicId));
+	}
+
+	/**
+	 *
+	 */
+	private static int generationStripe(int topicId) {
+		return (topicId & Integer.MAX_VALUE) % GENERATION_STRIPES;
+	}
+
+	/**
+	 * Expire the cached parsed output for a list of dependent topics.  Topics
+	 * that do not currently have any cached parsed output are ignored.  If
+	 * background re-rendering is enabled then each expired topic is parsed again
+	 * using the same parser settings as the expired cache entries so that the
+	 * next view of the topic does not have to wait for the parser.
+	 *
+	 * @param topicIds The IDs of all topics that depend on a changed topic.
+	 */
+	public static void invalidateDependentTopics(List<Integer> topicIds) {
+		if (topicIds == null || topicIds.isEmpty()) {
+			return;
+		}
+		boolean rerender = Environment.getBooleanValue(Environment.PROP_PARSER_CACHE_RERENDER);
+		for (Integer topicId : topicIds) {
+			// increment the generation first so that renders already in progress are
+			// not cached, even if the topic has no cached output yet
+			GENERATIONS.incrementAndGet(ParsedTopicInvalidator.generationStripe(topicId));
+			Map<String, ParsedTopic> parsedTopics = WikiBase.CACHE_PARSED_TOPICS.retrieveFromCache(topicId);
+			if (parsedTopics == null) {
+				continue;
+			}
+			WikiBase.CACHE_PARSED_TOPICS.removeFromCache(topicId);
+			if (rerender) {
+				ParsedTopicInvalidator.scheduleRerender(topicId, parsedTopics.values());
+			}
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Expired parsed output for up to " + topicIds.size() + " dependent topics");
+		}
+	}
+
+	/**
+	 * Queue a background task that parses the current version of a topic once
+	 * for each set of parser settings that was previously cached.
+	 */
+	private static void scheduleRerender(final int topicId, Collection<ParsedTopic> expiredTopics) {
+		final List<ParsedTopic> variants = new ArrayList<ParsedTopic>(expiredTopics);
+		RERENDER_EXECUTOR.execute(new Runnable() {
+			public void run() {
+				try {
+					Topic topic = WikiBase.getDataHandler().lookupTopicById(topicId);
+					if (topic == null || topic.getDeleteDate() != null) {
+						return;
+					}
+					for (ParsedTopic variant : variants) {
+						ParserInput parserInput = new ParserInput(topic.getVirtualWiki(), topic.getName());
+						parserInput.setAllowSectionEdit(variant.getAllowSectionEdit());
+						parserInput.setAllowTableOfContents(variant.getAllowTableOfContents());
+						parserInput.setContext(variant.getContext());
+						parserInput.setLocale(variant.getLocale());
+						ParserUtil.parseTopic(parserInput, null, topic);
+					}
+				} catch (Exception e) {
+					// re-rendering is an optimization, so failures should not be fatal
+					logger.warn("Failure while re-rendering topic with ID " + topicId, e);
+				}
+			}
+		});
+	}
+}
@@ -16,8 +16,11 @@
  */
 package org.jamwiki.parser;
 
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import org.jamwiki.DataAccessException;
+import org.jamwiki.Environment;
 import org.jamwiki.WikiBase;
 import org.jamwiki.model.Topic;
 import org.jamwiki.utils.WikiLogger;
@@ -51,6 +54,105 @@ public class ParserUtil {
 		return WikiBase.getParserInstance().parseHTML(parserInput, parserOutput, content);
 	}
 
+	/**
+	 * Using the system parser, parse the current version of a topic.  If
+	 * parsed topic caching is enabled and the topic version has already been
+	 * parsed with equivalent parser settings then the cached result is returned
+	 * and the parser output metadata is copied from the cached value, otherwise
+	 * the topic is parsed and the result is cached if the parser output
+	 * indicates that the content is cacheable and no topic that it depends on
+	 * was invalidated while it was being parsed.
+	 *
+	 * @param parserInput A ParserInput object that contains parser
+	 *  configuration information.
+	 * @param parserOutput A ParserOutput object that will hold metadata
+	 *  output.  If this parameter is <code>null</code> then metadata generated
+	 *  during parsing will not be available to the calling method.
+	 * @param topic The topic whose current version is being parsed.  The topic
+	 *  content must be the content of the topic's current version.
+	 * @return The parsed content.
+	 * @throws ParserException Thrown if there are any parsing errors.
+	 */
+	public static String parseTopic(ParserInput parserInput, ParserOutput parserOutput, Topic topic) throws ParserException {
+		if (parserOutput == null) {
+			parserOutput = new ParserOutput();
+		}
+		Integer topicVersionId = topic.getCurrentVersionId();
+		if (topicVersionId == null || topic.getTopicId() <= 0 || !Environment.getBooleanValue(Environment.PROP_PARSER_CACHE_TOPICS)) {
+			return ParserUtil.parse(parserInput, parserOutput, topic.getTopicContent());
+		}
+		String variantKey = ParserUtil.parsedTopicVariantKey(parserInput, topicVersionId);
+		Map<String, ParsedTopic> parsedTopics = WikiBase.CACHE_PARSED_TOPICS.retrieveFromCache(topic.getTopicId());
+		ParsedTopic parsedTopic = (parsedTopics != null) ? parsedTopics.get(variantKey) : null;
+		if (parsedTopic != null) {
+			ParserUtil.copyParserOutput(parsedTopic.getParserOutput(), parserOutput);
+			return parsedTopic.getContent();
+		}
+		long generation = ParsedTopicInvalidator.generation(topic.getTopicId());
+		String content = ParserUtil.parse(parserInput, parserOutput, topic.getTopicContent());
+		if (content != null && parserOutput.getCacheable() && generation == ParsedTopicInvalidator.generation(topic.getTopicId())) {
+			ParserOutput cachedParserOutput = new ParserOutput();
+			ParserUtil.copyParserOutput(parserOutput, cachedParserOutput);
+			// copy on write so that readers never see a partially updated map; entries
+			// for older topic versions are discarded since they can no longer be used
+			Map<String, ParsedTopic> updatedParsedTopics = new HashMap<String, ParsedTopic>();
+			if (parsedTopics != null) {
+				for (Map.Entry<String, ParsedTopic> entry : parsedTopics.entrySet()) {
+					if (entry.getValue().getTopicVersionId() == topicVersionId) {
+						updatedParsedTopics.put(entry.getKey(), entry.getValue());
+					}
+				}
+			}
+			updatedParsedTopics.put(variantKey, new ParsedTopic(topicVersionId, parserInput, content, cachedParserOutput));
+			WikiBase.CACHE_PARSED_TOPICS.addToCache(topic.getTopicId(), updatedParsedTopics);
+			if (generation != ParsedTopicInvalidator.generation(topic.getTopicId())) {
+				// a dependency changed while the output was being cached
+				WikiBase.CACHE_PARSED_TOPICS.removeFromCache(topic.getTopicId());
+			}
+		}
+		return content;
+	}
+
+	/**
+	 * Copy all metadata from one ParserOutput object to another.
+	 */
+	private static void copyParserOutput(ParserOutput from, ParserOutput to) {
+		for (Map.Entry<String, String> category : from.getCategories().entrySet()) {
+			to.addCategory(category.getKey(), category.getValue());
+		}
+		for (String interwikiLink : from.getInterwikiLinks()) {
+			to.addInterwikiLink(interwikiLink);
+		}
+		for (String link : from.getLinks()) {
+			to.addLink(link);
+		}
+		for (String template : from.getTemplates()) {
+			to.addTemplate(template);
+		}
+		for (String virtualWikiLink : from.getVirtualWikiLinks()) {
+			to.addVirtualWikiLink(virtualWikiLink);
+		}
+		to.setCacheable(from.getCacheable());
+		to.setPageTitle(from.getPageTitle());
+		to.setRedirect(from.getRedirect());
+		to.setSectionName(from.getSectionName());
+	}
+
+	/**
+	 * Generate a key that identifies the parser settings that affect the
+	 * output for a parsed topic version.  Two parser inputs that generate the
+	 * same key must produce identical output for the same topic version.
+	 */
+	private static String parsedTopicVariantKey(ParserInput parserInput, int topicVersionId) {
+		StringBuilder variantKey = new StringBuilder();
+		variantKey.append(topicVersionId);
+		variantKey.append('/').append(parserInput.getLocale());
+		variantKey.append('/').append(parserInput.getContext());
+		variantKey.append('/').append(parserInput.getAllowSectionEdit());
+		variantKey.append('/').append(parserInput.getAllowTableOfContents());
+		return variantKey.toString();
+	}
+
 	/**
 	 * Using the system parser, parse an edit comment.
 	 *
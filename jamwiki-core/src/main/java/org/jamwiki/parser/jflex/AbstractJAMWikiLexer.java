@@ -16,6 +16,7 @@
  */
 package org.jamwiki.parser.jflex;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -157,7 +158,7 @@ public abstract class AbstractJAMWikiLexer extends JFlexLexer {
 	 * Execute the lexer, returning the parsed content.  Override the parent
 	 * method to use the tag stack.
 	 */
-	protected String lex() throws Exception {
+	protected CharSequence lex() throws Exception {
 		String line;
 		if (this.mode == JFlexParser.MODE_LAYOUT) {
 			// push a paragraph at start of lexing - if it turns out that an
@@ -261,19 +262,29 @@ public abstract class AbstractJAMWikiLexer extends JFlexLexer {
 	}
 
 	/**
-	 * Pop all tags off of the stack and return a string representation.
+	 * Pop all tags off of the stack and return the content of the root tag.
 	 */
-	private String popAllTags() throws ParserException {
+	private CharSequence popAllTags() throws ParserException {
 		// pop the stack down to (but not including) the root tag
 		while (this.tagStack.size() > 1) {
 			this.popTag(this.peekTag().getTagType());
 		}
 		// now pop the root tag
-		if (this.mode >= JFlexParser.MODE_LAYOUT) {
-			return this.tagStack.pop().toHtml().toString().trim();
-		} else {
-			return this.tagStack.pop().toHtml().toString();
+		CharSequence html = this.tagStack.pop().toHtml();
+		if (this.mode < JFlexParser.MODE_LAYOUT) {
+			return html;
+		}
+		// trim using the same rules as String.trim(), but return a view of the
+		// content rather than a copy
+		int start = 0;
+		int end = html.length();
+		while (start < end && html.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && html.charAt(end - 1) <= ' ') {
+			end--;
 		}
+		return CharBuffer.wrap(html, start, end);
 	}
 
 	/**
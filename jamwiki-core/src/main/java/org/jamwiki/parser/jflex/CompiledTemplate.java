@@ -0,0 +1,150 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.parser.jflex;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable, pre-tokenized representation of a template body.  The body is
+ * split into literal text segments and template parameter slots of the form
+ * <code>{{{name|default}}}</code>, so that expanding a template call only
+ * requires substituting parameter values rather than re-scanning the raw
+ * template text.  A template body with N parameter slots consists of N + 1
+ * literal segments, with parameter slot <code>i</code> falling between
+ * literal segments <code>i</code> and <code>i + 1</code>.  The content of each
+ * parameter slot is itself compiled, since parameter names and defaults may
+ * contain embedded parameters.
+ */
+public class CompiledTemplate implements Serializable {
+
+	private static final String[] EMPTY_LITERALS = new String[0];
+	private static final CompiledTemplate[] EMPTY_PARAMETERS = new CompiledTemplate[0];
+	private final String[] literals;
+	private final CompiledTemplate[] parameters;
+	private final int topicVersionId;
+
+	/**
+	 *
+	 */
+	private CompiledTemplate(List<String> literals, List<CompiledTemplate> parameters, int topicVersionId) {
+		this.literals = literals.toArray(EMPTY_LITERALS);
+		this.parameters = parameters.toArray(EMPTY_PARAMETERS);
+		this.topicVersionId = topicVersionId;
+	}
+
+	/**
+	 * Split template body content into literal segments and parameter slots.
+	 *
+	 * @param content The template body content, after noinclude, includeonly
+	 *  and onlyinclude tags have been processed.
+	 * @param topicVersionId The ID of the template topic version that the
+	 *  content was read from, or <code>-1</code> if the content is not
+	 *  associated with a specific topic version.
+	 * @return The compiled template representation of the content.
+	 */
+	public static CompiledTemplate compile(String content, int topicVersionId) {
+		List<String> literals = new ArrayList<String>();
+		List<CompiledTemplate> parameters = new ArrayList<CompiledTemplate>();
+		StringBuilder literal = new StringBuilder();
+		char current, case4Char;
+		int endPos, case1EndPos, case3EndPos;
+		// find template parameters of the form {{{0}}}
+		for (int pos = 0; pos < content.length(); pos++) {
+			current = content.charAt(pos);
+			if (current != '{' || !content.startsWith("{{{", pos)) {
+				// not a template parameter, move to the next character
+				literal.append(current);
+				continue;
+			}
+			// this may be a template parameter, but check for various sub-patterns to be sure
+			endPos = JFlexParserUtil.findMatchingEndTag(content, pos, "{{{", "}}}");
+			if (endPos == -1) {
+				// no matching end tag
+				literal.append(current);
+				continue;
+			}
+			endPos += "}}}".length();
+			// there are several sub-patterns that need to be analyzed:
+			// 1. {{{1|{{PAGENAME}}}}}
+			// 2. {{{{{1}}}}}
+			// 3. {{{template}} x {{template}}}
+			// 4. {{{1|{{{2}}}}}}
+			case1EndPos = JFlexParserUtil.findMatchingEndTag(content, pos, "{", "}") + "}".length();
+			if (endPos < case1EndPos && content.startsWith("}}}", case1EndPos - 3)) {
+				// case #1
+				endPos = case1EndPos;
+			}
+			if (content.startsWith("{{{{{", pos) && content.startsWith("}}}}}", endPos - 5)) {
+				// case #2 (note: endPos updated in the previous step)
+				literal.append("{{");
+				pos++;
+				continue;
+			}
+			case3EndPos = JFlexParserUtil.findMatchingEndTag(content, pos + 1, "{{", "}}") + "}}".length();
+			if (case3EndPos != (endPos - 1)) {
+				// either case #3 or case #4
+				case4Char = content.charAt(case3EndPos + 1);
+				if (case4Char != '}') {
+					// case #3
+					literal.append(current);
+					continue;
+				}
+			}
+			literals.add(literal.toString());
+			literal.setLength(0);
+			String param = content.substring(pos + "{{{".length(), endPos - "}}}".length());
+			parameters.add(CompiledTemplate.compile(param, topicVersionId));
+			pos = endPos - 1;
+		}
+		literals.add(literal.toString());
+		return new CompiledTemplate(literals, parameters, topicVersionId);
+	}
+
+	/**
+	 * Return the literal text segment at the specified index.  Valid indexes
+	 * range from zero to {@link #getParameterCount()}, inclusive.
+	 */
+	public String getLiteral(int index) {
+		return this.literals[index];
+	}
+
+	/**
+	 * Return the compiled content of the parameter slot at the specified index,
+	 * excluding the enclosing <code>{{{</code> and <code>}}}</code>.
+	 */
+	public CompiledTemplate getParameter(int index) {
+		return this.parameters[index];
+	}
+
+	/**
+	 * Return the number of parameter slots in the template body.
+	 */
+	public int getParameterCount() {
+		return this.parameters.length;
+	}
+
+	/**
+	 * Return the ID of the template topic version that this template was
+	 * compiled from, or <code>-1</code> if the template is not associated with
+	 * a specific topic version.
+	 */
+	public int getTopicVersionId() {
+		return this.topicVersionId;
+	}
+}
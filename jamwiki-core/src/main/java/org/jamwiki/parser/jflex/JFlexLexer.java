@@ -163,15 +163,17 @@ public abstract class JFlexLexer {
 	}
 
 	/**
-	 * Execute the lexer, returning the parsed content.
+	 * Execute the lexer, returning the parsed content.  The content is returned
+	 * in the buffer that it was built in so that the next parser stage can read
+	 * it without the content first being copied into a String.
 	 */
-	protected String lex() throws Exception {
+	protected CharSequence lex() throws Exception {
 		String line;
 		StringBuilder result = new StringBuilder();
 		while ((line = this.yylex()) != null) {
 			result.append(line);
 		}
-		return result.toString();
+		return result;
 	}
 
 	/**
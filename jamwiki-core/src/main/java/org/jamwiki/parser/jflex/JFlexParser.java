@@ -74,9 +74,11 @@ public class JFlexParser implements JAMWikiParser {
 	}
 
 	/**
-	 * Utility method for executing a lexer parse.
+	 * Utility method for executing a lexer parse.  The parsed content is
+	 * returned in the buffer built by the lexer, allowing it to be handed to
+	 * the next parser stage without an intermediate copy.
 	 */
-	private String lex(JFlexLexer lexer, ParserInput parserInput, ParserOutput parserOutput, int mode) throws ParserException {
+	private CharSequence lex(JFlexLexer lexer, ParserInput parserInput, ParserOutput parserOutput, int mode) throws ParserException {
 		lexer.init(parserInput, parserOutput, mode);
 		validate(lexer);
 		parserInput.incrementDepth();
@@ -99,7 +101,7 @@ public class JFlexParser implements JAMWikiParser {
 	 * @return The parsed content.
 	 * @throws ParserException Thrown if any error occurs during parsing.
 	 */
-	private String parseCustom(ParserInput parserInput, ParserOutput parserOutput, String raw, int mode) throws ParserException {
+	private CharSequence parseCustom(ParserInput parserInput, ParserOutput parserOutput, CharSequence raw, int mode) throws ParserException {
 		if (mode < JFlexParser.MODE_CUSTOM) {
 			return raw;
 		}
@@ -125,7 +127,7 @@ public class JFlexParser implements JAMWikiParser {
 		}
 		Reader reader = toReader(raw, true);
 		JAMWikiEditCommentLexer lexer = new JAMWikiEditCommentLexer(reader);
-		return this.lex(lexer, parserInput, parserOutput, MODE_EDIT_COMMENT).trim();
+		return this.lex(lexer, parserInput, parserOutput, MODE_EDIT_COMMENT).toString().trim();
 	}
 
 	/**
@@ -147,7 +149,7 @@ public class JFlexParser implements JAMWikiParser {
 		if (raw != null && raw.length() == 0) {
 			return raw;
 		}
-		String output = raw;
+		CharSequence output = raw;
 		// maintain the original output, which has all of the category and link info
 		output = this.parseTemplate(parserInput, parserOutput, output, mode);
 		output = this.parseCustom(parserInput, parserOutput, output, mode);
@@ -155,7 +157,7 @@ public class JFlexParser implements JAMWikiParser {
 		// layout should not be done while parsing fragments
 		int preMode = (mode > JFlexParser.MODE_PROCESS) ? JFlexParser.MODE_PROCESS : mode;
 		output = this.parseProcess(parserInput, parserOutput, output, preMode);
-		return output.trim();
+		return output.toString().trim();
 	}
 
 	/**
@@ -174,11 +176,14 @@ public class JFlexParser implements JAMWikiParser {
 		}
 		long start = System.currentTimeMillis();
 		// some parser expressions require that lines end in a newline, so add a newline
-		// to the end of the content for good measure
-		String output = raw + '\n';
+		// to the end of the content for good measure.  each stage reads the buffer
+		// produced by the previous stage directly, so the only copies of the
+		// document are the input and output of the stage that is running.
+		CharSequence output = raw + '\n';
 		output = this.parseTemplate(parserInput, parserOutput, output, JFlexParser.MODE_TEMPLATE);
 		output = this.parseCustom(parserInput, parserOutput, output, JFlexParser.MODE_CUSTOM);
 		output = this.parsePreProcess(parserInput, parserOutput, output, JFlexParser.MODE_PREPROCESS);
+		this.loadLinkTargets(parserInput, parserOutput);
 		output = this.parseProcess(parserInput, parserOutput, output, JFlexParser.MODE_LAYOUT);
 		output = this.parsePostProcess(parserInput, parserOutput, output, JFlexParser.MODE_POSTPROCESS);
 		if (!StringUtils.isBlank(parserOutput.getRedirect())) {
@@ -189,7 +194,7 @@ public class JFlexParser implements JAMWikiParser {
 			String topicName = (!StringUtils.isBlank(parserInput.getTopicName())) ? parserInput.getTopicName() : null;
 			logger.info("Parse time (parseHTML) for " + topicName + " (" + ((System.currentTimeMillis() - start) / 1000.000) + " s.)");
 		}
-		return output.trim();
+		return output.toString().trim();
 	}
 
 	/**
@@ -211,7 +216,7 @@ public class JFlexParser implements JAMWikiParser {
 		}
 		// some parser expressions require that lines end in a newline, so add a newline
 		// to the end of the content for good measure
-		String output = raw + '\n';
+		CharSequence output = raw + '\n';
 		output = this.parseTemplate(parserInput, parserOutput, output, JFlexParser.MODE_TEMPLATE);
 		output = this.parseCustom(parserInput, parserOutput, output, JFlexParser.MODE_CUSTOM);
 		output = this.parsePreProcess(parserInput, parserOutput, output, JFlexParser.MODE_PREPROCESS);
@@ -237,7 +242,7 @@ public class JFlexParser implements JAMWikiParser {
 		}
 		long start = System.currentTimeMillis();
 		try {
-			return this.parseTemplate(parserInput, ParserOutput.IMMUTABLE_PARSER_OUTPUT, raw, JFlexParser.MODE_MINIMAL);
+			return this.parseTemplate(parserInput, ParserOutput.IMMUTABLE_PARSER_OUTPUT, raw, JFlexParser.MODE_MINIMAL).toString();
 		} finally {
 			if (logger.isInfoEnabled()) {
 				String topicName = (!StringUtils.isBlank(parserInput.getTopicName())) ? parserInput.getTopicName() : null;
@@ -256,7 +261,7 @@ public class JFlexParser implements JAMWikiParser {
 	 * @return The parsed content.
 	 * @throws ParserException Thrown if any error occurs during parsing.
 	 */
-	private String parseTemplate(ParserInput parserInput, ParserOutput parserOutput, String raw, int mode) throws ParserException {
+	private CharSequence parseTemplate(ParserInput parserInput, ParserOutput parserOutput, CharSequence raw, int mode) throws ParserException {
 		Reader reader = toReader(raw, true);
 		JAMWikiTemplateLexer lexer = new JAMWikiTemplateLexer(reader);
 		int preMode = (mode > JFlexParser.MODE_TEMPLATE) ? JFlexParser.MODE_TEMPLATE : mode;
@@ -273,7 +278,7 @@ public class JFlexParser implements JAMWikiParser {
 	 * @return The parsed content.
 	 * @throws ParserException Thrown if any error occurs during parsing.
 	 */
-	private String parsePreProcess(ParserInput parserInput, ParserOutput parserOutput, String raw, int mode) throws ParserException {
+	private CharSequence parsePreProcess(ParserInput parserInput, ParserOutput parserOutput, CharSequence raw, int mode) throws ParserException {
 		if (mode < JFlexParser.MODE_PREPROCESS) {
 			return raw;
 		}
@@ -294,7 +299,7 @@ public class JFlexParser implements JAMWikiParser {
 	 * @return The parsed content.
 	 * @throws ParserException Thrown if any error occurs during parsing.
 	 */
-	private String parseProcess(ParserInput parserInput, ParserOutput parserOutput, String raw, int mode) throws ParserException {
+	private CharSequence parseProcess(ParserInput parserInput, ParserOutput parserOutput, CharSequence raw, int mode) throws ParserException {
 		if (mode < JFlexParser.MODE_PROCESS) {
 			return raw;
 		}
@@ -318,7 +323,7 @@ public class JFlexParser implements JAMWikiParser {
 	 * @return The parsed content.
 	 * @throws ParserException Thrown if any error occurs during parsing.
 	 */
-	private String parsePostProcess(ParserInput parserInput, ParserOutput parserOutput, String raw, int mode) throws ParserException {
+	private CharSequence parsePostProcess(ParserInput parserInput, ParserOutput parserOutput, CharSequence raw, int mode) throws ParserException {
 		if (mode < JFlexParser.MODE_POSTPROCESS) {
 			return raw;
 		}
@@ -327,6 +332,23 @@ public class JFlexParser implements JAMWikiParser {
 		return this.lex(lexer, parserInput, parserOutput, mode);
 	}
 
+	/**
+	 * All link targets are known after the pre-process pass, so determine which
+	 * targets exist with a single batched lookup rather than performing a
+	 * separate lookup for each link as link HTML is generated.
+	 */
+	private void loadLinkTargets(ParserInput parserInput, ParserOutput parserOutput) {
+		if (parserOutput == ParserOutput.IMMUTABLE_PARSER_OUTPUT) {
+			return;
+		}
+		try {
+			LinkUtil.loadExistingArticles(parserInput.getVirtualWiki(), parserOutput.getLinks());
+		} catch (DataAccessException e) {
+			// links will be looked up individually
+			logger.warn("Failure while loading link targets for " + parserInput.getTopicName(), e);
+		}
+	}
+
 	/**
 	 * Parse a topic that is a redirect.  Ordinarily the contents of the redirected
 	 * topic would be displayed, but in some cases (such as when explicitly viewing
@@ -387,7 +409,7 @@ public class JFlexParser implements JAMWikiParser {
 		Reader reader = toReader(raw, true);
 		JAMWikiSpliceLexer lexer = new JAMWikiSpliceLexer(reader);
 		lexer.setTargetSection(targetSection);
-		String output = this.lex(lexer, parserInput, parserOutput, JFlexParser.MODE_SLICE);
+		String output = this.lex(lexer, parserInput, parserOutput, JFlexParser.MODE_SLICE).toString();
 		if (logger.isDebugEnabled()) {
 			String topicName = (!StringUtils.isBlank(parserInput.getTopicName())) ? parserInput.getTopicName() : null;
 			logger.debug("Parse time (parseSlice) for " + topicName + " (" + ((System.currentTimeMillis() - start) / 1000.000) + " s.)");
@@ -419,7 +441,7 @@ public class JFlexParser implements JAMWikiParser {
 		JAMWikiSpliceLexer lexer = new JAMWikiSpliceLexer(reader);
 		lexer.setReplacementText(replacementText);
 		lexer.setTargetSection(targetSection);
-		String output = this.lex(lexer, parserInput, parserOutput, JFlexParser.MODE_SPLICE);
+		String output = this.lex(lexer, parserInput, parserOutput, JFlexParser.MODE_SPLICE).toString();
 		if (logger.isDebugEnabled()) {
 			String topicName = (!StringUtils.isBlank(parserInput.getTopicName())) ? parserInput.getTopicName() : null;
 			logger.debug("Parse time (parseSplice) for " + topicName + " (" + ((System.currentTimeMillis() - start) / 1000.000) + " s.)");
@@ -428,15 +450,19 @@ public class JFlexParser implements JAMWikiParser {
 	}
 
 	/**
-	 * Convert a string of text to be parsed into a Reader, performing any
-	 * preprocessing, such as removing linefeeds, in the process.
+	 * Convert text to be parsed into a Reader, performing any preprocessing,
+	 * such as removing linefeeds, in the process.  The text is read in place
+	 * and is only copied if characters must be removed.
 	 */
-	private Reader toReader(String raw, boolean stripControlChars) {
-		StrBuilder builder = new StrBuilder(raw);
-		if (stripControlChars) {
+	private Reader toReader(CharSequence raw, boolean stripControlChars) {
+		if (raw == null) {
+			raw = "";
+		} else if (stripControlChars && StringUtils.indexOf(raw, '\r') != -1) {
+			StrBuilder builder = new StrBuilder(raw.length()).append(raw);
 			builder.deleteAll('\r');
+			raw = builder;
 		}
-		return builder.asReader();
+		return new CharSequenceReader(raw);
 	}
 
 	/**
@@ -486,4 +512,42 @@ public class JFlexParser implements JAMWikiParser {
 			throw new ParserException("Parser info not properly initialized");
 		}
 	}
+
+	/**
+	 * Reader that reads directly from a CharSequence, such as the buffer built
+	 * by a lexer, without first copying it into a String.  Each read copies as
+	 * many characters as the caller's buffer holds.
+	 */
+	private static class CharSequenceReader extends Reader {
+
+		private final CharSequence content;
+		private int pos = 0;
+
+		CharSequenceReader(CharSequence content) {
+			this.content = content;
+		}
+
+		public void close() {
+		}
+
+		public int read(char[] buffer, int offset, int length) {
+			if (this.pos >= this.content.length()) {
+				return -1;
+			}
+			int count = Math.min(length, this.content.length() - this.pos);
+			if (this.content instanceof String) {
+				((String)this.content).getChars(this.pos, this.pos + count, buffer, offset);
+			} else if (this.content instanceof StringBuilder) {
+				((StringBuilder)this.content).getChars(this.pos, this.pos + count, buffer, offset);
+			} else if (this.content instanceof StrBuilder) {
+				((StrBuilder)this.content).getChars(this.pos, this.pos + count, buffer, offset);
+			} else {
+				for (int i = 0; i < count; i++) {
+					buffer[offset + i] = this.content.charAt(this.pos + i);
+				}
+			}
+			this.pos += count;
+			return count;
+		}
+	}
 }
\ No newline at end of file
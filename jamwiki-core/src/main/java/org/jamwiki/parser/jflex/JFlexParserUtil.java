@@ -62,47 +62,29 @@ public class JFlexParserUtil {
 	 *  character of the end tag.
 	 */
 	public static int findMatchingEndTag(CharSequence content, int start, String startToken, String endToken) {
-		// do some initial searching to make sure the tokens are available
 		if (content == null || start < 0 || start >= content.length()) {
 			return -1;
 		}
-		String contentString = content.toString();
-		int lastEndToken = contentString.lastIndexOf(endToken);
-		if (lastEndToken == -1 || lastEndToken < start) {
-			return -1;
-		}
-		int firstStartToken = contentString.indexOf(startToken, start);
-		if (firstStartToken == -1) {
-			return -1;
-		}
-		int pos = firstStartToken;
-		int count = 0;
-		int nextStart = firstStartToken;
-		int nextEnd = lastEndToken;
-		// search for matches within the area that tokens have already been found
-		while (pos >= firstStartToken && pos < (lastEndToken + endToken.length())) {
-			if (nextStart != -1 && nextStart < nextEnd) {
-				// cursor is currently at the match of a start token
-				count++;
-				pos += startToken.length();
-			} else {
-				// cursor is currently at the match of an end token
-				count--;
-				if (count == 0) {
+		// scan forward once, tracking the nesting depth.  end tokens that
+		// appear before the first start token are ignored.
+		int length = content.length();
+		int depth = 0;
+		int pos = start;
+		while (pos < length) {
+			if (depth > 0 && JFlexParserUtil.matchesAt(content, pos, endToken)) {
+				depth--;
+				if (depth == 0) {
 					// this tag closes a match, return the position of the
 					// start of the tag
 					return pos;
 				}
 				pos += endToken.length();
+			} else if (JFlexParserUtil.matchesAt(content, pos, startToken)) {
+				depth++;
+				pos += startToken.length();
+			} else {
+				pos++;
 			}
-			// jump to the next start or end token
-			nextEnd = contentString.indexOf(endToken, pos);
-			if (nextEnd == -1) {
-				// no more matching end patterns, no match
-				break;
-			}
-			nextStart = contentString.indexOf(startToken, pos);
-			pos = (nextStart == -1) ? nextEnd : Math.min(nextStart, nextEnd);
 		}
 		return -1;
 	}
@@ -142,16 +124,13 @@ public class JFlexParserUtil {
 			pos = lastEndToken + endToken.length() - 1;
 		}
 		int count = 0;
-		String contentString = content.toString();
-		String substring;
 		// search for matches within the area that tokens have already been found
 		while (pos >= firstStartToken && pos < (lastEndToken + endToken.length())) {
-			substring = contentString.substring(0, pos + 1);
 			// search for matches from end-to-beginning
-			if (substring.endsWith(endToken)) {
+			if (JFlexParserUtil.matchesAt(content, pos - endToken.length() + 1, endToken)) {
 				count++;
 				pos -= endToken.length();
-			} else if (substring.endsWith(startToken)) {
+			} else if (JFlexParserUtil.matchesAt(content, pos - startToken.length() + 1, startToken)) {
 				count--;
 				if (count == 0) {
 					// this tag opens a match, return the position of the
@@ -166,6 +145,22 @@ public class JFlexParserUtil {
 		return -1;
 	}
 
+	/**
+	 * Determine whether a token appears in content at the given position,
+	 * without creating any intermediate strings.
+	 */
+	private static boolean matchesAt(CharSequence content, int pos, String token) {
+		if (pos < 0 || pos + token.length() > content.length()) {
+			return false;
+		}
+		for (int i = 0; i < token.length(); i++) {
+			if (content.charAt(pos + i) != token.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Given a string, determine if it is a valid HTML entity (such as &trade; or
 	 * &#160;).
@@ -390,54 +385,53 @@ public class JFlexParserUtil {
 	/**
 	 * Parse a template string of the form "param1|param2|param3" into tokens
 	 * (param1, param2, and param3 in the example), handling such cases as
-	 * "param1|[[foo|bar]]|param3" correctly.
+	 * "param1|[[foo|bar]]|param3" correctly.  The content is scanned once;
+	 * when a template, template parameter, link or table is found the scan
+	 * jumps to its matching end tag so that any pipes it contains are not
+	 * treated as separators.
 	 */
-	protected static List<String> tokenizeParamString(String content) {
+	protected static List<String> tokenizeParamString(CharSequence content) {
 		List<String> tokens = new ArrayList<String>();
-		if (content.indexOf('|') == -1) {
+		if (StringUtils.indexOf(content, '|') == -1) {
 			// nothing to tokenize
-			tokens.add(content);
+			tokens.add(content.toString());
 			return tokens;
 		}
+		int length = content.length();
+		int tokenStart = 0;
 		int pos = 0;
-		int endPos = -1;
-		int closeTagSize = 0;
-		String substring;
-		StringBuilder value = new StringBuilder(content.length());
-		while (pos < content.length()) {
-			substring = content.substring(pos);
+		int endPos;
+		int closeTagSize;
+		char current;
+		while (pos < length) {
+			current = content.charAt(pos);
+			if (current == '|') {
+				// new token
+				tokens.add(content.subSequence(tokenStart, pos).toString());
+				pos++;
+				tokenStart = pos;
+				continue;
+			}
 			endPos = -1;
 			closeTagSize = 2;
-			if (substring.startsWith("{{{")) {
+			if (current == '{' && JFlexParserUtil.matchesAt(content, pos, "{{{")) {
 				// template parameter
 				endPos = JFlexParserUtil.findMatchingEndTag(content, pos, "{{{", "}}}");
 				closeTagSize = 3;
-			} else if (substring.startsWith("{{")) {
+			} else if (current == '{' && JFlexParserUtil.matchesAt(content, pos, "{{")) {
 				// template
 				endPos = JFlexParserUtil.findMatchingEndTag(content, pos, "{{", "}}");
-			} else if (substring.startsWith("[[")) {
+			} else if (current == '[' && JFlexParserUtil.matchesAt(content, pos, "[[")) {
 				// link
 				endPos = JFlexParserUtil.findMatchingEndTag(content, pos, "[[", "]]");
-			} else if (substring.startsWith("{|")) {
+			} else if (current == '{' && JFlexParserUtil.matchesAt(content, pos, "{|")) {
 				// table
 				endPos = JFlexParserUtil.findMatchingEndTag(content, pos, "{|", "|}");
-			} else if (content.charAt(pos) == '|') {
-				// new token
-				tokens.add(value.toString());
-				value = new StringBuilder();
-				pos++;
-				continue;
-			}
-			if (endPos != -1) {
-				value.append(content.substring(pos, endPos + closeTagSize));
-				pos = endPos + closeTagSize;
-			} else {
-				value.append(content.charAt(pos));
-				pos++;
 			}
+			pos = (endPos != -1) ? endPos + closeTagSize : pos + 1;
 		}
 		// add the last one
-		tokens.add(value.toString());
+		tokens.add(content.subSequence(tokenStart, length).toString());
 		return tokens;
 	}
 }
@@ -295,6 +295,9 @@ public abstract class ParserFunctionUtil {
 			return "";
 		}
 		String topicName = Utilities.decodeAndEscapeTopicName(parserFunctionArgumentArray[0], true);
+		// the result changes whenever the target topic is added or deleted, so record
+		// it as a link to have cached output expired when that happens
+		parserOutput.addLink(topicName);
 		// parse to handle any embedded templates
 		if (WikiBase.getDataHandler().lookupTopic(parserInput.getVirtualWiki(), topicName, false) != null) {
 			return (parserFunctionArgumentArray.length >= 2) ? JFlexParserUtil.parseFragment(parserInput, parserOutput, parserFunctionArgumentArray[1], JFlexParser.MODE_TEMPLATE) : "";
@@ -16,6 +16,8 @@
  */
 package org.jamwiki.parser.jflex;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +45,7 @@ import org.jamwiki.utils.WikiLogger;
 public class TemplateTag implements JFlexParserTag {
 
 	private static final WikiLogger logger = WikiLogger.getLogger(TemplateTag.class.getName());
+	protected static final String TEMPLATE_EXPANSIONS = "template-expansions";
 	protected static final String TEMPLATE_INCLUSION = "template-inclusion";
 	protected static final String TEMPLATE_ONLYINCLUDE = "template-onlyinclude";
 
@@ -53,10 +56,9 @@ public class TemplateTag implements JFlexParserTag {
 	 * voodoo magic that happens here to first parse any embedded values, and
 	 * to apply default values when no template value has been set.
 	 */
-	private String applyParameter(ParserInput parserInput, ParserOutput parserOutput, String param, Map<String, String> parameterValues) throws ParserException {
-		String content = param.substring("{{{".length(), param.length() - "}}}".length());
+	private String applyParameter(ParserInput parserInput, ParserOutput parserOutput, CompiledTemplate param, Map<String, String> parameterValues) throws ParserException {
 		// re-parse in case of embedded templates or params
-		content = this.parseTemplateBody(parserInput, parserOutput, content, parameterValues);
+		String content = this.parseTemplateBody(parserInput, parserOutput, param, parameterValues);
 		String name = this.parseParamName(content);
 		String value = parameterValues.get(name);
 		if (value != null) {
@@ -66,6 +68,15 @@ public class TemplateTag implements JFlexParserTag {
 		return (defaultValue == null) ? " " : defaultValue;
 	}
 
+	/**
+	 * Given the parameter values for a template call, expand the compiled
+	 * template body and return the result.
+	 */
+	private String expandTemplateContent(ParserInput parserInput, ParserOutput parserOutput, Topic templateTopic, Map<String, String> parameterValues) throws ParserException {
+		CompiledTemplate compiledTemplate = this.retrieveCompiledTemplate(parserInput, parserOutput, templateTopic);
+		return this.parseTemplateBody(parserInput, parserOutput, compiledTemplate, parameterValues);
+	}
+
 	/**
 	 * Parse a call to a Mediawiki template of the form "{{template|param1|param2}}"
 	 * and return the resulting template output.
@@ -222,62 +233,18 @@ public class TemplateTag implements JFlexParserTag {
 	}
 
 	/**
-	 * After template parameter values have been set, process the template body
-	 * and replace parameters with parameter values or defaults, processing any
-	 * embedded parameters or templates.
+	 * After template parameter values have been set, process the compiled
+	 * template body and replace parameters with parameter values or defaults,
+	 * processing any embedded parameters or templates.
 	 */
-	private String parseTemplateBody(ParserInput parserInput, ParserOutput parserOutput, String content, Map<String, String> parameterValues) throws ParserException {
+	private String parseTemplateBody(ParserInput parserInput, ParserOutput parserOutput, CompiledTemplate compiledTemplate, Map<String, String> parameterValues) throws ParserException {
 		StringBuilder output = new StringBuilder();
-		char current, case4Char;
-		String substring, param;
-		int endPos, case1EndPos, case3EndPos;
-		// find template parameters of the form {{{0}}}
-		for (int pos = 0; pos < content.length(); pos++) {
-			current = content.charAt(pos);
-			substring = content.substring(pos);
-			if (!substring.startsWith("{{{")) {
-				// not a template parameter, move to the next character
-				output.append(current);
-				continue;
-			}
-			// this may be a template parameter, but check for various sub-patterns to be sure
-			endPos = JFlexParserUtil.findMatchingEndTag(content, pos, "{{{", "}}}");
-			if (endPos == -1) {
-				// no matching end tag
-				output.append(current);
-				continue;
-			}
-			endPos += "}}}".length();
-			// there are several sub-patterns that need to be analyzed:
-			// 1. {{{1|{{PAGENAME}}}}}
-			// 2. {{{{{1}}}}}
-			// 3. {{{template}} x {{template}}}
-			// 4. {{{1|{{{2}}}}}}
-			case1EndPos = JFlexParserUtil.findMatchingEndTag(content, pos, "{", "}") + "}".length();
-			if (endPos < case1EndPos && content.substring(case1EndPos - 3, case1EndPos).equals("}}}")) {
-				// case #1
-				endPos = case1EndPos;
-			}
-			if (substring.startsWith("{{{{{") && content.substring(endPos - 5, endPos).equals("}}}}}")) {
-				// case #2 (note: endPos updated in the previous step)
-				output.append("{{");
-				pos++;
-				continue;
-			}
-			case3EndPos = JFlexParserUtil.findMatchingEndTag(content, pos + 1, "{{", "}}") + "}}".length();
-			if (case3EndPos != (endPos - 1)) {
-				// either case #3 or case #4
-				case4Char = content.charAt(case3EndPos + 1);
-				if (case4Char != '}') {
-					// case #3
-					output.append(current);
-					continue;
-				}
-			}
-			param = content.substring(pos, endPos);
-			output.append(this.applyParameter(parserInput, parserOutput, param, parameterValues));
-			pos = endPos - 1;
+		int count = compiledTemplate.getParameterCount();
+		for (int i = 0; i < count; i++) {
+			output.append(compiledTemplate.getLiteral(i));
+			output.append(this.applyParameter(parserInput, parserOutput, compiledTemplate.getParameter(i), parameterValues));
 		}
+		output.append(compiledTemplate.getLiteral(count));
 		return JFlexParserUtil.parseFragment(parserInput, parserOutput, output.toString().trim(), JFlexParser.MODE_TEMPLATE);
 	}
 
@@ -388,23 +355,60 @@ public class TemplateTag implements JFlexParserTag {
 
 	/**
 	 * Given a template call of the form "{{name|param|param}}" return the
-	 * parsed output.
+	 * parsed output.  Pages frequently call the same template with identical
+	 * arguments many times, so expansions are memoized for the duration of
+	 * the current parse, keyed by template version and parameter values.  An
+	 * expansion is only memoized if it did not mark the parser output as
+	 * non-cacheable (time-dependent magic words, signatures, etc) and did not
+	 * set the page title; the links and templates recorded by a memoized
+	 * expansion, including topics tested by #ifexist, are replayed into the
+	 * parser output on re-use.
 	 */
 	private String processTemplateContent(ParserInput parserInput, ParserOutput parserOutput, Topic templateTopic, String templateContent) throws ParserException {
 		// set template parameter values
 		Map<String, String> parameterValues = this.parseTemplateParameterValues(templateContent);
-		// parse the template content for noinclude, onlyinclude and includeonly tags
-		String templateBody = JFlexParserUtil.parseFragment(parserInput, parserOutput, templateTopic.getTopicContent().trim(), JFlexParser.MODE_TEMPLATE_BODY);
-		if (parserInput.getTempParam(TEMPLATE_ONLYINCLUDE) != null) {
-			// HACK! If an onlyinclude tag is encountered in the previous fragment parse
-			// then that tag's parsed output is stored in the TEMPLATE_ONLYINCLUDE param.
-			// This hack is necessary because onlyinclude indicates that ONLY the
-			// onlyinclude content is relevant, and anything parsed before or after that
-			// tag must be ignored.
-			templateBody = (String)parserInput.getTempParam(TEMPLATE_ONLYINCLUDE);
-			parserInput.removeTempParam(TEMPLATE_ONLYINCLUDE);
+		if (parserOutput == ParserOutput.IMMUTABLE_PARSER_OUTPUT || templateTopic.getCurrentVersionId() == null) {
+			return this.expandTemplateContent(parserInput, parserOutput, templateTopic, parameterValues);
+		}
+		List<Object> key = Arrays.<Object>asList(parserInput.getVirtualWiki(), parserInput.getTopicName(), templateTopic.getTopicId(), templateTopic.getCurrentVersionId(), parameterValues);
+		@SuppressWarnings("unchecked")
+		Map<List<Object>, TemplateExpansion> expansions = (Map<List<Object>, TemplateExpansion>)parserInput.getTempParam(TEMPLATE_EXPANSIONS);
+		if (expansions == null) {
+			expansions = new HashMap<List<Object>, TemplateExpansion>();
+			parserInput.addTempParam(TEMPLATE_EXPANSIONS, expansions);
+		}
+		TemplateExpansion expansion = expansions.get(key);
+		if (expansion != null) {
+			for (String link : expansion.links) {
+				parserOutput.addLink(link);
+			}
+			for (String template : expansion.templates) {
+				parserOutput.addTemplate(template);
+			}
+			return expansion.result;
+		}
+		boolean cacheable = parserOutput.getCacheable();
+		int linkCount = parserOutput.getLinks().size();
+		int templateCount = parserOutput.getTemplates().size();
+		String pageTitle = parserOutput.getPageTitle();
+		// reset the cacheable flag so that non-cacheable content generated by this
+		// expansion can be detected, then restore it when done
+		parserOutput.setCacheable(true);
+		String result = null;
+		boolean memoizable = false;
+		try {
+			result = this.expandTemplateContent(parserInput, parserOutput, templateTopic, parameterValues);
+			memoizable = (parserOutput.getCacheable() && StringUtils.equals(pageTitle, parserOutput.getPageTitle()));
+		} finally {
+			parserOutput.setCacheable(cacheable && parserOutput.getCacheable());
 		}
-		return this.parseTemplateBody(parserInput, parserOutput, templateBody, parameterValues);
+		List<String> links = parserOutput.getLinks();
+		List<String> templates = parserOutput.getTemplates();
+		if (memoizable && links.size() >= linkCount && templates.size() >= templateCount) {
+			expansion = new TemplateExpansion(result, new ArrayList<String>(links.subList(linkCount, links.size())), new ArrayList<String>(templates.subList(templateCount, templates.size())));
+			expansions.put(key, expansion);
+		}
+		return result;
 	}
 
 	/**
@@ -433,6 +437,43 @@ public class TemplateTag implements JFlexParserTag {
 		parserOutput.addTemplate(name);
 	}
 
+	/**
+	 * Return the compiled body of a template topic, parsing the template content
+	 * for noinclude, onlyinclude and includeonly tags and splitting it into
+	 * literal text and parameter slots.  Compiled templates are cached by topic
+	 * and re-used for as long as the topic's current version is unchanged.
+	 * Templates containing signatures or substitutions are never cached since
+	 * their body varies by user and time.
+	 */
+	private CompiledTemplate retrieveCompiledTemplate(ParserInput parserInput, ParserOutput parserOutput, Topic templateTopic) throws ParserException {
+		String content = templateTopic.getTopicContent().trim();
+		Integer topicVersionId = templateTopic.getCurrentVersionId();
+		boolean cacheable = (topicVersionId != null && templateTopic.getTopicId() > 0 && Environment.getBooleanValue(Environment.PROP_PARSER_CACHE_TOPICS) && content.indexOf("~~~") == -1 && StringUtils.indexOfIgnoreCase(content, "subst:") == -1);
+		if (cacheable) {
+			CompiledTemplate compiledTemplate = WikiBase.CACHE_COMPILED_TEMPLATES.retrieveFromCache(templateTopic.getTopicId());
+			if (compiledTemplate != null && compiledTemplate.getTopicVersionId() == topicVersionId) {
+				return compiledTemplate;
+			}
+		}
+		// parse the template content for noinclude, onlyinclude and includeonly tags
+		String templateBody = JFlexParserUtil.parseFragment(parserInput, parserOutput, content, JFlexParser.MODE_TEMPLATE_BODY);
+		if (parserInput.getTempParam(TEMPLATE_ONLYINCLUDE) != null) {
+			// HACK! If an onlyinclude tag is encountered in the previous fragment parse
+			// then that tag's parsed output is stored in the TEMPLATE_ONLYINCLUDE param.
+			// This hack is necessary because onlyinclude indicates that ONLY the
+			// onlyinclude content is relevant, and anything parsed before or after that
+			// tag must be ignored.
+			templateBody = (String)parserInput.getTempParam(TEMPLATE_ONLYINCLUDE);
+			parserInput.removeTempParam(TEMPLATE_ONLYINCLUDE);
+		}
+		if (!cacheable) {
+			return CompiledTemplate.compile(templateBody, -1);
+		}
+		CompiledTemplate compiledTemplate = CompiledTemplate.compile(templateBody, topicVersionId);
+		WikiBase.CACHE_COMPILED_TEMPLATES.addToCache(templateTopic.getTopicId(), compiledTemplate);
+		return compiledTemplate;
+	}
+
 	/**
 	 * Determine if params are of the form name=value, and if so split
 	 * them into an array pairing.
@@ -452,4 +493,24 @@ public class TemplateTag implements JFlexParserTag {
 		}
 		return results;
 	}
+
+	/**
+	 * The result of a template expansion, along with the link and template
+	 * metadata that the expansion added to the parser output.
+	 */
+	private static class TemplateExpansion {
+
+		private final List<String> links;
+		private final String result;
+		private final List<String> templates;
+
+		/**
+		 *
+		 */
+		private TemplateExpansion(String result, List<String> links, List<String> templates) {
+			this.result = result;
+			this.links = links;
+			this.templates = templates;
+		}
+	}
 }
@@ -39,6 +39,8 @@ public class WikiSignatureTag implements JFlexParserTag {
 	 *
 	 */
 	private String buildWikiSignature(JFlexLexer lexer, boolean includeUser, boolean includeDate) throws ParserException {
+		// signatures are user and time specific, so any output containing them cannot be cached
+		lexer.getParserOutput().setCacheable(false);
 		String signature = "";
 		if (includeUser) {
 			signature = this.retrieveUserSignature(lexer.getParserInput());
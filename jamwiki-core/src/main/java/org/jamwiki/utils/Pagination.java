@@ -16,9 +16,11 @@
  */
 package org.jamwiki.utils;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import org.apache.commons.lang3.StringUtils;
 
 /**
  * Utility class useful for paginating through a result set.
@@ -30,6 +32,12 @@ public class Pagination {
 
 	private final int numResults;
 	private final int offset;
+	/** For keyset pagination, the change date of the last result of the previous page. */
+	private final Timestamp seekDate;
+	/** For keyset pagination, the topic version ID of the last result of the previous page. */
+	private final int seekId;
+	/** For keyset pagination, the log type of the last result of the previous page, or zero for a topic version. */
+	private final int seekType;
 
 	/**
 	 * Create a pagination object with specified initial values.
@@ -41,8 +49,104 @@ public class Pagination {
 	 *  returned starting at 100.
 	 */
 	public Pagination(int numResults, int offset) {
+		this(numResults, offset, null, 0);
+	}
+
+	/**
+	 * Create a keyset pagination object.  Keyset pagination seeks directly to
+	 * the results that follow a (change date, topic version ID) pair rather
+	 * than reading and discarding <code>offset</code> results, and is supported
+	 * for topic history, recent changes and user contributions.  The offset is
+	 * retained for databases that cannot execute keyset queries.
+	 *
+	 * @param numResults The maximum number of results that can be retrieved or
+	 *  displayed.
+	 * @param offset The offset for the pagination, used only when keyset
+	 *  pagination is not supported by the database.
+	 * @param seekDate The change date of the last result of the previous page,
+	 *  or <code>null</code> if keyset pagination is not being used.
+	 * @param seekId The topic version ID of the last result of the previous
+	 *  page, or zero if the last result was not associated with a topic version.
+	 */
+	public Pagination(int numResults, int offset, Timestamp seekDate, int seekId) {
+		this(numResults, offset, seekDate, seekId, 0);
+	}
+
+	/**
+	 * Create a keyset pagination object for results that may include log
+	 * entries.  Log entries and topic versions can share a change date and
+	 * topic version ID, so the log type of the last result is used to break
+	 * the tie.
+	 *
+	 * @param numResults The maximum number of results that can be retrieved or
+	 *  displayed.
+	 * @param offset The offset for the pagination, used only when keyset
+	 *  pagination is not supported by the database.
+	 * @param seekDate The change date of the last result of the previous page,
+	 *  or <code>null</code> if keyset pagination is not being used.
+	 * @param seekId The topic version ID of the last result of the previous
+	 *  page, or zero if the last result was not associated with a topic version.
+	 * @param seekType The log type of the last result of the previous page, or
+	 *  zero if the last result was not a log entry.
+	 */
+	public Pagination(int numResults, int offset, Timestamp seekDate, int seekId, int seekType) {
 		this.numResults = numResults;
 		this.offset = offset;
+		this.seekDate = seekDate;
+		this.seekId = seekId;
+		this.seekType = seekType;
+	}
+
+	/**
+	 * Build an opaque cursor token that can be used to retrieve the page of
+	 * results following the specified result.  The token can be converted
+	 * back into a pagination object using {@link #fromCursor}.
+	 *
+	 * @param offset The offset of the result that follows the cursor.
+	 * @param changeDate The change date of the last result on the current page.
+	 * @param topicVersionId The topic version ID of the last result on the
+	 *  current page, or <code>null</code> if the result is not associated with
+	 *  a topic version.
+	 * @param logType The log type of the last result on the current page, or
+	 *  <code>null</code> if the result is not a log entry.
+	 * @return An opaque cursor token.
+	 */
+	public static String buildCursor(int offset, Timestamp changeDate, Integer topicVersionId, Integer logType) {
+		StringBuilder cursor = new StringBuilder();
+		cursor.append(Integer.toString(offset, Character.MAX_RADIX));
+		cursor.append('.').append(Long.toString(changeDate.getTime(), Character.MAX_RADIX));
+		cursor.append('.').append(Integer.toString(changeDate.getNanos(), Character.MAX_RADIX));
+		cursor.append('.').append(Integer.toString((topicVersionId == null) ? 0 : topicVersionId, Character.MAX_RADIX));
+		cursor.append('.').append(Integer.toString((logType == null) ? 0 : logType, Character.MAX_RADIX));
+		return cursor.toString();
+	}
+
+	/**
+	 * Create a pagination object from a cursor token generated by
+	 * {@link #buildCursor}.
+	 *
+	 * @param numResults The maximum number of results that can be retrieved or
+	 *  displayed.
+	 * @param cursor The cursor token.
+	 * @return A keyset pagination object, or <code>null</code> if the cursor
+	 *  token is not valid.
+	 */
+	public static Pagination fromCursor(int numResults, String cursor) {
+		String[] tokens = StringUtils.split(cursor, '.');
+		if (tokens == null || tokens.length != 5) {
+			return null;
+		}
+		try {
+			int offset = Integer.parseInt(tokens[0], Character.MAX_RADIX);
+			Timestamp seekDate = new Timestamp(Long.parseLong(tokens[1], Character.MAX_RADIX));
+			seekDate.setNanos(Integer.parseInt(tokens[2], Character.MAX_RADIX));
+			int seekId = Integer.parseInt(tokens[3], Character.MAX_RADIX);
+			int seekType = Integer.parseInt(tokens[4], Character.MAX_RADIX);
+			return new Pagination(numResults, offset, seekDate, seekId, seekType);
+		} catch (IllegalArgumentException e) {
+			// invalid cursor
+			return null;
+		}
 	}
 
 	/**
@@ -75,6 +179,38 @@ public class Pagination {
 		return this.offset;
 	}
 
+	/**
+	 * Return the change date of the last result of the previous page when
+	 * using keyset pagination.
+	 *
+	 * @return The change date to seek past, or <code>null</code> if this
+	 *  object does not use keyset pagination.
+	 */
+	public Timestamp getSeekDate() {
+		return this.seekDate;
+	}
+
+	/**
+	 * Return the topic version ID of the last result of the previous page
+	 * when using keyset pagination.
+	 *
+	 * @return The topic version ID to seek past.
+	 */
+	public int getSeekId() {
+		return this.seekId;
+	}
+
+	/**
+	 * Return the log type of the last result of the previous page when using
+	 * keyset pagination.
+	 *
+	 * @return The log type to seek past, or zero if the last result of the
+	 *  previous page was not a log entry.
+	 */
+	public int getSeekType() {
+		return this.seekType;
+	}
+
 	/**
 	 * Return the starting point of any pagination, which is equivalent to the
 	 * offset.  Offset indicates the starting point of any result to return,
@@ -86,6 +222,17 @@ public class Pagination {
 		return this.offset;
 	}
 
+	/**
+	 * Return <code>true</code> if this pagination object seeks past a
+	 * (change date, topic version ID) pair rather than skipping a number of
+	 * results.
+	 *
+	 * @return <code>true</code> if this object uses keyset pagination.
+	 */
+	public boolean isKeyset() {
+		return (this.seekDate != null);
+	}
+
 	/**
 	 * Utility method for retrieving a list that is a subset of a larger list
 	 * containing only the items specified by the pagination object.
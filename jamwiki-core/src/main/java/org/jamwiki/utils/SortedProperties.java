@@ -21,14 +21,20 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
- * Extend java.util.Properties for having all output sorted by keys.
+ * Extend java.util.Properties for having all output sorted by keys.  A
+ * modification count is also maintained so that callers can cheaply detect
+ * whether any property has changed since values were last read.
  * @author Christian P. Lerch (additions and changes)
  */
 public class SortedProperties extends Properties {
 
     private static final long serialVersionUID = 1L;
+	private final AtomicLong modificationCount = new AtomicLong();
 
 	/**
 	 * Standard constructor for creating a sorted properties.
@@ -64,4 +70,117 @@ public class SortedProperties extends Properties {
     public Map<String,String> asMap() {
         return (Map<String,String>)(Map<?,?>)this;
     }
+
+	/**
+	 * Return a counter that is incremented every time a property is added,
+	 * changed or removed.  Callers that cache values derived from this object
+	 * can compare the count to determine whether their cached values are stale.
+	 * Changes made through views such as <code>entrySet()</code> are not
+	 * counted.
+	 *
+	 * @return The current modification count.
+	 */
+	public long getModificationCount() {
+		return (this.modificationCount == null) ? 0 : this.modificationCount.get();
+	}
+
+	/**
+	 * Increment the modification count.  Must be called after the underlying
+	 * change has been made so that a reader that sees the new count will also
+	 * see the change.  The count may be <code>null</code> while the superclass
+	 * is being deserialized.
+	 */
+	private void modified() {
+		if (this.modificationCount != null) {
+			this.modificationCount.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		this.modified();
+	}
+
+	@Override
+	public Object compute(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		Object result = super.compute(key, remappingFunction);
+		this.modified();
+		return result;
+	}
+
+	@Override
+	public Object computeIfAbsent(Object key, Function<? super Object, ?> mappingFunction) {
+		Object result = super.computeIfAbsent(key, mappingFunction);
+		this.modified();
+		return result;
+	}
+
+	@Override
+	public Object computeIfPresent(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		Object result = super.computeIfPresent(key, remappingFunction);
+		this.modified();
+		return result;
+	}
+
+	@Override
+	public Object merge(Object key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		Object result = super.merge(key, value, remappingFunction);
+		this.modified();
+		return result;
+	}
+
+	@Override
+	public Object put(Object key, Object value) {
+		Object result = super.put(key, value);
+		this.modified();
+		return result;
+	}
+
+	@Override
+	public void putAll(Map<?, ?> t) {
+		super.putAll(t);
+		this.modified();
+	}
+
+	@Override
+	public Object putIfAbsent(Object key, Object value) {
+		Object result = super.putIfAbsent(key, value);
+		this.modified();
+		return result;
+	}
+
+	@Override
+	public Object remove(Object key) {
+		Object result = super.remove(key);
+		this.modified();
+		return result;
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		boolean result = super.remove(key, value);
+		this.modified();
+		return result;
+	}
+
+	@Override
+	public Object replace(Object key, Object value) {
+		Object result = super.replace(key, value);
+		this.modified();
+		return result;
+	}
+
+	@Override
+	public boolean replace(Object key, Object oldValue, Object newValue) {
+		boolean result = super.replace(key, oldValue, newValue);
+		this.modified();
+		return result;
+	}
+
+	@Override
+	public void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+		super.replaceAll(function);
+		this.modified();
+	}
 }
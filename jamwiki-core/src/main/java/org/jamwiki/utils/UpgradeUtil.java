@@ -131,9 +131,12 @@ public class UpgradeUtil {
 	 */
 	private boolean upgradeDatabase() throws WikiException {
 		WikiVersion oldVersion = new WikiVersion(Environment.getValue(Environment.PROP_BASE_WIKI_VERSION));
-		boolean upgradeRequired = (oldVersion.before(1, 3, 0));
+		boolean upgradeRequired = (oldVersion.before(2, 0, 1));
 		if (upgradeRequired && this.performUpgrade) {
-			DatabaseUpgrades.upgrade130(this.messages);
+			if (oldVersion.before(1, 3, 0)) {
+				DatabaseUpgrades.upgrade130(this.messages);
+			}
+			DatabaseUpgrades.upgrade201(this.messages);
 			// Flush connection pool to manage database schema change
 			WikiDatabase.initialize();
 			WikiCache.initialize();
@@ -19,14 +19,22 @@ package org.jamwiki.utils;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.Configuration;
 import net.sf.ehcache.config.ConfigurationFactory;
 import net.sf.ehcache.config.DiskStoreConfiguration;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
 import org.jamwiki.Environment;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 
 /**
  * Implement utility functions that interact with the cache and provide the
@@ -46,6 +54,10 @@ public class WikiCache<K, V> {
 	/** Directory for cache files. */
 	private static final String CACHE_DIR = "cache";
 	private final String cacheName;
+	/** Map of case-folded key to all cache keys with that folded value, or <code>null</code> if the cache is not indexed. */
+	private final Map<String, Set<Object>> caseFoldedIndex;
+	/** The cache instance that the case-folded index is currently tracking. */
+	private volatile Cache indexedCache = null;
 
 	/**
 	 * Initialize a new cache with the given name.
@@ -54,7 +66,23 @@ public class WikiCache<K, V> {
 	 *  be re-used, otherwise unexpected results could be returned.
 	 */
 	public WikiCache(String cacheName) {
+		this(cacheName, false);
+	}
+
+	/**
+	 * Initialize a new cache with the given name, optionally maintaining a
+	 * case-folded index of the cache keys.
+	 *
+	 * @param cacheName The name of the cache being created.  This name should not
+	 *  be re-used, otherwise unexpected results could be returned.
+	 * @param caseInsensitiveIndex Set to <code>true</code> if the cache will be
+	 *  used with {@link #removeFromCacheCaseInsensitive}.  Indexed caches use a
+	 *  small amount of additional memory per key, but case-insensitive removals
+	 *  no longer need to examine every key in the cache.
+	 */
+	public WikiCache(String cacheName, boolean caseInsensitiveIndex) {
 		this.cacheName = cacheName;
+		this.caseFoldedIndex = (caseInsensitiveIndex) ? new ConcurrentHashMap<String, Set<Object>>() : null;
 	}
 
 	/**
@@ -86,7 +114,85 @@ public class WikiCache<K, V> {
 			// all caches should be configured from ehcache.xml
 			throw new IllegalStateException("No cache named " + this.cacheName + " is configured in the ehcache.xml file");
 		}
-		return WikiCache.CACHE_MANAGER.getCache(this.cacheName);
+		Cache cache = WikiCache.CACHE_MANAGER.getCache(this.cacheName);
+		if (this.caseFoldedIndex != null && cache != this.indexedCache) {
+			this.initializeCaseFoldedIndex(cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Convert a key to a value that is identical for all keys that are equal
+	 * using {@link String#equalsIgnoreCase}.
+	 */
+	private static String caseFold(Object key) {
+		String value = key.toString();
+		char[] folded = new char[value.length()];
+		for (int i = 0; i < folded.length; i++) {
+			// same comparison performed by String.equalsIgnoreCase
+			folded[i] = Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+		}
+		return new String(folded);
+	}
+
+	/**
+	 * Add a key to the case-folded index if it is still in the cache.  Cache
+	 * notifications for the same key may be delivered out of order by
+	 * concurrent threads, so the index is updated from the current contents of
+	 * the cache rather than from the notification type.  The cache is checked
+	 * within the atomic map operation so that the key cannot be added to a key
+	 * set that a concurrent {@link #caseFoldedIndexRemove} has just discarded,
+	 * and so that a key put after the check is indexed by its own notification.
+	 */
+	private void caseFoldedIndexAdd(final Ehcache cache, final Object key) {
+		if (key != null) {
+			this.caseFoldedIndex.compute(caseFold(key), new BiFunction<String, Set<Object>, Set<Object>>() {
+				public Set<Object> apply(String folded, Set<Object> keys) {
+					if (cache.isKeyInCache(key)) {
+						if (keys == null) {
+							keys = ConcurrentHashMap.newKeySet();
+						}
+						keys.add(key);
+					}
+					return keys;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Remove a key from the case-folded index unless it is still in the cache,
+	 * for example because another thread put the key again after it was removed.
+	 */
+	private void caseFoldedIndexRemove(final Ehcache cache, final Object key) {
+		if (key != null) {
+			this.caseFoldedIndex.computeIfPresent(caseFold(key), new BiFunction<String, Set<Object>, Set<Object>>() {
+				public Set<Object> apply(String folded, Set<Object> keys) {
+					if (!cache.isKeyInCache(key)) {
+						keys.remove(key);
+					}
+					return (keys.isEmpty()) ? null : keys;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Remove all keys that are no longer in the cache from the case-folded index.
+	 */
+	private void caseFoldedIndexRemoveAll(final Ehcache cache) {
+		for (String foldedKey : this.caseFoldedIndex.keySet()) {
+			this.caseFoldedIndex.computeIfPresent(foldedKey, new BiFunction<String, Set<Object>, Set<Object>>() {
+				public Set<Object> apply(String folded, Set<Object> keys) {
+					for (Iterator<Object> iterator = keys.iterator(); iterator.hasNext();) {
+						if (!cache.isKeyInCache(iterator.next())) {
+							iterator.remove();
+						}
+					}
+					return (keys.isEmpty()) ? null : keys;
+				}
+			});
+		}
 	}
 
 	/**
@@ -97,6 +203,25 @@ public class WikiCache<K, V> {
 		return this.cacheName;
 	}
 
+	/**
+	 * Start tracking the keys of a cache instance in the case-folded index.  The
+	 * index is updated by a cache listener so that it stays consistent as
+	 * elements are added, removed, evicted or expired.  A new cache instance is
+	 * created each time the cache manager is initialized, so this method may be
+	 * called more than once.
+	 */
+	private synchronized void initializeCaseFoldedIndex(Cache cache) {
+		if (cache == this.indexedCache) {
+			return;
+		}
+		this.caseFoldedIndex.clear();
+		cache.getCacheEventNotificationService().registerListener(new CaseFoldedIndexListener());
+		for (Object key : cache.getKeys()) {
+			this.caseFoldedIndexAdd(cache, key);
+		}
+		this.indexedCache = cache;
+	}
+
 	/**
 	 * Initialize the cache, clearing any existing cache instances and loading
 	 * a new cache instance.
@@ -165,16 +290,31 @@ public class WikiCache<K, V> {
 	}
 
 	/**
-	 * Remove a key from the cache in a case-insensitive manner.  This method
-	 * is significantly slower than removeFromCache and should only be used when
+	 * Remove a key from the cache in a case-insensitive manner.  Unless the
+	 * cache was created with a case-insensitive index this method is
+	 * significantly slower than removeFromCache and should only be used when
 	 * the key values may not be exactly known.
      * @param key
 	 */
 	public void removeFromCacheCaseInsensitive(String key) {
-		for (Object cacheKey : this.getCache().getKeys()) {
+		Cache cache = this.getCache();
+		if (this.caseFoldedIndex != null) {
+			Set<Object> cacheKeys = this.caseFoldedIndex.get(caseFold(key));
+			if (cacheKeys != null) {
+				// copy the keys since the listener modifies the set as elements are
+				// removed.  keys are also un-indexed here since removing a key that
+				// has already left the cache does not notify the listener.
+				for (Object cacheKey : new ArrayList<Object>(cacheKeys)) {
+					cache.remove(cacheKey);
+					this.caseFoldedIndexRemove(cache, cacheKey);
+				}
+			}
+			return;
+		}
+		for (Object cacheKey : cache.getKeys()) {
 			// with the upgrade to ehcache 2.4.2 it seems that null cache keys are possible...
 			if (cacheKey != null && cacheKey.toString().equalsIgnoreCase(key)) {
-				this.getCache().remove(cacheKey);
+				cache.remove(cacheKey);
 			}
 		}
 	}
@@ -196,4 +336,54 @@ public class WikiCache<K, V> {
 		Element element = this.getCache().get(key);
 		return (element != null) ? (V)element.getObjectValue() : null;
 	}
+
+	/**
+	 * Cache listener that keeps the case-folded index synchronized with the
+	 * contents of the cache.
+	 */
+	private class CaseFoldedIndexListener extends CacheEventListenerAdapter {
+
+		/**
+		 *
+		 */
+		public void notifyElementPut(Ehcache cache, Element element) {
+			caseFoldedIndexAdd(cache, element.getObjectKey());
+		}
+
+		/**
+		 *
+		 */
+		public void notifyElementUpdated(Ehcache cache, Element element) {
+			caseFoldedIndexAdd(cache, element.getObjectKey());
+		}
+
+		/**
+		 *
+		 */
+		public void notifyElementRemoved(Ehcache cache, Element element) {
+			caseFoldedIndexRemove(cache, element.getObjectKey());
+		}
+
+		/**
+		 *
+		 */
+		public void notifyElementExpired(Ehcache cache, Element element) {
+			caseFoldedIndexRemove(cache, element.getObjectKey());
+		}
+
+		/**
+		 *
+		 */
+		public void notifyElementEvicted(Ehcache cache, Element element) {
+			caseFoldedIndexRemove(cache, element.getObjectKey());
+		}
+
+		/**
+		 *
+		 */
+		public void notifyRemoveAll(Ehcache cache) {
+			// keys put by other threads since the removal must remain indexed
+			caseFoldedIndexRemoveAll(cache);
+		}
+	}
 }
@@ -69,7 +69,8 @@ public class WikiUtil {
 
 	/**
 	 * Create a pagination object based on parameters found in the current
-	 * request.
+	 * request.  If the request contains a valid "from" cursor then a keyset
+	 * pagination object is returned.
 	 *
 	 * @param request The servlet request object.
 	 * @return A Pagination object constructed from parameters found in the
@@ -92,6 +93,12 @@ public class WikiUtil {
 				// invalid number
 			}
 		}
+		if (!StringUtils.isBlank(request.getParameter("from"))) {
+			Pagination pagination = Pagination.fromCursor(num, request.getParameter("from"));
+			if (pagination != null) {
+				return pagination;
+			}
+		}
 		return new Pagination(num, offset);
 	}
 
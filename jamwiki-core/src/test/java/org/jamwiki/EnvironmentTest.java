@@ -0,0 +1,49 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki;
+
+import java.util.Properties;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class EnvironmentTest extends JAMWikiUnitTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDirectModification() throws Throwable {
+		int original = Environment.getIntValue(Environment.PROP_PARSER_TOC_DEPTH);
+		boolean originalBoolean = Environment.getBooleanValue(Environment.PROP_PARSER_TOC);
+		try {
+			// changes made directly to the properties object must be visible
+			Properties props = Environment.getInstance();
+			props.setProperty(Environment.PROP_PARSER_TOC_DEPTH, Integer.toString(original + 1));
+			assertEquals("Direct int modification", original + 1, Environment.getIntValue(Environment.PROP_PARSER_TOC_DEPTH));
+			assertEquals("Direct string modification", Integer.toString(original + 1), Environment.getValue(Environment.PROP_PARSER_TOC_DEPTH));
+			Environment.setBooleanValue(Environment.PROP_PARSER_TOC, !originalBoolean);
+			assertEquals("Boolean modification", !originalBoolean, Environment.getBooleanValue(Environment.PROP_PARSER_TOC));
+			Environment.setValue(Environment.PROP_PARSER_TOC_DEPTH, "invalid");
+			assertEquals("Invalid int value", -1, Environment.getIntValue(Environment.PROP_PARSER_TOC_DEPTH));
+			assertNull("Unknown property", Environment.getValue("environment-test-unknown-property"));
+			assertFalse("Unknown boolean property", Environment.getBooleanValue("environment-test-unknown-property"));
+		} finally {
+			Environment.setIntValue(Environment.PROP_PARSER_TOC_DEPTH, original);
+			Environment.setBooleanValue(Environment.PROP_PARSER_TOC, originalBoolean);
+		}
+	}
+}
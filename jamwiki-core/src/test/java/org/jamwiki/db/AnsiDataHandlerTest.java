@@ -17,15 +17,25 @@
 package org.jamwiki.db;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.jamwiki.DataAccessException;
+import org.jamwiki.Environment;
 import org.jamwiki.JAMWikiUnitTest;
+import org.jamwiki.SearchEngine;
+import org.jamwiki.TestSearchEngine;
 import org.jamwiki.WikiBase;
 import org.jamwiki.WikiException;
 import org.jamwiki.model.RecentChange;
+import org.jamwiki.model.SearchResultEntry;
 import org.jamwiki.model.Topic;
+import org.jamwiki.model.TopicType;
 import org.jamwiki.utils.Pagination;
 import org.junit.Test;
+import org.springframework.transaction.TransactionStatus;
 import static org.junit.Assert.*;
 
 /**
@@ -37,6 +47,50 @@ public class AnsiDataHandlerTest extends JAMWikiUnitTest {
         super();
     }
 
+	/**
+	 *
+	 */
+	@Test
+	public void testMoveTopicSearchIndex() throws Throwable {
+		Environment.setValue(Environment.PROP_BASE_SEARCH_ENGINE, TestSearchEngine.class.getName());
+		Field searchEngineField = WikiBase.class.getDeclaredField("searchEngine");
+		searchEngineField.setAccessible(true);
+		SearchEngine originalSearchEngine = WikiBase.getSearchEngine();
+		final QueuingSearchEngine searchEngine = new QueuingSearchEngine();
+		searchEngineField.set(null, searchEngine);
+		final Throwable[] failure = new Throwable[1];
+		// run on a new thread so that the test transaction is the outermost transaction
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					Topic topic = setupTopic(null, "Search Move Source", "searchmoveterm");
+					searchEngine.commit("en");
+					assertEquals("Failure in move topic search index test #1", 1, searchEngine.findResults("en", "searchmoveterm", null).size());
+					TransactionStatus status = DatabaseConnection.startTransaction();
+					WikiBase.getDataHandler().moveTopic(topic, "Search Move Destination", null, "127.0.0.1", "search move test");
+					// the search engine re-reads queued topics, so nothing may be queued until the move commits
+					assertTrue("Failure in move topic search index test #2", searchEngine.queuedTopics.isEmpty());
+					DatabaseConnection.commit(status);
+					searchEngine.commit("en");
+					List<SearchResultEntry> results = searchEngine.findResults("en", "searchmoveterm", null);
+					assertEquals("Failure in move topic search index test #3", 1, results.size());
+					assertEquals("Failure in move topic search index test #4", "Search Move Destination", results.get(0).getTopic());
+				} catch (Throwable t) {
+					failure[0] = t;
+				}
+			}
+		});
+		try {
+			thread.start();
+			thread.join();
+		} finally {
+			searchEngineField.set(null, originalSearchEngine);
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+	}
+
 	/**
 	 *
 	 */
@@ -108,4 +162,55 @@ public class AnsiDataHandlerTest extends JAMWikiUnitTest {
 		topic = WikiBase.getDataHandler().lookupTopic("en", "HELP:Test", false);
 		assertEquals("Incorrect topic name (case-insensitive)", topic.getName(), TOPIC_NAME);
 	}
+
+	/**
+	 * Search engine that queues topics and re-reads them when committed, as
+	 * LuceneSearchEngine does, keeping an in-memory index of topic content.
+	 */
+	private static class QueuingSearchEngine extends TestSearchEngine {
+
+		private final Map<String, String> index = new LinkedHashMap<String, String>();
+		private final Map<Integer, String> queuedTopics = new LinkedHashMap<Integer, String>();
+
+		/**
+		 *
+		 */
+		public void commit(String virtualWiki) {
+			for (Map.Entry<Integer, String> entry : this.queuedTopics.entrySet()) {
+				Topic topic = WikiBase.getDataHandler().lookupTopicById(entry.getKey());
+				if (topic == null || !topic.getName().equals(entry.getValue())) {
+					this.index.remove(entry.getValue());
+				}
+				if (topic == null) {
+					continue;
+				}
+				if (topic.getDeleteDate() != null || topic.getTopicType() == TopicType.REDIRECT) {
+					this.index.remove(topic.getName());
+				} else {
+					this.index.put(topic.getName(), topic.getTopicContent());
+				}
+			}
+			this.queuedTopics.clear();
+		}
+
+		/**
+		 *
+		 */
+		public List<SearchResultEntry> findResults(String virtualWiki, String text, List<Integer> namespaces) {
+			List<SearchResultEntry> results = new ArrayList<SearchResultEntry>();
+			for (Map.Entry<String, String> entry : this.index.entrySet()) {
+				if (entry.getValue().contains(text)) {
+					results.add(new SearchResultEntry(entry.getKey(), 1, entry.getValue()));
+				}
+			}
+			return results;
+		}
+
+		/**
+		 *
+		 */
+		public void updateInIndex(Topic topic) {
+			this.queuedTopics.put(topic.getTopicId(), topic.getName());
+		}
+	}
 }
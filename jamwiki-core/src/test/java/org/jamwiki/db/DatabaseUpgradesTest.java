@@ -0,0 +1,127 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class DatabaseUpgradesTest {
+
+	private static final String[][] KEYS = {
+		{"jam_group", "group_id"},
+		{"jam_group_members", "id"},
+		{"jam_topic", "topic_id"},
+		{"jam_topic_version", "topic_version_id"},
+		{"jam_user_block", "user_block_id"},
+		{"jam_virtual_wiki", "virtual_wiki_id"},
+		{"jam_file", "file_id"},
+		{"jam_file_version", "file_version_id"},
+		{"jam_wiki_user", "wiki_user_id"}
+	};
+	private Connection conn = null;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setup() throws Throwable {
+		this.conn = DriverManager.getConnection("jdbc:hsqldb:mem:upgrades", "sa", "");
+		for (String[] key : KEYS) {
+			this.executeUpdate("create table " + key[0] + " (" + key[1] + " integer not null)");
+		}
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() throws Throwable {
+		for (String[] key : KEYS) {
+			this.executeUpdate("drop table " + key[0]);
+			this.executeUpdate("drop sequence " + key[0] + "_seq if exists");
+		}
+		this.conn.close();
+	}
+
+	/**
+	 *
+	 */
+	private void executeUpdate(String sql) throws SQLException {
+		Statement stmt = this.conn.createStatement();
+		try {
+			stmt.executeUpdate(sql);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 *
+	 */
+	private int nextValue(String sequenceName) throws SQLException {
+		return DatabaseConnection.executeSequenceQuery("select next value for " + sequenceName + " as next_id from information_schema.system_users", "next_id", this.conn);
+	}
+
+	/**
+	 * Schemas populated by older versions may have sequences that lag behind
+	 * their tables, either because one was added to each sequence value or
+	 * because IDs were assigned from max() + 1 without using the sequence.
+	 */
+	@Test
+	public void testUpdateSequences() throws Throwable {
+		for (int i = 0; i < KEYS.length; i++) {
+			String table = KEYS[i][0];
+			String column = KEYS[i][1];
+			// leave one table empty and populate the others with IDs 1 to i
+			for (int j = 1; j < i; j++) {
+				this.executeUpdate("insert into " + table + " (" + column + ") values (" + j + ")");
+			}
+			this.executeUpdate("create sequence " + table + "_seq start with 1");
+		}
+		QueryHandler queryHandler = new HSqlQueryHandler() {
+			protected boolean nativeSequences() {
+				return true;
+			}
+		};
+		assertTrue("Failure in update sequences test #1", queryHandler.updateSequences(this.conn));
+		for (int i = 0; i < KEYS.length; i++) {
+			int expected = Math.max(i, 1);
+			assertEquals("Failure in update sequences test #2 for " + KEYS[i][0], expected, this.nextValue(KEYS[i][0] + "_seq"));
+		}
+		// sequences always restart just past the largest ID in use
+		assertTrue("Failure in update sequences test #3", queryHandler.updateSequences(this.conn));
+		assertEquals("Failure in update sequences test #4", 8, this.nextValue("jam_wiki_user_seq"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUpdateSequencesNotNative() throws Throwable {
+		QueryHandler queryHandler = new HSqlQueryHandler();
+		assertFalse("Failure in update sequences without native sequences test", queryHandler.updateSequences(this.conn));
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class IdAllocatorTest {
+
+	private static final String MAX_ID_SQL = "select max(id) as max_id from id_allocator_test";
+	private Connection conn = null;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setup() throws Throwable {
+		this.conn = DriverManager.getConnection("jdbc:hsqldb:mem:idallocator", "sa", "");
+		this.executeUpdate("create table id_allocator_test (id integer not null)");
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() throws Throwable {
+		this.executeUpdate("drop table id_allocator_test");
+		this.conn.close();
+	}
+
+	/**
+	 *
+	 */
+	private void executeUpdate(String sql) throws SQLException {
+		Statement stmt = this.conn.createStatement();
+		try {
+			stmt.executeUpdate(sql);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 *
+	 */
+	private void insertId(int id) throws SQLException {
+		this.executeUpdate("insert into id_allocator_test (id) values (" + id + ")");
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testBlockBoundary() throws Throwable {
+		IdAllocator allocator = new IdAllocator(MAX_ID_SQL, "max_id", false, 5);
+		this.insertId(10);
+		assertEquals("Failure in block boundary test #1", 11, allocator.nextId(this.conn));
+		// rows added by other means are not seen until the block is exhausted
+		this.insertId(100);
+		for (int i = 12; i <= 15; i++) {
+			assertEquals("Failure in block boundary test #2", i, allocator.nextId(this.conn));
+		}
+		assertEquals("Failure in block boundary test #3", 101, allocator.nextId(this.conn));
+		// IDs that were issued but not used are not re-issued at the next block
+		for (int i = 102; i <= 105; i++) {
+			allocator.nextId(this.conn);
+		}
+		assertEquals("Failure in block boundary test #4", 106, allocator.nextId(this.conn));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testNextIds() throws Throwable {
+		IdAllocator allocator = new IdAllocator(MAX_ID_SQL, "max_id", false, 3);
+		int[] ids = allocator.nextIds(10, this.conn);
+		assertEquals("Failure in next IDs test #1", 10, ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			assertEquals("Failure in next IDs test #1", i + 1, ids[i]);
+		}
+		assertEquals("Failure in next IDs test #2", 11, allocator.nextId(this.conn));
+		// a request larger than the rest of the block starts a new block
+		this.insertId(11);
+		ids = allocator.nextIds(5, this.conn);
+		assertEquals("Failure in next IDs test #3", 12, ids[0]);
+		assertEquals("Failure in next IDs test #3", 16, ids[4]);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUncached() throws Throwable {
+		IdAllocator allocator = new IdAllocator(MAX_ID_SQL, "max_id", false, 0);
+		assertEquals("Failure in uncached test #1", 1, allocator.nextId(this.conn));
+		// without a reserved block every allocation re-reads the maximum ID
+		assertEquals("Failure in uncached test #2", 1, allocator.nextId(this.conn));
+		this.insertId(1);
+		assertEquals("Failure in uncached test #3", 2, allocator.nextId(this.conn));
+		this.insertId(50);
+		int[] ids = allocator.nextIds(2, this.conn);
+		assertEquals("Failure in uncached test #4", 51, ids[0]);
+		assertEquals("Failure in uncached test #4", 52, ids[1]);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testReset() throws Throwable {
+		IdAllocator allocator = new IdAllocator(MAX_ID_SQL, "max_id", false, 10);
+		this.insertId(20);
+		assertEquals("Failure in reset test #1", 21, allocator.nextId(this.conn));
+		this.executeUpdate("drop table id_allocator_test");
+		this.executeUpdate("create table id_allocator_test (id integer not null)");
+		this.insertId(5);
+		// the reserved block is still used until the allocator is reset
+		assertEquals("Failure in reset test #2", 22, allocator.nextId(this.conn));
+		allocator.reset();
+		assertEquals("Failure in reset test #3", 6, allocator.nextId(this.conn));
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.sql.DataSource;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class ReadReplicaRouterTest {
+
+	private final List<BasicDataSource> dataSources = new ArrayList<BasicDataSource>();
+
+	/**
+	 *
+	 */
+	private BasicDataSource buildDataSource(String driver, String url) {
+		BasicDataSource dataSource = new BasicDataSource();
+		dataSource.setDriverClassName(driver);
+		dataSource.setUrl(url);
+		dataSource.setUsername("sa");
+		dataSource.setPassword("");
+		this.dataSources.add(dataSource);
+		return dataSource;
+	}
+
+	/**
+	 *
+	 */
+	private String readUrl(ReadReplicaRouter router, String key) throws Throwable {
+		Connection conn = router.getReadConnection(key);
+		if (conn == null) {
+			return null;
+		}
+		try {
+			return conn.getMetaData().getURL();
+		} finally {
+			conn.close();
+		}
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDown() throws Throwable {
+		for (BasicDataSource dataSource : this.dataSources) {
+			dataSource.close();
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testRouting() throws Throwable {
+		String url1 = "jdbc:hsqldb:mem:replica1";
+		String url2 = "jdbc:hsqldb:mem:replica2";
+		List<DataSource> replicas = new ArrayList<DataSource>();
+		replicas.add(this.buildDataSource("org.hsqldb.jdbcDriver", url1));
+		replicas.add(this.buildDataSource("org.hsqldb.jdbcDriver", url2));
+		ReadReplicaRouter router = new ReadReplicaRouter(replicas, Arrays.asList(url1, url2), 60);
+		assertNull("Read without a routing key", this.readUrl(router, null));
+		String first = this.readUrl(router, "10.0.0.1");
+		String second = this.readUrl(router, "10.0.0.2");
+		assertTrue("Round robin", (first.equals(url1) && second.equals(url2)) || (first.equals(url2) && second.equals(url1)));
+		router.recordWrite("10.0.0.1");
+		assertNull("Read after write", this.readUrl(router, "10.0.0.1"));
+		assertNotNull("Read by another user after write", this.readUrl(router, "10.0.0.2"));
+		assertEquals("Sticky reads", 1, router.getStickyReads());
+		List<DataSourceStatistics> statistics = router.getStatistics();
+		assertEquals("Statistics per pool", 3, statistics.size());
+		assertEquals("Replica connections", 3, statistics.get(1).getConnections() + statistics.get(2).getConnections());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUnavailableReplica() throws Throwable {
+		String url1 = "jdbc:hsqldb:mem:replica3";
+		String url2 = "jdbc:invalid:replica4";
+		List<DataSource> replicas = new ArrayList<DataSource>();
+		replicas.add(this.buildDataSource("org.hsqldb.jdbcDriver", url1));
+		replicas.add(this.buildDataSource("org.jamwiki.InvalidDriver", url2));
+		ReadReplicaRouter router = new ReadReplicaRouter(replicas, Arrays.asList(url1, url2), 0);
+		for (int i = 0; i < 4; i++) {
+			assertEquals("Unavailable replica skipped", url1, this.readUrl(router, "10.0.0.1"));
+		}
+		router.recordWrite("10.0.0.1");
+		assertEquals("Sticky routing disabled", url1, this.readUrl(router, "10.0.0.1"));
+		assertTrue("Replica failures", router.getStatistics().get(2).getFailures() > 0);
+	}
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jamwiki.model.LogItem;
+import org.jamwiki.model.RecentChange;
+import org.jamwiki.model.TopicVersion;
+import org.jamwiki.model.Watchlist;
+import org.jamwiki.utils.Pagination;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class RecentChangeBufferTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testGetRecentChanges() throws Throwable {
+		List<RecentChange> initialChanges = new ArrayList<RecentChange>();
+		initialChanges.add(this.change(3, 30, "Three"));
+		initialChanges.add(this.change(2, 20, "Two"));
+		RecentChangeBuffer recentChangeBuffer = new RecentChangeBuffer(3, initialChanges);
+		// the buffer is not full, so it holds every change
+		assertEquals("Complete buffer", 2, recentChangeBuffer.getRecentChanges(new Pagination(10, 0)).size());
+		// changes committed out of order are sorted by date
+		recentChangeBuffer.addRecentChange(this.change(5, 50, "Five"));
+		recentChangeBuffer.addRecentChange(this.change(4, 40, "Four"));
+		// re-adding a loaded change does not duplicate it
+		recentChangeBuffer.addRecentChange(this.change(4, 40, "Four"));
+		assertEquals("Full buffer", 3, recentChangeBuffer.size());
+		List<RecentChange> results = recentChangeBuffer.getRecentChanges(new Pagination(3, 0));
+		assertEquals("Newest first", "Five", results.get(0).getTopicName());
+		assertEquals("Oldest retained", "Three", results.get(2).getTopicName());
+		// "Two" was discarded, so the buffer cannot answer a request that extends past "Three"
+		assertNull("Past the buffer", recentChangeBuffer.getRecentChanges(new Pagination(2, 2)));
+		results = recentChangeBuffer.getRecentChanges(new Pagination(1, 0, new Timestamp(40), 40));
+		assertEquals("Keyset", "Three", results.get(0).getTopicName());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testGetRecentChangesLogEntries() throws Throwable {
+		RecentChangeBuffer recentChangeBuffer = new RecentChangeBuffer(5, new ArrayList<RecentChange>());
+		recentChangeBuffer.addRecentChange(this.logChange(LogItem.LOG_TYPE_DELETE, "Deleted"));
+		recentChangeBuffer.addRecentChange(this.logChange(LogItem.LOG_TYPE_BLOCK, "Blocked"));
+		recentChangeBuffer.addRecentChange(this.logChange(LogItem.LOG_TYPE_MOVE, "Moved"));
+		List<RecentChange> results = recentChangeBuffer.getRecentChanges(new Pagination(3, 0));
+		assertEquals("Highest log type first", "Blocked", results.get(0).getTopicName());
+		assertEquals("Lowest log type last", "Deleted", results.get(2).getTopicName());
+		// log entries that share a change date are not skipped by the keyset
+		results = recentChangeBuffer.getRecentChanges(new Pagination(3, 1, new Timestamp(100), 0, LogItem.LOG_TYPE_BLOCK));
+		assertEquals("Keyset", 2, results.size());
+		assertEquals("Keyset", "Moved", results.get(0).getTopicName());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testRemoveTopic() throws Throwable {
+		RecentChange deletion = this.change(3, 30, "One");
+		deletion.setEditType(TopicVersion.EDIT_DELETE);
+		RecentChangeBuffer recentChangeBuffer = new RecentChangeBuffer(5, Arrays.asList(deletion, this.change(2, 20, "Two"), this.change(1, 10, "One")));
+		recentChangeBuffer.removeTopic(1);
+		List<RecentChange> results = recentChangeBuffer.getRecentChanges(new Pagination(10, 0));
+		assertEquals("Deletion retained", 2, results.size());
+		assertEquals("Deletion retained", TopicVersion.EDIT_DELETE, results.get(0).getEditType().intValue());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testGetWatchlist() throws Throwable {
+		RecentChangeBuffer recentChangeBuffer = new RecentChangeBuffer(5, new ArrayList<RecentChange>());
+		Watchlist watchlist = new Watchlist("en", Arrays.asList("One", "Two", "Three"));
+		recentChangeBuffer.addTopicVersion(this.change(1, 10, "One"), false);
+		recentChangeBuffer.addTopicVersion(this.change(2, 20, "Two"), false);
+		recentChangeBuffer.addTopicVersion(this.change(4, 40, "Four"), false);
+		// "Three" has not been edited since the buffer was created, so only the first two results are known
+		assertNull("Unknown topic", recentChangeBuffer.getWatchlist(watchlist, new Pagination(3, 0)));
+		List<RecentChange> results = recentChangeBuffer.getWatchlist(watchlist, new Pagination(2, 0));
+		assertEquals("Newest first", "Two", results.get(0).getTopicName());
+		assertEquals("Newest first", "One", results.get(1).getTopicName());
+		// a new version replaces the topic's previous version
+		recentChangeBuffer.addTopicVersion(this.change(1, 50, "One"), false);
+		recentChangeBuffer.addTopicVersion(this.change(3, 60, "Three"), true);
+		results = recentChangeBuffer.getWatchlist(watchlist, new Pagination(10, 0));
+		assertEquals("Deleted topic omitted", 2, results.size());
+		assertEquals("Current version", 50, results.get(0).getTopicVersionId().intValue());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAddWatchlist() throws Throwable {
+		RecentChangeBuffer recentChangeBuffer = new RecentChangeBuffer(5, new ArrayList<RecentChange>());
+		Watchlist watchlist = new Watchlist("en", Arrays.asList("One", "Two", "Missing"));
+		recentChangeBuffer.addTopicVersion(this.change(1, 50, "One"), false);
+		assertNull("Quiet topics", recentChangeBuffer.getWatchlist(watchlist, new Pagination(10, 0)));
+		// the database returned an older version of "One" before the new version was committed
+		recentChangeBuffer.addWatchlist(watchlist, Arrays.asList(this.change(1, 10, "One"), this.change(2, 20, "Two")));
+		List<RecentChange> results = recentChangeBuffer.getWatchlist(watchlist, new Pagination(10, 0));
+		assertEquals("Loaded watchlist", 2, results.size());
+		assertEquals("Buffered version kept", 50, results.get(0).getTopicVersionId().intValue());
+		assertEquals("Loaded version", 20, results.get(1).getTopicVersionId().intValue());
+		// a topic without a watchlist entry is tracked until it is edited
+		recentChangeBuffer.addTopicVersion(this.change(3, 60, "Missing"), false);
+		results = recentChangeBuffer.getWatchlist(watchlist, new Pagination(10, 0));
+		assertEquals("Created topic", 3, results.size());
+		assertEquals("Created topic", "Missing", results.get(0).getTopicName());
+	}
+
+	/**
+	 *
+	 */
+	private RecentChange change(int topicId, int topicVersionId, String topicName) {
+		RecentChange change = new RecentChange();
+		change.setTopicId(topicId);
+		change.setTopicVersionId(topicVersionId);
+		change.setTopicName(topicName);
+		change.setChangeDate(new Timestamp(topicVersionId));
+		change.setAuthorId(1);
+		change.setVirtualWiki("en");
+		return change;
+	}
+
+	/**
+	 *
+	 */
+	private RecentChange logChange(int logType, String topicName) {
+		RecentChange change = new RecentChange();
+		change.setTopicName(topicName);
+		change.setLogType(logType);
+		change.setChangeDate(new Timestamp(100));
+		change.setAuthorId(1);
+		change.setVirtualWiki("en");
+		return change;
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import org.jamwiki.Environment;
+import org.jamwiki.JAMWikiUnitTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.TransactionStatus;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class StatementMonitorTest extends JAMWikiUnitTest {
+
+	private static final String SELECT_SQL = "select id from monitor_test where id > ?";
+	private static final String SELECT_KEY = "STATEMENT_SELECT_MONITOR_TEST";
+	private static final String FORMATTED_SQL = "select id from monitor_test where id > {0}";
+	private static final String FORMATTED_KEY = "STATEMENT_SELECT_MONITOR_TEST_FORMATTED";
+	private Connection conn = null;
+
+	/**
+	 *
+	 */
+	@Before
+	public void setupMonitor() throws Throwable {
+		Environment.setValue(Environment.PROP_DB_STATEMENT_STATISTICS, "true");
+		StatementMonitor.reset();
+		Properties properties = new Properties();
+		properties.setProperty(SELECT_KEY, SELECT_SQL);
+		properties.setProperty(FORMATTED_KEY, FORMATTED_SQL);
+		StatementMonitor.registerStatements(properties);
+		this.conn = DriverManager.getConnection("jdbc:hsqldb:mem:monitor", "sa", "");
+		Statement stmt = this.conn.createStatement();
+		stmt.executeUpdate("create table monitor_test (id integer not null)");
+		for (int i = 1; i <= 3; i++) {
+			stmt.executeUpdate("insert into monitor_test (id) values (" + i + ")");
+		}
+		stmt.close();
+	}
+
+	/**
+	 *
+	 */
+	@After
+	public void tearDownMonitor() throws Throwable {
+		Statement stmt = this.conn.createStatement();
+		stmt.executeUpdate("drop table monitor_test");
+		stmt.close();
+		this.conn.close();
+		Environment.setValue(Environment.PROP_DB_STATEMENT_STATISTICS, "false");
+		Environment.setValue(Environment.PROP_DB_STATEMENT_REPEAT_THRESHOLD, "20");
+		StatementMonitor.reset();
+	}
+
+	/**
+	 *
+	 */
+	private int readRows(ResultSet rs) throws SQLException {
+		int rows = 0;
+		while (rs.next()) {
+			rows++;
+		}
+		rs.close();
+		return rows;
+	}
+
+	/**
+	 *
+	 */
+	private void selectPrepared(Connection monitored, int minimum) throws SQLException {
+		PreparedStatement stmt = monitored.prepareStatement(SELECT_SQL);
+		stmt.setInt(1, minimum);
+		this.readRows(stmt.executeQuery());
+		stmt.close();
+	}
+
+	/**
+	 *
+	 */
+	private StatementStatistics statistics(String key) {
+		for (StatementStatistics statistics : StatementMonitor.getStatistics()) {
+			if (statistics.getKey().equals(key)) {
+				return statistics;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testPreparedStatement() throws Throwable {
+		Connection monitored = StatementMonitor.wrap(this.conn);
+		this.selectPrepared(monitored, 0);
+		this.selectPrepared(monitored, 2);
+		StatementStatistics statistics = this.statistics(SELECT_KEY);
+		assertNotNull("Statistics recorded under statement key", statistics);
+		assertEquals("Prepared statement executions", 2, statistics.getExecutions());
+		assertEquals("Prepared statement rows", 4, statistics.getRows());
+		assertEquals("Prepared statement failures", 0, statistics.getFailures());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFormattedStatement() throws Throwable {
+		Connection monitored = StatementMonitor.wrap(this.conn);
+		String formattedSql = "select id from monitor_test where id > 1";
+		StatementMonitor.registerFormattedStatement(FORMATTED_SQL, formattedSql);
+		Statement stmt = monitored.createStatement();
+		assertEquals("Formatted statement result", 2, this.readRows(stmt.executeQuery(formattedSql)));
+		stmt.close();
+		StatementStatistics statistics = this.statistics(FORMATTED_KEY);
+		assertNotNull("Statistics recorded under formatted statement key", statistics);
+		assertEquals("Formatted statement executions", 1, statistics.getExecutions());
+		assertEquals("Formatted statement rows", 2, statistics.getRows());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFailedStatement() throws Throwable {
+		Connection monitored = StatementMonitor.wrap(this.conn);
+		Statement stmt = monitored.createStatement();
+		try {
+			stmt.executeQuery("select missing_column from   monitor_test");
+			fail("Invalid statement executed");
+		} catch (SQLException e) {
+			// expected
+		} finally {
+			stmt.close();
+		}
+		StatementStatistics statistics = this.statistics("select missing_column from monitor_test");
+		assertNotNull("Statistics recorded under normalized SQL text", statistics);
+		assertEquals("Failed statement executions", 1, statistics.getExecutions());
+		assertEquals("Failed statement failures", 1, statistics.getFailures());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testRepeatedStatement() throws Throwable {
+		Environment.setValue(Environment.PROP_DB_STATEMENT_REPEAT_THRESHOLD, "2");
+		Connection monitored = StatementMonitor.wrap(this.conn);
+		StatementMonitor.beginRequest();
+		for (int i = 0; i < 3; i++) {
+			this.selectPrepared(monitored, i);
+		}
+		StatementMonitor.endRequest("repeated statement test");
+		assertEquals("Statement repeated above threshold", 1, this.statistics(SELECT_KEY).getRepeatedRequests());
+		StatementMonitor.beginRequest();
+		for (int i = 0; i < 2; i++) {
+			this.selectPrepared(monitored, i);
+		}
+		StatementMonitor.endRequest("repeated statement test");
+		assertEquals("Statement repeated at threshold", 1, this.statistics(SELECT_KEY).getRepeatedRequests());
+		// executions outside of a request are not tracked
+		for (int i = 0; i < 3; i++) {
+			this.selectPrepared(monitored, i);
+		}
+		StatementMonitor.endRequest("repeated statement test");
+		assertEquals("Statement executed outside of a request", 1, this.statistics(SELECT_KEY).getRepeatedRequests());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testCloseConnectionInTransaction() throws Throwable {
+		TransactionStatus status = DatabaseConnection.startTransaction();
+		try {
+			Connection first = DatabaseConnection.getConnection();
+			assertNotSame("Connection not monitored", first, StatementMonitor.unwrap(first));
+			DatabaseConnection.closeConnection(first);
+			Connection second = DatabaseConnection.getConnection();
+			assertFalse("Transaction connection closed", second.isClosed());
+			assertSame("Transaction connection not reused", StatementMonitor.unwrap(first), StatementMonitor.unwrap(second));
+			DatabaseConnection.closeConnection(second);
+		} finally {
+			DatabaseConnection.commit(status);
+		}
+	}
+}
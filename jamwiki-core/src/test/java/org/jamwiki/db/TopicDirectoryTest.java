@@ -0,0 +1,114 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.jamwiki.model.Namespace;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class TopicDirectoryTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLookupPageName() throws Throwable {
+		Namespace main = Namespace.namespace(Namespace.MAIN_ID);
+		Namespace template = Namespace.namespace(Namespace.TEMPLATE_ID);
+		TopicDirectory topicDirectory = new TopicDirectory();
+		topicDirectory.addTopic(Namespace.MAIN_ID, "Example", 1);
+		topicDirectory.addTopic(Namespace.TEMPLATE_ID, "Example", 2);
+		assertEquals("Exact match", "Example", topicDirectory.lookupPageName(main, "Example"));
+		assertNull("Case sensitive namespace", topicDirectory.lookupPageName(main, "EXAMPLE"));
+		assertEquals("Case insensitive namespace", "Example", topicDirectory.lookupPageName(template, "EXAMPLE"));
+		assertNull("All lower-case page name", topicDirectory.lookupPageName(template, "example"));
+		assertTrue("Case insensitive contains", topicDirectory.containsPageNameIgnoreCase(main, "example"));
+		assertFalse("Missing topic", topicDirectory.containsPageNameIgnoreCase(main, "Missing"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testAddRemoveTopic() throws Throwable {
+		Namespace main = Namespace.namespace(Namespace.MAIN_ID);
+		TopicDirectory topicDirectory = new TopicDirectory();
+		topicDirectory.addTopic(Namespace.MAIN_ID, "Example", 1);
+		topicDirectory.addTopic(Namespace.MAIN_ID, "EXAMPLE", 2);
+		assertEquals("Topics differing by case", 2, topicDirectory.size());
+		// re-adding a topic ID with a new page name replaces the old entry
+		topicDirectory.addTopic(Namespace.MAIN_ID, "ExAmple", 1);
+		assertEquals("Replaced topic", 2, topicDirectory.size());
+		assertNull("Replaced page name", topicDirectory.lookupPageName(main, "Example"));
+		assertEquals("New page name", "ExAmple", topicDirectory.lookupPageName(main, "ExAmple"));
+		topicDirectory.removeTopic(Namespace.MAIN_ID, "ExAmple", 1);
+		topicDirectory.removeTopic(Namespace.MAIN_ID, "EXAMPLE", 2);
+		assertEquals("Removed topics", 0, topicDirectory.size());
+		assertFalse("Removed topics", topicDirectory.containsPageNameIgnoreCase(main, "example"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testMoveTopic() throws Throwable {
+		Namespace main = Namespace.namespace(Namespace.MAIN_ID);
+		Namespace template = Namespace.namespace(Namespace.TEMPLATE_ID);
+		TopicDirectory topicDirectory = new TopicDirectory();
+		topicDirectory.addTopic(Namespace.MAIN_ID, "Example", 1);
+		// a topic moved to a new page name in another namespace keeps its ID
+		topicDirectory.addTopic(Namespace.TEMPLATE_ID, "Moved", 1);
+		assertEquals("Moved topic", 1, topicDirectory.size());
+		assertFalse("Old page name", topicDirectory.containsPageNameIgnoreCase(main, "Example"));
+		assertEquals("New page name", "Moved", topicDirectory.lookupPageName(template, "Moved"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLoadTopics() throws Throwable {
+		Namespace main = Namespace.namespace(Namespace.MAIN_ID);
+		Namespace template = Namespace.namespace(Namespace.TEMPLATE_ID);
+		List<Integer> namespaceIds = new ArrayList<Integer>();
+		List<String> pageNames = new ArrayList<String>();
+		List<Integer> topicIds = new ArrayList<Integer>();
+		for (int i = 0; i < 100; i++) {
+			namespaceIds.add((i % 2 == 0) ? Namespace.MAIN_ID : Namespace.TEMPLATE_ID);
+			pageNames.add(((i % 3 == 0) ? "TOPIC " : "Topic ") + (i / 3));
+			topicIds.add(1000 - i);
+		}
+		TopicDirectory topicDirectory = new TopicDirectory(namespaceIds, pageNames, topicIds);
+		assertEquals("Loaded topics", 100, topicDirectory.size());
+		for (int i = 0; i < 100; i++) {
+			Namespace namespace = (i % 2 == 0) ? main : template;
+			assertEquals("Loaded page name " + i, pageNames.get(i), topicDirectory.lookupPageName(namespace, pageNames.get(i)));
+		}
+		assertNull("Missing topic", topicDirectory.lookupPageName(main, "Topic 100"));
+		// topics added and removed after loading are found by ID
+		topicDirectory.addTopic(Namespace.TEMPLATE_ID, "Moved", 1000);
+		assertEquals("Replaced loaded topic", 100, topicDirectory.size());
+		assertNull("Replaced loaded page name", topicDirectory.lookupPageName(main, "TOPIC 0"));
+		topicDirectory.removeTopic(Namespace.TEMPLATE_ID, "Moved", 1000);
+		assertEquals("Removed loaded topic", 99, topicDirectory.size());
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.db;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class TopicVersionCodecTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDelta() throws Throwable {
+		StringBuilder base = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			base.append("Line number ").append(i).append(" of the original topic content.\n");
+		}
+		String content = base.toString().replace("Line number 50 ", "Edited line fifty ") + "A new final line without a newline";
+		String stored = TopicVersionCodec.encodeDelta(content, 17, base.toString());
+		assertTrue("Delta marker", TopicVersionCodec.isDelta(stored));
+		assertEquals("Delta base ID", 17, TopicVersionCodec.deltaBaseId(stored));
+		assertTrue("Delta smaller than snapshot", stored.length() < TopicVersionCodec.encodeSnapshot(content).length());
+		assertEquals("Delta round trip", content, TopicVersionCodec.applyDelta(stored, base.toString()));
+		assertEquals("Empty content", "", TopicVersionCodec.applyDelta(TopicVersionCodec.encodeDelta("", 17, base.toString()), base.toString()));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testSnapshot() throws Throwable {
+		String content = "'''Bold''' text with unicode é中\n* list item\n";
+		String stored = TopicVersionCodec.encodeSnapshot(content);
+		assertTrue("Snapshot marker", TopicVersionCodec.isSnapshot(stored));
+		assertEquals("Snapshot round trip", content, TopicVersionCodec.decode(stored));
+		assertEquals("Plain text unchanged", content, TopicVersionCodec.encodePlain(content));
+		assertEquals("Plain text decoded", content, TopicVersionCodec.decode(content));
+		// plain text that looks like encoded content must still round trip
+		String ambiguous = "\u0001Delta-like content";
+		assertTrue("Ambiguous text encoded", TopicVersionCodec.isSnapshot(TopicVersionCodec.encodePlain(ambiguous)));
+		assertEquals("Ambiguous text round trip", ambiguous, TopicVersionCodec.decode(TopicVersionCodec.encodePlain(ambiguous)));
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.migrate;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+import org.jamwiki.Environment;
+import org.jamwiki.JAMWikiUnitTest;
+import org.jamwiki.TestFileUtil;
+import org.jamwiki.TestSearchEngine;
+import org.jamwiki.WikiBase;
+import org.jamwiki.WikiException;
+import org.jamwiki.model.Topic;
+import org.jamwiki.utils.Pagination;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class MediaWikiXmlImporterTest extends JAMWikiUnitTest {
+
+	private static final String FILE_RESUME_COMPLETE = "mediawiki-export-resume-complete.xml";
+	private static final String FILE_RESUME_PARTIAL = "mediawiki-export-resume-partial.xml";
+	private static final String TEST_FILES_DIR = "data/files/";
+	private static final String TOPIC_NAME1 = "Import Resume 1";
+	private static final String TOPIC_NAME2 = "Import Resume 2";
+	private static final String TOPIC_NAME3 = "Import Resume 3";
+	private static final String VIRTUAL_WIKI_EN = "en";
+
+	/**
+	 * Imported topics are added to the search index, so use the empty test
+	 * search engine since the default search engine is not part of this module.
+	 */
+	@Before
+	public void setupSearchEngine() throws Exception {
+		Environment.setValue(Environment.PROP_BASE_SEARCH_ENGINE, TestSearchEngine.class.getName());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testImportResume() throws Throwable {
+		// import the first part of a file
+		ImportStatus status = new ImportStatus();
+		List<String> results = this.importTestFile(FILE_RESUME_PARTIAL, false, status);
+		assertEquals("Topics imported", 2, results.size());
+		assertTrue("Topic imported: " + TOPIC_NAME1, results.contains(TOPIC_NAME1));
+		assertTrue("Topic imported: " + TOPIC_NAME2, results.contains(TOPIC_NAME2));
+		assertFalse("Import failed", status.isFailed());
+		assertEquals("Imported topic count", 2, status.getTopicsImported());
+		// each topic has an additional version recording the import
+		assertEquals("Imported topic version count", 5, status.getTopicVersionsImported());
+		Topic topic1 = WikiBase.getDataHandler().lookupTopic(VIRTUAL_WIKI_EN, TOPIC_NAME1, false);
+		assertTrue("Current topic content", topic1.getTopicContent().startsWith("Link to [[Import Resume 2]]."));
+		assertEquals("Topic versions", 3, WikiBase.getDataHandler().getTopicHistory(topic1, new Pagination(1000, 0), false).size());
+		assertEquals("Topic categories", 2, WikiBase.getDataHandler().lookupCategoryTopics(VIRTUAL_WIKI_EN, "Category:Import Resume").size());
+		// resume with the complete file, skipping the topics already imported
+		status = new ImportStatus();
+		results = this.importTestFile(FILE_RESUME_COMPLETE, true, status);
+		assertEquals("Topics imported after resume", 1, results.size());
+		assertEquals("Topic imported after resume", TOPIC_NAME3, results.get(0));
+		assertEquals("Topics skipped after resume", 2, status.getTopicsSkipped());
+		assertEquals("Imported topic version count after resume", 2, status.getTopicVersionsImported());
+		assertNotNull("Topic imported after resume", WikiBase.getDataHandler().lookupTopic(VIRTUAL_WIKI_EN, TOPIC_NAME3, false));
+		assertEquals("Skipped topic versions", 3, WikiBase.getDataHandler().getTopicHistory(topic1, new Pagination(1000, 0), false).size());
+		// without resume, topics that already exist cause the import to fail
+		status = new ImportStatus();
+		try {
+			this.importTestFile(FILE_RESUME_COMPLETE, false, status);
+			fail("Import of existing topics without resume");
+		} catch (WikiException e) {
+			assertTrue("Failed import status", status.isFailed());
+		}
+	}
+
+	/**
+	 * Utility method for importing test files.
+	 */
+	private List<String> importTestFile(String filename, boolean resume, ImportStatus status) throws Throwable {
+		File file = TestFileUtil.retrieveFile(TEST_FILES_DIR, filename);
+		return MigrationUtil.importFromFile(file, VIRTUAL_WIKI_EN, null, "127.0.0.1", new Locale("en", "US"), resume, status);
+	}
+}
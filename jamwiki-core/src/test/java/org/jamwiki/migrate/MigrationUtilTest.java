@@ -21,8 +21,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.jamwiki.Environment;
 import org.jamwiki.JAMWikiUnitTest;
 import org.jamwiki.TestFileUtil;
+import org.jamwiki.TestSearchEngine;
 import org.jamwiki.WikiBase;
 import org.jamwiki.model.RecentChange;
 import org.jamwiki.model.Topic;
@@ -49,6 +52,7 @@ public class MigrationUtilTest extends JAMWikiUnitTest {
 	private static final String TOPIC_NAME3 = "Test Page 2";
 	private static final String TOPIC_NAME4 = "Who am i";
 	private static final String TOPIC_NAME5 = "Namespace Test";
+	private static final String TOPIC_NAME_HISTORY = "Export History";
 	private static final String VIRTUAL_WIKI_EN = "en";
 	@Rule
 	public TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
@@ -65,9 +69,15 @@ public class MigrationUtilTest extends JAMWikiUnitTest {
 	@Before
 	public void setup() throws Exception {
 		if (!INITIALIZED) {
+			Environment.setValue(Environment.PROP_BASE_SEARCH_ENGINE, TestSearchEngine.class.getName());
 			this.setupTopic(null, "CharacterUtf8");
 			this.setupTopic(null, "Example1");
 			this.setupTopic(null, "Example2");
+			Topic topic = this.setupTopic(null, TOPIC_NAME_HISTORY, "Export Version 1");
+			for (int i = 2; i <= 4; i++) {
+				topic.setTopicContent("Export Version " + i);
+				this.setupTopic(topic);
+			}
 			INITIALIZED = true;
 		}
 	}
@@ -112,6 +122,34 @@ public class MigrationUtilTest extends JAMWikiUnitTest {
 		}
 	}
 
+	/**
+	 *
+	 */
+	@Test
+	public void testExportMaxVersions() throws Throwable {
+		String virtualWiki = VIRTUAL_WIKI_EN;
+		List<String> topicNames = new ArrayList<>();
+		topicNames.add(TOPIC_NAME_HISTORY);
+		boolean excludeHistory = false;
+		File file = TEMP_FOLDER.newFile("export.xml");
+		String originalMaxVersions = Environment.getValue(Environment.PROP_MAX_TOPIC_VERSION_EXPORT);
+		try {
+			Environment.setValue(Environment.PROP_MAX_TOPIC_VERSION_EXPORT, "3");
+			MigrationUtil.exportToFile(file, virtualWiki, topicNames, excludeHistory);
+		} catch (MigrationException e) {
+			fail("Failure during export" + e);
+		} finally {
+			Environment.setValue(Environment.PROP_MAX_TOPIC_VERSION_EXPORT, originalMaxVersions);
+		}
+		String fileContent = FileUtils.readFileToString(file, "UTF-8");
+		assertEquals("Failure in max versions export test #1", 3, StringUtils.countMatches(fileContent, "<revision>"));
+		assertFalse("Failure in max versions export test #2", fileContent.contains("Export Version 1<"));
+		for (int i = 2; i <= 4; i++) {
+			assertTrue("Failure in max versions export test #" + (i + 1), fileContent.contains("Export Version " + i + "<"));
+		}
+		assertTrue("Failure in max versions export test #6", fileContent.indexOf("Export Version 2<") < fileContent.indexOf("Export Version 4<"));
+	}
+
 	/**
 	 *
 	 */
@@ -0,0 +1,59 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.parser.jflex;
+
+import org.jamwiki.JAMWikiUnitTest;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CompiledTemplateTest extends JAMWikiUnitTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testCompile() throws Throwable {
+		CompiledTemplate result = CompiledTemplate.compile("a {{{1}}} b {{{name|default}}} c", 5);
+		assertEquals("Failure in compile test #1", 2, result.getParameterCount());
+		assertEquals("Failure in compile test #1", "a ", result.getLiteral(0));
+		assertEquals("Failure in compile test #1", " b ", result.getLiteral(1));
+		assertEquals("Failure in compile test #1", " c", result.getLiteral(2));
+		assertEquals("Failure in compile test #1", "1", result.getParameter(0).getLiteral(0));
+		assertEquals("Failure in compile test #1", "name|default", result.getParameter(1).getLiteral(0));
+		assertEquals("Failure in compile test #1", 5, result.getTopicVersionId());
+		// no parameters
+		result = CompiledTemplate.compile("{{{template}} x {{template}}}", -1);
+		assertEquals("Failure in compile test #2", 0, result.getParameterCount());
+		assertEquals("Failure in compile test #2", "{{{template}} x {{template}}}", result.getLiteral(0));
+		// template call wrapping a parameter
+		result = CompiledTemplate.compile("{{{{{1}}}}}", -1);
+		assertEquals("Failure in compile test #3", 1, result.getParameterCount());
+		assertEquals("Failure in compile test #3", "{{", result.getLiteral(0));
+		assertEquals("Failure in compile test #3", "}}", result.getLiteral(1));
+		// embedded parameter default
+		result = CompiledTemplate.compile("{{{1|{{{2}}}}}}", -1);
+		assertEquals("Failure in compile test #4", 1, result.getParameterCount());
+		CompiledTemplate param = result.getParameter(0);
+		assertEquals("Failure in compile test #4", 1, param.getParameterCount());
+		assertEquals("Failure in compile test #4", "1|", param.getLiteral(0));
+		assertEquals("Failure in compile test #4", "2", param.getParameter(0).getLiteral(0));
+		// parameter with a template default
+		result = CompiledTemplate.compile("{{{1|{{PAGENAME}}}}}", -1);
+		assertEquals("Failure in compile test #5", 1, result.getParameterCount());
+		assertEquals("Failure in compile test #5", "1|{{PAGENAME}}", result.getParameter(0).getLiteral(0));
+	}
+}
@@ -18,6 +18,7 @@
  */
 package org.jamwiki.parser.jflex;
 
+import java.util.Arrays;
 import org.jamwiki.JAMWikiUnitTest;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -121,4 +122,17 @@ public class JFlexParserUtilTest extends JAMWikiUnitTest {
 		assertEquals("Markup not stripped", JFlexParserUtil.stripMarkup("A&#65533;&#65533;o"), "A&#65533;&#65533;o");
 		assertEquals("Markup not stripped", JFlexParserUtil.stripMarkup("<b>A&#65533;&#65533;o</b>"), "A&#65533;&#65533;o");
 	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testTokenizeParamString() throws Throwable {
+		assertEquals("Failure in param tokenizing test #1", Arrays.asList("a"), JFlexParserUtil.tokenizeParamString("a"));
+		assertEquals("Failure in param tokenizing test #2", Arrays.asList("a", "", "b"), JFlexParserUtil.tokenizeParamString("a||b"));
+		assertEquals("Failure in param tokenizing test #3", Arrays.asList("a", "[[b|c]]", "d"), JFlexParserUtil.tokenizeParamString("a|[[b|c]]|d"));
+		assertEquals("Failure in param tokenizing test #4", Arrays.asList("a", "x={{b|{{{1|c}}}}}", "d"), JFlexParserUtil.tokenizeParamString("a|x={{b|{{{1|c}}}}}|d"));
+		assertEquals("Failure in param tokenizing test #5", Arrays.asList("a", "{|\n|b\n|}", ""), JFlexParserUtil.tokenizeParamString("a|{|\n|b\n|}|"));
+		assertEquals("Failure in param tokenizing test #6", Arrays.asList("a", "[[b", "c"), JFlexParserUtil.tokenizeParamString("a|[[b|c"));
+	}
 }
\ No newline at end of file
@@ -0,0 +1,153 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.parser.jflex;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.jamwiki.Environment;
+import org.jamwiki.JAMWikiUnitTest;
+import org.jamwiki.TestSearchEngine;
+import org.jamwiki.parser.ParserInput;
+import org.jamwiki.parser.ParserOutput;
+import org.jamwiki.parser.ParserUtil;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class TemplateTagTest extends JAMWikiUnitTest {
+
+	private static boolean INITIALIZED = false;
+	private final ParserTestUtils parserTestUtils = new ParserTestUtils();
+
+	/**
+	 *
+	 */
+	@Before
+	public void setupTemplates() throws Exception {
+		if (!INITIALIZED) {
+			Environment.setValue(Environment.PROP_BASE_SEARCH_ENGINE, TestSearchEngine.class.getName());
+			this.setupTopic(null, "Template:Memo Link", "[[{{{1}}}]] {{{2|default}}}");
+			this.setupTopic(null, "Template:Memo Time", "{{CURRENTYEAR}} [[{{{1}}}]]");
+			this.setupTopic(null, "Template:Memo Ifexist", "{{#ifexist:{{{1}}}|exists|missing}}");
+			INITIALIZED = true;
+		}
+	}
+
+	/**
+	 * Return the number of template expansions memoized while parsing.
+	 */
+	private int expansionCount(ParserInput parserInput) {
+		Map<?, ?> expansions = (Map<?, ?>)parserInput.getTempParam(TemplateTag.TEMPLATE_EXPANSIONS);
+		return (expansions == null) ? 0 : expansions.size();
+	}
+
+	/**
+	 * Return a sorted list containing the values of a list repeated the given
+	 * number of times.
+	 */
+	private List<String> repeat(List<String> values, int count) {
+		List<String> result = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			result.addAll(values);
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * Return a sorted copy of a list.
+	 */
+	private List<String> sort(List<String> values) {
+		List<String> result = new ArrayList<String>(values);
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testMemoizedTemplate() throws Throwable {
+		ParserOutput single = new ParserOutput();
+		ParserUtil.parse(this.parserTestUtils.parserInput("TemplateTagTest"), single, "{{Memo Link|Alpha}}");
+		ParserInput parserInput = this.parserTestUtils.parserInput("TemplateTagTest");
+		ParserOutput parserOutput = new ParserOutput();
+		String result = ParserUtil.parse(parserInput, parserOutput, "{{Memo Link|Alpha}} {{Memo Link|Alpha}} {{Memo Link| Alpha }}");
+		assertEquals("Failure in memoized template test #1", 3, StringUtils.countMatches(result, "title=\"Alpha\""));
+		assertEquals("Failure in memoized template test #1", 3, StringUtils.countMatches(result, "default"));
+		assertEquals("Failure in memoized template test #1", 1, this.expansionCount(parserInput));
+		// links and templates from the memoized expansion are recorded for each call
+		assertEquals("Failure in memoized template test #1", this.repeat(single.getLinks(), 3), this.sort(parserOutput.getLinks()));
+		assertEquals("Failure in memoized template test #1", this.repeat(single.getTemplates(), 3), this.sort(parserOutput.getTemplates()));
+		assertTrue("Failure in memoized template test #1", parserOutput.getCacheable());
+		// different arguments are expanded separately
+		parserInput = this.parserTestUtils.parserInput("TemplateTagTest");
+		parserOutput = new ParserOutput();
+		result = ParserUtil.parse(parserInput, parserOutput, "{{Memo Link|Alpha}} {{Memo Link|Beta}} {{Memo Link|Alpha|other}}");
+		assertEquals("Failure in memoized template test #2", 2, StringUtils.countMatches(result, "title=\"Alpha\""));
+		assertEquals("Failure in memoized template test #2", 1, StringUtils.countMatches(result, "title=\"Beta\""));
+		assertEquals("Failure in memoized template test #2", 2, StringUtils.countMatches(result, "default"));
+		assertEquals("Failure in memoized template test #2", 1, StringUtils.countMatches(result, "other"));
+		assertEquals("Failure in memoized template test #2", 3, this.expansionCount(parserInput));
+		assertTrue("Failure in memoized template test #2", parserOutput.getLinks().contains("Beta"));
+		assertTrue("Failure in memoized template test #2", parserOutput.getCacheable());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testNonCacheableTemplate() throws Throwable {
+		String year = Integer.toString(Calendar.getInstance().get(Calendar.YEAR));
+		ParserOutput single = new ParserOutput();
+		ParserUtil.parse(this.parserTestUtils.parserInput("TemplateTagTest"), single, "{{Memo Time|Alpha}}");
+		ParserInput parserInput = this.parserTestUtils.parserInput("TemplateTagTest");
+		ParserOutput parserOutput = new ParserOutput();
+		String result = ParserUtil.parse(parserInput, parserOutput, "{{Memo Time|Alpha}} {{Memo Time|Alpha}} {{Memo Link|Alpha}} {{Memo Link|Alpha}}");
+		assertEquals("Failure in non-cacheable template test #1", 2, StringUtils.countMatches(result, year));
+		assertEquals("Failure in non-cacheable template test #1", 4, StringUtils.countMatches(result, "title=\"Alpha\""));
+		// only the cacheable template is memoized, but the page is not cacheable
+		assertEquals("Failure in non-cacheable template test #1", 1, this.expansionCount(parserInput));
+		assertFalse("Failure in non-cacheable template test #1", parserOutput.getCacheable());
+		assertEquals("Failure in non-cacheable template test #1", 4 * Collections.frequency(single.getLinks(), "Alpha"), Collections.frequency(parserOutput.getLinks(), "Alpha"));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testIfexistTemplate() throws Throwable {
+		// #ifexist records the tested topic as a link, so its output remains cacheable
+		ParserInput parserInput = this.parserTestUtils.parserInput("TemplateTagTest");
+		ParserOutput parserOutput = new ParserOutput();
+		String result = ParserUtil.parse(parserInput, parserOutput, "{{Memo Ifexist|Memo Missing}} {{Memo Ifexist|Memo Missing}} {{Memo Ifexist|Template:Memo Link}}");
+		assertEquals("Failure in #ifexist template test #1", 2, StringUtils.countMatches(result, "missing"));
+		assertEquals("Failure in #ifexist template test #1", 1, StringUtils.countMatches(result, "exists"));
+		assertEquals("Failure in #ifexist template test #1", 2, this.expansionCount(parserInput));
+		assertEquals("Failure in #ifexist template test #1", 3, parserOutput.getTemplates().size());
+		assertTrue("Failure in #ifexist template test #1", parserOutput.getCacheable());
+		assertEquals("Failure in #ifexist template test #1", 2, Collections.frequency(parserOutput.getLinks(), "Memo Missing"));
+		assertEquals("Failure in #ifexist template test #1", 1, Collections.frequency(parserOutput.getLinks(), "Template:Memo Link"));
+	}
+}
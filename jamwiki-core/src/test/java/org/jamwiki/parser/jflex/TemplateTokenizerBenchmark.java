@@ -0,0 +1,150 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.parser.jflex;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.jamwiki.TestFileUtil;
+
+/**
+ * Micro-benchmark for the template tokenizing methods in
+ * {@link JFlexParserUtil}.  This is not a unit test and is not run as part of
+ * the build; run it from the command line with the test classpath:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:... org.jamwiki.parser.jflex.TemplateTokenizerBenchmark [infoboxParams]
+ * </pre>
+ *
+ * Two workloads are measured: tokenizing the body of every template call
+ * found in the test topics, and tokenizing a single synthetic infobox-style
+ * template call with a large number of parameters (1000 by default), which
+ * shows how the tokenizer scales with template size.  Each workload is run
+ * for several warm-up iterations before the measured iterations.
+ */
+public class TemplateTokenizerBenchmark {
+
+	private static final int MEASUREMENT_ITERATIONS = 10;
+	private static final long ITERATION_MILLIS = 1000;
+	private static final int WARMUP_ITERATIONS = 5;
+	/** Prevents the JIT from discarding benchmark results. */
+	private static long blackhole = 0;
+
+	/**
+	 *
+	 */
+	public static void main(String[] args) throws Exception {
+		int infoboxParams = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		List<String> templateCalls = templateCalls(TestFileUtil.getClassLoaderFile(TestFileUtil.TEST_TOPICS_DIR));
+		System.out.println("Template calls in test topics: " + templateCalls.size());
+		run("tokenize test topic templates", templateCalls);
+		List<String> infobox = new ArrayList<String>();
+		infobox.add(infobox(infoboxParams));
+		System.out.println("Synthetic infobox length: " + infobox.get(0).length() + " characters");
+		run("tokenize infobox with " + infoboxParams + " parameters", infobox);
+		System.out.println("(ignore) " + blackhole);
+	}
+
+	/**
+	 * Build a template call of the form "Infobox|name1=[[link|text]]|name2={{{2|default}}}|..."
+	 * with the given number of parameters.
+	 */
+	private static String infobox(int params) {
+		StringBuilder result = new StringBuilder("Infobox");
+		for (int i = 0; i < params; i++) {
+			result.append("\n|param").append(i).append(" = ");
+			switch (i % 4) {
+				case 0:
+					result.append("[[Topic ").append(i).append("|text]]");
+					break;
+				case 1:
+					result.append("{{{").append(i).append("|{{PAGENAME}}}}}");
+					break;
+				case 2:
+					result.append("{{nested|a|b=").append(i).append("}}");
+					break;
+				default:
+					result.append("plain value ").append(i);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Repeatedly tokenize the given template calls for a fixed period and
+	 * return the average time per call in nanoseconds.
+	 */
+	private static double iteration(List<String> templateCalls) {
+		long operations = 0;
+		long start = System.nanoTime();
+		long end = start + ITERATION_MILLIS * 1000000;
+		long now;
+		do {
+			for (String templateCall : templateCalls) {
+				blackhole += JFlexParserUtil.tokenizeParamString(templateCall).size();
+				operations++;
+			}
+			now = System.nanoTime();
+		} while (now < end);
+		return (double)(now - start) / operations;
+	}
+
+	/**
+	 *
+	 */
+	private static void run(String name, List<String> templateCalls) {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			iteration(templateCalls);
+		}
+		double total = 0;
+		double min = Double.MAX_VALUE;
+		double max = 0;
+		for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+			double result = iteration(templateCalls);
+			total += result;
+			min = Math.min(min, result);
+			max = Math.max(max, result);
+		}
+		System.out.println(String.format("%s: %.1f ns/op (min %.1f, max %.1f)", name, total / MEASUREMENT_ITERATIONS, min, max));
+	}
+
+	/**
+	 * Return the content of every top-level template call, without the
+	 * enclosing braces, found in the files in the given directory.
+	 */
+	private static List<String> templateCalls(File directory) throws Exception {
+		List<String> result = new ArrayList<String>();
+		File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IllegalStateException("Test topics not found in " + directory.getAbsolutePath());
+		}
+		for (File file : files) {
+			String content = FileUtils.readFileToString(file, "UTF-8");
+			int pos = content.indexOf("{{");
+			while (pos != -1) {
+				int endPos = JFlexParserUtil.findMatchingEndTag(content, pos, "{{", "}}");
+				if (endPos == -1) {
+					break;
+				}
+				result.add(content.substring(pos + 2, endPos));
+				pos = content.indexOf("{{", endPos + 2);
+			}
+		}
+		return result;
+	}
+}
@@ -18,6 +18,7 @@
  */
 package org.jamwiki.utils;
 
+import java.sql.Timestamp;
 import org.jamwiki.JAMWikiUnitTest;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -37,6 +38,28 @@ public class PaginationTest extends JAMWikiUnitTest {
 		assertEquals("pagination.getOffset()", 1000, pagination.getOffset());
 	}
 
+	/**
+	 *
+	 */
+	@Test
+	public void testCursor() throws Throwable {
+		Timestamp changeDate = Timestamp.valueOf("2010-06-15 12:30:45.123456789");
+		Pagination pagination = Pagination.fromCursor(25, Pagination.buildCursor(50, changeDate, 1234, 3));
+		assertTrue("pagination.isKeyset()", pagination.isKeyset());
+		assertEquals("pagination.getNumResults()", 25, pagination.getNumResults());
+		assertEquals("pagination.getOffset()", 50, pagination.getOffset());
+		assertEquals("pagination.getSeekDate()", changeDate, pagination.getSeekDate());
+		assertEquals("pagination.getSeekId()", 1234, pagination.getSeekId());
+		assertEquals("pagination.getSeekType()", 3, pagination.getSeekType());
+		pagination = Pagination.fromCursor(25, Pagination.buildCursor(50, changeDate, null, null));
+		assertEquals("pagination.getSeekId()", 0, pagination.getSeekId());
+		assertEquals("pagination.getSeekType()", 0, pagination.getSeekType());
+		assertFalse("new Pagination(100, 0).isKeyset()", new Pagination(100, 0).isKeyset());
+		assertNull("invalid cursor", Pagination.fromCursor(25, "invalid"));
+		assertNull("invalid cursor", Pagination.fromCursor(25, "1.2.3.4.!"));
+		assertNull("invalid cursor", Pagination.fromCursor(25, "1.2.3.4"));
+	}
+
 	/**
 	 *
 	 */
@@ -45,5 +45,21 @@ public class SortedPropertiesTest extends JAMWikiUnitTest {
 	public void testConstructorThrowsNullPointerException() throws Throwable {
 		new SortedProperties(null);
 	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testModificationCount() throws Throwable {
+		SortedProperties properties = new SortedProperties();
+		long count = properties.getModificationCount();
+		properties.setProperty("key", "value");
+		assertTrue("(SortedProperties) count after setProperty", properties.getModificationCount() > count);
+		count = properties.getModificationCount();
+		properties.getProperty("key");
+		assertEquals("(SortedProperties) count after getProperty", count, properties.getModificationCount());
+		properties.remove("key");
+		assertTrue("(SortedProperties) count after remove", properties.getModificationCount() > count);
+	}
 }
 
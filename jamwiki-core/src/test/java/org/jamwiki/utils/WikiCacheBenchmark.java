@@ -0,0 +1,86 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.utils;
+
+import java.io.File;
+import org.jamwiki.Environment;
+import org.jamwiki.WikiBase;
+
+/**
+ * Micro-benchmark for {@link WikiCache#removeFromCacheCaseInsensitive}.  This
+ * is not a unit test and is not run as part of the build; run it from the
+ * command line with the test classpath from the <code>jamwiki-core</code>
+ * directory:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:... org.jamwiki.utils.WikiCacheBenchmark [largeCacheSize]
+ * </pre>
+ *
+ * Each measurement populates the cache and then performs topic-write style
+ * updates that remove a key in a case-insensitive manner and re-add it.  The
+ * per-write time should not grow with the number of keys in the cache, since
+ * removals use the case-folded key index rather than a full key scan.
+ */
+public class WikiCacheBenchmark {
+
+	private static final int ROUNDS = 5;
+	private static final int SMALL_CACHE_SIZE = 200;
+	private static final int WRITES = 2000;
+
+	/**
+	 *
+	 */
+	public static void main(String[] args) throws Exception {
+		int largeCacheSize = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+		File rootDirectory = new File("target", "data");
+		rootDirectory.mkdirs();
+		Environment.setValue(Environment.PROP_BASE_FILE_DIR, rootDirectory.getAbsolutePath());
+		WikiCache<String, String> cache = WikiBase.CACHE_PARSED_TOPIC_CONTENT;
+		// warm up
+		timeCaseInsensitiveRefresh(cache, SMALL_CACHE_SIZE);
+		timeCaseInsensitiveRefresh(cache, largeCacheSize);
+		long smallCacheTime = timeCaseInsensitiveRefresh(cache, SMALL_CACHE_SIZE);
+		long largeCacheTime = timeCaseInsensitiveRefresh(cache, largeCacheSize);
+		cache.removeAllFromCache();
+		System.out.println("Case-insensitive cache refresh with " + SMALL_CACHE_SIZE + " keys: " + smallCacheTime + " ns per write");
+		System.out.println("Case-insensitive cache refresh with " + largeCacheSize + " keys: " + largeCacheTime + " ns per write");
+		WikiCache.shutdown();
+	}
+
+	/**
+	 * Populate a cache with the specified number of keys and return the fastest
+	 * average time in nanoseconds of several rounds of topic-write style updates,
+	 * each of which removes a key in a case-insensitive manner and re-adds it.
+	 */
+	private static long timeCaseInsensitiveRefresh(WikiCache<String, String> cache, int cacheSize) {
+		cache.removeAllFromCache();
+		for (int i = 0; i < cacheSize; i++) {
+			cache.addToCache("en/Topic " + i, "content " + i);
+		}
+		long fastest = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < WRITES; i++) {
+				int keyId = (i * 7919) % cacheSize;
+				cache.removeFromCacheCaseInsensitive("EN/TOPIC " + keyId);
+				cache.addToCache("en/Topic " + keyId, "content " + keyId);
+			}
+			fastest = Math.min(fastest, (System.nanoTime() - start) / WRITES);
+		}
+		return fastest;
+	}
+}
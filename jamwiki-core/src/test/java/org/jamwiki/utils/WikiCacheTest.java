@@ -19,6 +19,7 @@
 package org.jamwiki.utils;
 
 import org.jamwiki.JAMWikiUnitTest;
+import org.jamwiki.WikiBase;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -26,5 +27,97 @@ import static org.junit.Assert.*;
  *
  */
 public class WikiCacheTest extends JAMWikiUnitTest {
-}
 
+	/**
+	 *
+	 */
+	@Test
+	public void testRemoveFromCacheCaseInsensitive() throws Throwable {
+		WikiCache<String, String> cache = WikiBase.CACHE_PARSED_TOPIC_CONTENT;
+		cache.removeAllFromCache();
+		cache.addToCache("en/Example", "one");
+		cache.addToCache("en/EXAMPLE", "two");
+		cache.addToCache("en/Example2", "three");
+		cache.removeFromCacheCaseInsensitive("EN/example");
+		assertFalse("Failure removing exact case key", cache.isKeyInCache("en/Example"));
+		assertFalse("Failure removing alternate case key", cache.isKeyInCache("en/EXAMPLE"));
+		assertEquals("Unrelated key removed", "three", cache.retrieveFromCache("en/Example2"));
+		// keys added after a removal must still be indexed
+		cache.addToCache("en/example", "four");
+		cache.removeFromCacheCaseInsensitive("en/Example");
+		assertFalse("Failure removing re-added key", cache.isKeyInCache("en/example"));
+		// keys removed individually must not be removed again
+		cache.addToCache("en/Other", "five");
+		cache.removeFromCache("en/Other");
+		cache.addToCache("en/OTHER", "six");
+		cache.removeFromCacheCaseInsensitive("en/other");
+		assertFalse("Failure removing key after individual removal", cache.isKeyInCache("en/OTHER"));
+		cache.removeAllFromCache();
+		cache.addToCache("en/Cleared", "seven");
+		cache.removeFromCacheCaseInsensitive("en/CLEARED");
+		assertFalse("Failure removing key after cache was cleared", cache.isKeyInCache("en/Cleared"));
+		cache.removeAllFromCache();
+	}
+
+	/**
+	 * Verify that the case-folded index finds every case variant of a key in a
+	 * large cache without removing any unrelated keys.
+	 */
+	@Test
+	public void testRemoveFromCacheCaseInsensitiveLargeCache() throws Throwable {
+		WikiCache<String, String> cache = WikiBase.CACHE_PARSED_TOPIC_CONTENT;
+		cache.removeAllFromCache();
+		int cacheSize = 500;
+		for (int i = 0; i < cacheSize; i++) {
+			cache.addToCache("en/Topic " + i, "content " + i);
+			cache.addToCache("en/TOPIC " + i, "upper " + i);
+		}
+		for (int i = 0; i < cacheSize; i += 7) {
+			cache.removeFromCacheCaseInsensitive("EN/topic " + i);
+		}
+		for (int i = 0; i < cacheSize; i++) {
+			boolean removed = (i % 7 == 0);
+			assertEquals("Incorrect removal of key " + i, !removed, cache.isKeyInCache("en/Topic " + i));
+			assertEquals("Incorrect removal of upper case key " + i, !removed, cache.isKeyInCache("en/TOPIC " + i));
+		}
+		cache.removeAllFromCache();
+	}
+
+	/**
+	 * Verify that keys added while other threads concurrently add and remove
+	 * case variants of the same key remain indexed.
+	 */
+	@Test
+	public void testRemoveFromCacheCaseInsensitiveConcurrent() throws Throwable {
+		final WikiCache<String, String> cache = WikiBase.CACHE_PARSED_TOPIC_CONTENT;
+		cache.removeAllFromCache();
+		final int keyCount = 20;
+		final int iterations = 2000;
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final String variant = (t % 2 == 0) ? "en/Topic " : "en/TOPIC ";
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < iterations; i++) {
+						int keyId = i % keyCount;
+						cache.addToCache(variant + keyId, "content");
+						cache.removeFromCacheCaseInsensitive("EN/topic " + ((i + 7) % keyCount));
+					}
+				}
+			};
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		// every key still in the cache must be reachable through the index
+		for (int i = 0; i < keyCount; i++) {
+			cache.removeFromCacheCaseInsensitive("en/topic " + i);
+			assertFalse("Orphaned key en/Topic " + i, cache.isKeyInCache("en/Topic " + i));
+			assertFalse("Orphaned key en/TOPIC " + i, cache.isKeyInCache("en/TOPIC " + i));
+		}
+		cache.removeAllFromCache();
+	}
+}
@@ -53,6 +53,12 @@
 	<span><input type="submit" name="submit" value="<fmt:message key="admin.action.refresh" />" /></span>
 	<div class="formhelp"><fmt:message key="admin.help.rebuildsearch" /></div>
 </div>
+<c:if test="${!empty searchRebuildStatus}">
+<div class="row">
+	<label><fmt:message key="admin.caption.searchrebuildstatus" /></label>
+	<span><jamwiki_t:wikiMessage message="${searchRebuildStatus}" /></span>
+</div>
+</c:if>
 <input type="hidden" name="function" value="search" />
 </form>
 </fieldset>
@@ -99,6 +105,74 @@
 
 </jamwiki:enabled>
 
+<%-- Database Statement Statistics --%>
+<c:if test="${!empty pageInfo.messages && function == 'statements'}">
+<div class="message green"><c:forEach items="${pageInfo.messages}" var="message"><jamwiki_t:wikiMessage message="${message}" /><br /></c:forEach></div>
+</c:if>
+<fieldset>
+<legend><fmt:message key="admin.maintenance.title.statements" /></legend>
+<form action="<jamwiki:link value="Special:Maintenance" />#system" method="post">
+<c:if test="${!statementStatisticsEnabled}">
+<div class="rowhelp"><fmt:message key="admin.maintenance.message.statementsdisabled" /></div>
+</c:if>
+<div class="row">
+	<label><fmt:message key="admin.maintenance.caption.statements" /></label>
+	<span><input type="submit" value="<fmt:message key="admin.caption.reset" />" /></span>
+	<div class="formhelp"><fmt:message key="admin.maintenance.help.statements" /></div>
+</div>
+<div class="row">
+<table class="wiki-admin">
+<tr>
+	<th class="first"><fmt:message key="admin.maintenance.caption.connectionpool" /></th>
+	<th><fmt:message key="admin.maintenance.caption.connections" /></th>
+	<th><fmt:message key="admin.maintenance.caption.failures" /></th>
+	<th><fmt:message key="admin.maintenance.caption.averagewait" /></th>
+</tr>
+<c:forEach items="${connectionStatistics}" var="pool">
+<tr>
+	<td><c:out value="${pool.name}" /></td>
+	<td><fmt:formatNumber value="${pool.connections}" /></td>
+	<td><fmt:formatNumber value="${pool.failures}" /></td>
+	<td><fmt:formatNumber value="${pool.averageWaitMillis}" maxFractionDigits="2" /></td>
+</tr>
+</c:forEach>
+</table>
+</div>
+<c:if test="${!empty statementStatistics}">
+<div class="row">
+<table class="wiki-admin">
+<tr>
+	<th class="first"><fmt:message key="admin.maintenance.caption.statement" /></th>
+	<th><fmt:message key="admin.maintenance.caption.executions" /></th>
+	<th><fmt:message key="admin.maintenance.caption.failures" /></th>
+	<th><fmt:message key="admin.maintenance.caption.totalmillis" /></th>
+	<th><fmt:message key="admin.maintenance.caption.averagemillis" /></th>
+	<th><fmt:message key="admin.maintenance.caption.maxmillis" /></th>
+	<c:forEach items="${statementHistogramBuckets}" var="bucket"><th>&lt;&#160;<c:out value="${bucket}" />&#160;ms</th></c:forEach>
+	<th>&#8805;&#160;<c:out value="${statementHistogramLimit}" />&#160;ms</th>
+	<th><fmt:message key="admin.maintenance.caption.rows" /></th>
+	<th><fmt:message key="admin.maintenance.caption.repeatedrequests" /></th>
+</tr>
+<c:forEach items="${statementStatistics}" var="statement">
+<tr>
+	<td><c:out value="${statement.key}" /></td>
+	<td><fmt:formatNumber value="${statement.executions}" /></td>
+	<td><fmt:formatNumber value="${statement.failures}" /></td>
+	<td><fmt:formatNumber value="${statement.totalMillis}" maxFractionDigits="0" /></td>
+	<td><fmt:formatNumber value="${statement.averageMillis}" maxFractionDigits="2" /></td>
+	<td><fmt:formatNumber value="${statement.maxMillis}" maxFractionDigits="2" /></td>
+	<c:forEach items="${statement.histogram}" var="count"><td><fmt:formatNumber value="${count}" /></td></c:forEach>
+	<td><fmt:formatNumber value="${statement.rows}" /></td>
+	<td><fmt:formatNumber value="${statement.repeatedRequests}" /></td>
+</tr>
+</c:forEach>
+</table>
+</div>
+</c:if>
+<input type="hidden" name="function" value="statements" />
+</form>
+</fieldset>
+
 </div>
 
 <%-- Data Tools --%>
@@ -173,13 +247,49 @@
 <form action="<jamwiki:link value="Special:Maintenance" />#data" method="post">
 <div class="row">
 	<label><fmt:message key="admin.maintenance.caption.links" /></label>
-	<span><input type="submit" value="<fmt:message key="common.update" />" /></span>
+	<span>
+		<c:choose>
+			<c:when test="${metadataRebuildRunning}"><input type="submit" name="stop" value="<fmt:message key="common.stop" />" /></c:when>
+			<c:otherwise><input type="submit" value="<fmt:message key="common.update" />" /></c:otherwise>
+		</c:choose>
+	</span>
 	<div class="formhelp"><fmt:message key="admin.maintenance.help.links" /></div>
 </div>
+<c:if test="${!metadataRebuildRunning}">
+<div class="row">
+	<label for="linksresume"><fmt:message key="admin.maintenance.caption.linksresume" /></label>
+	<span><input type="checkbox" name="resume" value="true" id="linksresume" /></span>
+</div>
+</c:if>
+<c:if test="${!empty metadataRebuildStatus}">
+<div class="row">
+	<label><fmt:message key="admin.caption.searchrebuildstatus" /></label>
+	<span><jamwiki_t:wikiMessage message="${metadataRebuildStatus}" /></span>
+</div>
+</c:if>
 <input type="hidden" name="function" value="links" />
 </form>
 </fieldset>
 
+<%-- Compress Topic History --%>
+<c:if test="${!empty pageInfo.messages && function == 'compress'}">
+<div class="message green"><c:forEach items="${pageInfo.messages}" var="message"><jamwiki_t:wikiMessage message="${message}" /><br /></c:forEach></div>
+</c:if>
+<c:if test="${!empty pageInfo.errors && function == 'compress'}">
+<div class="message red"><c:forEach items="${pageInfo.errors}" var="message"><jamwiki_t:wikiMessage message="${message}" /><br /></c:forEach></div>
+</c:if>
+<fieldset>
+<legend><fmt:message key="admin.maintenance.title.compress" /></legend>
+<form action="<jamwiki:link value="Special:Maintenance" />#data" method="post">
+<div class="row">
+	<label><fmt:message key="admin.maintenance.caption.compress" /></label>
+	<span><input type="submit" value="<fmt:message key="common.update" />" /></span>
+	<div class="formhelp"><fmt:message key="admin.maintenance.help.compress" /></div>
+</div>
+<input type="hidden" name="function" value="compress" />
+</form>
+</fieldset>
+
 </div>
 
 <%-- Password Reset --%>
@@ -150,6 +150,18 @@
 		</select>
 	</span>
 </div>
+<div class="row">
+	<label for="<%= Environment.PROP_SEARCH_COMMIT_INTERVAL %>"><fmt:message key="admin.caption.searchcommitinterval" /></label>
+	<c:set var="PROP_SEARCH_COMMIT_INTERVAL"><%= Environment.PROP_SEARCH_COMMIT_INTERVAL %></c:set>
+	<span><jamwiki:text name="${PROP_SEARCH_COMMIT_INTERVAL}" value="${props[PROP_SEARCH_COMMIT_INTERVAL]}" size="5" maxlength="4" id="${PROP_SEARCH_COMMIT_INTERVAL}" /></span>
+	<div class="formhelp"><fmt:message key="admin.help.searchcommitinterval" /></div>
+</div>
+<div class="row">
+	<label for="<%= Environment.PROP_SEARCH_MAX_STALENESS %>"><fmt:message key="admin.caption.searchmaxstaleness" /></label>
+	<c:set var="PROP_SEARCH_MAX_STALENESS"><%= Environment.PROP_SEARCH_MAX_STALENESS %></c:set>
+	<span><jamwiki:text name="${PROP_SEARCH_MAX_STALENESS}" value="${props[PROP_SEARCH_MAX_STALENESS]}" size="5" maxlength="6" id="${PROP_SEARCH_MAX_STALENESS}" /></span>
+	<div class="formhelp"><fmt:message key="admin.help.searchmaxstaleness" /></div>
+</div>
 <div class="row">
 	<label for="<%= Environment.PROP_TOPIC_EDITOR %>"><fmt:message key="admin.caption.editor" /></label>
 	<c:set var="PROP_TOPIC_EDITOR"><%= Environment.PROP_TOPIC_EDITOR %></c:set>
@@ -226,6 +238,18 @@
 	<c:set var="PROP_PARSER_ALLOW_TEMPLATES"><%= Environment.PROP_PARSER_ALLOW_TEMPLATES %></c:set>
 	<span><jamwiki:checkbox name="${PROP_PARSER_ALLOW_TEMPLATES}" value="true" checked="${props[PROP_PARSER_ALLOW_TEMPLATES]}" id="${PROP_PARSER_ALLOW_TEMPLATES}" /></span>
 </div>
+<div class="row">
+	<label for="<%= Environment.PROP_PARSER_CACHE_TOPICS %>"><fmt:message key="admin.parser.caption.cachetopics" /></label>
+	<c:set var="PROP_PARSER_CACHE_TOPICS"><%= Environment.PROP_PARSER_CACHE_TOPICS %></c:set>
+	<span><jamwiki:checkbox name="${PROP_PARSER_CACHE_TOPICS}" value="true" checked="${props[PROP_PARSER_CACHE_TOPICS]}" id="${PROP_PARSER_CACHE_TOPICS}" /></span>
+	<div class="formhelp"><fmt:message key="admin.parser.help.cachetopics" /></div>
+</div>
+<div class="row">
+	<label for="<%= Environment.PROP_PARSER_CACHE_RERENDER %>"><fmt:message key="admin.parser.caption.cachererender" /></label>
+	<c:set var="PROP_PARSER_CACHE_RERENDER"><%= Environment.PROP_PARSER_CACHE_RERENDER %></c:set>
+	<span><jamwiki:checkbox name="${PROP_PARSER_CACHE_RERENDER}" value="true" checked="${props[PROP_PARSER_CACHE_RERENDER]}" id="${PROP_PARSER_CACHE_RERENDER}" /></span>
+	<div class="formhelp"><fmt:message key="admin.parser.help.cachererender" /></div>
+</div>
 <div class="row">
 	<label for="<%= Environment.PROP_PRINT_NEW_WINDOW %>"><fmt:message key="admin.caption.printnewwindow" /></label>
 	<c:set var="PROP_PRINT_NEW_WINDOW"><%= Environment.PROP_PRINT_NEW_WINDOW %></c:set>
@@ -411,6 +435,78 @@
 	<span><jamwiki:text name="${PROP_DBCP_MAX_OPEN_PREPARED_STATEMENTS}" id="${PROP_DBCP_MAX_OPEN_PREPARED_STATEMENTS}" value="${props[PROP_DBCP_MAX_OPEN_PREPARED_STATEMENTS]}" size="5" maxlength="4" /></span>
 	<div class="formhelp"><fmt:message key="admin.persistence.help.maxopenpreparedstatements" /></div>
 </div>
+<div class="row">
+	<label for="<%= Environment.PROP_TOPIC_NAME_DIRECTORY %>"><fmt:message key="admin.persistence.caption.topicdirectory" /></label>
+	<c:set var="PROP_TOPIC_NAME_DIRECTORY"><%= Environment.PROP_TOPIC_NAME_DIRECTORY %></c:set>
+	<span><jamwiki:checkbox name="${PROP_TOPIC_NAME_DIRECTORY}" value="true" checked="${props[PROP_TOPIC_NAME_DIRECTORY]}" id="${PROP_TOPIC_NAME_DIRECTORY}" /></span>
+	<div class="formhelp"><fmt:message key="admin.persistence.help.topicdirectory" /></div>
+</div>
+<div class="row">
+	<label for="<%= Environment.PROP_RECENT_CHANGES_BUFFER_SIZE %>"><fmt:message key="admin.persistence.caption.recentchangesbuffer" /></label>
+	<c:set var="PROP_RECENT_CHANGES_BUFFER_SIZE"><%= Environment.PROP_RECENT_CHANGES_BUFFER_SIZE %></c:set>
+	<span><jamwiki:text name="${PROP_RECENT_CHANGES_BUFFER_SIZE}" id="${PROP_RECENT_CHANGES_BUFFER_SIZE}" value="${props[PROP_RECENT_CHANGES_BUFFER_SIZE]}" size="5" maxlength="6" /></span>
+	<div class="formhelp"><fmt:message key="admin.persistence.help.recentchangesbuffer" /></div>
+</div>
+<div class="row">
+	<label for="<%= Environment.PROP_TOPIC_VERSION_COMPRESSION %>"><fmt:message key="admin.persistence.caption.versioncompression" /></label>
+	<c:set var="PROP_TOPIC_VERSION_COMPRESSION"><%= Environment.PROP_TOPIC_VERSION_COMPRESSION %></c:set>
+	<span><jamwiki:checkbox name="${PROP_TOPIC_VERSION_COMPRESSION}" value="true" checked="${props[PROP_TOPIC_VERSION_COMPRESSION]}" id="${PROP_TOPIC_VERSION_COMPRESSION}" /></span>
+	<div class="formhelp"><fmt:message key="admin.persistence.help.versioncompression" /></div>
+</div>
+<div class="row">
+	<label for="<%= Environment.PROP_TOPIC_METADATA_REBUILD_THREADS %>"><fmt:message key="admin.persistence.caption.metadatathreads" /></label>
+	<c:set var="PROP_TOPIC_METADATA_REBUILD_THREADS"><%= Environment.PROP_TOPIC_METADATA_REBUILD_THREADS %></c:set>
+	<span><jamwiki:text name="${PROP_TOPIC_METADATA_REBUILD_THREADS}" id="${PROP_TOPIC_METADATA_REBUILD_THREADS}" value="${props[PROP_TOPIC_METADATA_REBUILD_THREADS]}" size="5" maxlength="3" /></span>
+	<div class="formhelp"><fmt:message key="admin.persistence.help.metadatathreads" /></div>
+</div>
+<div class="row">
+	<label for="<%= Environment.PROP_TOPIC_METADATA_REBUILD_DELAY %>"><fmt:message key="admin.persistence.caption.metadatadelay" /></label>
+	<c:set var="PROP_TOPIC_METADATA_REBUILD_DELAY"><%= Environment.PROP_TOPIC_METADATA_REBUILD_DELAY %></c:set>
+	<span><jamwiki:text name="${PROP_TOPIC_METADATA_REBUILD_DELAY}" id="${PROP_TOPIC_METADATA_REBUILD_DELAY}" value="${props[PROP_TOPIC_METADATA_REBUILD_DELAY]}" size="5" maxlength="6" /></span>
+	<div class="formhelp"><fmt:message key="admin.persistence.help.metadatadelay" /></div>
+</div>
+<div class="row">
+	<label for="<%= Environment.PROP_DB_MIGRATION_FETCH_SIZE %>"><fmt:message key="admin.persistence.caption.migrationfetchsize" /></label>
+	<c:set var="PROP_DB_MIGRATION_FETCH_SIZE"><%= Environment.PROP_DB_MIGRATION_FETCH_SIZE %></c:set>
+	<span><jamwiki:text name="${PROP_DB_MIGRATION_FETCH_SIZE}" id="${PROP_DB_MIGRATION_FETCH_SIZE}" value="${props[PROP_DB_MIGRATION_FETCH_SIZE]}" size="5" maxlength="6" /></span>
+	<div class="formhelp"><fmt:message key="admin.persistence.help.migrationfetchsize" /></div>
+</div>
+<div class="row">
+	<label for="<%= Environment.PROP_DB_MIGRATION_BATCH_SIZE %>"><fmt:message key="admin.persistence.caption.migrationbatchsize" /></label>
+	<c:set var="PROP_DB_MIGRATION_BATCH_SIZE"><%= Environment.PROP_DB_MIGRATION_BATCH_SIZE %></c:set>
+	<span><jamwiki:text name="${PROP_DB_MIGRATION_BATCH_SIZE}" id="${PROP_DB_MIGRATION_BATCH_SIZE}" value="${props[PROP_DB_MIGRATION_BATCH_SIZE]}" size="5" maxlength="6" /></span>
+	<div class="formhelp"><fmt:message key="admin.persistence.help.migrationbatchsize" /></div>
+</div>
+<div class="row">
+	<label for="<%= Environment.PROP_DB_MIGRATION_THREADS %>"><fmt:message key="admin.persistence.caption.migrationthreads" /></label>
+	<c:set var="PROP_DB_MIGRATION_THREADS"><%= Environment.PROP_DB_MIGRATION_THREADS %></c:set>
+	<span><jamwiki:text name="${PROP_DB_MIGRATION_THREADS}" id="${PROP_DB_MIGRATION_THREADS}" value="${props[PROP_DB_MIGRATION_THREADS]}" size="5" maxlength="3" /></span>
+	<div class="formhelp"><fmt:message key="admin.persistence.help.migrationthreads" /></div>
+</div>
+<div class="row">
+	<label for="<%= Environment.PROP_DB_REPLICA_URLS %>"><fmt:message key="admin.persistence.caption.replicaurls" /></label>
+	<c:set var="PROP_DB_REPLICA_URLS"><%= Environment.PROP_DB_REPLICA_URLS %></c:set>
+	<span><jamwiki:text name="${PROP_DB_REPLICA_URLS}" id="${PROP_DB_REPLICA_URLS}" value="${props[PROP_DB_REPLICA_URLS]}" size="50" /></span>
+	<div class="formhelp"><fmt:message key="admin.persistence.help.replicaurls" /></div>
+</div>
+<div class="row">
+	<label for="<%= Environment.PROP_DB_REPLICA_STICKY_SECONDS %>"><fmt:message key="admin.persistence.caption.replicasticky" /></label>
+	<c:set var="PROP_DB_REPLICA_STICKY_SECONDS"><%= Environment.PROP_DB_REPLICA_STICKY_SECONDS %></c:set>
+	<span><jamwiki:text name="${PROP_DB_REPLICA_STICKY_SECONDS}" id="${PROP_DB_REPLICA_STICKY_SECONDS}" value="${props[PROP_DB_REPLICA_STICKY_SECONDS]}" size="5" maxlength="4" /></span>
+	<div class="formhelp"><fmt:message key="admin.persistence.help.replicasticky" /></div>
+</div>
+<div class="row">
+	<label for="<%= Environment.PROP_DB_STATEMENT_STATISTICS %>"><fmt:message key="admin.persistence.caption.statementstatistics" /></label>
+	<c:set var="PROP_DB_STATEMENT_STATISTICS"><%= Environment.PROP_DB_STATEMENT_STATISTICS %></c:set>
+	<span><jamwiki:checkbox name="${PROP_DB_STATEMENT_STATISTICS}" value="true" checked="${props[PROP_DB_STATEMENT_STATISTICS]}" id="${PROP_DB_STATEMENT_STATISTICS}" /></span>
+	<div class="formhelp"><fmt:message key="admin.persistence.help.statementstatistics" /></div>
+</div>
+<div class="row">
+	<label for="<%= Environment.PROP_DB_STATEMENT_REPEAT_THRESHOLD %>"><fmt:message key="admin.persistence.caption.statementrepeat" /></label>
+	<c:set var="PROP_DB_STATEMENT_REPEAT_THRESHOLD"><%= Environment.PROP_DB_STATEMENT_REPEAT_THRESHOLD %></c:set>
+	<span><jamwiki:text name="${PROP_DB_STATEMENT_REPEAT_THRESHOLD}" id="${PROP_DB_STATEMENT_REPEAT_THRESHOLD}" value="${props[PROP_DB_STATEMENT_REPEAT_THRESHOLD]}" size="5" maxlength="4" /></span>
+	<div class="formhelp"><fmt:message key="admin.persistence.help.statementrepeat" /></div>
+</div>
 </fieldset>
 </div>
 
@@ -27,7 +27,7 @@
 <c:url var="rootUrl" value="Special:Contributions">
 	<c:param name="contributor" value="${contributor}"/>
 </c:url>
-<div class="message"><fmt:message key="common.caption.view" />: <jamwiki:pagination total="${numContributions}" rootUrl="${rootUrl}" /></div>
+<div class="message"><fmt:message key="common.caption.view" />: <jamwiki:pagination total="${numContributions}" rootUrl="${rootUrl}" nextCursor="${nextCursor}" /></div>
 
 <form name="num-changes" method="get" action="<jamwiki:link value="Special:Contributions" />">
 <input type="hidden" name="contributor" value="<c:out value="${contributor}" />" />
@@ -37,6 +37,8 @@
 <br />
 <input type="checkbox" name="download" id="exportdownload" value="1"<c:if test="${download}"> checked="checked"</c:if> /><label for="exportdownload"><fmt:message key="export.caption.download" /></label>
 <br />
+<input type="checkbox" name="compress" id="exportcompress" value="1"<c:if test="${compress}"> checked="checked"</c:if> /><label for="exportcompress"><fmt:message key="export.caption.compress" /></label>
+<br />
 <input type="submit" name="export" value="<fmt:message key="export.button.export" />" />
 </form>
 </fieldset>
@@ -40,6 +40,7 @@
 <legend><fmt:message key="import.caption.source" /></legend>
 <form name="form1" method="post" action="<jamwiki:link value="Special:Import" />" enctype="multipart/form-data">
 <input type="file" name="contents" size="50" id="importFile" />
+<input type="checkbox" name="resume" value="true" id="importResume" /> <label for="importResume"><fmt:message key="import.caption.resume" /></label>
 <input type="submit" name="save" value="<fmt:message key="import.button.import" />" />
 </form>
 </fieldset>
@@ -46,10 +46,13 @@
 		<div id="searchhints"><fmt:message key="search.hints"/></div>
 	</c:when>
 	<c:when test="${!empty results}">
+		<div class="message"><fmt:message key="searchresult.count"><fmt:param value="${offset + 1}" /><fmt:param value="${offset + numResults}" /><fmt:param value="${totalHits}" /></fmt:message></div>
+		<div class="message"><fmt:message key="common.caption.view" />: <jamwiki:pagination total="${numResults}" rootUrl="${rootUrl}" /></div>
 		<c:forEach items="${results}" var="result">
 			<div class="searchresult"><jamwiki:link value="${result.topic}" text="${result.topic}" /></div>
 			<div class="searchsummary"><c:out value="${result.summary}" escapeXml="false" /></div>
 		</c:forEach>
+		<div class="message"><fmt:message key="common.caption.view" />: <jamwiki:pagination total="${numResults}" rootUrl="${rootUrl}" /></div>
 	</c:when>
 	<c:otherwise>
 		<div class="message"><fmt:message key="searchresult.notfound"><fmt:param><c:out value="${searchField}" escapeXml="true"/></fmt:param></fmt:message></div>
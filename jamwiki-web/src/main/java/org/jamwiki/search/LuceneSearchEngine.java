@@ -18,20 +18,39 @@ package org.jamwiki.search;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
@@ -42,6 +61,7 @@ import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.highlight.Highlighter;
@@ -49,18 +69,24 @@ import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
 import org.apache.lucene.search.highlight.QueryScorer;
 import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
 import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.search.highlight.TokenSources;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.LockFactory;
 import org.apache.lucene.store.SimpleFSLockFactory;
 import org.apache.lucene.util.Version;
 import org.apache.lucene.store.LockObtainFailedException;
+import org.jamwiki.DataAccessException;
 import org.jamwiki.Environment;
 import org.jamwiki.SearchEngine;
 import org.jamwiki.WikiBase;
+import org.jamwiki.model.SearchRebuildStatus;
 import org.jamwiki.model.SearchResultEntry;
+import org.jamwiki.model.SearchResultPage;
 import org.jamwiki.model.Topic;
 import org.jamwiki.model.TopicType;
 import org.jamwiki.model.VirtualWiki;
+import org.jamwiki.utils.Pagination;
 import org.jamwiki.utils.WikiLogger;
 
 /**
@@ -82,42 +108,98 @@ public class LuceneSearchEngine implements SearchEngine {
 	private static final String FIELD_TOPIC_NAME_ANALYZED = "topic_name_analyzed";
 	/** Name of the search index field that holds the un-processed topic namespace. */
 	private static final String FIELD_TOPIC_NAMESPACE = "topic_namespace";
+	/**
+	 * Field type for the topic content.  Term vectors with positions and offsets
+	 * are stored so that search results can be highlighted without re-analyzing
+	 * the topic content.
+	 */
+	private static final FieldType FIELD_TYPE_TOPIC_CONTENT = new FieldType(TextField.TYPE_STORED);
+	static {
+		FIELD_TYPE_TOPIC_CONTENT.setStoreTermVectors(true);
+		FIELD_TYPE_TOPIC_CONTENT.setStoreTermVectorPositions(true);
+		FIELD_TYPE_TOPIC_CONTENT.setStoreTermVectorOffsets(true);
+		FIELD_TYPE_TOPIC_CONTENT.freeze();
+	}
+	/** Stored fields loaded for each search result. */
+	private static final Set<String> RESULT_FIELDS = new HashSet<String>(Arrays.asList(FIELD_TOPIC_NAME, FIELD_TOPIC_CONTENT));
 	/** Lucene compatibility version. */
 	protected static final Version USE_LUCENE_VERSION = Version.LUCENE_41;
 	/** Maximum number of results to return per search. */
 	// FIXME - make this configurable
 	protected static final int MAXIMUM_RESULTS_PER_SEARCH = 200;
-	/** Flag indicating whether or not to commit search index changes immediately. */
-	private boolean autoCommit = true;
+	/** Index commit data key for the time before which all topic changes are known to be indexed. */
+	private static final String COMMIT_DATA_INDEXED_THROUGH = "jamwiki-indexed-through";
+	/**
+	 * When replaying recent changes after a restart, also replay changes made
+	 * this many milliseconds before the last index commit since topic changes
+	 * are queued after their database transaction commits.
+	 */
+	private static final long REPLAY_OVERLAP_MILLIS = 5 * 60 * 1000;
+	/** Suffix for the directory in which a search index is rebuilt before replacing the current index. */
+	private static final String REBUILD_DIR_SUFFIX = ".rebuild";
+	/** Suffix for the directory that briefly holds a replaced search index until it is deleted. */
+	private static final String REPLACED_DIR_SUFFIX = ".old";
+	/** Number of topic IDs read from the database per query when rebuilding a search index. */
+	private static final int REBUILD_BATCH_SIZE = 500;
+	/** Creates daemon worker threads for search index rebuilds. */
+	private static final ThreadFactory REBUILD_THREAD_FACTORY = new ThreadFactory() {
+		private final AtomicInteger threadCount = new AtomicInteger();
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "jamwiki-search-rebuild-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+	/** Flag indicating whether or not to periodically commit queued search index changes. */
+	private volatile boolean autoCommit = true;
 	/** Flag indicating whether write operations are temporarily disabled. */
-	private boolean disabled = false;
-	/** Store Searchers (once opened) for re-use for performance reasons. */
-	private Map<String, IndexSearcher> searchers = new HashMap<String, IndexSearcher>();
-	/** Store Readers (once opened) for re-use for performance reasons. */
-	private Map<String, IndexReader> indexReaders = new HashMap<String, IndexReader>();
+	private volatile boolean disabled = false;
+	/** Topic changes that have not yet been applied to the search index, keyed by topic ID. */
+	private final Map<Integer, QueuedTopic> queuedTopics = new LinkedHashMap<Integer, QueuedTopic>();
+	/**
+	 * Daemon threads used to apply queued topic changes and refresh searchers, and
+	 * to commit applied changes.  Two threads are used so that a slow commit does
+	 * not delay searcher refreshes beyond the configured staleness bound.
+	 */
+	private final ScheduledExecutorService indexExecutor = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+		private final AtomicInteger threadCount = new AtomicInteger();
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "jamwiki-search-indexer-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	/** Time before which all queued topic changes have been applied to the index writers.  Guarded by the writer lock. */
+	private long appliedThrough = 0;
+	/** Virtual wikis with changes applied to the index writer that have not been committed.  Guarded by the writer lock. */
+	private final Set<String> uncommittedVirtualWikis = new HashSet<String>();
+	/** Lock held while rebuilding the search index to prevent concurrent rebuilds. */
+	private final Object rebuildLock = new Object();
+	/** Progress of the current or most recent search index rebuild. */
+	private volatile SearchRebuildStatus rebuildStatus = null;
+	/** Lock held while using or modifying index writers. */
+	private final Object writerLock = new Object();
+	/** Store near-real-time searcher managers (once opened) for re-use for performance reasons. */
+	private Map<String, SearcherManager> searcherManagers = new ConcurrentHashMap<String, SearcherManager>();
 	/** Store Writers (once opened) for re-use for performance reasons. */
 	private Map<String, IndexWriter> indexWriters = new HashMap<String, IndexWriter>();
 
 	/**
-	 * Add a topic to the search index.
+	 *
+	 */
+	public LuceneSearchEngine() {
+		this.scheduleSearcherRefresh();
+		this.scheduleIndexCommit();
+	}
+
+	/**
+	 * Add a topic to the search index.  The topic is queued and added to the
+	 * index the next time that queued changes are committed.
 	 *
 	 * @param topic The Topic object that is to be added to the index.
 	 */
 	public void addToIndex(Topic topic) {
-		if (this.disabled) {
-			return;
-		}
-		try {
-			long start = System.currentTimeMillis();
-			IndexWriter writer = this.retrieveIndexWriter(topic.getVirtualWiki(), false);
-			this.addToIndex(writer, topic);
-			this.commit(writer, this.autoCommit);
-			if (logger.isDebugEnabled()) {
-				logger.debug("Add to search index for topic " + topic.getVirtualWiki() + " / " + topic.getName() + " in " + ((System.currentTimeMillis() - start) / 1000.000) + " s.");
-			}
-		} catch (Exception e) {
-			logger.error("Exception while adding topic " + topic.getVirtualWiki() + " / " + topic.getName(), e);
-		}
+		this.queueTopic(topic, false);
 	}
 
 	/**
@@ -133,32 +215,30 @@ public class LuceneSearchEngine implements SearchEngine {
 		}
 		Document standardDocument = createStandardDocument(topic);
 		writer.addDocument(standardDocument);
-		this.resetIndexSearcher(topic.getVirtualWiki());
 	}
 
 	/**
-	 * Force a flush of any pending commits to the search index.
+	 * Force a flush of any pending commits to the search index.  All queued
+	 * topic changes are applied to the index before this method returns.
 	 *
 	 * @param virtualWiki The virtual wiki for which pending updates are being
 	 *  committed.
 	 */
     @Override
 	public void commit(String virtualWiki) {
-		try {
-			this.commit(this.retrieveIndexWriter(virtualWiki, false), true);
-		} catch (IOException e) {
-			logger.error("Exception while committing pending changes for virtual wiki " + virtualWiki, e);
-		}
+		this.flushQueuedTopics();
 	}
 
 	/**
-	 * Commit pending changes to the writer only if the commitNow value is true.
-	 * This is primarily a utility method for working with the autoCommit flag.
+	 * Commit pending changes to the writer, recording the time before which all
+	 * topic changes have been indexed so that later changes can be replayed
+	 * after a restart.
 	 */
-	private void commit(IndexWriter writer, boolean commitNow) throws IOException {
-		if (commitNow) {
-			writer.commit();
-		}
+	private void commit(IndexWriter writer, long indexedThrough) throws IOException {
+		Map<String, String> commitData = new HashMap<String, String>();
+		commitData.put(COMMIT_DATA_INDEXED_THROUGH, Long.toString(indexedThrough));
+		writer.setCommitData(commitData);
+		writer.commit();
 	}
 
 	/**
@@ -218,47 +298,34 @@ public class LuceneSearchEngine implements SearchEngine {
 		doc.add(nameField);
 		// analyze & store the topic content so that it is searchable and also usable for display in
 		// search result summaries
-		doc.add(new TextField(FIELD_TOPIC_CONTENT, topicContent, Field.Store.YES));
+		doc.add(new Field(FIELD_TOPIC_CONTENT, topicContent, FIELD_TYPE_TOPIC_CONTENT));
 		return doc;
 	}
 
 	/**
-	 * Remove a topic from the search index.
+	 * Remove a topic from the search index.  The topic is queued and removed
+	 * from the index the next time that queued changes are committed.
 	 *
 	 * @param topic The topic object that is to be removed from the index.
 	 */
 	public void deleteFromIndex(Topic topic) {
-		if (this.disabled) {
-			return;
-		}
-		try {
-			long start = System.currentTimeMillis();
-			// delete the current document
-			IndexWriter writer = this.retrieveIndexWriter(topic.getVirtualWiki(), false);
-			this.deleteFromIndex(writer, topic);
-			this.commit(writer, this.autoCommit);
-			if (logger.isDebugEnabled()) {
-				logger.debug("Delete from search index for topic " + topic.getVirtualWiki() + " / " + topic.getName() + " in " + ((System.currentTimeMillis() - start) / 1000.000) + " s.");
-			}
-		} catch (Exception e) {
-			logger.error("Exception while adding topic " + topic.getVirtualWiki() + ':' + topic.getName(), e);
-		}
+		this.queueTopic(topic, true);
 	}
 
 	/**
 	 * Remove a topic from the search index.
 	 *
 	 * @param writer The IndexWriter to use when updating the search index.
-	 * @param topic The topic object that is to be removed from the index.
+	 * @param topicName The name of the topic that is to be removed from the index.
 	 */
-	private void deleteFromIndex(IndexWriter writer, Topic topic) throws IOException {
-		writer.deleteDocuments(new Term(FIELD_TOPIC_NAME, topic.getName()));
-		this.resetIndexSearcher(topic.getVirtualWiki());
+	private void deleteFromIndex(IndexWriter writer, String topicName) throws IOException {
+		writer.deleteDocuments(new Term(FIELD_TOPIC_NAME, topicName));
 	}
 
 	/**
 	 * Find all documents that contain a specific search term, ordered by relevance.
-	 * This method supports all Lucene search query syntax.
+	 * This method supports all Lucene search query syntax.  A maximum of
+	 * {@link #MAXIMUM_RESULTS_PER_SEARCH} results are returned.
 	 *
 	 * @param virtualWiki The virtual wiki for the topic.
 	 * @param text The search term being searched for.
@@ -267,33 +334,147 @@ public class LuceneSearchEngine implements SearchEngine {
 	 */
     @Override
 	public List<SearchResultEntry> findResults(String virtualWiki, String text, List<Integer> namespaces) {
+		return this.findResults(virtualWiki, text, namespaces, new Pagination(MAXIMUM_RESULTS_PER_SEARCH, 0)).getResults();
+	}
+
+	/**
+	 * Find a single page of documents that contain a specific search term,
+	 * ordered by relevance.  This method supports all Lucene search query
+	 * syntax.  Only the documents on the requested page are loaded and
+	 * highlighted.
+	 *
+	 * @param virtualWiki The virtual wiki for the topic.
+	 * @param text The search term being searched for.
+	 * @param pagination A Pagination object indicating which page of results
+	 *  should be returned.
+	 * @return A SearchResultPage object containing the search results for the
+	 *  requested page and the total number of documents that contain the
+	 *  search term.  Pages that fall beyond the first
+	 *  {@link #MAXIMUM_RESULTS_PER_SEARCH} results are returned empty.
+	 */
+    @Override
+	public SearchResultPage findResults(String virtualWiki, String text, List<Integer> namespaces, Pagination pagination) {
 		StandardAnalyzer analyzer = new StandardAnalyzer(USE_LUCENE_VERSION);
 		List<SearchResultEntry> results = new ArrayList<>();
+		int totalHits = 0;
 		if (logger.isTraceEnabled()) {
 			logger.trace("search text: " + text);
 		}
+		// pagination values come straight from the request, so never collect more
+		// than MAXIMUM_RESULTS_PER_SEARCH hits regardless of the page requested
+		int numResults = Math.min(Math.max(1, pagination.getNumResults()), MAXIMUM_RESULTS_PER_SEARCH);
+		int offset = Math.max(0, pagination.getOffset());
+		int collectorSize = (int)Math.min((long)offset + numResults, MAXIMUM_RESULTS_PER_SEARCH);
+		IndexSearcher searcher = null;
 		try {
-			IndexSearcher searcher = this.retrieveIndexSearcher(virtualWiki);
+			searcher = this.acquireIndexSearcher(virtualWiki);
 			Query query = this.createSearchQuery(searcher, analyzer, text, namespaces);
-			// actually perform the search
-			TopScoreDocCollector collector = TopScoreDocCollector.create(MAXIMUM_RESULTS_PER_SEARCH, true);
+			// actually perform the search, collecting only enough hits to fill the requested page
+			TopScoreDocCollector collector = TopScoreDocCollector.create(collectorSize, true);
 			searcher.search(query, collector);
-			Highlighter highlighter = new Highlighter(
-                    new SimpleHTMLFormatter("<span class=\"highlight\">", "</span>"), 
-                    new SimpleHTMLEncoder(), 
-                    new QueryScorer(query, FIELD_TOPIC_CONTENT));
-			ScoreDoc[] hits = collector.topDocs().scoreDocs;
-            for (ScoreDoc hit : hits) {
-                int docId = hit.doc;
-                Document doc = searcher.doc(docId);
-                String summary = retrieveResultSummary(doc, highlighter, analyzer);
-                SearchResultEntry result = new SearchResultEntry(doc.get(FIELD_TOPIC_NAME), hit.score, summary);
-                results.add(result);
-            }
+			totalHits = collector.getTotalHits();
+			ScoreDoc[] hits = collector.topDocs(offset, numResults).scoreDocs;
+			if (hits.length > 0) {
+				Highlighter highlighter = new Highlighter(
+						new SimpleHTMLFormatter("<span class=\"highlight\">", "</span>"),
+						new SimpleHTMLEncoder(),
+						new QueryScorer(query, FIELD_TOPIC_CONTENT));
+				for (ScoreDoc hit : hits) {
+					Document doc = searcher.doc(hit.doc, RESULT_FIELDS);
+					String summary = this.retrieveResultSummary(searcher.getIndexReader(), hit.doc, doc, highlighter, analyzer);
+					results.add(new SearchResultEntry(doc.get(FIELD_TOPIC_NAME), hit.score, summary));
+				}
+			}
 		} catch (IOException | ParseException | InvalidTokenOffsetsException e) {
 			logger.error("Exception while searching for " + text, e);
+		} finally {
+			this.releaseIndexSearcher(searcher);
 		}
-		return results;
+		return new SearchResultPage(results, totalHits);
+	}
+
+	/**
+	 * Apply all queued topic changes to the index writers.  Each queued topic is
+	 * re-read so that the index reflects the current version of the topic even
+	 * if the topic has changed again since it was queued.  Applied changes are
+	 * visible to searchers once they are refreshed, but are not durable until
+	 * they are committed.
+	 */
+	private void applyQueuedTopics() {
+		Map<Integer, QueuedTopic> batch;
+		long start = System.currentTimeMillis();
+		synchronized (this.queuedTopics) {
+			if (this.queuedTopics.isEmpty()) {
+				return;
+			}
+			batch = new LinkedHashMap<Integer, QueuedTopic>(this.queuedTopics);
+			this.queuedTopics.clear();
+		}
+		synchronized (this.writerLock) {
+			for (QueuedTopic queuedTopic : batch.values()) {
+				String virtualWiki = queuedTopic.getVirtualWiki();
+				try {
+					this.updateInIndex(this.retrieveIndexWriter(virtualWiki), queuedTopic);
+					this.uncommittedVirtualWikis.add(virtualWiki);
+				} catch (DataAccessException | IOException e) {
+					logger.error("Exception while updating search index for topic " + virtualWiki + " / " + queuedTopic.getTopicName(), e);
+				}
+			}
+			this.appliedThrough = start;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Updated search index for " + batch.size() + " topics in " + ((System.currentTimeMillis() - start) / 1000.000) + " s.");
+		}
+	}
+
+	/**
+	 * Commit all changes that have been applied to the index writers.
+	 */
+	private void commitIndexes() {
+		synchronized (this.writerLock) {
+			for (String virtualWiki : this.uncommittedVirtualWikis) {
+				try {
+					this.commit(this.retrieveIndexWriter(virtualWiki), this.appliedThrough);
+				} catch (IOException e) {
+					logger.error("Exception while committing search index changes for virtual wiki " + virtualWiki, e);
+				}
+			}
+			this.uncommittedVirtualWikis.clear();
+		}
+	}
+
+	/**
+	 * Apply all queued topic changes to the search index, commit them, and make
+	 * them visible to searchers.
+	 */
+	private void flushQueuedTopics() {
+		this.applyQueuedTopics();
+		this.commitIndexes();
+		this.refreshSearchers();
+	}
+
+	/**
+	 * Refresh the searchers for all virtual wikis so that changes applied to the
+	 * index writers become visible to new searches.  Searches already running
+	 * continue to use the searcher that they acquired.
+	 */
+	private void refreshSearchers() {
+		for (Map.Entry<String, SearcherManager> entry : this.searcherManagers.entrySet()) {
+			try {
+				entry.getValue().maybeRefresh();
+			} catch (AlreadyClosedException e) {
+				// the index was closed by a concurrent rebuild and will be re-opened on next use
+			} catch (IOException e) {
+				logger.error("Exception while refreshing searcher for virtual wiki " + entry.getKey(), e);
+			}
+		}
+	}
+
+	/**
+	 *
+	 */
+	public SearchRebuildStatus getRebuildStatus() {
+		return this.rebuildStatus;
 	}
 
 	/**
@@ -321,13 +502,6 @@ public class LuceneSearchEngine implements SearchEngine {
 		return child;
 	}
 
-	/**
-	 * Open an IndexReader, executing error handling as needed.
-	 */
-	private IndexReader openIndexReader(File searchIndexPath) throws IOException {
-		return DirectoryReader.open(FSDirectory.open(searchIndexPath));
-	}
-
 	/**
 	 * Open an IndexWriter, executing error handling as needed.
 	 */
@@ -358,82 +532,233 @@ public class LuceneSearchEngine implements SearchEngine {
 	}
 
 	/**
-	 * Refresh the current search index by re-visiting all topic pages.
+	 * Refresh the current search index by re-visiting all topic pages.  Topics
+	 * are read from the database in batches and indexed by a pool of worker
+	 * threads into a new index, which replaces the current index only once it
+	 * is complete.  Searches continue to use the current index while the new
+	 * index is built.
 	 *
 	 * @throws Exception Thrown if any error occurs while re-indexing the Wiki.
 	 */
 	public void refreshIndex() throws Exception {
-		List<VirtualWiki> allWikis = WikiBase.getDataHandler().getVirtualWikiList();
-		Topic topic;
-		for (VirtualWiki virtualWiki : allWikis) {
-			long start = System.currentTimeMillis();
-			int count = 0;
-			IndexWriter writer = null;
-			try {
-				writer = this.retrieveIndexWriter(virtualWiki.getName(), true);
-				List<String> topicNames = WikiBase.getDataHandler().getAllTopicNames(virtualWiki.getName(), false);
-				// FIXME - parsing all documents will be intolerably slow with even a
-				// moderately large Wiki
-				for (String topicName : topicNames) {
-					topic = WikiBase.getDataHandler().lookupTopic(virtualWiki.getName(), topicName, false);
-					if (topic == null) {
-						logger.info("Unable to rebuild search index for topic: " + topicName);
-						continue;
-					}
-					// note: no delete is necessary since a new index is being created
-					this.addToIndex(writer, topic);
-					count++;
-				}
-			} catch (Exception ex) {
-				logger.error("Failure while refreshing search index", ex);
-			} finally {
+		synchronized (this.rebuildLock) {
+			List<VirtualWiki> allWikis = WikiBase.getDataHandler().getVirtualWikiList();
+			int topicCount = 0;
+			for (VirtualWiki virtualWiki : allWikis) {
+				topicCount += WikiBase.getDataHandler().lookupTopicCount(virtualWiki.getName(), null);
+			}
+			SearchRebuildStatus status = new SearchRebuildStatus(topicCount);
+			this.rebuildStatus = status;
+			boolean failed = false;
+			for (VirtualWiki virtualWiki : allWikis) {
+				status.setVirtualWiki(virtualWiki.getName());
 				try {
-					if (writer != null) {
-						writer.close();
-					}
-				} catch (Exception e) {
-					logger.error("Exception during close", e);
+					this.rebuildIndex(virtualWiki.getName(), status);
+				} catch (Exception ex) {
+					logger.error("Failure while refreshing search index", ex);
+					failed = true;
 				}
 			}
+			status.finish(failed);
 			if (logger.isInfoEnabled()) {
-				logger.info("Rebuilt search index for " + virtualWiki.getName() + " (" + count + " documents) in " + ((System.currentTimeMillis() - start) / 1000.000) + " seconds");
+				logger.info("Rebuilt search index (" + status.getTopicsProcessed() + " topics) in " + status.getElapsedSeconds() + " seconds, " + status.getTopicsPerSecond() + " topics per second");
+			}
+		}
+	}
+
+	/**
+	 * Build a new search index for a virtual wiki in a separate directory and
+	 * then replace the current index with the new index.
+	 */
+	private void rebuildIndex(String virtualWiki, final SearchRebuildStatus status) throws Exception {
+		long start = System.currentTimeMillis();
+		int count = status.getTopicsProcessed();
+		File indexPath = this.getSearchIndexPath(virtualWiki);
+		File rebuildPath = new File(indexPath.getPath() + REBUILD_DIR_SUFFIX);
+		// remove any files left by an interrupted rebuild
+		FileUtils.deleteDirectory(rebuildPath);
+		final IndexWriter writer = this.openIndexWriter(rebuildPath, true);
+		// IndexWriter is thread-safe, so worker threads add documents directly.  a
+		// bounded queue that runs overflow tasks on this thread stops batches from
+		// being read faster than they can be indexed.
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(threads * 2), REBUILD_THREAD_FACTORY, new ThreadPoolExecutor.CallerRunsPolicy());
+		List<Future<?>> batches = new ArrayList<Future<?>>();
+		boolean success = false;
+		try {
+			int maxTopicId = WikiBase.getDataHandler().lookupTopicMaxId(virtualWiki);
+			for (int startTopicId = 0; startTopicId < maxTopicId; startTopicId += REBUILD_BATCH_SIZE) {
+				final List<Topic> topics = WikiBase.getDataHandler().lookupTopicsByIdRange(virtualWiki, startTopicId, startTopicId + REBUILD_BATCH_SIZE);
+				if (topics.isEmpty()) {
+					continue;
+				}
+				batches.add(workers.submit(new Callable<Void>() {
+					public Void call() throws IOException {
+						for (Topic topic : topics) {
+							addToIndex(writer, topic);
+						}
+						status.addTopicsProcessed(topics.size());
+						return null;
+					}
+				}));
+			}
+			for (Future<?> batch : batches) {
+				// throws an exception if indexing of the batch failed
+				batch.get();
+			}
+			this.commit(writer, start);
+			success = true;
+		} finally {
+			workers.shutdownNow();
+			if (success) {
+				writer.close();
+			} else {
+				writer.rollback();
+				FileUtils.deleteQuietly(rebuildPath);
+			}
+		}
+		this.replaceIndex(virtualWiki, indexPath, rebuildPath);
+		if (logger.isInfoEnabled()) {
+			logger.info("Rebuilt search index for " + virtualWiki + " (" + (status.getTopicsProcessed() - count) + " topics) in " + ((System.currentTimeMillis() - start) / 1000.000) + " seconds");
+		}
+	}
+
+	/**
+	 * Replace the current search index for a virtual wiki with a rebuilt index.
+	 * Searches that are already running continue to use the files of the
+	 * replaced index until they complete.
+	 */
+	private void replaceIndex(String virtualWiki, File indexPath, File rebuildPath) throws IOException {
+		File replacedPath = new File(indexPath.getPath() + REPLACED_DIR_SUFFIX);
+		synchronized (this.writerLock) {
+			// writers and searchers are only opened while holding the writer lock, so
+			// nothing can open the index while the directories are being renamed.
+			this.closeIndexWriter(virtualWiki);
+			FileUtils.deleteDirectory(replacedPath);
+			Files.move(indexPath.toPath(), replacedPath.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			Files.move(rebuildPath.toPath(), indexPath.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			// re-open the index immediately so that changes made to topics after they
+			// were read for the rebuild are replayed from the recent changes.
+			this.retrieveSearcherManager(virtualWiki);
+		}
+		FileUtils.deleteQuietly(replacedPath);
+	}
+
+	/**
+	 * Acquire a searcher for a virtual wiki.  Every searcher acquired using
+	 * this method must be released using {@link #releaseIndexSearcher} once
+	 * the search is complete.
+	 */
+	protected IndexSearcher acquireIndexSearcher(String virtualWiki) throws IOException {
+		while (true) {
+			try {
+				return this.retrieveSearcherManager(virtualWiki).acquire();
+			} catch (AlreadyClosedException e) {
+				// the searcher manager was closed by a concurrent index rebuild after
+				// it was retrieved; retry with the manager for the replacement index.
+			}
+		}
+	}
+
+	/**
+	 * Close and stop caching the writer and searcher manager for a virtual wiki.
+	 * Any changes that have been applied to the writer are committed.  Searches
+	 * that are already running continue to use the searcher that they acquired.
+	 */
+	private void closeIndexWriter(String virtualWiki) {
+		synchronized (this.writerLock) {
+			SearcherManager searcherManager = this.searcherManagers.remove(virtualWiki);
+			IndexWriter indexWriter = this.indexWriters.remove(virtualWiki);
+			this.uncommittedVirtualWikis.remove(virtualWiki);
+			try {
+				if (searcherManager != null) {
+					searcherManager.close();
+				}
+				if (indexWriter != null) {
+					indexWriter.close();
+				}
+			} catch (IOException e) {
+				logger.error("Exception while closing search index for virtual wiki " + virtualWiki, e);
 			}
 		}
 	}
 
 	/**
-	 * Call this method after a search index is updated to reset the searcher.
+	 * Queue a topic change to be applied to the search index the next time that
+	 * queued changes are committed.  If the topic is already queued then the
+	 * existing entry is replaced.
 	 */
-	private void resetIndexSearcher(String virtualWiki) throws IOException {
-		IndexSearcher searcher = searchers.get(virtualWiki);
-		if (searcher != null) {
-			searchers.remove(virtualWiki);
+	private void queueTopic(Topic topic, boolean delete) {
+		if (this.disabled) {
+			return;
+		}
+		synchronized (this.queuedTopics) {
+			this.queuedTopics.put(topic.getTopicId(), new QueuedTopic(topic, delete));
 		}
 	}
 
 	/**
-	 * For performance reasons cache the IndexSearcher for re-use.
+	 * Release a searcher that was acquired using {@link #acquireIndexSearcher}.
+	 * This method does nothing if the searcher is <code>null</code>.
 	 */
-	protected IndexSearcher retrieveIndexSearcher(String virtualWiki) throws IOException {
-		IndexSearcher searcher = searchers.get(virtualWiki);
+	protected void releaseIndexSearcher(IndexSearcher searcher) {
 		if (searcher == null) {
-			searcher = new IndexSearcher(this.retrieveIndexReader(virtualWiki));
-			searchers.put(virtualWiki, searcher);
+			return;
+		}
+		try {
+			// equivalent to SearcherManager.release(), but does not require the
+			// searcher manager, which may have been closed since the searcher was
+			// acquired.
+			searcher.getIndexReader().decRef();
+		} catch (IOException e) {
+			logger.warn("Exception while releasing index searcher", e);
+		}
+	}
+
+	/**
+	 * After a restart, queue all topics with recent changes that may not have
+	 * been committed to the search index prior to shutdown.
+	 */
+	private void replayRecentChanges(String virtualWiki, IndexWriter indexWriter) {
+		String indexedThrough = indexWriter.getCommitData().get(COMMIT_DATA_INDEXED_THROUGH);
+		if (indexedThrough == null) {
+			// index created by an older version, or never updated
+			return;
+		}
+		Timestamp changeDate = new Timestamp(Long.parseLong(indexedThrough) - REPLAY_OVERLAP_MILLIS);
+		try {
+			List<Integer> topicIds = WikiBase.getDataHandler().lookupRecentChangeTopicIds(virtualWiki, changeDate);
+			for (Integer topicId : topicIds) {
+				Topic topic = WikiBase.getDataHandler().lookupTopicById(topicId);
+				if (topic != null) {
+					this.queueTopic(topic, false);
+				}
+			}
+			if (!topicIds.isEmpty()) {
+				logger.info("Queued " + topicIds.size() + " topics changed since " + changeDate + " for search index update in virtual wiki " + virtualWiki);
+			}
+		} catch (DataAccessException e) {
+			logger.warn("Unable to replay recent changes for search index in virtual wiki " + virtualWiki, e);
 		}
-		return searcher;
 	}
 
 	/**
-	 * For performance reasons create a cache of readers.
+	 * For performance reasons cache a near-real-time searcher manager for each
+	 * virtual wiki.  Searchers are refreshed after queued changes are applied.
 	 */
-	private IndexReader retrieveIndexReader(String virtualWiki) throws IOException {
-		IndexReader indexReader = indexReaders.get(virtualWiki);
-		if (indexReader == null) {
-			File searchIndexPath = this.getSearchIndexPath(virtualWiki);
-			indexReader = this.openIndexReader(searchIndexPath);
-			indexReaders.put(virtualWiki, indexReader);
+	private SearcherManager retrieveSearcherManager(String virtualWiki) throws IOException {
+		SearcherManager searcherManager = this.searcherManagers.get(virtualWiki);
+		if (searcherManager != null) {
+			return searcherManager;
+		}
+		synchronized (this.writerLock) {
+			searcherManager = this.searcherManagers.get(virtualWiki);
+			if (searcherManager == null) {
+				searcherManager = new SearcherManager(this.retrieveIndexWriter(virtualWiki), true, null);
+				this.searcherManagers.put(virtualWiki, searcherManager);
+			}
+			return searcherManager;
 		}
-		return indexReader;
 	}
 
 	/**
@@ -441,23 +766,17 @@ public class LuceneSearchEngine implements SearchEngine {
 	 * re-initialized then commit() must be called to explicitly flush data to the index,
 	 * otherwise it will be flushed on a programmatic basis by Lucene.
 	 */
-	private IndexWriter retrieveIndexWriter(String virtualWiki, boolean create) throws IOException {
-		IndexWriter indexWriter = indexWriters.get(virtualWiki);
-		if (create && indexWriter != null) {
-			// if the writer is going to blow away the existing index and create a new one then it
-			// should not be cached.  instead, close any open writer, create a new one, and return.
-			indexWriter.close();
-			indexWriters.remove(virtualWiki);
-			indexWriter = null;
-		}
-		if (indexWriter == null) {
-			File searchIndexPath = this.getSearchIndexPath(virtualWiki);
-			indexWriter = this.openIndexWriter(searchIndexPath, create);
-			if (!create) {
-				indexWriters.put(virtualWiki, indexWriter);
+	private IndexWriter retrieveIndexWriter(String virtualWiki) throws IOException {
+		synchronized (this.writerLock) {
+			IndexWriter indexWriter = this.indexWriters.get(virtualWiki);
+			if (indexWriter == null) {
+				File searchIndexPath = this.getSearchIndexPath(virtualWiki);
+				indexWriter = this.openIndexWriter(searchIndexPath, false);
+				this.indexWriters.put(virtualWiki, indexWriter);
+				this.replayRecentChanges(virtualWiki, indexWriter);
 			}
+			return indexWriter;
 		}
-		return indexWriter;
 	}
 
 	/**
@@ -470,11 +789,14 @@ public class LuceneSearchEngine implements SearchEngine {
 	}
 
 	/**
-	 *
+	 * Generate a highlighted summary of the topic content for a search result.
+	 * The token stream is built from the stored term vectors when available so
+	 * that the topic content does not need to be re-analyzed; documents indexed
+	 * without term vectors fall back to analyzing the stored content.
 	 */
-	protected String retrieveResultSummary(Document document, Highlighter highlighter, StandardAnalyzer analyzer) throws InvalidTokenOffsetsException, IOException {
+	protected String retrieveResultSummary(IndexReader reader, int docId, Document document, Highlighter highlighter, StandardAnalyzer analyzer) throws InvalidTokenOffsetsException, IOException {
 		String content = document.get(FIELD_TOPIC_CONTENT);
-		TokenStream tokenStream = analyzer.tokenStream(FIELD_TOPIC_CONTENT, new StringReader(content));
+		TokenStream tokenStream = TokenSources.getAnyTokenStream(reader, docId, FIELD_TOPIC_CONTENT, document, analyzer);
 		String summary = highlighter.getBestFragments(tokenStream, content, 3, "...");
 		if (StringUtils.isBlank(summary) && !StringUtils.isBlank(content)) {
 			summary = StringEscapeUtils.escapeHtml4(content.substring(0, Math.min(200, content.length())));
@@ -485,6 +807,59 @@ public class LuceneSearchEngine implements SearchEngine {
 		return summary;
 	}
 
+	/**
+	 * Schedule the next commit of applied topic changes.  The commit interval is
+	 * re-read each time so that configuration changes take effect without a
+	 * restart.
+	 */
+	private void scheduleIndexCommit() {
+		int commitInterval = Math.max(1, Environment.getIntValue(Environment.PROP_SEARCH_COMMIT_INTERVAL));
+		try {
+			this.indexExecutor.schedule(new Runnable() {
+				public void run() {
+					try {
+						if (autoCommit) {
+							commitIndexes();
+						}
+					} catch (RuntimeException e) {
+						logger.error("Failure while committing search index", e);
+					} finally {
+						scheduleIndexCommit();
+					}
+				}
+			}, commitInterval, TimeUnit.SECONDS);
+		} catch (RejectedExecutionException e) {
+			// the search engine has been shut down
+		}
+	}
+
+	/**
+	 * Schedule the next application of queued topic changes and searcher
+	 * refresh.  The maximum staleness is re-read each time so that
+	 * configuration changes take effect without a restart.
+	 */
+	private void scheduleSearcherRefresh() {
+		int maxStaleness = Math.max(100, Environment.getIntValue(Environment.PROP_SEARCH_MAX_STALENESS));
+		try {
+			this.indexExecutor.schedule(new Runnable() {
+				public void run() {
+					try {
+						if (autoCommit) {
+							applyQueuedTopics();
+						}
+						refreshSearchers();
+					} catch (RuntimeException e) {
+						logger.error("Failure while updating search index", e);
+					} finally {
+						scheduleSearcherRefresh();
+					}
+				}
+			}, maxStaleness, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// the search engine has been shut down
+		}
+	}
+
 	/**
 	 *
 	 */
@@ -503,32 +878,97 @@ public class LuceneSearchEngine implements SearchEngine {
 	 * 
 	 */
 	public void shutdown() throws IOException {
-		for (IndexReader indexReader : this.indexReaders.values()) {
-			indexReader.close();
-		}
-		for (IndexWriter indexWriter : this.indexWriters.values()) {
-			indexWriter.close();
+		this.indexExecutor.shutdown();
+		this.flushQueuedTopics();
+		synchronized (this.writerLock) {
+			for (SearcherManager searcherManager : this.searcherManagers.values()) {
+				searcherManager.close();
+			}
+			this.searcherManagers.clear();
+			for (IndexWriter indexWriter : this.indexWriters.values()) {
+				indexWriter.close();
+			}
+			this.indexWriters.clear();
 		}
 	}
 
 	/**
+	 * Update a topic in the search index.  The topic is queued and updated in
+	 * the index the next time that queued changes are committed.
 	 *
+	 * @param topic The Topic object that is to be updated in the index.
 	 */
 	public void updateInIndex(Topic topic) {
-		if (this.disabled) {
+		this.queueTopic(topic, false);
+	}
+
+	/**
+	 * Apply a queued topic change to the search index using the current version
+	 * of the topic.  Deleted topics and redirects are removed from the index.
+	 */
+	private void updateInIndex(IndexWriter writer, QueuedTopic queuedTopic) throws DataAccessException, IOException {
+		Topic topic = (queuedTopic.isDelete()) ? null : WikiBase.getDataHandler().lookupTopicById(queuedTopic.getTopicId());
+		if (topic == null || !topic.getName().equals(queuedTopic.getTopicName())) {
+			// topic deleted or renamed since it was queued
+			this.deleteFromIndex(writer, queuedTopic.getTopicName());
+		}
+		if (topic == null) {
 			return;
 		}
-		try {
-			long start = System.currentTimeMillis();
-			IndexWriter writer = this.retrieveIndexWriter(topic.getVirtualWiki(), false);
-			this.deleteFromIndex(writer, topic);
-			this.addToIndex(writer, topic);
-			this.commit(writer, this.autoCommit);
-			if (logger.isDebugEnabled()) {
-				logger.debug("Update search index for topic " + topic.getVirtualWiki() + " / " + topic.getName() + " in " + ((System.currentTimeMillis() - start) / 1000.000) + " s.");
-			}
-		} catch (Exception e) {
-			logger.error("Exception while updating topic " + topic.getVirtualWiki() + " / " + topic.getName(), e);
+		if (topic.getDeleteDate() != null || topic.getTopicType() == TopicType.REDIRECT) {
+			// do not index deleted topics or redirects
+			this.deleteFromIndex(writer, topic.getName());
+			return;
+		}
+		writer.updateDocument(new Term(FIELD_TOPIC_NAME, topic.getName()), this.createStandardDocument(topic));
+	}
+
+	/**
+	 * Topic change waiting to be applied to the search index.
+	 */
+	private static final class QueuedTopic {
+
+		private final boolean delete;
+		private final int topicId;
+		private final String topicName;
+		private final String virtualWiki;
+
+		/**
+		 *
+		 */
+		QueuedTopic(Topic topic, boolean delete) {
+			this.delete = delete;
+			this.topicId = topic.getTopicId();
+			this.topicName = topic.getName();
+			this.virtualWiki = topic.getVirtualWiki();
+		}
+
+		/**
+		 *
+		 */
+		boolean isDelete() {
+			return this.delete;
+		}
+
+		/**
+		 *
+		 */
+		int getTopicId() {
+			return this.topicId;
+		}
+
+		/**
+		 *
+		 */
+		String getTopicName() {
+			return this.topicName;
+		}
+
+		/**
+		 *
+		 */
+		String getVirtualWiki() {
+			return this.virtualWiki;
 		}
 	}
 }
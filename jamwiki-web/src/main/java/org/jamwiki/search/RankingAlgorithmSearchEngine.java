@@ -30,6 +30,8 @@ import org.apache.lucene.search.highlight.QueryScorer;
 import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
 import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
 import org.jamwiki.model.SearchResultEntry;
+import org.jamwiki.model.SearchResultPage;
+import org.jamwiki.utils.Pagination;
 import org.jamwiki.utils.WikiLogger;
 
 /**
@@ -43,21 +45,28 @@ public class RankingAlgorithmSearchEngine extends LuceneSearchEngine {
 	private static final WikiLogger logger = WikiLogger.getLogger(RankingAlgorithmSearchEngine.class.getName());
 
 	/**
-	 * Find all documents that contain a specific search term, ordered by relevance.
-	 * This method supports all Lucene search query syntax.
+	 * Find a single page of documents that contain a specific search term,
+	 * ordered by relevance.  This method supports all Lucene search query
+	 * syntax.  Only the documents on the requested page are loaded and
+	 * highlighted.
 	 *
 	 * @param virtualWiki The virtual wiki for the topic.
 	 * @param text The search term being searched for.
-	 * @return A list of SearchResultEntry objects for all documents that
-	 *  contain the search term.
+	 * @param pagination A Pagination object indicating which page of results
+	 *  should be returned.
+	 * @return A SearchResultPage object containing the search results for the
+	 *  requested page and the total number of documents that contain the
+	 *  search term.
 	 */
     @Override
-	public List<SearchResultEntry> findResults(String virtualWiki, String text, List<Integer> namespaces) {
+	public SearchResultPage findResults(String virtualWiki, String text, List<Integer> namespaces, Pagination pagination) {
 		StandardAnalyzer analyzer = new StandardAnalyzer(USE_LUCENE_VERSION);
 		List<SearchResultEntry> results = new ArrayList<>();
+		int totalHits = 0;
 		logger.trace("search text: " + text);
+		IndexSearcher searcher = null;
 		try {
-			IndexSearcher searcher = this.retrieveIndexSearcher(virtualWiki);
+			searcher = this.acquireIndexSearcher(virtualWiki);
 			Query query = this.createSearchQuery(searcher, analyzer, text, namespaces);
 			// actually perform the search
 			//- TopScoreDocCollector collector = TopScoreDocCollector.create(MAXIMUM_RESULTS_PER_SEARCH, true);
@@ -84,14 +93,15 @@ public class RankingAlgorithmSearchEngine extends LuceneSearchEngine {
 				Method methodRH_docid = classRH.getMethod("docid", classArray);
 				Method methodRH_score = classRH.getMethod("score", classArray);
 				Object lenobject = methodRH_length.invoke(hitsobject);
-				int length = (Integer)lenobject;
-				for (int i = 0; i < length; i++) {
+				totalHits = (Integer)lenobject;
+				int end = Math.min(totalHits, pagination.getEnd());
+				for (int i = Math.max(0, pagination.getOffset()); i < end; i++) {
 					args = new Object[1];
 					args[0] = i;
 					Object docobject = methodRH_docid.invoke(hitsobject, args);
 					int docId = (Integer)docobject;
 					Document doc = searcher.doc(docId);
-					String summary = retrieveResultSummary(doc, highlighter, analyzer);
+					String summary = retrieveResultSummary(searcher.getIndexReader(), docId, doc, highlighter, analyzer);
 					Object scoreobject = methodRH_score.invoke(hitsobject, args);
 					float score = (Float)scoreobject;
 					SearchResultEntry result = new SearchResultEntry(doc.get(FIELD_TOPIC_NAME), score, summary);
@@ -102,7 +112,9 @@ public class RankingAlgorithmSearchEngine extends LuceneSearchEngine {
 			}
 		} catch (IOException | ParseException e) {
 			logger.error("Exception while searching for " + text, e);
+		} finally {
+			this.releaseIndexSearcher(searcher);
 		}
-		return results;
+		return new SearchResultPage(results, totalHits);
 	}
 }
@@ -17,6 +17,7 @@
 package org.jamwiki.servlets;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,9 +34,15 @@ import org.jamwiki.WikiConfiguration;
 import org.jamwiki.WikiException;
 import org.jamwiki.WikiMessage;
 import org.jamwiki.authentication.WikiUserDetailsImpl;
+import org.jamwiki.db.DataSourceStatistics;
+import org.jamwiki.db.DatabaseConnection;
+import org.jamwiki.db.StatementMonitor;
+import org.jamwiki.db.StatementStatistics;
 import org.jamwiki.db.WikiDatabase;
 import org.jamwiki.mail.WikiMail;
 import org.jamwiki.model.Role;
+import org.jamwiki.model.SearchRebuildStatus;
+import org.jamwiki.model.TopicMetadataRebuildStatus;
 import org.jamwiki.model.VirtualWiki;
 import org.jamwiki.model.WikiConfigurationObject;
 import org.jamwiki.model.WikiUser;
@@ -75,6 +82,8 @@ public class AdminServlet extends JAMWikiServlet {
 			viewAdmin(request, next, pageInfo, null);
 		} else if (function.equals("cache")) {
 			cache(request, next, pageInfo);
+		} else if (function.equals("compress")) {
+			compress(request, next, pageInfo);
 		} else if (function.equals("search")) {
 			refreshIndex(request, next, pageInfo);
 		} else if (function.equals("properties")) {
@@ -95,6 +104,8 @@ public class AdminServlet extends JAMWikiServlet {
 			namespaces(request, next, pageInfo);
 		} else if (function.equals("links")) {
 			links(request, next, pageInfo);
+		} else if (function.equals("statements")) {
+			statements(request, next, pageInfo);
 		}
 		return next;
 	}
@@ -153,15 +164,62 @@ public class AdminServlet extends JAMWikiServlet {
 		viewAdminSystem(request, next, pageInfo);
 	}
 
+	/**
+	 *
+	 */
+	private void compress(HttpServletRequest request, ModelAndView next, WikiPageInfo pageInfo) {
+		// compressing the history of every topic can take a long time, so run it in the
+		// background and write the results to the log.
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					int[] resultArray = WikiDatabase.compactTopicVersions();
+					logger.info("Compressed " + resultArray[0] + " topic versions, " + resultArray[1] + " topics could not be compressed");
+				} catch (Exception e) {
+					logger.error("Failure while compressing topic versions", e);
+				}
+			}
+		}, "jamwiki-topic-version-compress");
+		thread.setDaemon(true);
+		thread.start();
+		pageInfo.addMessage(new WikiMessage("admin.maintenance.message.compressstarted"));
+		viewAdminSystem(request, next, pageInfo);
+	}
+
 	/**
 	 *
 	 */
 	private void links(HttpServletRequest request, ModelAndView next, WikiPageInfo pageInfo) throws DataAccessException {
-		int[] resultArray = WikiDatabase.rebuildTopicMetadata();
-		pageInfo.addMessage(new WikiMessage("admin.maintenance.message.metadata", Integer.toString(resultArray[0])));
-		if (resultArray[1] != 0) {
-			pageInfo.addError(new WikiMessage("admin.maintenance.error.metadata", Integer.toString(resultArray[1])));
+		TopicMetadataRebuildStatus rebuildStatus = WikiDatabase.getTopicMetadataRebuildStatus();
+		boolean running = (rebuildStatus != null && rebuildStatus.isRunning());
+		if (!StringUtils.isBlank(request.getParameter("stop"))) {
+			if (running) {
+				rebuildStatus.requestStop();
+				pageInfo.addMessage(new WikiMessage("admin.maintenance.message.metadatastopping"));
+			}
+			viewAdminSystem(request, next, pageInfo);
+			return;
+		}
+		if (running) {
+			pageInfo.addError(new WikiMessage("admin.maintenance.error.metadatarunning"));
+			viewAdminSystem(request, next, pageInfo);
+			return;
 		}
+		final boolean resume = (!StringUtils.isBlank(request.getParameter("resume")));
+		// regenerating metadata for every topic can take a long time, so run it in the
+		// background and allow its progress to be followed from the maintenance page.
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					WikiDatabase.rebuildTopicMetadata(resume);
+				} catch (Exception e) {
+					logger.error("Failure while regenerating topic metadata", e);
+				}
+			}
+		}, "jamwiki-topic-metadata-rebuild");
+		thread.setDaemon(true);
+		thread.start();
+		pageInfo.addMessage(new WikiMessage("admin.maintenance.message.metadatastarted"));
 		viewAdminSystem(request, next, pageInfo);
 	}
 
@@ -201,9 +259,11 @@ public class AdminServlet extends JAMWikiServlet {
 			// identified by the properties
 			// Will return errors if the new database cannot be connected to,
 			// if it is already populated, or an error occurs copying the contents
-			WikiDatabase.migrateDatabase(props, pageInfo.getErrors());
+			int[] results = WikiDatabase.migrateDatabase(props, pageInfo.getErrors());
 			if (this.saveProperties(request, next, pageInfo, props)) {
 				pageInfo.addMessage(new WikiMessage("admin.message.migratedatabase", Environment.getValue(Environment.PROP_DB_URL)));
+				String[] params = {Integer.toString(results[0]), Double.toString(results[1] / 1000.000), Long.toString((long)results[0] * 1000L / Math.max(1, results[1]))};
+				pageInfo.addMessage(new WikiMessage("admin.message.migratedatabasestats", params));
 			}
 		} catch (Exception e) {
 			logger.error("Failure while migrating to a new database", e);
@@ -272,6 +332,8 @@ public class AdminServlet extends JAMWikiServlet {
 			setBooleanProperty(props, request, Environment.PROP_TOPIC_USE_SHOW_CHANGES);
 			setProperty(props, request, Environment.PROP_BASE_META_DESCRIPTION);
 			setProperty(props, request, Environment.PROP_BASE_SEARCH_ENGINE);
+			setNumericProperty(props, request, Environment.PROP_SEARCH_COMMIT_INTERVAL, pageInfo.getErrors());
+			setNumericProperty(props, request, Environment.PROP_SEARCH_MAX_STALENESS, pageInfo.getErrors());
 			setProperty(props, request, Environment.PROP_TOPIC_EDITOR);
 			setNumericProperty(props, request, Environment.PROP_MAX_TOPIC_VERSION_EXPORT, pageInfo.getErrors());
 			// parser
@@ -279,6 +341,8 @@ public class AdminServlet extends JAMWikiServlet {
 			setBooleanProperty(props, request, Environment.PROP_PARSER_ALLOW_HTML);
 			setBooleanProperty(props, request, Environment.PROP_PARSER_ALLOW_JAVASCRIPT);
 			setBooleanProperty(props, request, Environment.PROP_PARSER_ALLOW_TEMPLATES);
+			setBooleanProperty(props, request, Environment.PROP_PARSER_CACHE_TOPICS);
+			setBooleanProperty(props, request, Environment.PROP_PARSER_CACHE_RERENDER);
 			setBooleanProperty(props, request, Environment.PROP_PRINT_NEW_WINDOW);
 			setBooleanProperty(props, request, Environment.PROP_EXTERNAL_LINK_NEW_WINDOW);
 			setBooleanProperty(props, request, Environment.PROP_PARSER_USE_NUMBERED_HTML_LINKS);
@@ -306,6 +370,18 @@ public class AdminServlet extends JAMWikiServlet {
 			setNumericProperty(props, request, Environment.PROP_DBCP_MAX_IDLE, pageInfo.getErrors());
 			setNumericProperty(props, request, Environment.PROP_DBCP_MAX_OPEN_PREPARED_STATEMENTS, pageInfo.getErrors());
 			setBooleanProperty(props, request, Environment.PROP_DBCP_POOL_PREPARED_STATEMENTS);
+			setBooleanProperty(props, request, Environment.PROP_TOPIC_NAME_DIRECTORY);
+			setNumericProperty(props, request, Environment.PROP_RECENT_CHANGES_BUFFER_SIZE, pageInfo.getErrors());
+			setBooleanProperty(props, request, Environment.PROP_TOPIC_VERSION_COMPRESSION);
+			setNumericProperty(props, request, Environment.PROP_TOPIC_METADATA_REBUILD_THREADS, pageInfo.getErrors());
+			setNumericProperty(props, request, Environment.PROP_TOPIC_METADATA_REBUILD_DELAY, pageInfo.getErrors());
+			setNumericProperty(props, request, Environment.PROP_DB_MIGRATION_FETCH_SIZE, pageInfo.getErrors());
+			setNumericProperty(props, request, Environment.PROP_DB_MIGRATION_BATCH_SIZE, pageInfo.getErrors());
+			setNumericProperty(props, request, Environment.PROP_DB_MIGRATION_THREADS, pageInfo.getErrors());
+			setProperty(props, request, Environment.PROP_DB_REPLICA_URLS);
+			setNumericProperty(props, request, Environment.PROP_DB_REPLICA_STICKY_SECONDS, pageInfo.getErrors());
+			setBooleanProperty(props, request, Environment.PROP_DB_STATEMENT_STATISTICS);
+			setNumericProperty(props, request, Environment.PROP_DB_STATEMENT_REPEAT_THRESHOLD, pageInfo.getErrors());
 			setBooleanProperty(props, request, Environment.PROP_DBCP_TEST_ON_BORROW);
 			setBooleanProperty(props, request, Environment.PROP_DBCP_TEST_ON_RETURN);
 			setBooleanProperty(props, request, Environment.PROP_DBCP_TEST_WHILE_IDLE);
@@ -417,13 +493,26 @@ public class AdminServlet extends JAMWikiServlet {
 	 *
 	 */
 	private void refreshIndex(HttpServletRequest request, ModelAndView next, WikiPageInfo pageInfo) throws Exception {
-		try {
-			WikiBase.getSearchEngine().refreshIndex();
-			pageInfo.addMessage(new WikiMessage("admin.message.indexrefreshed"));
-		} catch (Exception e) {
-			logger.error("Failure while refreshing search index", e);
-			pageInfo.addError(new WikiMessage("admin.message.searchrefresh", e.getMessage()));
+		SearchRebuildStatus rebuildStatus = WikiBase.getSearchEngine().getRebuildStatus();
+		if (rebuildStatus != null && rebuildStatus.isRunning()) {
+			pageInfo.addError(new WikiMessage("admin.message.searchrefreshrunning"));
+			viewAdminSystem(request, next, pageInfo);
+			return;
 		}
+		// rebuilding the index can take a long time, so run it in the background and
+		// allow its progress to be followed from the maintenance page.
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					WikiBase.getSearchEngine().refreshIndex();
+				} catch (Exception e) {
+					logger.error("Failure while refreshing search index", e);
+				}
+			}
+		}, "jamwiki-search-refresh");
+		thread.setDaemon(true);
+		thread.start();
+		pageInfo.addMessage(new WikiMessage("admin.message.searchrefreshstarted"));
 		viewAdminSystem(request, next, pageInfo);
 	}
 
@@ -553,6 +642,15 @@ public class AdminServlet extends JAMWikiServlet {
 		viewAdminSystem(request, next, pageInfo);
 	}
 
+	/**
+	 *
+	 */
+	private void statements(HttpServletRequest request, ModelAndView next, WikiPageInfo pageInfo) {
+		StatementMonitor.reset();
+		pageInfo.addMessage(new WikiMessage("admin.maintenance.message.statementsreset"));
+		viewAdminSystem(request, next, pageInfo);
+	}
+
 	/**
 	 *
 	 */
@@ -609,5 +707,48 @@ public class AdminServlet extends JAMWikiServlet {
 		next.addObject("allowExport", allowExport);
 		List<WikiConfigurationObject> queryHandlers = WikiConfiguration.getInstance().getQueryHandlers();
 		next.addObject("queryHandlers", queryHandlers);
+		SearchRebuildStatus rebuildStatus = WikiBase.getSearchEngine().getRebuildStatus();
+		if (rebuildStatus != null) {
+			String[] params = new String[4];
+			params[0] = Integer.toString(rebuildStatus.getTopicsProcessed());
+			params[1] = Integer.toString(rebuildStatus.getTopicCount());
+			params[2] = Long.toString(rebuildStatus.getElapsedSeconds());
+			params[3] = Integer.toString(rebuildStatus.getTopicsPerSecond());
+			String key = "admin.message.searchrebuildcomplete";
+			if (rebuildStatus.isRunning()) {
+				key = "admin.message.searchrebuildprogress";
+			} else if (rebuildStatus.isFailed()) {
+				key = "admin.message.searchrebuildfailed";
+			}
+			next.addObject("searchRebuildStatus", new WikiMessage(key, params));
+		}
+		TopicMetadataRebuildStatus metadataRebuildStatus = WikiDatabase.getTopicMetadataRebuildStatus();
+		if (metadataRebuildStatus != null) {
+			String[] params = new String[5];
+			params[0] = Integer.toString(metadataRebuildStatus.getTopicsProcessed());
+			params[1] = Integer.toString(metadataRebuildStatus.getTopicCount());
+			params[2] = Long.toString(metadataRebuildStatus.getElapsedSeconds());
+			params[3] = Integer.toString(metadataRebuildStatus.getTopicsPerSecond());
+			params[4] = Integer.toString(metadataRebuildStatus.getErrors());
+			String key = "admin.maintenance.message.metadatacomplete";
+			if (metadataRebuildStatus.isRunning()) {
+				key = "admin.maintenance.message.metadataprogress";
+			} else if (metadataRebuildStatus.isFailed()) {
+				key = "admin.maintenance.message.metadatafailed";
+			} else if (metadataRebuildStatus.isStopRequested()) {
+				key = "admin.maintenance.message.metadatastopped";
+			}
+			next.addObject("metadataRebuildStatus", new WikiMessage(key, params));
+			next.addObject("metadataRebuildRunning", metadataRebuildStatus.isRunning());
+		}
+		next.addObject("statementStatisticsEnabled", StatementMonitor.isEnabled());
+		next.addObject("statementStatistics", StatementMonitor.getStatistics());
+		long[] histogramBuckets = StatementStatistics.getHistogramBucketMillis();
+		next.addObject("statementHistogramBuckets", histogramBuckets);
+		next.addObject("statementHistogramLimit", histogramBuckets[histogramBuckets.length - 1]);
+		List<DataSourceStatistics> connectionStatistics = new ArrayList<DataSourceStatistics>();
+		connectionStatistics.add(StatementMonitor.getConnectionStatistics());
+		connectionStatistics.addAll(DatabaseConnection.getReplicaStatistics());
+		next.addObject("connectionStatistics", connectionStatistics);
 	}
 }
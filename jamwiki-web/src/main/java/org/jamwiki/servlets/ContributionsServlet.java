@@ -57,6 +57,7 @@ public class ContributionsServlet extends JAMWikiServlet {
 		}
 		Pagination pagination = ServletUtil.loadPagination(request, next);
 		List<RecentChange> contributions = WikiBase.getDataHandler().getUserContributions(virtualWiki, userString, pagination, true);
+		ServletUtil.loadPaginationCursor(next, pagination, contributions);
 		next.addObject("contributions", contributions);
 		next.addObject("numContributions", contributions.size());
 		next.addObject("contributor", userString);
@@ -252,7 +252,7 @@ public class EditServlet extends JAMWikiServlet {
 		Topic previewTopic = new Topic(virtualWiki, wikiLink.getNamespace(), wikiLink.getArticle());
 		previewTopic.setTopicContent(contents);
 		next.addObject("editPreview", "true");
-		ServletUtil.viewTopic(request, next, pageInfo, null, previewTopic, false, false);
+		ServletUtil.viewTopic(request, next, pageInfo, null, previewTopic, false, false, false);
 	}
 
 	/**
@@ -16,23 +16,22 @@
  */
 package org.jamwiki.servlets;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.jamwiki.DataAccessException;
+import org.jamwiki.WikiBase;
 import org.jamwiki.WikiException;
 import org.jamwiki.WikiMessage;
 import org.jamwiki.migrate.MigrationException;
 import org.jamwiki.migrate.MigrationUtil;
 import org.jamwiki.utils.WikiLogger;
-import org.jamwiki.utils.WikiUtil;
 import org.springframework.web.servlet.ModelAndView;
 
 /**
@@ -66,67 +65,73 @@ public class ExportServlet extends JAMWikiServlet {
 		String topicNames = request.getParameter("topics");
 		boolean download = (!StringUtils.isBlank(request.getParameter("download")));
 		boolean excludeHistory = (!StringUtils.isBlank(request.getParameter("history")));
+		boolean compress = (!StringUtils.isBlank(request.getParameter("compress")));
 		boolean success = false;
 		try {
 			if (StringUtils.isBlank(topicNames)) {
 				throw new WikiException(new WikiMessage("export.error.notopic"));
 			}
-			// write export file to the server
-			File directory = WikiUtil.getTempDirectory();
-			if (!directory.exists()) {
-				throw new WikiException(new WikiMessage("upload.error.directorycreate", directory.getAbsolutePath()));
-			}
-			// use current timestamp as unique file name
-			String filename = System.currentTimeMillis() + ".xml";
-			File file = new File(directory, filename);
 			List<String> topicNameList = Arrays.asList(StringUtils.split(topicNames, "\n\r"));
 			String virtualWiki = pageInfo.getVirtualWikiName();
-			MigrationUtil.exportToFile(file, virtualWiki, topicNameList, excludeHistory);
-			this.renderXml(response, file, download);
+			// validate before writing anything since errors cannot be displayed
+			// once the response has started streaming
+			for (String topicName : topicNameList) {
+				if (WikiBase.getDataHandler().lookupTopic(virtualWiki, topicName, false) == null) {
+					throw new WikiException(new WikiMessage("export.error.topic.does.not.exist", topicName));
+				}
+			}
+			this.renderXml(response, virtualWiki, topicNameList, excludeHistory, download, compress);
 			success = true;
-			file.delete();
+		} catch (DataAccessException e) {
+			logger.error("Failure while exporting topics", e);
+			pageInfo.addError(new WikiMessage("export.error.migration", e.getMessage()));
 		} catch (IOException e) {
-			logger.error("Failure while exporting to file", e);
+			logger.error("Failure while exporting topics", e);
 			pageInfo.addError(new WikiMessage("export.error.migration", e.getMessage()));
 		} catch (MigrationException e) {
-			logger.error("Failure while exporting from file", e);
+			logger.error("Failure while exporting topics", e);
 			pageInfo.addError(new WikiMessage("export.error.migration", e.getMessage()));
 		} catch (WikiException e) {
 			pageInfo.addError(e.getWikiMessage());
 		}
+		if (!success && response.isCommitted()) {
+			// part of the export has already been sent, so an error page cannot be displayed
+			return true;
+		}
 		if (!success) {
 			next.addObject("topicNames", topicNames);
 			next.addObject("download", download);
 			next.addObject("excludeHistory", excludeHistory);
+			next.addObject("compress", compress);
 		}
 		return success;
 	}
-	
+
 	/**
-	 *
+	 * Stream the export directly to the response, optionally compressing it
+	 * using gzip.
 	 */
-	private void renderXml(HttpServletResponse response, File file, boolean download) throws IOException {
-		response.setContentType("application/xml");
-		response.setCharacterEncoding("UTF-8");
-		if (download) {
+	private void renderXml(HttpServletResponse response, String virtualWiki, List<String> topicNames, boolean excludeHistory, boolean download, boolean compress) throws IOException, MigrationException {
+		String filename = System.currentTimeMillis() + ".xml";
+		if (compress) {
+			response.setContentType("application/gzip");
+			filename += ".gz";
+		} else {
+			response.setContentType("application/xml");
+			response.setCharacterEncoding("UTF-8");
+		}
+		if (download || compress) {
 			// download instead of displaying in a browser window
-			response.setHeader("Content-Disposition", "attachment; filename=" + file.getName());
+			response.setHeader("Content-Disposition", "attachment; filename=" + filename);
 		}
-		PrintWriter out = response.getWriter();
-		FileReader fileReader = null;
-		BufferedReader bufferedReader = null;
-		try {
-			fileReader = new FileReader(file);
-			bufferedReader = new BufferedReader(fileReader);
-			String s;
-			while ((s = bufferedReader.readLine()) != null) {
-				out.println(s);
-			}
-		} finally {
-			IOUtils.closeQuietly(bufferedReader);
-			IOUtils.closeQuietly(fileReader);
+		GZIPOutputStream gzip = (compress) ? new GZIPOutputStream(response.getOutputStream()) : null;
+		OutputStream out = new BufferedOutputStream((gzip != null) ? gzip : response.getOutputStream());
+		MigrationUtil.exportToStream(out, virtualWiki, topicNames, excludeHistory);
+		out.flush();
+		if (gzip != null) {
+			gzip.finish();
 		}
-		out.close();
+		response.flushBuffer();
 	}
 
 	/**
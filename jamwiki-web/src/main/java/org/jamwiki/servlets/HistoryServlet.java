@@ -68,6 +68,7 @@ public class HistoryServlet extends JAMWikiServlet {
 		Pagination pagination = ServletUtil.loadPagination(request, next);
 		Topic topic = WikiBase.getDataHandler().lookupTopic(virtualWiki, topicName, true);
 		List<RecentChange> changes = WikiBase.getDataHandler().getTopicHistory(topic, pagination, true);
+		ServletUtil.loadPaginationCursor(next, pagination, changes);
 		next.addObject("changes", changes);
 		next.addObject("numChanges", changes.size());
 	}
@@ -98,7 +99,7 @@ public class HistoryServlet extends JAMWikiServlet {
 			Integer nextTopicVersionId = WikiBase.getDataHandler().lookupTopicVersionNextId(topicVersion.getTopicVersionId());
 			next.addObject("nextTopicVersionId", nextTopicVersionId);
 			WikiMessage pageTitle = new WikiMessage("topic.title", topicName);
-			ServletUtil.viewTopic(request, next, pageInfo, pageTitle, topic, false, false);
+			ServletUtil.viewTopic(request, next, pageInfo, pageTitle, topic, false, false, false);
 		}
 	}
 }
@@ -24,6 +24,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.fileupload.FileItem;
 import org.jamwiki.WikiException;
 import org.jamwiki.WikiMessage;
+import org.jamwiki.migrate.ImportStatus;
 import org.jamwiki.migrate.MigrationException;
 import org.jamwiki.migrate.MigrationUtil;
 import org.jamwiki.model.WikiUser;
@@ -63,6 +64,12 @@ public class ImportServlet extends JAMWikiServlet {
 	private void importFile(HttpServletRequest request, ModelAndView next, WikiPageInfo pageInfo) {
 		try {
 			List<FileItem> fileItems = ServletUtil.processMultipartRequest(request);
+			boolean resume = false;
+			for (FileItem fileItem : fileItems) {
+				if (fileItem.isFormField() && fileItem.getFieldName().equals("resume")) {
+					resume = true;
+				}
+			}
 			for (FileItem fileItem : fileItems) {
 				if (fileItem.isFormField()) {
 					continue;
@@ -72,7 +79,7 @@ public class ImportServlet extends JAMWikiServlet {
 				String virtualWiki = pageInfo.getVirtualWikiName();
 				String ipAddress = ServletUtil.getIpAddress(request);
 				Locale locale = request.getLocale();
-				List<String> successfulImports = MigrationUtil.importFromFile(file, virtualWiki, user, ipAddress, locale);
+				List<String> successfulImports = MigrationUtil.importFromFile(file, virtualWiki, user, ipAddress, locale, resume, new ImportStatus());
 				file.delete();
 				next.addObject("successfulImports", successfulImports);
 				break;
@@ -26,14 +26,16 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.jamwiki.authentication.JAMWikiAuthenticationConstants;
+import org.jamwiki.db.DatabaseConnection;
+import org.jamwiki.db.StatementMonitor;
 import org.jamwiki.model.VirtualWiki;
 import org.jamwiki.utils.WikiLogger;
 import org.jamwiki.utils.WikiUtil;
 
 /**
  * Perform filtering of all Wiki page requests, including setting the
- * character encoding to UTF-8 and verifying that no setup or upgrade is
- * required.
+ * character encoding to UTF-8, identifying the user for read replica routing
+ * and verifying that no setup or upgrade is required.
  */
 public class JAMWikiFilter implements Filter {
 
@@ -59,7 +61,16 @@ public class JAMWikiFilter implements Filter {
 		if (redirectNeeded(request, response)) {
 			return;
 		}
-		chain.doFilter(request, response);
+		// route reads for a user who has just made a change to the primary database
+		DatabaseConnection.setRoutingKey(request.getRemoteAddr());
+		// track statements executed while processing this request to detect repeated queries
+		StatementMonitor.beginRequest();
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			DatabaseConnection.setRoutingKey(null);
+			StatementMonitor.endRequest((request instanceof HttpServletRequest) ? ((HttpServletRequest)request).getRequestURI() : "request");
+		}
 	}
 
 	/**
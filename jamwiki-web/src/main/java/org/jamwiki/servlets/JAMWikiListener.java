@@ -18,8 +18,11 @@ package org.jamwiki.servlets;
 
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
+import org.jamwiki.DataAccessException;
+import org.jamwiki.WikiBase;
 import org.jamwiki.db.WikiDatabase;
 import org.jamwiki.utils.WikiCache;
+import org.jamwiki.utils.WikiLogger;
 import org.jamwiki.utils.WikiUtil;
 
 /**
@@ -28,8 +31,10 @@ import org.jamwiki.utils.WikiUtil;
  */
 public class JAMWikiListener implements ServletContextListener {
 
+	private static final WikiLogger logger = WikiLogger.getLogger(JAMWikiListener.class.getName());
+
 	/**
-	 * Initialize the database connection pool and disk cache.
+	 * Initialize the database connection pool, disk cache and topic directories.
 	 *
 	 * @see javax.servlet.ServletContextListener#contextInitialized(javax.servlet.ServletContextEvent)
 	 */
@@ -37,6 +42,14 @@ public class JAMWikiListener implements ServletContextListener {
 		if (!WikiUtil.isFirstUse()) {
 			WikiDatabase.initialize();
 			WikiCache.initialize();
+			if (!WikiUtil.isUpgrade()) {
+				try {
+					WikiBase.getDataHandler().loadTopicDirectories();
+				} catch (DataAccessException e) {
+					// directories that fail to load are loaded again on first use
+					logger.warn("Failure while loading topic directories", e);
+				}
+			}
 		}
 	}
 
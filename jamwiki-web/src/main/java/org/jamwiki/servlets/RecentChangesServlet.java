@@ -51,6 +51,7 @@ public class RecentChangesServlet extends JAMWikiServlet {
 		String virtualWiki = pageInfo.getVirtualWikiName();
 		Pagination pagination = ServletUtil.loadPagination(request, next);
 		List<RecentChange> changes = WikiBase.getDataHandler().getRecentChanges(virtualWiki, pagination, true);
+		ServletUtil.loadPaginationCursor(next, pagination, changes);
 		next.addObject("changes", changes);
 		next.addObject("numChanges", changes.size());
 		pageInfo.setPageTitle(new WikiMessage("recentchanges.title"));
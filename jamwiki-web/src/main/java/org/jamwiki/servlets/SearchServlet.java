@@ -16,6 +16,7 @@
  */
 package org.jamwiki.servlets;
 
+import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -27,8 +28,9 @@ import org.apache.commons.lang3.math.NumberUtils;
 import org.jamwiki.WikiBase;
 import org.jamwiki.WikiConfiguration;
 import org.jamwiki.WikiMessage;
-import org.jamwiki.model.SearchResultEntry;
+import org.jamwiki.model.SearchResultPage;
 import org.jamwiki.parser.LinkUtil;
+import org.jamwiki.utils.Pagination;
 import org.jamwiki.utils.WikiLogger;
 import org.jamwiki.utils.WikiUtil;
 import org.springframework.web.servlet.ModelAndView;
@@ -97,10 +99,20 @@ public class SearchServlet extends JAMWikiServlet {
 			next.addObject("selectedNamespaces", selectedNamespaceMap);
 		}
 		if (!StringUtils.isBlank(searchField)) {
-			// grab search engine instance and find results
-			List<SearchResultEntry> results = WikiBase.getSearchEngine().findResults(virtualWiki, searchField, selectedNamespaces);
+			// grab search engine instance and find results for the current page
+			Pagination pagination = ServletUtil.loadPagination(request, next);
+			SearchResultPage resultPage = WikiBase.getSearchEngine().findResults(virtualWiki, searchField, selectedNamespaces, pagination);
 			next.addObject("searchField", searchField);
-			next.addObject("results", results);
+			next.addObject("results", resultPage.getResults());
+			next.addObject("numResults", resultPage.getResults().size());
+			next.addObject("totalHits", resultPage.getTotalHits());
+			String rootUrl = "Special:Search?text=" + URLEncoder.encode(searchField, "UTF-8");
+			if (selectedNamespaces != null) {
+				for (Integer namespaceId : selectedNamespaces) {
+					rootUrl += "&amp;ns=" + namespaceId;
+				}
+			}
+			next.addObject("rootUrl", rootUrl);
 		}
 		pageInfo.setContentJsp(JSP_SEARCH);
 		pageInfo.setSpecial(true);
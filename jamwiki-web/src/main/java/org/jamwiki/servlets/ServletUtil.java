@@ -526,6 +526,26 @@ public class ServletUtil {
 		return pagination;
 	}
 
+	/**
+	 * Load the cursor that can be used to retrieve the page of changes that
+	 * follows the current page into the request for processing by a JSP.
+	 * No cursor is added if the current page is the last page.
+	 *
+	 * @param next A ModelAndView object corresponding to the page being
+	 *  constructed.
+	 * @param pagination The pagination object used to retrieve the current
+	 *  page of changes.
+	 * @param changes The current page of changes, sorted newest to oldest.
+	 */
+	public static void loadPaginationCursor(ModelAndView next, Pagination pagination, List<RecentChange> changes) {
+		if (changes.isEmpty() || changes.size() != pagination.getNumResults()) {
+			return;
+		}
+		RecentChange last = changes.get(changes.size() - 1);
+		int offset = pagination.getOffset() + pagination.getNumResults();
+		next.addObject("nextCursor", Pagination.buildCursor(offset, last.getChangeDate(), last.getTopicVersionId(), last.getLogType()));
+	}
+
 	/**
 	 * Utility method for parsing a multipart servlet request.  This method returns
 	 * a list of FileItem objects that corresponds to the request.
@@ -747,9 +767,13 @@ public class ServletUtil {
 	 * @param allowRedirect Setting this parameter to <code>true</code> will force the
 	 *  redirection target to be displayed (rather than a redirect page) if the topic is a
 	 *  redirect.
+	 * @param currentVersion Set to <code>true</code> if the topic content is the
+	 *  content of the topic's current version, in which case the parsed output may
+	 *  be retrieved from or stored in the parsed topic cache.  Set to <code>false</code>
+	 *  when displaying previews or older topic versions.
 	 * @throws WikiException Thrown if any error occurs while retrieving or parsing the topic.
 	 */
-	protected static void viewTopic(HttpServletRequest request, ModelAndView next, WikiPageInfo pageInfo, WikiMessage pageTitle, Topic topic, boolean sectionEdit, boolean allowRedirect) throws WikiException {
+	protected static void viewTopic(HttpServletRequest request, ModelAndView next, WikiPageInfo pageInfo, WikiMessage pageTitle, Topic topic, boolean sectionEdit, boolean allowRedirect, boolean currentVersion) throws WikiException {
 		// FIXME - what should the default be for topics that don't exist?
 		if (topic == null) {
 			throw new WikiException(new WikiMessage("common.exception.notopic"));
@@ -762,7 +786,11 @@ public class ServletUtil {
 		ParserOutput parserOutput = new ParserOutput();
 		String content = null;
 		try {
-			content = ParserUtil.parse(parserInput, parserOutput, topic.getTopicContent());
+			if (currentVersion) {
+				content = ParserUtil.parseTopic(parserInput, parserOutput, topic);
+			} else {
+				content = ParserUtil.parse(parserInput, parserOutput, topic.getTopicContent());
+			}
 		} catch (ParserException e) {
 			throw new WikiException(new WikiMessage("error.unknown", e.getMessage()), e);
 		}
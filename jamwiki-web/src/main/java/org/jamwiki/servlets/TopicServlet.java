@@ -72,6 +72,6 @@ public class TopicServlet extends JAMWikiServlet {
 			next.addObject("notopic", wikiMessage);
 		}
 		WikiMessage pageTitle = new WikiMessage("topic.title", topicName);
-		ServletUtil.viewTopic(request, next, pageInfo, pageTitle, topic, true, true);
+		ServletUtil.viewTopic(request, next, pageInfo, pageTitle, topic, true, true, true);
 	}
 }
\ No newline at end of file
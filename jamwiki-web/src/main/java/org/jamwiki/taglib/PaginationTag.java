@@ -20,6 +20,7 @@ import java.io.IOException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.jsp.JspException;
 import javax.servlet.jsp.tagext.BodyTagSupport;
+import org.apache.commons.lang3.StringUtils;
 import org.jamwiki.DataAccessException;
 import org.jamwiki.parser.LinkUtil;
 import org.jamwiki.parser.WikiLink;
@@ -35,6 +36,7 @@ public class PaginationTag extends BodyTagSupport {
 
 	private static final WikiLogger logger = WikiLogger.getLogger(PaginationTag.class.getName());
 
+	private String nextCursor = null;
 	private String rootUrl = null;
 	private String total = null;
 
@@ -79,6 +81,13 @@ public class PaginationTag extends BodyTagSupport {
 		return output;
 	}
 
+	/**
+	 *
+	 */
+	public String getNextCursor() {
+		return this.nextCursor;
+	}
+
 	/**
 	 *
 	 */
@@ -121,6 +130,10 @@ public class PaginationTag extends BodyTagSupport {
 		}
 		String query = LinkUtil.appendQueryParam(wikiLink.getQuery(), "num", Integer.toString(pagination.getNumResults()));
 		query += "&amp;offset=" + offset;
+		if (!previous && !StringUtils.isBlank(this.nextCursor)) {
+			// cursors contain only alphanumerics and periods, so no encoding is needed
+			query += "&amp;from=" + this.nextCursor;
+		}
 		wikiLink.setQuery(query);
 		try {
 			output.append(LinkUtil.buildTopicUrl(wikiLink));
@@ -175,6 +188,13 @@ public class PaginationTag extends BodyTagSupport {
 		return output.toString();
 	}
 
+	/**
+	 *
+	 */
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
 	/**
 	 *
 	 */
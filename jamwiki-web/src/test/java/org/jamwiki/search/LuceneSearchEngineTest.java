@@ -0,0 +1,87 @@
+/**
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, version 2.1, dated February 1999.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the latest version of the GNU Lesser General
+ * Public License as published by the Free Software Foundation;
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program (LICENSE.txt); if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jamwiki.search;
+
+import java.io.IOException;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.jamwiki.model.SearchResultPage;
+import org.jamwiki.utils.Pagination;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LuceneSearchEngineTest {
+
+	private static final int DOCUMENT_COUNT = LuceneSearchEngine.MAXIMUM_RESULTS_PER_SEARCH + 50;
+
+	/**
+	 * Build an in-memory index in which every document matches the search
+	 * term "common".
+	 */
+	private Directory buildIndex() throws IOException {
+		Directory directory = new RAMDirectory();
+		IndexWriterConfig config = new IndexWriterConfig(LuceneSearchEngine.USE_LUCENE_VERSION, new StandardAnalyzer(LuceneSearchEngine.USE_LUCENE_VERSION));
+		IndexWriter writer = new IndexWriter(directory, config);
+		for (int i = 0; i < DOCUMENT_COUNT; i++) {
+			Document doc = new Document();
+			doc.add(new StringField(LuceneSearchEngine.FIELD_TOPIC_NAME, "Topic" + i, Field.Store.YES));
+			doc.add(new TextField("topic_name_analyzed", "Topic" + i, Field.Store.NO));
+			doc.add(new TextField("topic_content", "common content " + i, Field.Store.YES));
+			writer.addDocument(doc);
+		}
+		writer.close();
+		return directory;
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFindResultsCapsPagination() throws Throwable {
+		final Directory directory = this.buildIndex();
+		LuceneSearchEngine searchEngine = new LuceneSearchEngine() {
+			protected IndexSearcher acquireIndexSearcher(String virtualWiki) throws IOException {
+				return new IndexSearcher(DirectoryReader.open(directory));
+			}
+		};
+		try {
+			// an oversized page is limited to the maximum number of results
+			SearchResultPage page = searchEngine.findResults("en", "common", null, new Pagination(2000000000, 0));
+			assertEquals("Oversized page results", LuceneSearchEngine.MAXIMUM_RESULTS_PER_SEARCH, page.getResults().size());
+			assertEquals("Oversized page total hits", DOCUMENT_COUNT, page.getTotalHits());
+			// a page that extends past the maximum is truncated
+			page = searchEngine.findResults("en", "common", null, new Pagination(10, LuceneSearchEngine.MAXIMUM_RESULTS_PER_SEARCH - 5));
+			assertEquals("Truncated page results", 5, page.getResults().size());
+			// an offset that would overflow returns an empty page rather than failing
+			page = searchEngine.findResults("en", "common", null, new Pagination(Integer.MAX_VALUE, Integer.MAX_VALUE - 5));
+			assertEquals("Overflow page results", 0, page.getResults().size());
+			assertEquals("Overflow page total hits", DOCUMENT_COUNT, page.getTotalHits());
+		} finally {
+			searchEngine.shutdown();
+			directory.close();
+		}
+	}
+}